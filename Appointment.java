@@ -179,17 +179,26 @@ public class Appointment {
      * @return true if the appointments overlap, false otherwise
      */
     public boolean overlapsWith(Appointment other) {
-        if (!this.date.equals(other.date)) return false;
-        
-        // Check time overlap
-        boolean timeOverlap = this.startTime.isBefore(other.endTime) && 
-                             this.endTime.isAfter(other.startTime);
-        
-        // Check resource conflict if both use the same resource
-        boolean resourceConflict = this.resource != null && 
-                                  other.resource != null &&
-                                  this.resource.equals(other.resource);
-        
-        return timeOverlap && resourceConflict;
+        return conflictsWith(other.date.toEpochDay(), other.startTime.toNanoOfDay(),
+                other.endTime.toNanoOfDay(), other.resource);
+    }
+
+    /**
+     * Checks if this appointment conflicts with a proposed booking given as
+     * primitive values. Uses the same rule as {@link #overlapsWith(Appointment)}
+     * (same day, overlapping times, same resource) without allocating.
+     * 
+     * @param epochDay the proposed day as {@link LocalDate#toEpochDay()}
+     * @param startNanos the proposed start as {@link LocalTime#toNanoOfDay()}
+     * @param endNanos the proposed end as {@link LocalTime#toNanoOfDay()}
+     * @param resource the proposed resource, or null
+     * @return true if the booking would conflict with this appointment
+     */
+    public boolean conflictsWith(long epochDay, long startNanos, long endNanos, Resource resource) {
+        // Only bookings of the same resource conflict, so check that first
+        return this.resource != null && resource != null && this.resource.equals(resource)
+                && this.date.toEpochDay() == epochDay
+                && this.startTime.toNanoOfDay() < endNanos
+                && this.endTime.toNanoOfDay() > startNanos;
     }
 }
\ No newline at end of file
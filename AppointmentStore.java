@@ -0,0 +1,139 @@
+package project;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Storage for the active appointments of a diary. The default store keeps
+ * appointment objects on the heap; {@link OffHeapArena} provides a store that
+ * keeps them as fixed-width records in direct memory.
+ */
+interface AppointmentStore {
+
+	/**
+	 * Adds an appointment.
+	 *
+	 * @param appointment the appointment to add
+	 */
+	void add(Appointment appointment);
+
+	/**
+	 * Removes an appointment.
+	 *
+	 * @param appointment the appointment to remove
+	 * @return true if an appointment was removed
+	 */
+	boolean remove(Appointment appointment);
+
+	/**
+	 * Removes every appointment matching a filter.
+	 *
+	 * @param filter the filter to apply
+	 * @return true if any appointment was removed
+	 */
+	boolean removeIf(Predicate<Appointment> filter);
+
+	/**
+	 * Gets all appointments in insertion order.
+	 *
+	 * @return a new list of the appointments
+	 */
+	List<Appointment> toList();
+
+	/**
+	 * Gets the appointments on a date.
+	 *
+	 * @param date the date to filter by
+	 * @return a new list of the appointments on that date
+	 */
+	List<Appointment> onDate(LocalDate date);
+
+	/**
+	 * Gets the appointments in a date range in chronological order.
+	 *
+	 * @param fromEpochDay the first day, as {@link LocalDate#toEpochDay()}
+	 * @param toEpochDay   the last day, inclusive
+	 * @return a new list of the appointments, ordered by date and start time
+	 */
+	List<Appointment> between(long fromEpochDay, long toEpochDay);
+
+	/**
+	 * Gets a page of the appointments in a date range in chronological order,
+	 * creating no list or objects for the appointments before the page.
+	 *
+	 * @param fromEpochDay the first day, as {@link LocalDate#toEpochDay()}
+	 * @param toEpochDay   the last day, inclusive
+	 * @param skip         the number of appointments before the page
+	 * @param limit        the most appointments to return
+	 * @return a new list of the appointments, ordered by date and start time
+	 */
+	List<Appointment> page(long fromEpochDay, long toEpochDay, long skip, int limit);
+
+	/**
+	 * Gets a patient's appointments in chronological order.
+	 *
+	 * @param patientName the patient's name
+	 * @return a new list of the appointments, ordered by date and start time
+	 */
+	List<Appointment> forPatient(String patientName);
+
+	/**
+	 * Checks whether a proposed booking would conflict with a stored appointment,
+	 * using the same rule as {@link Appointment#overlapsWith(Appointment)}.
+	 * Implementations must not allocate.
+	 *
+	 * @param epochDay   the proposed day as {@link LocalDate#toEpochDay()}
+	 * @param startNanos the proposed start as {@link LocalTime#toNanoOfDay()}
+	 * @param endNanos   the proposed end as {@link LocalTime#toNanoOfDay()}
+	 * @param resource   the proposed resource
+	 * @return true if there is a conflict
+	 */
+	boolean conflicts(long epochDay, long startNanos, long endNanos, Resource resource);
+
+	/**
+	 * Gets the number of stored appointments.
+	 *
+	 * @return the appointment count
+	 */
+	int size();
+
+	/**
+	 * Gets the position of the most recently added appointment with the same
+	 * details, for indexes that refer to appointments by position instead of
+	 * holding the objects. A position stays valid until its appointment is
+	 * removed.
+	 *
+	 * @param appointment the appointment
+	 * @return the position, or -1 if this store keeps appointment objects or
+	 *         holds no such appointment
+	 */
+	int positionOf(Appointment appointment);
+
+	/**
+	 * Reads the appointment at a position.
+	 *
+	 * @param position the position
+	 * @return a new appointment object, or null if there is no appointment at
+	 *         that position
+	 */
+	Appointment at(int position);
+
+	/**
+	 * Passes every appointment, in the order added, to an action along with its
+	 * position.
+	 *
+	 * @param action the action, given -1 as the position if this store keeps
+	 *               appointment objects
+	 */
+	void forEach(ObjIntConsumer<Appointment> action);
+
+	/**
+	 * Creates an independent copy of this store in the same kind of storage.
+	 *
+	 * @return the copy
+	 */
+	AppointmentStore copy();
+}
@@ -0,0 +1,172 @@
+package project;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model listing every professional's appointments in a date range, one
+ * row per appointment, in date and time order. Only per-day counts are read up
+ * front; a day's rows are fetched when a row on that day is first rendered and
+ * kept in a small LRU cache, so a table over years of data only reads the days
+ * scrolled into view.
+ */
+class AppointmentTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+	private static final String[] COLUMNS = { "Date", "Start", "End", "Professional", "Patient", "Treatment",
+			"Resource" };
+	private static final int CACHED_DAYS = 64;
+
+	private transient Scheduler scheduler;
+	private LocalDate from;
+	private LocalDate to;
+	// firstRow[i] is the row of the first appointment on day from + i
+	private int[] firstRow = new int[1];
+	private final transient Map<LocalDate, List<Booking>> dayCache = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<LocalDate, List<Booking>> eldest) {
+			return size() > CACHED_DAYS;
+		}
+	};
+
+	/**
+	 * Constructs an empty model.
+	 *
+	 * @param scheduler the scheduler to read appointments from
+	 */
+	AppointmentTableModel(Scheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Switches to another scheduler, for example after loading a file, and
+	 * empties the table.
+	 *
+	 * @param scheduler the scheduler to read appointments from
+	 */
+	void setScheduler(Scheduler scheduler) {
+		this.scheduler = scheduler;
+		from = null;
+		firstRow = new int[1];
+		dayCache.clear();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Shows the appointments in a date range.
+	 *
+	 * @param from the first date, inclusive
+	 * @param to   the last date, inclusive
+	 */
+	void setRange(LocalDate from, LocalDate to) {
+		this.from = from;
+		this.to = to;
+		int days = (int) ChronoUnit.DAYS.between(from, to) + 1;
+		firstRow = new int[Math.max(days, 0) + 1];
+		int row = 0;
+		for (YearMonth month = YearMonth.from(from); days > 0 && !month.isAfter(YearMonth.from(to)); month = month
+				.plusMonths(1)) {
+			int[] counts = scheduler.getDailyAppointmentCounts(month);
+			for (int day = 1; day <= counts.length; day++) {
+				int index = (int) ChronoUnit.DAYS.between(from, month.atDay(day));
+				if (index >= 0 && index < days) {
+					firstRow[index] = row;
+					row += counts[day - 1];
+				}
+			}
+		}
+		firstRow[firstRow.length - 1] = row;
+		dayCache.clear();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Reads the range shown again after appointments have been booked,
+	 * cancelled or undone, since the rows they moved would otherwise show the
+	 * wrong appointments.
+	 */
+	void refresh() {
+		if (from != null) {
+			setRange(from, to);
+		}
+	}
+
+	/**
+	 * Gets the booking shown in a row.
+	 *
+	 * @param row the row index
+	 * @return the booking
+	 */
+	Booking getBooking(int row) {
+		// Binary search for the last day starting at or before the row
+		int low = 0;
+		int high = firstRow.length - 2;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (firstRow[mid] <= row) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		List<Booking> day = day(from.plusDays(low));
+		int offset = row - firstRow[low];
+		return offset < day.size() ? day.get(offset) : null;
+	}
+
+	private List<Booking> day(LocalDate date) {
+		List<Booking> rows = dayCache.get(date);
+		if (rows == null) {
+			rows = scheduler.getBookingsOnDate(date);
+			dayCache.put(date, rows);
+		}
+		return rows;
+	}
+
+	@Override
+	public int getRowCount() {
+		return firstRow[firstRow.length - 1];
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		Booking booking = getBooking(row);
+		if (booking == null) {
+			return null;
+		}
+		Appointment appt = booking.getAppointment();
+		switch (column) {
+		case 0:
+			return appt.getDate();
+		case 1:
+			return appt.getStartTime();
+		case 2:
+			return appt.getEndTime();
+		case 3:
+			return booking.getProfessional().getName();
+		case 4:
+			return appt.getPatientName();
+		case 5:
+			return appt.getTreatmentType();
+		default:
+			return appt.getResource() == null ? "" : appt.getResource().getName();
+		}
+	}
+}
@@ -0,0 +1,370 @@
+package project;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs scheduler commands without user interaction, one command per line, so
+ * nightly jobs and benchmarks can load a snapshot, import, search, report and
+ * save from a script. Arguments are separated by spaces; wrap an argument in
+ * double quotes to include spaces. Blank lines and lines starting with
+ * {@code #} are ignored. The run stops at the first failing command.
+ * <p>
+ * Commands:
+ * 
+ * <pre>
+ * load FILE | load-compressed FILE | load-segmented DIR
+ * save FILE | save-compressed FILE | save-segmented DIR
+ * import csv|ndjson FILE
+ * export csv|ndjson FILE
+ * generate SEED PROFESSIONALS FROM TO
+ * add-professional NAME PROFESSION LOCATION
+ * add-resource NAME TYPE LOCATION
+ * book PROFESSIONAL[,PROFESSIONAL...] DATE START END TREATMENT PATIENT [RESOURCE]
+ * search PROFESSIONAL[,PROFESSIONAL...] FROM TO MINUTES [RESOURCE]
+ * earliest PROFESSION LOCATION FROM TO MINUTES COUNT
+ * list PROFESSIONAL FROM TO
+ * patient NAME
+ * report FROM TO
+ * calendar YYYY-MM
+ * archive MONTHS [DIR]
+ * undo
+ * echo TEXT...
+ * </pre>
+ * 
+ * Professionals and resources are named as in the scheduler, ignoring case.
+ * Dates are YYYY-MM-DD and times HH:MM.
+ */
+public class BatchRunner {
+	private Scheduler scheduler;
+	private final PrintStream out;
+
+	/**
+	 * Constructs a runner.
+	 * 
+	 * @param scheduler the scheduler to start from
+	 * @param out       the stream command output is printed to
+	 */
+	public BatchRunner(Scheduler scheduler, PrintStream out) {
+		this.scheduler = scheduler;
+		this.out = out;
+	}
+
+	/**
+	 * Gets the scheduler, which is replaced by each load command.
+	 * 
+	 * @return the current scheduler
+	 */
+	public Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Runs every command read from a script.
+	 * 
+	 * @param script the script to read
+	 * @param name   the script's name, used in error messages
+	 * @return true if every command succeeded
+	 * @throws IOException if the script can't be read
+	 */
+	public boolean run(BufferedReader script, String name) throws IOException {
+		String line;
+		int lineNumber = 0;
+		while ((line = script.readLine()) != null) {
+			lineNumber++;
+			if (!execute(line, name + ":" + lineNumber)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs a single command line. Failures are reported on standard error.
+	 * 
+	 * @param line     the command line
+	 * @param location where the line came from, used in error messages
+	 * @return true if the command succeeded or the line was blank or a comment
+	 */
+	public boolean execute(String line, String location) {
+		List<String> words;
+		try {
+			words = split(line);
+		} catch (IllegalArgumentException e) {
+			System.err.println(location + ": " + e.getMessage());
+			return false;
+		}
+		if (words.isEmpty() || words.get(0).startsWith("#")) {
+			return true;
+		}
+		try {
+			execute(words.get(0).toLowerCase(), words.subList(1, words.size()));
+			return true;
+		} catch (IOException | ClassNotFoundException | RuntimeException e) {
+			System.err.println(location + ": " + words.get(0) + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	private void execute(String command, List<String> args) throws IOException, ClassNotFoundException {
+		switch (command) {
+		case "load":
+			expect(args, 1);
+			scheduler = FileManager.loadFromFile(args.get(0));
+			out.println("Loaded " + describe());
+			break;
+		case "load-compressed":
+			expect(args, 1);
+			scheduler = FileManager.loadCompressed(args.get(0));
+			out.println("Loaded " + describe());
+			break;
+		case "load-segmented":
+			expect(args, 1);
+			scheduler = FileManager.loadSegmented(args.get(0));
+			out.println("Loaded " + describe());
+			break;
+		case "save":
+			expect(args, 1);
+			FileManager.saveToFile(scheduler, args.get(0));
+			out.println("Saved " + describe() + " to " + args.get(0));
+			break;
+		case "save-compressed":
+			expect(args, 1);
+			FileManager.saveCompressed(scheduler, args.get(0));
+			out.println("Saved " + describe() + " to " + args.get(0));
+			break;
+		case "save-segmented":
+			expect(args, 1);
+			FileManager.saveSegmented(scheduler, args.get(0));
+			out.println("Saved " + describe() + " to " + args.get(0));
+			break;
+		case "import":
+			expect(args, 2);
+			DataExchange.ImportResult result = format(args.get(0)) ? DataExchange.importCsv(scheduler, args.get(1))
+					: DataExchange.importNdjson(scheduler, args.get(1));
+			out.println("Import of " + args.get(1) + ": " + result);
+			break;
+		case "export":
+			expect(args, 2);
+			if (format(args.get(0))) {
+				DataExchange.exportCsv(scheduler, args.get(1));
+			} else {
+				DataExchange.exportNdjson(scheduler, args.get(1));
+			}
+			out.println("Exported " + describe() + " to " + args.get(1));
+			break;
+		case "generate":
+			expect(args, 4);
+			int booked = new WorkloadGenerator(Long.parseLong(args.get(0)))
+					.professionals(Integer.parseInt(args.get(1)))
+					.populate(scheduler, date(args.get(2)), date(args.get(3)));
+			out.println("Generated " + booked + " appointments; now " + describe());
+			break;
+		case "add-professional":
+			expect(args, 3);
+			scheduler.addHealthProfessional(new HealthProfessional(args.get(0), args.get(1), args.get(2)));
+			out.println("Added professional " + args.get(0));
+			break;
+		case "add-resource":
+			expect(args, 3);
+			scheduler.addSharedResource(new Resource(args.get(0), args.get(1), args.get(2)));
+			out.println("Added resource " + args.get(0));
+			break;
+		case "book":
+			expect(args, 6, 7);
+			Appointment appointment = new Appointment(date(args.get(1)), time(args.get(2)), time(args.get(3)),
+					args.get(4), args.get(5), false, args.size() > 6 ? resource(args.get(6)) : null);
+			if (!scheduler.bookAppointment(professionals(args.get(0)), appointment)) {
+				throw new IllegalStateException("Slot not available: " + appointment);
+			}
+			out.println("Booked " + appointment);
+			break;
+		case "search":
+			expect(args, 4, 5);
+			List<TimeSlot> slots = scheduler.findAvailableSlots(professionals(args.get(0)),
+					args.size() > 4 ? List.of(resource(args.get(4))) : List.of(), date(args.get(1)),
+					date(args.get(2)), Integer.parseInt(args.get(3)));
+			out.println(slots.size() + " slots found in " + scheduler.getLastSearchDuration() + "ms");
+			slots.forEach(out::println);
+			break;
+		case "earliest":
+			expect(args, 6);
+			List<ProfessionalSlot> earliest = scheduler.findEarliestSlots(args.get(0), args.get(1),
+					date(args.get(2)), date(args.get(3)), Integer.parseInt(args.get(4)),
+					Integer.parseInt(args.get(5)));
+			out.println(earliest.size() + " slots found");
+			earliest.forEach(out::println);
+			break;
+		case "list":
+			expect(args, 3);
+			List<Appointment> appointments = scheduler.getDiary(professional(args.get(0)))
+					.appointmentsBetween(date(args.get(1)), date(args.get(2)));
+			out.println(appointments.size() + " appointments");
+			appointments.forEach(out::println);
+			break;
+		case "patient":
+			expect(args, 1);
+			List<Booking> bookings = scheduler.getBookingsForPatient(args.get(0));
+			out.println(bookings.size() + " bookings");
+			bookings.forEach(out::println);
+			break;
+		case "report":
+			expect(args, 2);
+			printReport(scheduler.getUtilisationReport(date(args.get(0)), date(args.get(1))));
+			break;
+		case "calendar":
+			expect(args, 1);
+			YearMonth month = YearMonth.parse(args.get(0));
+			int[] counts = scheduler.getDailyAppointmentCounts(month);
+			int[] utilisation = scheduler.getDailyUtilisation(month);
+			for (int day = 1; day <= counts.length; day++) {
+				out.printf("%s %5d appointments %4d%%%n", month.atDay(day), counts[day - 1], utilisation[day - 1]);
+			}
+			break;
+		case "archive":
+			expect(args, 1, 2);
+			scheduler.setArchiveHorizon(Integer.parseInt(args.get(0)), args.size() > 1 ? args.get(1) : null);
+			out.println("Archived " + scheduler.archiveHistoricAppointments() + " appointments");
+			break;
+		case "undo":
+			expect(args, 0);
+			out.println(scheduler.undo() ? "Undone" : "Nothing to undo");
+			break;
+		case "echo":
+			out.println(String.join(" ", args));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown command");
+		}
+	}
+
+	private void printReport(UtilisationReport report) {
+		out.println("Utilisation " + report.getFrom() + " to " + report.getTo());
+		for (Map.Entry<HealthProfessional, UtilisationReport.Usage> entry : report.getProfessionals().entrySet()) {
+			out.println("  " + entry.getKey().getName() + ": " + entry.getValue());
+		}
+		for (Map.Entry<Resource, UtilisationReport.Usage> entry : report.getResources().entrySet()) {
+			out.println("  " + entry.getKey().getName() + ": " + entry.getValue());
+		}
+		out.println("  Peak hour: " + report.getPeakHour());
+		out.println("  Treatment mix: " + report.getTreatmentMix());
+	}
+
+	private String describe() {
+		int appointments = 0;
+		List<HealthProfessional> professionals = scheduler.getAllHealthProfessionals();
+		for (HealthProfessional hp : professionals) {
+			appointments += scheduler.getDiary(hp).getAllAppointments().size();
+		}
+		return professionals.size() + " professionals and " + appointments + " appointments";
+	}
+
+	private List<HealthProfessional> professionals(String names) {
+		List<HealthProfessional> result = new ArrayList<>();
+		for (String name : names.split(",")) {
+			result.add(professional(name.trim()));
+		}
+		return result;
+	}
+
+	private HealthProfessional professional(String name) {
+		for (HealthProfessional hp : scheduler.getAllHealthProfessionals()) {
+			if (hp.getName().equalsIgnoreCase(name)) {
+				return hp;
+			}
+		}
+		throw new IllegalArgumentException("No professional named " + name);
+	}
+
+	private Resource resource(String name) {
+		for (Resource resource : scheduler.getAllSharedResources()) {
+			if (resource.getName().equalsIgnoreCase(name)) {
+				return resource;
+			}
+		}
+		throw new IllegalArgumentException("No resource named " + name);
+	}
+
+	/**
+	 * Reads an import or export format.
+	 * 
+	 * @return true for CSV, false for NDJSON
+	 */
+	private static boolean format(String name) {
+		if (name.equalsIgnoreCase("csv")) {
+			return true;
+		}
+		if (name.equalsIgnoreCase("ndjson")) {
+			return false;
+		}
+		throw new IllegalArgumentException("Unknown format " + name + ", expected csv or ndjson");
+	}
+
+	private static LocalDate date(String text) {
+		try {
+			return LocalDate.parse(text);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid date " + text + ", expected YYYY-MM-DD");
+		}
+	}
+
+	private static LocalTime time(String text) {
+		try {
+			return LocalTime.parse(text);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid time " + text + ", expected HH:MM");
+		}
+	}
+
+	private static void expect(List<String> args, int count) {
+		expect(args, count, count);
+	}
+
+	private static void expect(List<String> args, int min, int max) {
+		if (args.size() < min || args.size() > max) {
+			throw new IllegalArgumentException("Expected " + (min == max ? min : min + " to " + max)
+					+ " arguments but got " + args.size());
+		}
+	}
+
+	/**
+	 * Splits a command line into words, keeping double-quoted text together.
+	 */
+	static List<String> split(String line) {
+		List<String> words = new ArrayList<>();
+		StringBuilder word = new StringBuilder();
+		boolean quoted = false;
+		boolean inWord = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+				inWord = true;
+			} else if (Character.isWhitespace(c) && !quoted) {
+				if (inWord) {
+					words.add(word.toString());
+					word.setLength(0);
+					inWord = false;
+				}
+			} else {
+				word.append(c);
+				inWord = true;
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("Unterminated quote");
+		}
+		if (inWord) {
+			words.add(word.toString());
+		}
+		return words;
+	}
+}
@@ -0,0 +1,131 @@
+package project;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many availability probes a {@link BinaryProtocolServer} answers
+ * per second on localhost. Several connections each pipeline batches of probes
+ * at random professionals, days and times, while other connections keep
+ * running long slot searches so that the figure includes their cost. Counts
+ * start after a warm-up of {@link #WARMUP_SECONDS}.
+ */
+public class BinaryProtocolBenchmark {
+	static final int WARMUP_SECONDS = 3;
+
+	private BinaryProtocolBenchmark() {
+	}
+
+	/**
+	 * Generates a workload, serves it and probes it. Arguments, all optional
+	 * and in order: professionals, days of bookings, probing connections,
+	 * searching connections, seconds to measure, probes per batch, and the
+	 * fewest probes per second to accept.
+	 *
+	 * @param args the command-line arguments
+	 * @throws Exception if the server can't be started or a connection fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int professionals = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+		int connections = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		int searchers = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+		int batch = args.length > 5 ? Integer.parseInt(args[5]) : 256;
+		long minimumRate = args.length > 6 ? Long.parseLong(args[6]) : 0;
+
+		Scheduler scheduler = new Scheduler();
+		LocalDate start = LocalDate.now();
+		LocalDate end = start.plusDays(days - 1);
+		int booked = new WorkloadGenerator(42).professionals(professionals).populate(scheduler, start, end);
+		List<String> names = new ArrayList<>();
+		for (HealthProfessional hp : scheduler.getAllHealthProfessionals()) {
+			names.add(hp.getName());
+		}
+		String resourceName = scheduler.getAllSharedResources().get(0).getName();
+		System.out.printf("Generated %d professionals and %d appointments over %d days%n", names.size(), booked,
+				days);
+
+		BinaryProtocolServer server = new BinaryProtocolServer(scheduler, 0);
+		server.start();
+		int port = server.getPort();
+		AtomicLong probes = new AtomicLong();
+		AtomicLong searches = new AtomicLong();
+		long measureFrom = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+		long stopAt = measureFrom + seconds * 1_000_000_000L;
+
+		List<Thread> threads = new ArrayList<>();
+		for (int c = 0; c < connections; c++) {
+			long seed = c;
+			threads.add(Thread.ofPlatform().name("probe-" + c).start(() -> {
+				try (BinaryProtocolClient client = new BinaryProtocolClient("localhost", port)) {
+					int[] handles = resolveAll(client, names);
+					int resource = client.resolveResource(resourceName);
+					Random random = new Random(seed);
+					while (System.nanoTime() < stopAt) {
+						for (int i = 0; i < batch; i++) {
+							int startMinute = Scheduler.WORKDAY_START_MINUTE + random.nextInt(16) * 30;
+							client.sendIsSlotAvailable(handles[random.nextInt(handles.length)],
+									start.plusDays(random.nextInt(days)), startMinute, startMinute + 30,
+									random.nextInt(4) == 0 ? resource : -1);
+						}
+						client.flush();
+						for (int i = 0; i < batch; i++) {
+							client.receiveIsSlotAvailable();
+						}
+						if (System.nanoTime() >= measureFrom) {
+							probes.addAndGet(batch);
+						}
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}));
+		}
+		for (int c = 0; c < searchers; c++) {
+			long seed = 1000 + c;
+			threads.add(Thread.ofPlatform().name("search-" + c).start(() -> {
+				try (BinaryProtocolClient client = new BinaryProtocolClient("localhost", port)) {
+					int[] handles = resolveAll(client, names);
+					Random random = new Random(seed);
+					while (System.nanoTime() < stopAt) {
+						// Different pairs each time, so the search cache doesn't answer
+						client.findAvailableSlots(
+								new int[] { handles[random.nextInt(handles.length)],
+										handles[random.nextInt(handles.length)] },
+								new int[0], start, end, 30 + 15 * random.nextInt(4));
+						if (System.nanoTime() >= measureFrom) {
+							searches.incrementAndGet();
+						}
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		server.stop();
+
+		long rate = probes.get() / seconds;
+		System.out.printf("%d probing and %d searching connections, batches of %d: %,d probes/s, %d searches of"
+				+ " %d days in %d s%n", connections, searchers, batch, rate, searches.get(), days, seconds);
+		if (rate < minimumRate) {
+			System.out.printf("Below the required %,d probes/s%n", minimumRate);
+			System.exit(1);
+		}
+	}
+
+	private static int[] resolveAll(BinaryProtocolClient client, List<String> names) throws IOException {
+		int[] handles = new int[names.size()];
+		for (int i = 0; i < handles.length; i++) {
+			handles[i] = client.resolveProfessional(names.get(i));
+		}
+		return handles;
+	}
+}
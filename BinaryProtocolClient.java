@@ -0,0 +1,264 @@
+package project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A blocking client for {@link BinaryProtocolServer}. Each call sends one
+ * request and waits for its answer. Availability probes can also be pipelined:
+ * send any number with {@link #sendIsSlotAvailable}, {@link #flush()} them,
+ * then read the answers in the same order with
+ * {@link #receiveIsSlotAvailable()}.
+ * <p>
+ * Server errors are thrown as {@link IOException}s carrying the server's
+ * message. A client is not thread-safe.
+ */
+public class BinaryProtocolClient implements Closeable {
+	private final Socket socket;
+	private final DataOutputStream out;
+	private final DataInputStream in;
+	private int nextRequestId;
+	private int nextResponseId;
+
+	/**
+	 * Connects to a server.
+	 *
+	 * @param host the server's host
+	 * @param port the server's port
+	 * @throws IOException if the connection fails
+	 */
+	public BinaryProtocolClient(String host, int port) throws IOException {
+		socket = new Socket();
+		socket.connect(new InetSocketAddress(host, port));
+		socket.setTcpNoDelay(true);
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+	}
+
+	/**
+	 * Gets the handle of a professional.
+	 *
+	 * @param name the professional's name
+	 * @return the handle
+	 * @throws IOException if the professional is unknown or the connection fails
+	 */
+	public int resolveProfessional(String name) throws IOException {
+		return resolve(BinaryProtocolServer.RESOLVE_PROFESSIONAL, name);
+	}
+
+	/**
+	 * Gets the handle of a shared resource.
+	 *
+	 * @param name the resource's name
+	 * @return the handle
+	 * @throws IOException if the resource is unknown or the connection fails
+	 */
+	public int resolveResource(String name) throws IOException {
+		return resolve(BinaryProtocolServer.RESOLVE_RESOURCE, name);
+	}
+
+	/**
+	 * Checks whether a slot is free in a professional's diary.
+	 *
+	 * @param professional the professional's handle
+	 * @param date         the date
+	 * @param startMinute  the start, in minutes after midnight
+	 * @param endMinute    the end, in minutes after midnight
+	 * @param resource     the resource's handle, or -1 for none
+	 * @return true if the slot is available
+	 * @throws IOException if the server refuses the request or the connection
+	 *                     fails
+	 */
+	public boolean isSlotAvailable(int professional, LocalDate date, int startMinute, int endMinute, int resource)
+			throws IOException {
+		sendIsSlotAvailable(professional, date, startMinute, endMinute, resource);
+		flush();
+		return receiveIsSlotAvailable();
+	}
+
+	/**
+	 * Queues an availability probe without waiting for its answer. Nothing is
+	 * sent until {@link #flush()} or the send buffer fills.
+	 *
+	 * @param professional the professional's handle
+	 * @param date         the date
+	 * @param startMinute  the start, in minutes after midnight
+	 * @param endMinute    the end, in minutes after midnight
+	 * @param resource     the resource's handle, or -1 for none
+	 * @throws IOException if the connection fails
+	 */
+	public void sendIsSlotAvailable(int professional, LocalDate date, int startMinute, int endMinute, int resource)
+			throws IOException {
+		begin(BinaryProtocolServer.IS_SLOT_AVAILABLE, 16);
+		out.writeInt(professional);
+		out.writeInt((int) date.toEpochDay());
+		out.writeShort(startMinute);
+		out.writeShort(endMinute);
+		out.writeInt(resource);
+	}
+
+	/**
+	 * Reads the answer to the oldest probe not yet answered.
+	 *
+	 * @return true if the slot is available
+	 * @throws IOException if the server refused the probe or the connection
+	 *                     fails
+	 */
+	public boolean receiveIsSlotAvailable() throws IOException {
+		receive(1);
+		return in.readByte() == 1;
+	}
+
+	/**
+	 * Books an appointment for several professionals.
+	 *
+	 * @param professionals the professionals' handles
+	 * @param date          the date
+	 * @param startMinute   the start, in minutes after midnight
+	 * @param endMinute     the end, in minutes after midnight
+	 * @param treatment     the treatment type
+	 * @param patient       the patient's name
+	 * @param resource      the resource's handle, or -1 for none
+	 * @return true if booked, false if there were conflicts
+	 * @throws IOException if the server refuses the request or the connection
+	 *                     fails
+	 */
+	public boolean bookAppointment(int[] professionals, LocalDate date, int startMinute, int endMinute,
+			String treatment, String patient, int resource) throws IOException {
+		byte[] treatmentBytes = treatment.getBytes(StandardCharsets.UTF_8);
+		byte[] patientBytes = patient.getBytes(StandardCharsets.UTF_8);
+		begin(BinaryProtocolServer.BOOK_APPOINTMENT,
+				2 + professionals.length * 4 + 8 + 2 + treatmentBytes.length + 2 + patientBytes.length + 4);
+		writeHandles(professionals);
+		out.writeInt((int) date.toEpochDay());
+		out.writeShort(startMinute);
+		out.writeShort(endMinute);
+		writeString(treatmentBytes);
+		writeString(patientBytes);
+		out.writeInt(resource);
+		flush();
+		receive(1);
+		return in.readByte() == 1;
+	}
+
+	/**
+	 * Finds the slots in which professionals and resources are all free.
+	 *
+	 * @param professionals   the professionals' handles
+	 * @param resources       the resources' handles
+	 * @param from            the first date
+	 * @param to              the last date
+	 * @param durationMinutes the slot length in minutes
+	 * @return the free slots, in date and time order
+	 * @throws IOException if the server refuses the request or the connection
+	 *                     fails
+	 */
+	public List<TimeSlot> findAvailableSlots(int[] professionals, int[] resources, LocalDate from, LocalDate to,
+			int durationMinutes) throws IOException {
+		begin(BinaryProtocolServer.FIND_AVAILABLE_SLOTS, 2 + professionals.length * 4 + 2 + resources.length * 4 + 10);
+		writeHandles(professionals);
+		writeHandles(resources);
+		out.writeInt((int) from.toEpochDay());
+		out.writeInt((int) to.toEpochDay());
+		out.writeShort(durationMinutes);
+		flush();
+		int length = receive(4);
+		int count = in.readInt();
+		if (length != 4 + count * 8) {
+			throw new IOException("Bad slot list of " + count + " in " + length + " bytes");
+		}
+		List<TimeSlot> slots = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			LocalDate date = LocalDate.ofEpochDay(in.readInt());
+			int start = in.readShort();
+			int end = in.readShort();
+			slots.add(new TimeSlot(date, LocalTime.of(start / 60, start % 60), LocalTime.of(end / 60, end % 60)));
+		}
+		return slots;
+	}
+
+	/**
+	 * Sends the requests queued so far.
+	 *
+	 * @throws IOException if the connection fails
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Closes the connection.
+	 *
+	 * @throws IOException if closing fails
+	 */
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	private int resolve(byte opcode, String name) throws IOException {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		begin(opcode, 2 + bytes.length);
+		writeString(bytes);
+		flush();
+		receive(4);
+		return in.readInt();
+	}
+
+	/**
+	 * Writes a request header.
+	 */
+	private void begin(byte opcode, int payloadLength) throws IOException {
+		out.writeInt(5 + payloadLength);
+		out.writeByte(opcode);
+		out.writeInt(nextRequestId++);
+	}
+
+	/**
+	 * Reads the header of the next response, checking it answers the oldest
+	 * request, and throws the message of an error response.
+	 *
+	 * @param minimumPayload the fewest payload bytes a successful answer has
+	 * @return the payload length
+	 */
+	private int receive(int minimumPayload) throws IOException {
+		int length = in.readInt() - 5;
+		int requestId = in.readInt();
+		byte status = in.readByte();
+		if (requestId != nextResponseId++) {
+			throw new IOException("Expected the answer to request " + (nextResponseId - 1) + " but got " + requestId);
+		}
+		if (status != BinaryProtocolServer.STATUS_OK) {
+			byte[] message = new byte[in.readShort()];
+			in.readFully(message);
+			throw new IOException(new String(message, StandardCharsets.UTF_8));
+		}
+		if (length < minimumPayload) {
+			throw new IOException("Answer to request " + requestId + " is too short");
+		}
+		return length;
+	}
+
+	private void writeHandles(int[] handles) throws IOException {
+		out.writeShort(handles.length);
+		for (int handle : handles) {
+			out.writeInt(handle);
+		}
+	}
+
+	private void writeString(byte[] bytes) throws IOException {
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -0,0 +1,557 @@
+package project;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves high-rate booking and availability requests over a lean binary
+ * protocol. One selector thread owns every connection and makes the scheduler
+ * calls, so the scheduler must not be used by other threads while the server
+ * runs. Requests may be pipelined: every complete frame in a read is answered
+ * in order, and responses are encoded straight into pooled direct buffers.
+ * <p>
+ * Slot searches over more than {@link #SEARCH_CHUNK_DAYS} days run on a
+ * separate search thread instead, a chunk of days at a time under a lock the
+ * selector thread also takes, so probes from other clients wait for at most
+ * one chunk rather than a whole search. The connection that asked reads no
+ * further requests until its search is answered, keeping its responses in
+ * order. {@link BinaryProtocolClient} speaks the protocol.
+ * <p>
+ * All numbers are big-endian. A request frame is an int length (of the rest of
+ * the frame), a byte opcode, an int request id chosen by the client, then the
+ * payload. A response frame is an int length, the request id, a byte status
+ * ({@link #STATUS_OK} or {@link #STATUS_ERROR}), then the payload; an error
+ * payload is a message string. Strings are a short byte count followed by
+ * UTF-8 bytes. Days are {@link LocalDate#toEpochDay()} as an int and times are
+ * minutes after midnight as a short.
+ * <p>
+ * Professionals and resources are referred to by int handles obtained once by
+ * name, so probes carry no strings:
+ * <ul>
+ * <li>{@link #RESOLVE_PROFESSIONAL}: name &rarr; handle</li>
+ * <li>{@link #RESOLVE_RESOURCE}: name &rarr; handle</li>
+ * <li>{@link #IS_SLOT_AVAILABLE}: professional, day, start, end, resource or -1
+ * &rarr; byte 1 if available</li>
+ * <li>{@link #BOOK_APPOINTMENT}: short count, that many professionals, day,
+ * start, end, treatment, patient, resource or -1 &rarr; byte 1 if booked</li>
+ * <li>{@link #FIND_AVAILABLE_SLOTS}: short count, professionals, short count,
+ * resources, first day, last day, short duration &rarr; int count, then day,
+ * start and end of each slot</li>
+ * </ul>
+ */
+public class BinaryProtocolServer {
+	public static final byte RESOLVE_PROFESSIONAL = 1;
+	public static final byte RESOLVE_RESOURCE = 2;
+	public static final byte IS_SLOT_AVAILABLE = 3;
+	public static final byte BOOK_APPOINTMENT = 4;
+	public static final byte FIND_AVAILABLE_SLOTS = 5;
+
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_ERROR = 1;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 256;
+	// Stop reading from a connection whose client isn't draining its responses
+	private static final int MAX_PENDING_BUFFERS = 16;
+	private static final int RESPONSE_HEADER = 5;
+	static final int SEARCH_CHUNK_DAYS = 7;
+
+	private final Scheduler scheduler;
+	private final int requestedPort;
+	private final DirectBufferPool pool = new DirectBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+	private final List<HealthProfessional> professionals = new ArrayList<>();
+	private final Map<HealthProfessional, Integer> professionalHandles = new HashMap<>();
+	private final List<Resource> resources = new ArrayList<>();
+	private final Map<Resource, Integer> resourceHandles = new HashMap<>();
+	// Held for every scheduler call, by the selector thread and the search thread
+	private final ReentrantLock lock = new ReentrantLock();
+	// Work handed back to the selector thread by the search thread
+	private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+	private ExecutorService searches;
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private Thread thread;
+	private volatile boolean running;
+
+	/**
+	 * Constructs a server for a scheduler.
+	 *
+	 * @param scheduler the scheduler to serve
+	 * @param port      the port to listen on, or 0 for any free port
+	 */
+	public BinaryProtocolServer(Scheduler scheduler, int port) {
+		this.scheduler = scheduler;
+		this.requestedPort = port;
+	}
+
+	/**
+	 * Starts listening on a new selector thread.
+	 *
+	 * @throws IOException if the port can't be bound
+	 */
+	public void start() throws IOException {
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(requestedPort), 1024);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		searches = Executors.newSingleThreadExecutor(task -> {
+			Thread search = new Thread(task, "scheduler-binary-search");
+			search.setDaemon(true);
+			return search;
+		});
+		running = true;
+		thread = new Thread(this::run, "scheduler-binary-server");
+		thread.start();
+	}
+
+	/**
+	 * Stops the server and closes every connection.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the selector
+	 *                              thread to finish
+	 */
+	public void stop() throws InterruptedException {
+		running = false;
+		selector.wakeup();
+		thread.join();
+		searches.shutdownNow();
+	}
+
+	/**
+	 * Gets the port the server is listening on.
+	 *
+	 * @return the bound port
+	 * @throws IOException if the address can't be read
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+
+	private void run() {
+		try {
+			while (running) {
+				selector.select();
+				for (Runnable completion = completions.poll(); completion != null; completion = completions
+						.poll()) {
+					completion.run();
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							Connection connection = (Connection) key.attachment();
+							if (key.isReadable()) {
+								connection.read();
+							}
+							if (key.isValid() && key.isWritable()) {
+								connection.flush();
+							}
+						}
+					} catch (IOException e) {
+						if (key.attachment() != null) {
+							((Connection) key.attachment()).close();
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Binary protocol server stopped: " + e.getMessage());
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() != null) {
+					((Connection) key.attachment()).close();
+				}
+			}
+			try {
+				serverChannel.close();
+				selector.close();
+			} catch (IOException e) {
+				// Already shutting down
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Connection connection = new Connection(channel);
+		connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+	}
+
+	/**
+	 * One client connection: a pooled read buffer plus a queue of pooled
+	 * response buffers, each kept in fill mode between operations.
+	 */
+	private final class Connection {
+		private final SocketChannel channel;
+		private final ByteBuffer in;
+		private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+		private SelectionKey key;
+		// Waiting for a search on the search thread; no more requests are read
+		private boolean searching;
+		private boolean closed;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+			this.in = pool.acquire();
+		}
+
+		void read() throws IOException {
+			if (channel.read(in) < 0) {
+				close();
+				return;
+			}
+			process();
+		}
+
+		/**
+		 * Answers the complete frames read so far, stopping at a search handed
+		 * to the search thread.
+		 */
+		void process() throws IOException {
+			in.flip();
+			while (!searching && in.remaining() >= 4) {
+				int length = in.getInt(in.position());
+				if (length < 5 || length > in.capacity() - 4) {
+					throw new IOException("Bad frame length " + length);
+				}
+				if (in.remaining() < 4 + length) {
+					break;
+				}
+				int frameEnd = in.position() + 4 + length;
+				int limit = in.limit();
+				in.position(in.position() + 4);
+				in.limit(frameEnd);
+				byte opcode = in.get();
+				int requestId = in.getInt();
+				lock.lock();
+				try {
+					dispatch(opcode, requestId, in, this);
+				} catch (RuntimeException e) {
+					error(requestId, message(e));
+				} finally {
+					lock.unlock();
+				}
+				in.limit(limit);
+				in.position(frameEnd);
+			}
+			in.compact();
+			flush();
+		}
+
+		void flush() throws IOException {
+			while (!out.isEmpty()) {
+				ByteBuffer head = out.peek();
+				head.flip();
+				channel.write(head);
+				if (head.hasRemaining()) {
+					head.compact();
+					break;
+				}
+				pool.release(out.poll());
+			}
+			int read = searching ? 0 : SelectionKey.OP_READ;
+			int ops = out.isEmpty() ? read
+					: out.size() > MAX_PENDING_BUFFERS ? SelectionKey.OP_WRITE : read | SelectionKey.OP_WRITE;
+			if (key.isValid() && key.interestOps() != ops) {
+				key.interestOps(ops);
+			}
+		}
+
+		/**
+		 * Answers a search finished on the search thread and carries on with
+		 * the requests read meanwhile. Runs on the selector thread.
+		 */
+		void searched(int requestId, List<TimeSlot> slots, RuntimeException failure) {
+			if (closed) {
+				return;
+			}
+			searching = false;
+			if (failure != null) {
+				error(requestId, message(failure));
+			} else {
+				slots(requestId, slots);
+			}
+			try {
+				process();
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		void close() {
+			closed = true;
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Nothing more to do for this client
+			}
+			pool.release(in);
+			for (ByteBuffer buffer : out) {
+				pool.release(buffer);
+			}
+			out.clear();
+		}
+
+		void begin(int requestId, byte status, int payloadLength) {
+			putInt(RESPONSE_HEADER + payloadLength);
+			putInt(requestId);
+			putByte(status);
+		}
+
+		void slots(int requestId, List<TimeSlot> slots) {
+			begin(requestId, STATUS_OK, 4 + slots.size() * 8);
+			putInt(slots.size());
+			for (TimeSlot slot : slots) {
+				putInt((int) slot.getDate().toEpochDay());
+				putShort(slot.getStartTime().toSecondOfDay() / 60);
+				putShort(slot.getEndTime().toSecondOfDay() / 60);
+			}
+		}
+
+		void error(int requestId, String message) {
+			byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+			int length = Math.min(bytes.length, Short.MAX_VALUE);
+			begin(requestId, STATUS_ERROR, 2 + length);
+			putShort(length);
+			for (int i = 0; i < length; i++) {
+				putByte(bytes[i]);
+			}
+		}
+
+		private ByteBuffer room(int bytes) {
+			ByteBuffer tail = out.peekLast();
+			if (tail == null || tail.remaining() < bytes) {
+				tail = pool.acquire();
+				out.add(tail);
+			}
+			return tail;
+		}
+
+		void putByte(int value) {
+			room(1).put((byte) value);
+		}
+
+		void putShort(int value) {
+			room(2).putShort((short) value);
+		}
+
+		void putInt(int value) {
+			room(4).putInt(value);
+		}
+	}
+
+	private void dispatch(byte opcode, int requestId, ByteBuffer in, Connection connection) {
+		switch (opcode) {
+		case RESOLVE_PROFESSIONAL:
+			resolveProfessional(requestId, readString(in), connection);
+			break;
+		case RESOLVE_RESOURCE:
+			resolveResource(requestId, readString(in), connection);
+			break;
+		case IS_SLOT_AVAILABLE:
+			isSlotAvailable(requestId, in, connection);
+			break;
+		case BOOK_APPOINTMENT:
+			bookAppointment(requestId, in, connection);
+			break;
+		case FIND_AVAILABLE_SLOTS:
+			findAvailableSlots(requestId, in, connection);
+			break;
+		default:
+			connection.error(requestId, "Unknown opcode " + opcode);
+		}
+	}
+
+	private void resolveProfessional(int requestId, String name, Connection connection) {
+		for (HealthProfessional hp : scheduler.getAllHealthProfessionals()) {
+			if (hp.getName().equals(name)) {
+				Integer handle = professionalHandles.get(hp);
+				if (handle == null) {
+					handle = professionals.size();
+					professionals.add(hp);
+					professionalHandles.put(hp, handle);
+				}
+				connection.begin(requestId, STATUS_OK, 4);
+				connection.putInt(handle);
+				return;
+			}
+		}
+		connection.error(requestId, "Unknown professional: " + name);
+	}
+
+	private void resolveResource(int requestId, String name, Connection connection) {
+		for (Resource res : scheduler.getAllSharedResources()) {
+			if (res.getName().equals(name)) {
+				Integer handle = resourceHandles.get(res);
+				if (handle == null) {
+					handle = resources.size();
+					resources.add(res);
+					resourceHandles.put(res, handle);
+				}
+				connection.begin(requestId, STATUS_OK, 4);
+				connection.putInt(handle);
+				return;
+			}
+		}
+		connection.error(requestId, "Unknown resource: " + name);
+	}
+
+	private void isSlotAvailable(int requestId, ByteBuffer in, Connection connection) {
+		Diary diary = diary(in.getInt());
+		LocalDate date = LocalDate.ofEpochDay(in.getInt());
+		int start = in.getShort();
+		int end = in.getShort();
+		Resource resource = resource(in.getInt());
+		boolean available = diary.isSlotAvailable(date, start, end, resource);
+		connection.begin(requestId, STATUS_OK, 1);
+		connection.putByte(available ? 1 : 0);
+	}
+
+	private void bookAppointment(int requestId, ByteBuffer in, Connection connection) {
+		List<HealthProfessional> attendees = professionals(in);
+		LocalDate date = LocalDate.ofEpochDay(in.getInt());
+		LocalTime start = minuteOfDay(in.getShort());
+		LocalTime end = minuteOfDay(in.getShort());
+		String treatment = readString(in);
+		String patient = readString(in);
+		Resource resource = resource(in.getInt());
+		if (!end.isAfter(start)) {
+			throw new IllegalArgumentException("End time must be after start time");
+		}
+		boolean booked = scheduler.bookAppointment(attendees,
+				new Appointment(date, start, end, treatment, patient, false, resource));
+		connection.begin(requestId, STATUS_OK, 1);
+		connection.putByte(booked ? 1 : 0);
+	}
+
+	private void findAvailableSlots(int requestId, ByteBuffer in, Connection connection) {
+		List<HealthProfessional> attendees = professionals(in);
+		int resourceCount = in.getShort();
+		List<Resource> required = new ArrayList<>(resourceCount);
+		for (int i = 0; i < resourceCount; i++) {
+			required.add(resource(in.getInt()));
+		}
+		LocalDate from = LocalDate.ofEpochDay(in.getInt());
+		LocalDate to = LocalDate.ofEpochDay(in.getInt());
+		int duration = in.getShort();
+		if (!to.isAfter(from.plusDays(SEARCH_CHUNK_DAYS - 1))) {
+			connection.slots(requestId, scheduler.findAvailableSlots(attendees, required, from, to, duration));
+			return;
+		}
+		connection.searching = true;
+		searches.execute(() -> {
+			List<TimeSlot> slots = null;
+			RuntimeException failure = null;
+			try {
+				slots = searchInChunks(attendees, required, from, to, duration);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			List<TimeSlot> found = slots;
+			RuntimeException failed = failure;
+			completions.add(() -> connection.searched(requestId, found, failed));
+			selector.wakeup();
+		});
+	}
+
+	/**
+	 * Searches a long range a chunk of days at a time, taking the lock for
+	 * each chunk only. Runs on the search thread.
+	 */
+	private List<TimeSlot> searchInChunks(List<HealthProfessional> attendees, List<Resource> required,
+			LocalDate from, LocalDate to, int duration) {
+		List<TimeSlot> slots = new ArrayList<>();
+		for (LocalDate first = from; !first.isAfter(to); first = first.plusDays(SEARCH_CHUNK_DAYS)) {
+			LocalDate last = first.plusDays(SEARCH_CHUNK_DAYS - 1);
+			lock.lock();
+			try {
+				slots.addAll(scheduler.findAvailableSlots(attendees, required, first, last.isAfter(to) ? to : last,
+						duration));
+			} finally {
+				lock.unlock();
+			}
+		}
+		return slots;
+	}
+
+	private List<HealthProfessional> professionals(ByteBuffer in) {
+		int count = in.getShort();
+		List<HealthProfessional> attendees = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			attendees.add(professional(in.getInt()));
+		}
+		return attendees;
+	}
+
+	private HealthProfessional professional(int handle) {
+		if (handle < 0 || handle >= professionals.size()) {
+			throw new IllegalArgumentException("Unknown professional handle " + handle);
+		}
+		return professionals.get(handle);
+	}
+
+	private Diary diary(int handle) {
+		Diary diary = scheduler.getDiary(professional(handle));
+		if (diary == null) {
+			throw new IllegalArgumentException("Professional " + handle + " has been removed");
+		}
+		return diary;
+	}
+
+	private Resource resource(int handle) {
+		if (handle == -1) {
+			return null;
+		}
+		if (handle < 0 || handle >= resources.size()) {
+			throw new IllegalArgumentException("Unknown resource handle " + handle);
+		}
+		return resources.get(handle);
+	}
+
+	private static String message(RuntimeException e) {
+		return e.getMessage() == null ? e.toString() : e.getMessage();
+	}
+
+	private static LocalTime minuteOfDay(int minute) {
+		return LocalTime.of(minute / 60, minute % 60);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,43 @@
+package project;
+
+/**
+ * An appointment together with the professional whose diary it is in.
+ */
+public class Booking {
+	private HealthProfessional professional;
+	private Appointment appointment;
+
+	/**
+	 * Constructs a new Booking.
+	 * 
+	 * @param professional the professional the appointment is booked with
+	 * @param appointment  the appointment
+	 */
+	public Booking(HealthProfessional professional, Appointment appointment) {
+		this.professional = professional;
+		this.appointment = appointment;
+	}
+
+	/**
+	 * Gets the professional.
+	 * 
+	 * @return the professional the appointment is booked with
+	 */
+	public HealthProfessional getProfessional() {
+		return professional;
+	}
+
+	/**
+	 * Gets the appointment.
+	 * 
+	 * @return the appointment
+	 */
+	public Appointment getAppointment() {
+		return appointment;
+	}
+
+	@Override
+	public String toString() {
+		return appointment + " with " + professional;
+	}
+}
@@ -0,0 +1,138 @@
+package project;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.function.Consumer;
+
+import javax.swing.JComponent;
+
+/**
+ * A month calendar painted as a heatmap: each day cell is shaded by a
+ * precomputed value for that day and labelled with it. The component is
+ * created once and repainted when the month or values change, rather than
+ * rebuilding one button per day.
+ */
+class CalendarHeatmap extends JComponent {
+	private static final long serialVersionUID = 1L;
+	private static final String[] DAY_NAMES = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
+	private static final int HEADER_HEIGHT = 24;
+	private static final Color EMPTY = new Color(245, 248, 252);
+	private static final Color FULL = new Color(70, 130, 180); // Steel Blue
+
+	private YearMonth month = YearMonth.now();
+	private int[] values = new int[month.lengthOfMonth()];
+	private int maxValue;
+	private String unit = "";
+
+	/**
+	 * Constructs an empty heatmap for the current month.
+	 *
+	 * @param onDayClicked called with the date of a clicked day
+	 */
+	CalendarHeatmap(Consumer<LocalDate> onDayClicked) {
+		setPreferredSize(new Dimension(700, 420));
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int day = dayAt(e.getX(), e.getY());
+				if (day > 0) {
+					onDayClicked.accept(month.atDay(day));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Shows a month.
+	 *
+	 * @param month    the month to show
+	 * @param values   one value per day of the month
+	 * @param maxValue the value shaded darkest, or 0 to use the month's largest
+	 * @param unit     a suffix for the cell labels, such as "%"
+	 */
+	void setMonth(YearMonth month, int[] values, int maxValue, String unit) {
+		this.month = month;
+		this.values = values;
+		this.unit = unit;
+		int max = maxValue;
+		if (max <= 0) {
+			for (int value : values) {
+				max = Math.max(max, value);
+			}
+		}
+		this.maxValue = max;
+		repaint();
+	}
+
+	private int offset() {
+		return month.atDay(1).getDayOfWeek().getValue() % 7; // Sunday = 0
+	}
+
+	private int rows() {
+		return (offset() + month.lengthOfMonth() + 6) / 7;
+	}
+
+	private int dayAt(int x, int y) {
+		if (y < HEADER_HEIGHT) {
+			return 0;
+		}
+		int col = x * 7 / Math.max(1, getWidth());
+		int row = (y - HEADER_HEIGHT) * rows() / Math.max(1, getHeight() - HEADER_HEIGHT);
+		int day = row * 7 + col - offset() + 1;
+		return day >= 1 && day <= month.lengthOfMonth() ? day : 0;
+	}
+
+	@Override
+	protected void paintComponent(Graphics graphics) {
+		Graphics2D g = (Graphics2D) graphics;
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		int width = getWidth();
+		int height = getHeight() - HEADER_HEIGHT;
+		int rows = rows();
+
+		g.setFont(new Font("SansSerif", Font.BOLD, 14));
+		FontMetrics metrics = g.getFontMetrics();
+		g.setColor(Color.DARK_GRAY);
+		for (int col = 0; col < 7; col++) {
+			int x = col * width / 7;
+			int cellWidth = (col + 1) * width / 7 - x;
+			g.drawString(DAY_NAMES[col], x + (cellWidth - metrics.stringWidth(DAY_NAMES[col])) / 2,
+					HEADER_HEIGHT - 6);
+		}
+
+		g.setFont(new Font("SansSerif", Font.PLAIN, 12));
+		int offset = offset();
+		for (int day = 1; day <= month.lengthOfMonth(); day++) {
+			int cell = offset + day - 1;
+			int x = (cell % 7) * width / 7;
+			int y = HEADER_HEIGHT + (cell / 7) * height / rows;
+			int cellWidth = (cell % 7 + 1) * width / 7 - x;
+			int cellHeight = HEADER_HEIGHT + (cell / 7 + 1) * height / rows - y;
+			int value = day <= values.length ? values[day - 1] : 0;
+			double level = maxValue == 0 ? 0 : Math.min(1.0, (double) value / maxValue);
+
+			g.setColor(blend(level));
+			g.fillRect(x + 2, y + 2, cellWidth - 4, cellHeight - 4);
+			g.setColor(level > 0.5 ? Color.WHITE : Color.DARK_GRAY);
+			g.drawString(String.valueOf(day), x + 6, y + 16);
+			if (value > 0) {
+				g.drawString(value + unit, x + 6, y + cellHeight - 8);
+			}
+		}
+	}
+
+	private static Color blend(double level) {
+		return new Color((int) (EMPTY.getRed() + (FULL.getRed() - EMPTY.getRed()) * level),
+				(int) (EMPTY.getGreen() + (FULL.getGreen() - EMPTY.getGreen()) * level),
+				(int) (EMPTY.getBlue() + (FULL.getBlue() - EMPTY.getBlue()) * level));
+	}
+}
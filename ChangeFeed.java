@@ -0,0 +1,188 @@
+package project;
+
+import java.util.List;
+import java.util.concurrent.Flow;
+
+/**
+ * Publishes the changes made to a scheduler as {@link SchedulerEvent}s, for
+ * downstream systems such as reminders, theatre boards and analytics.
+ * <p>
+ * Events are read from the scheduler's change log, the same one shipped to
+ * replicas, so booking only ever appends a record and never waits for a
+ * subscriber. Each subscriber has its own thread that takes events from the
+ * log in batches of up to {@link #BATCH}, as many as it has requested. The log
+ * keeps a bounded number of recent changes; a subscriber that falls further
+ * behind than that is sent {@code onError} when it next asks for events, and
+ * may subscribe again from the oldest change still kept, found with
+ * {@link #getFirstRetainedSequence()}. On a replica, a snapshot from the
+ * primary starts the log afresh in the same way.
+ * <p>
+ * Subscribers may replay from any retained sequence number with
+ * {@link #subscribe(Flow.Subscriber, long)}, for example after a restart,
+ * passing the sequence number of the last event they handled.
+ * <p>
+ * The changes an undo made are published like any others, flagged by
+ * {@link SchedulerEvent#isUndo()}, so that a subscriber acting on new bookings
+ * can skip the ones an undo restored.
+ */
+public class ChangeFeed implements Flow.Publisher<SchedulerEvent> {
+	static final int BATCH = 256;
+	// How long a delivery thread waits for a change before checking for cancellation
+	private static final long POLL_MILLIS = 1000;
+
+	private final ReplicationLog log;
+
+	/**
+	 * Constructs a feed over a scheduler's change log.
+	 *
+	 * @param log the log
+	 */
+	ChangeFeed(ReplicationLog log) {
+		this.log = log;
+	}
+
+	/**
+	 * Subscribes to changes made from now on.
+	 *
+	 * @param subscriber the subscriber
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super SchedulerEvent> subscriber) {
+		subscribe(subscriber, log.lastSeq());
+	}
+
+	/**
+	 * Subscribes to the changes after a sequence number, replaying those
+	 * already made.
+	 *
+	 * @param subscriber    the subscriber
+	 * @param afterSequence the sequence number of the last event the subscriber
+	 *                      has, or 0 for every change still kept
+	 */
+	public void subscribe(Flow.Subscriber<? super SchedulerEvent> subscriber, long afterSequence) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		long after = afterSequence == 0 ? log.firstSeq() - 1 : afterSequence;
+		Delivery delivery = new Delivery(subscriber, after);
+		Thread.ofPlatform().daemon().name("change-feed").start(delivery);
+	}
+
+	/**
+	 * Gets the sequence number of the latest change.
+	 *
+	 * @return the sequence number, or 0 if none
+	 */
+	public long getLastSequence() {
+		return log.lastSeq();
+	}
+
+	/**
+	 * Gets the sequence number of the oldest change that can still be
+	 * replayed.
+	 *
+	 * @return the sequence number
+	 */
+	public long getFirstRetainedSequence() {
+		return log.firstSeq();
+	}
+
+	/**
+	 * One subscription, delivering on its own thread.
+	 */
+	private final class Delivery implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super SchedulerEvent> subscriber;
+		private long position;
+		// Guarded by this
+		private long demand;
+		private boolean cancelled;
+		private IllegalArgumentException invalidRequest;
+		private Thread thread;
+		// True while the thread is blocked reading the log, the only time cancel interrupts it
+		private boolean reading;
+
+		Delivery(Flow.Subscriber<? super SchedulerEvent> subscriber, long position) {
+			this.subscriber = subscriber;
+			this.position = position;
+		}
+
+		@Override
+		public synchronized void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("Requested " + n + " events; must be positive");
+				cancelled = true;
+			} else {
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			}
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+			notifyAll();
+			// Never interrupt the subscriber's own code in onNext
+			if (reading && thread != Thread.currentThread()) {
+				thread.interrupt();
+			}
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				thread = Thread.currentThread();
+			}
+			try {
+				subscriber.onSubscribe(this);
+				while (true) {
+					int wanted;
+					synchronized (this) {
+						while (demand == 0 && !cancelled) {
+							wait();
+						}
+						if (cancelled) {
+							if (invalidRequest != null) {
+								subscriber.onError(invalidRequest);
+							}
+							return;
+						}
+						wanted = (int) Math.min(demand, BATCH);
+						reading = true;
+					}
+					List<ReplicationLog.Entry> batch;
+					try {
+						batch = log.readAfter(position, wanted, POLL_MILLIS);
+					} finally {
+						synchronized (this) {
+							reading = false;
+							// Clear an interrupt from a cancel that raced the end of the read
+							Thread.interrupted();
+						}
+					}
+					if (batch == null) {
+						subscriber.onError(new IllegalStateException("Changes after " + position
+								+ " are no longer kept; the oldest kept is " + log.firstSeq()));
+						return;
+					}
+					for (ReplicationLog.Entry entry : batch) {
+						synchronized (this) {
+							if (cancelled) {
+								break;
+							}
+							demand--;
+						}
+						subscriber.onNext(ReplicationLog.event(entry));
+						position = entry.seq;
+					}
+				}
+			} catch (InterruptedException e) {
+				// Cancelled while reading the log
+			} catch (RuntimeException e) {
+				// A subscriber that throws is treated as having cancelled
+				synchronized (this) {
+					cancelled = true;
+				}
+			}
+		}
+	}
+}
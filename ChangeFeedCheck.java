@@ -0,0 +1,197 @@
+package project;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks a scheduler's {@link ChangeFeed}: subscribers replaying from a
+ * sequence number get every change after it in order, live subscribers get
+ * changes as they are made and no more than they request, the changes an undo
+ * made are flagged, cancelling never interrupts a subscriber's own code, and
+ * a subscriber asking for changes no longer kept is told so. The feed is
+ * in-process, so everything runs in this JVM.
+ */
+public class ChangeFeedCheck {
+	private static final long WAIT_MILLIS = 5_000;
+
+	private ChangeFeedCheck() {
+	}
+
+	/**
+	 * Runs the checks. Takes no arguments.
+	 *
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		Checks checks = new Checks("Change feed");
+		checks.run(() -> run(checks));
+	}
+
+	private static void run(Checks checks) throws InterruptedException {
+		Scheduler scheduler = new Scheduler();
+		ChangeFeed feed = scheduler.getChangeFeed();
+		HealthProfessional surgeon = new HealthProfessional("Check Surgeon", "Surgeon", "Main Hospital");
+		scheduler.addHealthProfessional(surgeon);
+		LocalDate day = LocalDate.now().plusYears(1);
+		for (int i = 0; i < 300; i++) {
+			book(scheduler, surgeon, day.plusDays(i / 8), i % 8, "Patient " + i);
+		}
+		long last = feed.getLastSequence();
+
+		// Replay
+		Collector all = new Collector(Long.MAX_VALUE);
+		feed.subscribe(all, 0);
+		checks.await("replaying from the start gets every change", WAIT_MILLIS, () -> all.size() == last);
+		checks.check("in order, numbered from 1", all.inOrderFrom(1));
+		Collector tail = new Collector(Long.MAX_VALUE);
+		feed.subscribe(tail, 100);
+		checks.await("replaying from 100 gets the changes after it", WAIT_MILLIS, () -> tail.size() == last - 100);
+		checks.check("the same changes as the full replay", tail.inOrderFrom(101)
+				&& tail.events().toString().equals(all.events().subList(100, (int) last).toString()));
+
+		// Live changes and demand
+		Collector live = new Collector(Long.MAX_VALUE);
+		Collector three = new Collector(3);
+		feed.subscribe(live);
+		feed.subscribe(three);
+		Checks.pause(200);
+		for (int i = 0; i < 5; i++) {
+			book(scheduler, surgeon, day.plusYears(1), i, "Live " + i);
+		}
+		checks.await("a live subscriber gets the new changes only", WAIT_MILLIS,
+				() -> live.size() == 5 && live.inOrderFrom(last + 1));
+		Checks.pause(300);
+		checks.check("a subscriber gets no more than it requested", three.size() == 3);
+
+		// Undo
+		live.clear();
+		scheduler.cancelAppointmentsForPatient("Live 0");
+		scheduler.undo();
+		checks.await("the cancellation and undo are published", WAIT_MILLIS, () -> live.size() == 3);
+		List<SchedulerEvent> events = live.events();
+		checks.check("the cancellation is not flagged as an undo",
+				events.get(0).getType() == SchedulerEvent.Type.ROLLED_BACK && !events.get(0).isUndo());
+		checks.check("the booking the undo restored is flagged",
+				events.get(1).getType() == SchedulerEvent.Type.BOOKED && events.get(1).isUndo());
+		checks.check("the undo ends with an UNDONE event", events.get(2).getType() == SchedulerEvent.Type.UNDONE);
+
+		// Cancelling from another thread while the subscriber is busy
+		CountDownLatch busy = new CountDownLatch(1);
+		boolean[] interrupted = new boolean[1];
+		Collector slow = new Collector(Long.MAX_VALUE) {
+			@Override
+			public void onNext(SchedulerEvent event) {
+				super.onNext(event);
+				busy.countDown();
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					interrupted[0] = true;
+				}
+			}
+		};
+		feed.subscribe(slow, last);
+		checks.check("the subscriber gets to work", busy.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+		slow.subscription.cancel();
+		Checks.pause(500);
+		int delivered = slow.size();
+		checks.check("cancelling doesn't interrupt the subscriber's own code", !interrupted[0]);
+		book(scheduler, surgeon, day.plusYears(2), 0, "After cancel");
+		Checks.pause(300);
+		checks.check("nothing is delivered after cancelling", slow.size() == delivered && delivered < 8);
+
+		// Falling behind the changes kept
+		ReplicationLog small = new ReplicationLog(100);
+		ChangeFeed smallFeed = new ChangeFeed(small);
+		for (int i = 0; i < 300; i++) {
+			small.resourceAdded(new Resource("Room " + i, "Room", "Main Hospital"));
+		}
+		Collector late = new Collector(Long.MAX_VALUE);
+		smallFeed.subscribe(late, 1);
+		checks.await("a subscriber asking for dropped changes is sent an error", WAIT_MILLIS,
+				() -> late.error instanceof IllegalStateException);
+		Collector kept = new Collector(Long.MAX_VALUE);
+		smallFeed.subscribe(kept, smallFeed.getFirstRetainedSequence() - 1);
+		checks.await("and can start again from the oldest change kept", WAIT_MILLIS, () -> kept.size() > 0
+				&& kept.inOrderFrom(smallFeed.getFirstRetainedSequence()) && kept.error == null);
+		Collector invalid = new Collector(0);
+		feed.subscribe(invalid);
+		checks.await("requesting no events is an error", WAIT_MILLIS,
+				() -> invalid.error instanceof IllegalArgumentException);
+	}
+
+	private static void book(Scheduler scheduler, HealthProfessional hp, LocalDate date, int hour, String patient) {
+		LocalTime start = LocalTime.of(9 + hour, 0);
+		scheduler.bookAppointment(List.of(hp),
+				new Appointment(date, start, start.plusMinutes(30), "Check", patient, false, null));
+	}
+
+	/**
+	 * Collects the events it is sent, requesting a fixed number up front.
+	 */
+	private static class Collector implements Flow.Subscriber<SchedulerEvent> {
+		private final long demand;
+		private final List<SchedulerEvent> events = new ArrayList<>();
+		volatile Flow.Subscription subscription;
+		volatile Throwable error;
+
+		Collector(long demand) {
+			this.demand = demand;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(demand);
+		}
+
+		@Override
+		public void onNext(SchedulerEvent event) {
+			synchronized (events) {
+				events.add(event);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+		int size() {
+			synchronized (events) {
+				return events.size();
+			}
+		}
+
+		List<SchedulerEvent> events() {
+			synchronized (events) {
+				return new ArrayList<>(events);
+			}
+		}
+
+		void clear() {
+			synchronized (events) {
+				events.clear();
+			}
+		}
+
+		boolean inOrderFrom(long first) {
+			List<SchedulerEvent> copy = events();
+			for (int i = 0; i < copy.size(); i++) {
+				if (copy.get(i).getSequence() != first + i) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
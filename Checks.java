@@ -0,0 +1,210 @@
+package project;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import project.SchedulerServer.Response;
+
+/**
+ * Shared by the runnable checks: reports each check as it runs, counts those
+ * that fail, and calls the HTTP API of a {@link SchedulerServer} or
+ * {@link ShardRouter}. A check run ends with {@link #finish()}, which exits
+ * with status 1 if anything failed; {@link #run(Body)} finishes even if the
+ * checks throw.
+ */
+final class Checks {
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+	private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+	private final String name;
+	private int passed;
+	private int failed;
+
+	/**
+	 * Starts a check run.
+	 *
+	 * @param name what is being checked, for the summary
+	 */
+	Checks(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Reports a check.
+	 *
+	 * @param what      what was checked
+	 * @param condition whether it held
+	 * @return the condition
+	 */
+	boolean check(String what, boolean condition) {
+		System.out.println((condition ? "ok      " : "FAILED  ") + what);
+		if (condition) {
+			passed++;
+		} else {
+			failed++;
+		}
+		return condition;
+	}
+
+	/**
+	 * Reports a check of a response's status, showing the body if it is not
+	 * the one expected.
+	 *
+	 * @param what     what was checked
+	 * @param status   the status expected
+	 * @param response the response
+	 * @return true if the status was the one expected
+	 */
+	boolean status(String what, int status, Response response) {
+		return check(what + (response.status == status ? "" : " (got " + response.status + " " + response.body + ")"),
+				response.status == status);
+	}
+
+	/**
+	 * Waits for a condition, checking it every 50 ms.
+	 *
+	 * @param what          what is awaited, reported as a check
+	 * @param timeoutMillis how long to wait
+	 * @param condition     the condition
+	 * @return true if it held in time
+	 */
+	boolean await(String what, long timeoutMillis, BooleanSupplier condition) {
+		long giveUp = System.currentTimeMillis() + timeoutMillis;
+		boolean held;
+		while (!(held = condition.getAsBoolean()) && System.currentTimeMillis() < giveUp) {
+			pause(50);
+		}
+		return check(what, held);
+	}
+
+	/**
+	 * Waits for a server to answer, for servers started in other JVMs.
+	 *
+	 * @param url the server's base URL
+	 * @throws IllegalStateException if it doesn't answer within 30 seconds
+	 */
+	void awaitServer(String url) {
+		long giveUp = System.currentTimeMillis() + 30_000;
+		while (true) {
+			try {
+				client.send(HttpRequest.newBuilder(URI.create(url + "/resources")).timeout(REQUEST_TIMEOUT).GET()
+						.build(), HttpResponse.BodyHandlers.discarding());
+				return;
+			} catch (IOException e) {
+				if (System.currentTimeMillis() > giveUp) {
+					throw new IllegalStateException("No server at " + url, e);
+				}
+				pause(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for " + url, e);
+			}
+		}
+	}
+
+	/**
+	 * Sends a GET.
+	 *
+	 * @param url the URL
+	 * @return the response
+	 * @throws IllegalStateException if the server can't be reached
+	 */
+	Response get(String url) {
+		return send(HttpRequest.newBuilder(URI.create(url)).GET());
+	}
+
+	/**
+	 * Sends a POST with a JSON body.
+	 *
+	 * @param url  the URL
+	 * @param body the body, as maps, lists, strings and numbers
+	 * @return the response
+	 * @throws IllegalStateException if the server can't be reached
+	 */
+	Response post(String url, Object body) {
+		return send(HttpRequest.newBuilder(URI.create(url)).header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(Json.write(new StringBuilder(), body).toString())));
+	}
+
+	/**
+	 * Sends a GET and parses the JSON array it answers.
+	 *
+	 * @param url the URL
+	 * @return the items, or an empty list if the answer wasn't a 200
+	 */
+	List<?> list(String url) {
+		Response response = get(url);
+		return response.status == 200 ? (List<?>) Json.parse(response.body) : List.of();
+	}
+
+	/**
+	 * Sends a GET and parses the JSON object it answers.
+	 *
+	 * @param url the URL
+	 * @return the object, or an empty map if the answer wasn't a 200
+	 */
+	Map<String, Object> object(String url) {
+		Response response = get(url);
+		return response.status == 200 ? Json.parseObject(response.body) : Map.of();
+	}
+
+	/**
+	 * Runs checks, counting an exception that stops them as a failure, then
+	 * finishes. Servers started in this JVM would otherwise keep it running
+	 * after the exception.
+	 *
+	 * @param body the checks
+	 */
+	void run(Body body) {
+		try {
+			body.run();
+		} catch (Exception e) {
+			check("checks ran to the end", false);
+			e.printStackTrace();
+		}
+		finish();
+	}
+
+	/**
+	 * Prints the summary and exits, with status 1 if any check failed.
+	 */
+	void finish() {
+		System.out.printf("%s: %d passed, %d failed%n", name, passed, failed);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	private Response send(HttpRequest.Builder request) {
+		try {
+			HttpResponse<String> response = client.send(request.timeout(REQUEST_TIMEOUT).build(),
+					HttpResponse.BodyHandlers.ofString());
+			return new Response(response.statusCode(), response.body());
+		} catch (IOException e) {
+			throw new IllegalStateException("Request failed: " + e, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted", e);
+		}
+	}
+
+	/**
+	 * Checks that may throw.
+	 */
+	interface Body {
+		void run() throws Exception;
+	}
+
+	static void pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,374 @@
+package project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A block-compressed scheduler snapshot. Each diary and the shared resource
+ * list is serialized and deflated into its own block, and a block index at the
+ * end of the file records where every block lives. Blocks are compressed and
+ * decompressed in parallel, and the index lets a single diary be read without
+ * inflating the rest of the file.
+ * <p>
+ * Layout: a header ({@code MAGIC}, version), the compressed blocks, the
+ * serialized index, then a trailer holding the index offset and {@code MAGIC}.
+ */
+public class CompressedSnapshot implements Closeable {
+	private static final int MAGIC = 0x48415A31; // "HAZ1"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int TRAILER_SIZE = 12;
+
+	private final FileChannel channel;
+	private final List<BlockEntry> blocks;
+	private final Map<HealthProfessional, BlockEntry> diaryBlocks;
+	private BlockEntry resourcesBlock;
+
+	private CompressedSnapshot(FileChannel channel, List<BlockEntry> blocks) {
+		this.channel = channel;
+		this.blocks = blocks;
+		this.diaryBlocks = new HashMap<>();
+		for (BlockEntry block : blocks) {
+			if (block.name == null) {
+				resourcesBlock = block;
+			} else {
+				diaryBlocks.put(block.professional(), block);
+			}
+		}
+	}
+
+	/**
+	 * Writes a compressed snapshot of the scheduler.
+	 *
+	 * @param scheduler the scheduler to save
+	 * @param filename  the file to write
+	 * @throws IOException if there's an error writing the file
+	 */
+	public static void write(Scheduler scheduler, String filename) throws IOException {
+		List<HealthProfessional> professionals = scheduler.getAllHealthProfessionals();
+		Path target = Paths.get(filename);
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		ExecutorService pool = newPool(professionals.size() + 1);
+
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			writeFully(out, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+
+			// Serialization reads the live diaries, so it happens here; only the
+			// compression is handed to the pool
+			ArrayList<BlockEntry> index = new ArrayList<>();
+			List<Future<byte[]>> pending = new ArrayList<>();
+			int window = 4 * Runtime.getRuntime().availableProcessors();
+			long offset = HEADER_SIZE;
+
+			ArrayList<FileManager.SerializableResource> resources = new ArrayList<>();
+			for (Resource res : scheduler.getAllSharedResources()) {
+				resources.add(new FileManager.SerializableResource(res));
+			}
+			index.add(new BlockEntry(null));
+			pending.add(pool.submit(compressTask(serialize(resources))));
+
+			for (HealthProfessional hp : professionals) {
+				index.add(new BlockEntry(hp));
+				byte[] raw = serialize(new FileManager.SerializableHealthProfessional(hp, scheduler.getDiary(hp)));
+				pending.add(pool.submit(compressTask(raw)));
+
+				// Bound the number of compressed blocks held in memory
+				if (pending.size() >= window) {
+					offset = drain(out, pending, index, offset);
+				}
+			}
+			offset = drain(out, pending, index, offset);
+
+			byte[] indexBytes = serialize(index);
+			writeFully(out, ByteBuffer.wrap(indexBytes));
+			writeFully(out, ByteBuffer.allocate(TRAILER_SIZE).putLong(offset).putInt(MAGIC).flip());
+		} finally {
+			pool.shutdownNow();
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Opens a compressed snapshot and reads its block index. Blocks are only
+	 * read when asked for.
+	 *
+	 * @param filename the file to open
+	 * @return the open snapshot, which must be closed
+	 * @throws IOException if the file is not a valid compressed snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public static CompressedSnapshot open(String filename) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < HEADER_SIZE + TRAILER_SIZE) {
+				throw new IOException("Not a compressed snapshot: " + filename);
+			}
+			ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+			ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+			long indexOffset = trailer.getLong();
+			if (header.getInt() != MAGIC || trailer.getInt() != MAGIC) {
+				throw new IOException("Not a compressed snapshot: " + filename);
+			}
+			if (header.getInt() != VERSION) {
+				throw new IOException("Unsupported compressed snapshot version in " + filename);
+			}
+			ByteBuffer indexBytes = readFully(channel, indexOffset, (int) (size - TRAILER_SIZE - indexOffset));
+			List<BlockEntry> blocks = (List<BlockEntry>) deserialize(indexBytes.array(), false);
+			return new CompressedSnapshot(channel, blocks);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the professionals stored in the snapshot without reading any diary.
+	 *
+	 * @return the professionals, in the order they were written
+	 */
+	public List<HealthProfessional> getHealthProfessionals() {
+		List<HealthProfessional> result = new ArrayList<>();
+		for (BlockEntry block : blocks) {
+			if (block.name != null) {
+				result.add(block.professional());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a single diary, inflating only its block.
+	 *
+	 * @param professional the owner of the diary
+	 * @return a new diary with the stored appointments and tasks, or null if the
+	 *         professional is not in the snapshot
+	 * @throws IOException if there's an error reading the block
+	 */
+	public Diary readDiary(HealthProfessional professional) throws IOException {
+		BlockEntry block = diaryBlocks.get(professional);
+		if (block == null) {
+			return null;
+		}
+		Diary diary = new Diary(professional);
+		FileManager.restoreDiaryContents(diary, (FileManager.SerializableHealthProfessional) readBlock(block));
+		diary.markClean();
+		return diary;
+	}
+
+	/**
+	 * Reads the shared resources stored in the snapshot.
+	 *
+	 * @return the shared resources
+	 * @throws IOException if there's an error reading the block
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Resource> readSharedResources() throws IOException {
+		List<Resource> result = new ArrayList<>();
+		if (resourcesBlock != null) {
+			for (FileManager.SerializableResource sr : (List<FileManager.SerializableResource>) readBlock(
+					resourcesBlock)) {
+				result.add(new Resource(sr.name, sr.type, sr.location));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the whole snapshot into a new scheduler, inflating blocks in
+	 * parallel.
+	 *
+	 * @return a new Scheduler with the stored data
+	 * @throws IOException if there's an error reading a block
+	 */
+	@SuppressWarnings("unchecked")
+	public Scheduler readAll() throws IOException {
+		ExecutorService pool = newPool(blocks.size());
+		try {
+			// Keep a bounded window of blocks inflating ahead of the restore
+			int window = 4 * Runtime.getRuntime().availableProcessors();
+			List<Future<Object>> pending = new ArrayList<>();
+			for (int i = 0; i < Math.min(window, blocks.size()); i++) {
+				pending.add(submitRead(pool, blocks.get(i)));
+			}
+
+			Scheduler scheduler = new Scheduler();
+			List<FileManager.SerializableResource> resources = new ArrayList<>();
+			scheduler.beginBulkLoad();
+			try {
+				for (int i = 0; i < blocks.size(); i++) {
+					Object contents = await(pending.get(i));
+					pending.set(i, null);
+					if (i + window < blocks.size()) {
+						pending.add(submitRead(pool, blocks.get(i + window)));
+					}
+					if (blocks.get(i).name != null) {
+						FileManager.restoreProfessional(scheduler, (FileManager.SerializableHealthProfessional) contents);
+					} else {
+						resources.addAll((List<FileManager.SerializableResource>) contents);
+					}
+				}
+				for (FileManager.SerializableResource sr : resources) {
+					scheduler.addSharedResource(new Resource(sr.name, sr.type, sr.location));
+				}
+			} finally {
+				scheduler.endBulkLoad();
+			}
+			return scheduler;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Closes the underlying file.
+	 *
+	 * @throws IOException if there's an error closing the file
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private Future<Object> submitRead(ExecutorService pool, BlockEntry block) {
+		return pool.submit(() -> readBlock(block));
+	}
+
+	private Object readBlock(BlockEntry block) throws IOException {
+		return deserialize(readFully(channel, block.offset, block.length).array(), true);
+	}
+
+	private static long drain(FileChannel out, List<Future<byte[]>> pending, List<BlockEntry> index, long offset)
+			throws IOException {
+		int first = index.size() - pending.size();
+		for (int i = 0; i < pending.size(); i++) {
+			byte[] compressed = await(pending.get(i));
+			BlockEntry block = index.get(first + i);
+			block.offset = offset;
+			block.length = compressed.length;
+			writeFully(out, ByteBuffer.wrap(compressed));
+			offset += compressed.length;
+		}
+		pending.clear();
+		return offset;
+	}
+
+	private static Callable<byte[]> compressTask(byte[] raw) {
+		return () -> {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+			try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater)) {
+				dos.write(raw);
+			} finally {
+				deflater.end();
+			}
+			return bos.toByteArray();
+		};
+	}
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(object);
+		}
+		return bos.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes, boolean compressed) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(compressed
+				? new InflaterInputStream(new ByteArrayInputStream(bytes))
+				: new ByteArrayInputStream(bytes))) {
+			return ois.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Invalid snapshot block", e);
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Truncated compressed snapshot");
+			}
+		}
+		return buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static <T> T await(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while processing snapshot blocks", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Error processing snapshot block", e.getCause());
+		}
+	}
+
+	private static ExecutorService newPool(int tasks) {
+		int threads = Math.max(1, Math.min(tasks, Runtime.getRuntime().availableProcessors()));
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "snapshot-codec");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// Location of one block; a null name marks the shared resources block
+	private static class BlockEntry implements Serializable {
+
+		private static final long serialVersionUID = 2418559713250361741L;
+		String name;
+		String profession;
+		String officeLocation;
+		long offset;
+		int length;
+
+		BlockEntry(HealthProfessional hp) {
+			if (hp != null) {
+				this.name = hp.getName();
+				this.profession = hp.getProfession();
+				this.officeLocation = hp.getOfficeLocation();
+			}
+		}
+
+		HealthProfessional professional() {
+			return new HealthProfessional(name, profession, officeLocation);
+		}
+	}
+}
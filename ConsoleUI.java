@@ -40,7 +40,8 @@ public class ConsoleUI {
 		boolean running = true;
 		while (running) {
 			displayMainMenu();
-			int choice = getIntInput(1, 14);
+			StartupTiming.promptShown("console menu");
+			int choice = getIntInput(1, 15);
 
 			switch (choice) {
 			case 1:
@@ -86,6 +87,9 @@ public class ConsoleUI {
 				running = false;
 				System.out.println("Exiting...");
 				break;
+			case 15:
+				showUtilisationReport();
+				break;
 			}
 		}
 	}
@@ -109,6 +113,7 @@ public class ConsoleUI {
 		System.out.println("12. Load Data");
 		System.out.println("13. Undo Last Operation");
 		System.out.println("14. Exit");
+		System.out.println("15. Utilisation Report");
 		System.out.print("Choose an option: ");
 	}
 
@@ -271,7 +276,7 @@ public class ConsoleUI {
 
 		HealthProfessional hp = selectSingleProfessional(hps);
 		Diary diary = scheduler.getDiary(hp);
-		List<Appointment> appointments = diary.getAllAppointments();
+		List<Appointment> appointments = diary.appointmentsBetween(LocalDate.MIN, LocalDate.MAX);
 
 		System.out.println("\nAppointments for " + hp.getName() + ":");
 		if (appointments.isEmpty()) {
@@ -401,6 +406,39 @@ public class ConsoleUI {
 		}
 	}
 
+	/**
+	 * Prints utilisation, idle time, peak hour and treatment mix over a date
+	 * range.
+	 */
+	private void showUtilisationReport() {
+		System.out.println("\n--- Utilisation Report ---");
+		LocalDate startDate = getDateInput("Start date (YYYY-MM-DD): ");
+		LocalDate endDate = getDateInput("End date (YYYY-MM-DD): ");
+		if (endDate.isBefore(startDate)) {
+			System.out.println("End date is before start date.");
+			return;
+		}
+		UtilisationReport report = scheduler.getUtilisationReport(startDate, endDate);
+
+		System.out.println("\n=== Professionals ===");
+		report.getProfessionals().forEach((hp, usage) -> System.out.println(hp.getName() + ": " + usage));
+		System.out.println("\n=== Resources ===");
+		report.getResources().forEach((resource, usage) -> System.out.println(resource.getName() + ": " + usage));
+
+		int peak = report.getPeakHour();
+		System.out.println("\nPeak hour: " + (peak < 0 ? "none" : String.format("%02d:00-%02d:00", peak, peak + 1)));
+		System.out.println("Treatment mix:");
+		report.getTreatmentMix().forEach((type, count) -> System.out.println("  " + type + ": " + count));
+		List<HealthProfessional> overbooked = report.getOverbookedProfessionals();
+		if (!overbooked.isEmpty()) {
+			System.out.println("Overbooked:");
+			for (HealthProfessional hp : overbooked) {
+				System.out.println("  " + hp.getName() + " (" + report.getProfessionals().get(hp).getOverbookedDays()
+						+ " days)");
+			}
+		}
+	}
+
 	/**
 	 * Displays a calendar view for a specific month and year.
 	 */
@@ -415,16 +453,18 @@ public class ConsoleUI {
 		LocalDate first = yearMonth.atDay(1);
 		int startOffset = first.getDayOfWeek().getValue() % 7; // Sunday = 0
 
+		int[] utilisation = scheduler.getDailyUtilisation(yearMonth);
+
 		// Print calendar header
 		System.out.println("\n   " + yearMonth.getMonth() + " " + year);
-		System.out.println("Su Mo Tu We Th Fr Sa");
+		System.out.println("Su      Mo      Tu      We      Th      Fr      Sa");
 
 		// Print leading spaces
 		for (int i = 0; i < startOffset; i++) {
-			System.out.print("   ");
+			System.out.print("        ");
 		}
 
-		// Print days
+		// Print days, each followed by its utilisation when anything is booked
 		for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
 			LocalDate date = LocalDate.of(year, month, day);
 			System.out.printf("%2d", day);
@@ -435,13 +475,15 @@ public class ConsoleUI {
 			} else {
 				System.out.print(" ");
 			}
+			int percent = utilisation[day - 1];
+			System.out.printf("%-5s", percent > 0 ? percent + "%" : "");
 
 			// New line at end of week
 			if ((day + startOffset) % 7 == 0) {
 				System.out.println();
 			}
 		}
-		System.out.println("\n* = Today");
+		System.out.println("\n* = Today, % = share of all professionals' working hours booked");
 
 		// Show appointments for a specific date
 		System.out.print("\nEnter a date to view appointments (YYYY-MM-DD) or 0 to return: ");
@@ -0,0 +1,551 @@
+package project;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams professionals, resources, appointments and tasks to and from CSV and
+ * newline-delimited JSON files for exchange with external systems. Records are
+ * processed one at a time through buffered file channels, so memory use does
+ * not grow with file size.
+ * <p>
+ * Every record starts with its kind ({@code professional}, {@code resource},
+ * {@code appointment}, {@code attendee} or {@code task}). In CSV the remaining
+ * fields follow in the fixed order of the field names below; in NDJSON each
+ * record is an object with a {@code record} member plus the named fields.
+ * <p>
+ * An appointment booked with several professionals is written once, under the
+ * first of them, followed by an {@code attendee} record for each of the others,
+ * and is imported as a single booking with all of them. Off-heap diaries don't
+ * keep shared appointments as one object, so there, as in files from other
+ * systems, identical appointments in several diaries count as one shared
+ * booking.
+ */
+public class DataExchange {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String PROFESSIONAL = "professional";
+	private static final String RESOURCE = "resource";
+	private static final String APPOINTMENT = "appointment";
+	private static final String TASK = "task";
+	private static final String ATTENDEE = "attendee";
+
+	private static final String[] PROFESSIONAL_FIELDS = { "name", "profession", "office" };
+	private static final String[] RESOURCE_FIELDS = { "name", "type", "location" };
+	private static final String[] APPOINTMENT_FIELDS = { "professional", "profession", "office", "date", "start",
+			"end", "treatment", "patient", "recurring", "resource", "resourceType", "resourceLocation" };
+	private static final int APPOINTMENT_REQUIRED = 9;
+	private static final String[] TASK_FIELDS = { "professional", "profession", "office", "description",
+			"priority" };
+	private static final String[] ATTENDEE_FIELDS = { "professional", "profession", "office" };
+
+	/**
+	 * Exports all scheduler data to a CSV file.
+	 *
+	 * @param scheduler the scheduler to export
+	 * @param filename  the file to write
+	 * @throws IOException if there's an error writing the file
+	 */
+	public static void exportCsv(Scheduler scheduler, String filename) throws IOException {
+		try (Writer out = openWriter(filename)) {
+			export(scheduler, new CsvSink(out));
+		}
+	}
+
+	/**
+	 * Exports all scheduler data to a newline-delimited JSON file.
+	 *
+	 * @param scheduler the scheduler to export
+	 * @param filename  the file to write
+	 * @throws IOException if there's an error writing the file
+	 */
+	public static void exportNdjson(Scheduler scheduler, String filename) throws IOException {
+		try (Writer out = openWriter(filename)) {
+			export(scheduler, new NdjsonSink(out));
+		}
+	}
+
+	/**
+	 * Imports records from a CSV file into a scheduler through its bulk load
+	 * path.
+	 *
+	 * @param scheduler the scheduler to import into
+	 * @param filename  the file to read
+	 * @return counts of imported and rejected records
+	 * @throws IOException if there's an error reading the file or a record is
+	 *                     malformed
+	 */
+	public static ImportResult importCsv(Scheduler scheduler, String filename) throws IOException {
+		try (BufferedReader in = openReader(filename)) {
+			return importRecords(scheduler, new CsvSource(in));
+		}
+	}
+
+	/**
+	 * Imports records from a newline-delimited JSON file into a scheduler through
+	 * its bulk load path.
+	 *
+	 * @param scheduler the scheduler to import into
+	 * @param filename  the file to read
+	 * @return counts of imported and rejected records
+	 * @throws IOException if there's an error reading the file or a record is
+	 *                     malformed
+	 */
+	public static ImportResult importNdjson(Scheduler scheduler, String filename) throws IOException {
+		try (BufferedReader in = openReader(filename)) {
+			return importRecords(scheduler, new NdjsonSource(in));
+		}
+	}
+
+	/**
+	 * Counts of records processed by an import. An appointment and the attendee
+	 * records after it count as one.
+	 */
+	public static class ImportResult {
+		private long imported;
+		private long rejected;
+
+		/**
+		 * Gets the number of records added to the scheduler.
+		 *
+		 * @return the imported record count
+		 */
+		public long getImported() {
+			return imported;
+		}
+
+		/**
+		 * Gets the number of records skipped because they duplicated existing
+		 * professionals or resources or conflicted with existing bookings.
+		 *
+		 * @return the rejected record count
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		@Override
+		public String toString() {
+			return imported + " imported, " + rejected + " rejected";
+		}
+	}
+
+	private static void export(Scheduler scheduler, RecordSink sink) throws IOException {
+		for (Resource res : scheduler.getAllSharedResources()) {
+			sink.write(RESOURCE, RESOURCE_FIELDS, new String[] { res.getName(), res.getType(), res.getLocation() });
+		}
+
+		// Professionals come first so attendee records only name known ones
+		List<HealthProfessional> professionals = scheduler.getAllHealthProfessionals();
+		for (HealthProfessional hp : professionals) {
+			sink.write(PROFESSIONAL, PROFESSIONAL_FIELDS, owner(hp));
+		}
+
+		// Each booking's attendees, one entry per diary holding it, so an
+		// appointment is written only once
+		Map<List<String>, List<HealthProfessional>> attendees = new HashMap<>();
+		for (HealthProfessional hp : professionals) {
+			for (Appointment appt : scheduler.getDiary(hp).getAllAppointments()) {
+				attendees.computeIfAbsent(Arrays.asList(appointmentValues(appt)), k -> new ArrayList<>()).add(hp);
+			}
+		}
+
+		for (HealthProfessional hp : professionals) {
+			String[] owner = owner(hp);
+			Diary diary = scheduler.getDiary(hp);
+			for (Appointment appt : diary.getAllAppointments()) {
+				String[] details = appointmentValues(appt);
+				List<HealthProfessional> others = attendees.get(Arrays.asList(details));
+				if (!others.remove(hp)) {
+					// Already written as another professional's appointment
+					continue;
+				}
+				String[] values = Arrays.copyOf(owner, APPOINTMENT_FIELDS.length);
+				System.arraycopy(details, 0, values, owner.length, details.length);
+				sink.write(APPOINTMENT, APPOINTMENT_FIELDS, values);
+				for (HealthProfessional other : new LinkedHashSet<>(others)) {
+					if (!other.equals(hp)) {
+						others.remove(other);
+						sink.write(ATTENDEE, ATTENDEE_FIELDS, owner(other));
+					}
+				}
+			}
+			for (Task task : diary.getAllTasks()) {
+				sink.write(TASK, TASK_FIELDS,
+						new String[] { owner[0], owner[1], owner[2], task.getDescription(), task.getPriority() });
+			}
+		}
+	}
+
+	private static String[] owner(HealthProfessional hp) {
+		return new String[] { hp.getName(), hp.getProfession(), hp.getOfficeLocation() };
+	}
+
+	/**
+	 * Gets an appointment's fields after the professional's.
+	 */
+	private static String[] appointmentValues(Appointment appt) {
+		Resource res = appt.getResource();
+		return new String[] { appt.getDate().toString(), appt.getStartTime().toString(),
+				appt.getEndTime().toString(), appt.getTreatmentType(), appt.getPatientName(),
+				String.valueOf(appt.isRecurring()), res == null ? null : res.getName(),
+				res == null ? null : res.getType(), res == null ? null : res.getLocation() };
+	}
+
+	private static ImportResult importRecords(Scheduler scheduler, RecordSource source) throws IOException {
+		ImportResult result = new ImportResult();
+		Set<Resource> knownResources = new HashSet<>(scheduler.getAllSharedResources());
+
+		// An appointment is booked once the attendee records after it are read
+		Appointment pending = null;
+		List<HealthProfessional> attendees = new ArrayList<>();
+		scheduler.beginBulkLoad();
+		try {
+			String[] record;
+			while ((record = source.next()) != null) {
+				String kind = record[0];
+				String[] names = fieldsFor(kind, source.line());
+				String[] values = source.values(names);
+				int required = kind.equals(APPOINTMENT) ? APPOINTMENT_REQUIRED : names.length;
+				for (int i = 0; i < required; i++) {
+					if (values[i] == null) {
+						throw new IOException(
+								"Missing " + names[i] + " in " + kind + " record at line " + source.line());
+					}
+				}
+				if (kind.equals(ATTENDEE)) {
+					if (pending == null) {
+						throw new IOException("Attendee record without an appointment at line " + source.line());
+					}
+					attendees.add(professional(scheduler, values));
+					continue;
+				}
+				if (pending != null) {
+					count(result, scheduler.bookAppointment(attendees, pending));
+					pending = null;
+					attendees = new ArrayList<>();
+				}
+				try {
+					if (kind.equals(APPOINTMENT)) {
+						pending = appointment(values);
+						attendees.add(professional(scheduler, values));
+					} else {
+						count(result, applyRecord(scheduler, kind, values, knownResources));
+					}
+				} catch (DateTimeParseException e) {
+					throw new IOException("Malformed " + kind + " record at line " + source.line(), e);
+				}
+			}
+			if (pending != null) {
+				count(result, scheduler.bookAppointment(attendees, pending));
+			}
+		} finally {
+			scheduler.endBulkLoad();
+		}
+		return result;
+	}
+
+	private static void count(ImportResult result, boolean imported) {
+		if (imported) {
+			result.imported++;
+		} else {
+			result.rejected++;
+		}
+	}
+
+	private static Appointment appointment(String[] values) {
+		Resource booked = isBlank(values[9]) ? null : new Resource(values[9], values[10], values[11]);
+		return new Appointment(LocalDate.parse(values[3]), LocalTime.parse(values[4]), LocalTime.parse(values[5]),
+				values[6], values[7], Boolean.parseBoolean(values[8]), booked);
+	}
+
+	private static boolean applyRecord(Scheduler scheduler, String kind, String[] values,
+			Set<Resource> knownResources) {
+		switch (kind) {
+		case RESOURCE:
+			Resource resource = new Resource(values[0], values[1], values[2]);
+			if (knownResources.contains(resource)) {
+				return false;
+			}
+			scheduler.addSharedResource(resource);
+			knownResources.add(resource);
+			return true;
+		case PROFESSIONAL:
+			HealthProfessional hp = new HealthProfessional(values[0], values[1], values[2]);
+			if (scheduler.getDiary(hp) != null) {
+				return false;
+			}
+			scheduler.addHealthProfessional(hp);
+			return true;
+		default: // TASK
+			scheduler.getDiary(professional(scheduler, values)).addTask(new Task(values[3], values[4]));
+			return true;
+		}
+	}
+
+	/**
+	 * Resolves the professional a record belongs to, adding them if this is the
+	 * first record that mentions them.
+	 */
+	private static HealthProfessional professional(Scheduler scheduler, String[] values) {
+		HealthProfessional hp = new HealthProfessional(values[0], values[1], values[2]);
+		if (scheduler.getDiary(hp) == null) {
+			scheduler.addHealthProfessional(hp);
+		}
+		return hp;
+	}
+
+	private static String[] fieldsFor(String kind, long line) throws IOException {
+		switch (kind) {
+		case PROFESSIONAL:
+			return PROFESSIONAL_FIELDS;
+		case RESOURCE:
+			return RESOURCE_FIELDS;
+		case APPOINTMENT:
+			return APPOINTMENT_FIELDS;
+		case TASK:
+			return TASK_FIELDS;
+		case ATTENDEE:
+			return ATTENDEE_FIELDS;
+		default:
+			throw new IOException("Unknown record kind '" + kind + "' at line " + line);
+		}
+	}
+
+	private static boolean isBlank(String value) {
+		return value == null || value.isEmpty();
+	}
+
+	private static Writer openWriter(String filename) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	private static BufferedReader openReader(String filename) throws IOException {
+		Path path = Paths.get(filename);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		return new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	// Writes one record at a time in a specific format
+	private interface RecordSink {
+		void write(String kind, String[] names, String[] values) throws IOException;
+	}
+
+	// Reads one record at a time in a specific format
+	private interface RecordSource {
+		/** Advances to the next record and returns it with its kind first, or null at the end. */
+		String[] next() throws IOException;
+
+		/** Gets the current record's values in the order of the given field names. */
+		String[] values(String[] names) throws IOException;
+
+		/** Gets the line number the current record started on. */
+		long line();
+	}
+
+	private static class CsvSink implements RecordSink {
+		private final Writer out;
+
+		CsvSink(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(String kind, String[] names, String[] values) throws IOException {
+			out.write(kind);
+			for (String value : values) {
+				out.write(',');
+				if (value == null) {
+					continue;
+				}
+				if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+						|| value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+					out.write('"');
+					out.write(value.replace("\"", "\"\""));
+					out.write('"');
+				} else {
+					out.write(value);
+				}
+			}
+			out.write('\n');
+		}
+	}
+
+	private static class NdjsonSink implements RecordSink {
+		private final Writer out;
+		private final StringBuilder sb = new StringBuilder();
+
+		NdjsonSink(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(String kind, String[] names, String[] values) throws IOException {
+			sb.setLength(0);
+			sb.append("{\"record\":");
+			Json.quote(sb, kind);
+			for (int i = 0; i < names.length; i++) {
+				sb.append(',');
+				Json.quote(sb, names[i]).append(':');
+				Json.quote(sb, values[i]);
+			}
+			sb.append("}\n");
+			out.append(sb);
+		}
+	}
+
+	private static class CsvSource implements RecordSource {
+		private final BufferedReader in;
+		private final List<String> fields = new ArrayList<>();
+		private final StringBuilder field = new StringBuilder();
+		private long line = 1;
+		private long recordLine;
+
+		CsvSource(BufferedReader in) {
+			this.in = in;
+		}
+
+		@Override
+		public String[] next() throws IOException {
+			fields.clear();
+			int c;
+			// Skip blank lines between records
+			while ((c = in.read()) == '\n' || c == '\r') {
+				if (c == '\n') {
+					line++;
+				}
+			}
+			if (c < 0) {
+				return null;
+			}
+			recordLine = line;
+
+			boolean quoted = false;
+			boolean wasQuoted = false;
+			field.setLength(0);
+			while (true) {
+				if (quoted) {
+					if (c < 0) {
+						throw new IOException("Unterminated quoted field at line " + recordLine);
+					}
+					if (c == '"') {
+						in.mark(1);
+						int following = in.read();
+						if (following == '"') {
+							field.append('"');
+						} else {
+							quoted = false;
+							in.reset();
+						}
+					} else {
+						if (c == '\n') {
+							line++;
+						}
+						field.append((char) c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+					wasQuoted = true;
+				} else if (c == ',' || c == '\n' || c == '\r' || c < 0) {
+					fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+					field.setLength(0);
+					wasQuoted = false;
+					if (c != ',') {
+						if (c == '\n') {
+							line++;
+						}
+						if (fields.get(0) == null) {
+							throw new IOException("Missing record kind at line " + recordLine);
+						}
+						return fields.toArray(new String[0]);
+					}
+				} else {
+					field.append((char) c);
+				}
+				c = in.read();
+			}
+		}
+
+		@Override
+		public String[] values(String[] names) throws IOException {
+			if (fields.size() != names.length + 1) {
+				throw new IOException("Expected " + names.length + " fields after '" + fields.get(0) + "' at line "
+						+ recordLine + " but found " + (fields.size() - 1));
+			}
+			return fields.subList(1, fields.size()).toArray(new String[0]);
+		}
+
+		@Override
+		public long line() {
+			return recordLine;
+		}
+	}
+
+	private static class NdjsonSource implements RecordSource {
+		private final BufferedReader in;
+		private Map<String, Object> current;
+		private long line;
+
+		NdjsonSource(BufferedReader in) {
+			this.in = in;
+		}
+
+		@Override
+		public String[] next() throws IOException {
+			String text;
+			do {
+				text = in.readLine();
+				if (text == null) {
+					return null;
+				}
+				line++;
+			} while (text.isBlank());
+
+			try {
+				current = Json.parseObject(text);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Invalid JSON at line " + line + ": " + e.getMessage(), e);
+			}
+			String kind = Json.getString(current, "record");
+			if (kind == null || kind.isEmpty()) {
+				throw new IOException("Missing 'record' member at line " + line);
+			}
+			return new String[] { kind };
+		}
+
+		@Override
+		public String[] values(String[] names) {
+			String[] values = new String[names.length];
+			for (int i = 0; i < names.length; i++) {
+				values[i] = Json.getString(current, names[i]);
+			}
+			return values;
+		}
+
+		@Override
+		public long line() {
+			return line;
+		}
+	}
+}
@@ -1,19 +1,39 @@
 package project;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Manages appointments and tasks for a single health professional, including
  * resource bookings.
  */
 public class Diary {
+	private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+	// Orders appointments by date, then start time
+	static final Comparator<Appointment> CHRONOLOGICAL = Comparator.comparing(Appointment::getDate)
+			.thenComparing(Appointment::getStartTime);
+
 	private HealthProfessional owner;
-	private List<Appointment> appointments;
+	private AppointmentStore appointments;
 	private List<Task> tasks;
 	private List<Resource> resources;
+	private TreeMap<YearMonth, SealedPartition> archive;
+	private long archiveEndEpochDay = Long.MIN_VALUE;
+	private FreeTimeIndex freeTime;
+	private DiaryListener listener;
+	private boolean dirty;
 
 	/**
 	 * Constructs a new Diary for a health professional.
@@ -21,10 +41,35 @@ public class Diary {
 	 * @param owner the health professional who owns this diary
 	 */
 	public Diary(HealthProfessional owner) {
+		this(owner, new HeapAppointmentStore());
+	}
+
+	/**
+	 * Constructs a new Diary whose appointments are kept in the given store.
+	 * 
+	 * @param owner        the health professional who owns this diary
+	 * @param appointments the store for the diary's appointments
+	 */
+	Diary(HealthProfessional owner, AppointmentStore appointments) {
 		this.owner = owner;
-		this.appointments = new ArrayList<>();
+		this.appointments = appointments;
 		this.tasks = new ArrayList<>();
 		this.resources = new ArrayList<>();
+		this.archive = new TreeMap<>();
+		this.freeTime = new FreeTimeIndex();
+		this.dirty = true;
+	}
+
+	/**
+	 * Constructs a diary that holds no contents of its own, for a subclass that
+	 * keeps them elsewhere and overrides every method using them.
+	 * 
+	 * @param owner the health professional who owns this diary
+	 * @param dirty whether the diary starts with unsaved changes
+	 */
+	Diary(HealthProfessional owner, boolean dirty) {
+		this.owner = owner;
+		this.dirty = dirty;
 	}
 
 	/**
@@ -39,9 +84,29 @@ public class Diary {
 			return false;
 		}
 		appointments.add(appointment);
+		freeTime.added(appointment);
+		dirty = true;
+		if (listener != null) {
+			listener.appointmentAdded(owner, appointment);
+		}
 		return true;
 	}
 
+	/**
+	 * Adds an appointment without checking for conflicts, as when replaying a
+	 * change the primary scheduler has already checked.
+	 * 
+	 * @param appointment the appointment to add
+	 */
+	void restoreAppointment(Appointment appointment) {
+		appointments.add(appointment);
+		freeTime.added(appointment);
+		dirty = true;
+		if (listener != null) {
+			listener.appointmentAdded(owner, appointment);
+		}
+	}
+
 	/**
 	 * Adds a recurring appointment to the diary.
 	 * 
@@ -67,7 +132,14 @@ public class Diary {
 		}
 
 		// If all are available, add them
-		appointments.addAll(appointmentsToAdd);
+		for (Appointment appt : appointmentsToAdd) {
+			appointments.add(appt);
+			freeTime.added(appt);
+			if (listener != null) {
+				listener.appointmentAdded(owner, appt);
+			}
+		}
+		dirty = true;
 		return true;
 	}
 
@@ -79,18 +151,30 @@ public class Diary {
 	 * @param occurrences     the number of occurrences
 	 */
 	public void rollbackRecurringAppointments(Appointment baseAppointment, int recurrenceDays, int occurrences) {
-		List<Appointment> toRemove = new ArrayList<>();
+		Set<LocalDate> dates = new HashSet<>();
 		for (int i = 0; i < occurrences; i++) {
-			LocalDate newDate = baseAppointment.getDate().plusDays(i * recurrenceDays);
-			for (Appointment appt : appointments) {
-				if (appt.getDate().equals(newDate) && appt.getStartTime().equals(baseAppointment.getStartTime())
-						&& appt.getEndTime().equals(baseAppointment.getEndTime())
-						&& appt.getPatientName().equals(baseAppointment.getPatientName())) {
-					toRemove.add(appt);
+			dates.add(baseAppointment.getDate().plusDays(i * recurrenceDays));
+		}
+		List<Appointment> removed = new ArrayList<>();
+		appointments.removeIf(appt -> {
+			boolean match = dates.contains(appt.getDate())
+					&& appt.getStartTime().equals(baseAppointment.getStartTime())
+					&& appt.getEndTime().equals(baseAppointment.getEndTime())
+					&& appt.getPatientName().equals(baseAppointment.getPatientName());
+			if (match) {
+				removed.add(appt);
+			}
+			return match;
+		});
+		if (!removed.isEmpty()) {
+			dirty = true;
+			for (Appointment appt : removed) {
+				freeTime.removed(appt);
+				if (listener != null) {
+					listener.appointmentRemoved(owner, appt);
 				}
 			}
 		}
-		appointments.removeAll(toRemove);
 	}
 
 	/**
@@ -100,7 +184,33 @@ public class Diary {
 	 * @return true if removed successfully, false if not found
 	 */
 	public boolean removeAppointment(Appointment appointment) {
-		return appointments.remove(appointment);
+		if (appointments.remove(appointment)) {
+			freeTime.removed(appointment);
+			dirty = true;
+			if (listener != null) {
+				listener.appointmentRemoved(owner, appointment);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes every active appointment of a patient. The appointments are
+	 * looked up again here rather than passed in, so callers holding bookings
+	 * read before a lazily loaded diary was reloaded still remove them.
+	 * 
+	 * @param patientName the patient's name exactly as booked
+	 * @return the number of appointments removed
+	 */
+	int removeAppointmentsForPatient(String patientName) {
+		int removed = 0;
+		for (Appointment appt : appointments.forPatient(patientName)) {
+			if (removeAppointment(appt)) {
+				removed++;
+			}
+		}
+		return removed;
 	}
 
 	/**
@@ -111,14 +221,145 @@ public class Diary {
 	 */
 	public List<Appointment> getAppointmentsOnDate(LocalDate date) {
 		List<Appointment> result = new ArrayList<>();
-		for (Appointment appt : appointments) {
-			if (appt.getDate().equals(date)) {
-				result.add(appt);
+		SealedPartition sealed = archive.get(YearMonth.from(date));
+		if (sealed != null) {
+			result.addAll(sealed.readDate(date));
+		}
+		result.addAll(appointments.onDate(date));
+		return result;
+	}
+
+	/**
+	 * Gets the appointments in a date range in chronological order. Only the
+	 * days in the range are read, so listing a week does not copy the whole
+	 * diary.
+	 * 
+	 * @param from the first date, inclusive
+	 * @param to   the last date, inclusive
+	 * @return an unmodifiable list ordered by date and start time
+	 */
+	public List<Appointment> appointmentsBetween(LocalDate from, LocalDate to) {
+		List<Appointment> active = appointments.between(from.toEpochDay(), to.toEpochDay());
+		if (archive.isEmpty() || from.isAfter(to)) {
+			return Collections.unmodifiableList(active);
+		}
+		List<Appointment> result = new ArrayList<>();
+		for (SealedPartition sealed : archive.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+			for (Appointment appt : sealed.read()) {
+				if (!appt.getDate().isBefore(from) && !appt.getDate().isAfter(to)) {
+					result.add(appt);
+				}
+			}
+		}
+		if (result.isEmpty()) {
+			return Collections.unmodifiableList(active);
+		}
+		result.addAll(active);
+		result.sort(CHRONOLOGICAL);
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Gets one page of the appointments in a date range.
+	 * 
+	 * @param from     the first date, inclusive
+	 * @param to       the last date, inclusive
+	 * @param page     the zero-based page number
+	 * @param pageSize the number of appointments per page
+	 * @return an unmodifiable list of at most pageSize appointments, empty past
+	 *         the last page
+	 */
+	public List<Appointment> getAppointmentsPage(LocalDate from, LocalDate to, int page, int pageSize) {
+		if (page < 0 || pageSize <= 0) {
+			throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
+		}
+		long first = (long) page * pageSize;
+		if (!from.isAfter(to)
+				&& !archive.subMap(YearMonth.from(from), true, YearMonth.from(to), true).isEmpty()) {
+			// Sealed months hold their own order, so the range is merged first
+			List<Appointment> range = appointmentsBetween(from, to);
+			if (first >= range.size()) {
+				return Collections.emptyList();
 			}
+			return range.subList((int) first, (int) Math.min(range.size(), first + pageSize));
+		}
+		return Collections.unmodifiableList(appointments.page(from.toEpochDay(), to.toEpochDay(), first, pageSize));
+	}
+
+	/**
+	 * Gets every appointment for a patient in chronological order.
+	 * 
+	 * @param patientName the patient's name
+	 * @return an unmodifiable list ordered by date and start time
+	 */
+	public List<Appointment> appointmentsForPatient(String patientName) {
+		List<Appointment> active = appointments.forPatient(patientName);
+		if (archive.isEmpty()) {
+			return Collections.unmodifiableList(active);
+		}
+		List<Appointment> result = new ArrayList<>();
+		for (SealedPartition sealed : archive.values()) {
+			for (Appointment appt : sealed.read()) {
+				if (patientName.equals(appt.getPatientName())) {
+					result.add(appt);
+				}
+			}
+		}
+		result.addAll(active);
+		result.sort(CHRONOLOGICAL);
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Gets the gaps between all bookings on a date, whatever their resource.
+	 * The first gap starts at midnight and a gap running to the end of the day
+	 * ends at {@link LocalTime#MAX}. The day's intervals are indexed on first
+	 * request and kept up to date as appointments are added and removed, so
+	 * repeated calls cost no more than the number of gaps.
+	 * 
+	 * @param date the date to look at
+	 * @return the free intervals in time order
+	 */
+	public List<TimeSlot> getFreeIntervals(LocalDate date) {
+		long[] free = freeNanos(date);
+		List<TimeSlot> result = new ArrayList<>(free.length / 2);
+		for (int i = 0; i < free.length; i += 2) {
+			LocalTime end = free[i + 1] == FreeTimeIndex.DAY_END_NANOS ? LocalTime.MAX
+					: LocalTime.ofNanoOfDay(free[i + 1]);
+			result.add(new TimeSlot(date, LocalTime.ofNanoOfDay(free[i]), end));
 		}
 		return result;
 	}
 
+	/**
+	 * Gets the free intervals on a date as nanoseconds of the day.
+	 * 
+	 * @param date the date to look at
+	 * @return start/end pairs in time order; must not be modified
+	 */
+	long[] freeNanos(LocalDate date) {
+		return freeTime.free(indexDay(date));
+	}
+
+	/**
+	 * Gets the bookings on a date as nanoseconds of the day.
+	 * 
+	 * @param date     the date to look at
+	 * @param resource only include bookings of this resource, or null for all
+	 * @return start/end pairs ordered by start time; intervals may overlap
+	 */
+	long[] busyNanos(LocalDate date, Resource resource) {
+		return freeTime.busy(indexDay(date), resource);
+	}
+
+	private long indexDay(LocalDate date) {
+		long epochDay = date.toEpochDay();
+		if (!freeTime.isIndexed(epochDay)) {
+			freeTime.index(epochDay, getAppointmentsOnDate(date));
+		}
+		return epochDay;
+	}
+
 	/**
 	 * Checks if a time slot is available considering resource conflicts.
 	 * 
@@ -129,10 +370,38 @@ public class Diary {
 	 * @return true if the slot is available, false if booked
 	 */
 	public boolean isSlotAvailable(LocalDate date, LocalTime startTime, LocalTime endTime, Resource resource) {
-		Appointment temp = new Appointment(date, startTime, endTime, "TEMP", "TEMP", false, resource);
-		for (Appointment existing : appointments) {
-			if (existing.overlapsWith(temp)) {
-				return false;
+		return isAvailable(date, startTime.toNanoOfDay(), endTime.toNanoOfDay(), resource);
+	}
+
+	/**
+	 * Checks if a time slot given in minutes of the day is available considering
+	 * resource conflicts. Does not allocate, so it suits repeated probing.
+	 * 
+	 * @param date        the date to check
+	 * @param startMinute the proposed start as minutes after midnight
+	 * @param endMinute   the proposed end as minutes after midnight
+	 * @param resource    the resource to check for conflicts
+	 * @return true if the slot is available, false if booked
+	 */
+	public boolean isSlotAvailable(LocalDate date, int startMinute, int endMinute, Resource resource) {
+		return isAvailable(date, startMinute * NANOS_PER_MINUTE, endMinute * NANOS_PER_MINUTE, resource);
+	}
+
+	private boolean isAvailable(LocalDate date, long startNanos, long endNanos, Resource resource) {
+		long epochDay = date.toEpochDay();
+		if (appointments.conflicts(epochDay, startNanos, endNanos, resource)) {
+			return false;
+		}
+
+		// Archived months are only consulted for the rare booking in the past
+		if (epochDay <= archiveEndEpochDay) {
+			SealedPartition sealed = archive.get(YearMonth.from(date));
+			if (sealed != null) {
+				for (Appointment existing : sealed.readDate(date)) {
+					if (existing.conflictsWith(epochDay, startNanos, endNanos, resource)) {
+						return false;
+					}
+				}
 			}
 		}
 		return true;
@@ -145,15 +414,30 @@ public class Diary {
 	 */
 	public void addTask(Task task) {
 		tasks.add(task);
+		dirty = true;
+		if (listener != null) {
+			listener.taskAdded(owner, task);
+		}
+	}
+
+	/**
+	 * Replaces all tasks of the diary, as when replaying a replicated undo.
+	 * 
+	 * @param replacement the new tasks
+	 */
+	void replaceTasks(List<Task> replacement) {
+		tasks.clear();
+		tasks.addAll(replacement);
+		dirty = true;
 	}
 
 	/**
 	 * Gets all tasks in this diary.
 	 * 
-	 * @return list of tasks
+	 * @return an unmodifiable view of the tasks
 	 */
 	public List<Task> getAllTasks() {
-		return new ArrayList<>(tasks);
+		return Collections.unmodifiableList(tasks);
 	}
 
 	/**
@@ -162,7 +446,129 @@ public class Diary {
 	 * @return list of appointments
 	 */
 	public List<Appointment> getAllAppointments() {
-		return new ArrayList<>(appointments);
+		if (archive.isEmpty()) {
+			return appointments.toList();
+		}
+		List<Appointment> result = new ArrayList<>();
+		for (SealedPartition sealed : archive.values()) {
+			result.addAll(sealed.read());
+		}
+		result.addAll(appointments.toList());
+		return result;
+	}
+
+	/**
+	 * Seals every appointment dated before the given month into read-only
+	 * monthly partitions. Sealed appointments still appear in
+	 * {@link #getAppointmentsOnDate(LocalDate)} and
+	 * {@link #getAllAppointments()} but are no longer scanned by availability
+	 * checks for current dates or copied by undo snapshots.
+	 * 
+	 * @param cutoff    the first month to keep active
+	 * @param directory the directory to write partitions to, or null to keep
+	 *                  them in memory
+	 * @return the number of appointments sealed
+	 * @throws IOException if there's an error writing a partition file
+	 */
+	public int sealMonthsBefore(YearMonth cutoff, Path directory) throws IOException {
+		Map<YearMonth, List<Appointment>> byMonth = new TreeMap<>();
+		LocalDate firstActive = cutoff.atDay(1);
+		for (Appointment appt : appointments.toList()) {
+			if (appt.getDate().isBefore(firstActive)) {
+				byMonth.computeIfAbsent(YearMonth.from(appt.getDate()), m -> new ArrayList<>()).add(appt);
+			}
+		}
+		if (byMonth.isEmpty()) {
+			return 0;
+		}
+
+		// Build every partition before touching the diary so a failed write
+		// leaves it unchanged
+		Map<YearMonth, SealedPartition> sealed = new TreeMap<>();
+		int sealedCount = 0;
+		for (Map.Entry<YearMonth, List<Appointment>> entry : byMonth.entrySet()) {
+			List<Appointment> monthAppointments = entry.getValue();
+			sealedCount += monthAppointments.size();
+			SealedPartition existing = archive.get(entry.getKey());
+			if (existing != null) {
+				monthAppointments.addAll(0, existing.read());
+			}
+			sealed.put(entry.getKey(), SealedPartition.seal(entry.getKey(), monthAppointments, directory));
+		}
+		archive.putAll(sealed);
+		archiveEndEpochDay = archive.lastKey().atEndOfMonth().toEpochDay();
+
+		appointments.removeIf(appt -> appt.getDate().isBefore(firstActive));
+		dirty = true;
+		return sealedCount;
+	}
+
+	/**
+	 * Gets the number of appointments held in sealed partitions.
+	 * 
+	 * @return the archived appointment count
+	 */
+	public int getArchivedAppointmentCount() {
+		int count = 0;
+		for (SealedPartition sealed : archive.values()) {
+			count += sealed.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Adds every appointment, sealed or active, to a patient index, along with
+	 * its position in the store where it has one.
+	 * 
+	 * @param index the index to add to
+	 */
+	void indexPatients(PatientIndex index) {
+		for (SealedPartition sealed : archive.values()) {
+			for (Appointment appt : sealed.read()) {
+				index.add(owner, appt, -1);
+			}
+		}
+		appointments.forEach((appt, position) -> index.add(owner, appt, position));
+	}
+
+	/**
+	 * Gets the store position of an appointment just added.
+	 * 
+	 * @param appointment the appointment
+	 * @return the position, or -1 if the store keeps appointment objects
+	 */
+	int appointmentPosition(Appointment appointment) {
+		return appointments.positionOf(appointment);
+	}
+
+	/**
+	 * Reads the active appointment at a store position.
+	 * 
+	 * @param position the position
+	 * @return the appointment, or null if it has been removed
+	 */
+	Appointment appointmentAt(int position) {
+		return appointments.at(position);
+	}
+
+	/**
+	 * Creates an independent copy of this diary for undo snapshots. Active
+	 * appointments and tasks are copied; sealed partitions are immutable and
+	 * shared. The copy has unsaved changes only if this diary has.
+	 * 
+	 * @param ownerCopy the owner of the copy
+	 * @return the copy
+	 */
+	public Diary copy(HealthProfessional ownerCopy) {
+		Diary diaryCopy = new Diary(ownerCopy, appointments.copy());
+		for (Task task : tasks) {
+			diaryCopy.tasks.add(new Task(task.getDescription(), task.getPriority()));
+		}
+		diaryCopy.resources.addAll(resources);
+		diaryCopy.archive.putAll(archive);
+		diaryCopy.archiveEndEpochDay = archiveEndEpochDay;
+		diaryCopy.dirty = dirty;
+		return diaryCopy;
 	}
 
 	/**
@@ -172,6 +578,7 @@ public class Diary {
 	 */
 	public void addResource(Resource resource) {
 		resources.add(resource);
+		dirty = true;
 	}
 
 	/**
@@ -191,4 +598,66 @@ public class Diary {
 	public HealthProfessional getOwner() {
 		return owner;
 	}
+
+	/**
+	 * Sets the listener told about appointments added to or removed from this
+	 * diary.
+	 * 
+	 * @param listener the listener, or null for none
+	 */
+	void setListener(DiaryListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Gets the listener told about appointment changes.
+	 * 
+	 * @return the listener, or null for none
+	 */
+	DiaryListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Checks whether the diary has changed since it was last saved or loaded.
+	 * 
+	 * @return true if the diary has unsaved changes
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Marks the diary as saved so that incremental saves can skip it until it
+	 * changes again.
+	 */
+	public void markClean() {
+		dirty = false;
+	}
+
+	/**
+	 * Marks the diary as changed since it was last saved, for a restored copy
+	 * that no longer matches what was saved.
+	 */
+	void markDirty() {
+		dirty = true;
+	}
+
+	/**
+	 * Checks whether another diary is known to hold the same contents without
+	 * reading them, as when both are unread views of the same saved diary.
+	 * 
+	 * @param other the other diary
+	 * @return true if the contents are known to be the same
+	 */
+	boolean hasSameContents(Diary other) {
+		return other == this;
+	}
+
+	/**
+	 * Tells the diary the scheduler no longer uses it, because it was replaced
+	 * or its professional removed, so it can let go of anything cached for it.
+	 */
+	void release() {
+	}
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package project;
+
+/**
+ * Receives notice of appointments added to or removed from a diary, and of
+ * tasks added to it, so that the scheduler can keep caches, indexes and its
+ * replication log in step however the diary was changed.
+ */
+interface DiaryListener {
+
+	/**
+	 * Called after an appointment has been added to a diary.
+	 *
+	 * @param owner       the owner of the diary
+	 * @param appointment the added appointment
+	 */
+	void appointmentAdded(HealthProfessional owner, Appointment appointment);
+
+	/**
+	 * Called after an appointment has been removed from a diary.
+	 *
+	 * @param owner       the owner of the diary
+	 * @param appointment the removed appointment
+	 */
+	void appointmentRemoved(HealthProfessional owner, Appointment appointment);
+
+	/**
+	 * Called after a task has been added to a diary.
+	 *
+	 * @param owner the owner of the diary
+	 * @param task  the added task
+	 */
+	void taskAdded(HealthProfessional owner, Task task);
+}
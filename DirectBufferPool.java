@@ -0,0 +1,57 @@
+package project;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of equally sized direct buffers, so connections can take and return
+ * I/O buffers without allocating direct memory per request. Not thread-safe;
+ * meant to be owned by one selector thread.
+ */
+final class DirectBufferPool {
+	private final int bufferSize;
+	private final int maxPooled;
+	private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+	/**
+	 * Constructs an empty pool.
+	 *
+	 * @param bufferSize the capacity of each buffer
+	 * @param maxPooled  the most idle buffers to keep
+	 */
+	DirectBufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Takes a cleared buffer from the pool, allocating one if none is idle.
+	 *
+	 * @return the buffer
+	 */
+	ByteBuffer acquire() {
+		ByteBuffer buffer = free.poll();
+		return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Returns a buffer to the pool.
+	 *
+	 * @param buffer a buffer taken from this pool
+	 */
+	void release(ByteBuffer buffer) {
+		if (free.size() < maxPooled) {
+			buffer.clear();
+			free.push(buffer);
+		}
+	}
+
+	/**
+	 * Gets the capacity of the pooled buffers.
+	 *
+	 * @return the buffer size in bytes
+	 */
+	int bufferSize() {
+		return bufferSize;
+	}
+}
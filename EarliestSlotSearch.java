@@ -0,0 +1,126 @@
+package project;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the earliest free slots across a group of professionals. Each
+ * professional gets a cursor that walks their free intervals day by day; a
+ * priority queue holds every cursor keyed by its next candidate, so each
+ * winner costs one poll and one advance, and no diary is read beyond the day
+ * of its last winning candidate.
+ * <p>
+ * Every booking of a professional counts as busy, whatever its resource.
+ */
+final class EarliestSlotSearch {
+	private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+	private static final Comparator<Cursor> EARLIEST_FIRST = Comparator.comparing((Cursor c) -> c.date)
+			.thenComparingLong(c -> c.start).thenComparing(c -> c.professional.getName());
+
+	private EarliestSlotSearch() {
+	}
+
+	/**
+	 * Searches for the earliest slots.
+	 *
+	 * @param diaries         the diaries of the candidate professionals
+	 * @param startDate       the first date to consider
+	 * @param endDate         the last date to consider
+	 * @param durationMinutes the length of a slot
+	 * @param count           the number of slots wanted
+	 * @param dayStartMinute  the start of the searched part of each day
+	 * @param dayEndMinute    the end of the searched part of each day
+	 * @param stepMinutes     the spacing of successive slots within a free interval
+	 * @return up to count slots in time order
+	 */
+	static List<ProfessionalSlot> search(List<Diary> diaries, LocalDate startDate, LocalDate endDate,
+			int durationMinutes, int count, int dayStartMinute, int dayEndMinute, int stepMinutes) {
+		List<ProfessionalSlot> result = new ArrayList<>();
+		if (count <= 0) {
+			return result;
+		}
+		PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, diaries.size()), EARLIEST_FIRST);
+		for (Diary diary : diaries) {
+			Cursor cursor = new Cursor(diary, startDate, endDate, durationMinutes * NANOS_PER_MINUTE,
+					dayStartMinute * NANOS_PER_MINUTE, dayEndMinute * NANOS_PER_MINUTE, stepMinutes * NANOS_PER_MINUTE);
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+		while (result.size() < count && !queue.isEmpty()) {
+			Cursor winner = queue.poll();
+			result.add(new ProfessionalSlot(winner.professional,
+					new TimeSlot(winner.date, LocalTime.ofNanoOfDay(winner.start),
+							LocalTime.ofNanoOfDay(winner.start + winner.duration))));
+			if (winner.advance()) {
+				queue.add(winner);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Walks one professional's candidate slots in time order.
+	 */
+	private static final class Cursor {
+		final Diary diary;
+		final HealthProfessional professional;
+		final LocalDate endDate;
+		final long duration;
+		final long dayStart;
+		final long dayEnd;
+		final long step;
+		LocalDate date;
+		long[] free;
+		int gap;
+		long start = -1;
+
+		Cursor(Diary diary, LocalDate startDate, LocalDate endDate, long duration, long dayStart, long dayEnd,
+				long step) {
+			this.diary = diary;
+			this.professional = diary.getOwner();
+			this.date = startDate;
+			this.endDate = endDate;
+			this.duration = duration;
+			this.dayStart = dayStart;
+			this.dayEnd = dayEnd;
+			this.step = step;
+		}
+
+		// Moves to the next candidate; false once past the end date
+		boolean advance() {
+			if (start >= 0) {
+				start += step;
+			}
+			while (true) {
+				if (free == null) {
+					if (date.isAfter(endDate)) {
+						return false;
+					}
+					free = diary.freeNanos(date);
+					gap = 0;
+					start = -1;
+				}
+				while (gap < free.length) {
+					long gapStart = Math.max(free[gap], dayStart);
+					long gapEnd = Math.min(free[gap + 1], dayEnd);
+					if (start < gapStart) {
+						start = gapStart;
+					}
+					if (start + duration <= gapEnd) {
+						return true;
+					}
+					gap += 2;
+					start = -1;
+				}
+				free = null;
+				date = date.plusDays(1);
+			}
+		}
+	}
+}
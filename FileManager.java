@@ -1,16 +1,28 @@
 package project;
 
 import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Handles saving and loading scheduler data to/from files with resource
  * support.
  */
 public class FileManager {
+	private static final String MANIFEST_FILE = "manifest.ser";
+	private static final String SEGMENT_SUFFIX = ".ser";
+
 	/**
 	 * Saves the scheduler data to a file.
 	 * 
@@ -56,22 +68,7 @@ public class FileManager {
 
 			// Load health professionals and diaries
 			for (SerializableHealthProfessional shp : state.healthProfessionals) {
-				HealthProfessional hp = new HealthProfessional(shp.name, shp.profession, shp.officeLocation);
-				scheduler.addHealthProfessional(hp);
-
-				Diary diary = scheduler.getDiary(hp);
-				for (SerializableAppointment sa : shp.appointments) {
-					Resource resource = null;
-					if (sa.resourceName != null) {
-						resource = new Resource(sa.resourceName, sa.resourceType, sa.resourceLocation);
-					}
-					Appointment appt = new Appointment(LocalDate.parse(sa.date), LocalTime.parse(sa.startTime),
-							LocalTime.parse(sa.endTime), sa.treatmentType, sa.patientName, sa.isRecurring, resource);
-					diary.addAppointment(appt);
-				}
-				for (SerializableTask st : shp.tasks) {
-					diary.addTask(new Task(st.description, st.priority));
-				}
+				restoreProfessional(scheduler, shp);
 			}
 
 			// Load shared resources
@@ -83,6 +80,298 @@ public class FileManager {
 		}
 	}
 
+	/**
+	 * Saves the scheduler data as a block-compressed snapshot. See
+	 * {@link CompressedSnapshot} for the file layout.
+	 * 
+	 * @param scheduler the scheduler to save
+	 * @param filename  the file to save to
+	 * @throws IOException if there's an error writing to the file
+	 */
+	public static void saveCompressed(Scheduler scheduler, String filename) throws IOException {
+		CompressedSnapshot.write(scheduler, filename);
+	}
+
+	/**
+	 * Loads scheduler data from a block-compressed snapshot, inflating diaries
+	 * in parallel.
+	 * 
+	 * @param filename the file to load from
+	 * @return a new Scheduler with the loaded data
+	 * @throws IOException if there's an error reading the file
+	 */
+	public static Scheduler loadCompressed(String filename) throws IOException {
+		try (CompressedSnapshot snapshot = CompressedSnapshot.open(filename)) {
+			return snapshot.readAll();
+		}
+	}
+
+	/**
+	 * Opens a block-compressed snapshot lazily. Only the professional directory
+	 * and shared resources are read up front; each diary is read from the file
+	 * the first time it is used and kept in an LRU cache. The snapshot file stays
+	 * open for the lifetime of the returned scheduler.
+	 * 
+	 * @param filename  the file to open
+	 * @param cacheSize the number of unmodified diaries to keep in memory
+	 * @return a new Scheduler backed by the snapshot
+	 * @throws IOException if there's an error reading the file
+	 */
+	public static Scheduler openLazy(String filename, int cacheSize) throws IOException {
+		CompressedSnapshot snapshot = CompressedSnapshot.open(filename);
+		LazyDiary.Store store = new LazyDiary.Store(snapshot, cacheSize);
+
+		Scheduler scheduler = new Scheduler();
+		scheduler.beginBulkLoad();
+		try {
+			for (HealthProfessional hp : snapshot.getHealthProfessionals()) {
+				scheduler.putDiary(hp, new LazyDiary(hp, store));
+			}
+			for (Resource res : snapshot.readSharedResources()) {
+				scheduler.addSharedResource(res);
+			}
+		} finally {
+			scheduler.endBulkLoad();
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Saves the scheduler data as a segmented layout: a manifest, one segment
+	 * file per diary and one segment for the shared resources. When the directory
+	 * is the one the scheduler was last saved to or loaded from, only segments
+	 * whose diaries changed since then are rewritten.
+	 * <p>
+	 * Segments are never overwritten: changed diaries are written under new
+	 * names, then the manifest is replaced atomically, and only then are the
+	 * segments it no longer names deleted. A crash at any point leaves either the
+	 * old or the new save complete, plus at worst some unreferenced segments,
+	 * which the next save removes.
+	 * 
+	 * @param scheduler the scheduler to save
+	 * @param directory the directory to save to (created if missing)
+	 * @throws IOException if there's an error writing the segments
+	 */
+	public static void saveSegmented(Scheduler scheduler, String directory) throws IOException {
+		Path dir = Paths.get(directory).toAbsolutePath().normalize();
+		Files.createDirectories(dir);
+		Path manifestPath = dir.resolve(MANIFEST_FILE);
+
+		// Anything other than a repeat save to the same place is a full save
+		boolean hasManifest = Files.exists(manifestPath);
+		boolean fullSave = !dir.toString().equals(scheduler.getLastSaveLocation()) || !hasManifest;
+		SerializableManifest manifest = hasManifest ? readManifest(manifestPath) : new SerializableManifest();
+		boolean manifestChanged = fullSave;
+
+		Map<HealthProfessional, ManifestEntry> previous = new HashMap<>();
+		if (!fullSave) {
+			for (ManifestEntry entry : manifest.entries) {
+				previous.put(new HealthProfessional(entry.name, entry.profession, entry.officeLocation), entry);
+			}
+		}
+
+		// New segment names continue the existing numbering, so nothing the
+		// current manifest names is touched
+		ArrayList<ManifestEntry> entries = new ArrayList<>();
+		for (HealthProfessional hp : scheduler.getAllHealthProfessionals()) {
+			Diary diary = scheduler.getDiary(hp);
+			ManifestEntry entry = previous.remove(hp);
+			if (entry == null || fullSave || diary.isDirty()) {
+				entry = new ManifestEntry(hp, "diary-" + manifest.nextSegmentId++ + SEGMENT_SUFFIX);
+				writeAtomically(dir.resolve(entry.segment), new SerializableHealthProfessional(hp, diary));
+				manifestChanged = true;
+			}
+			entries.add(entry);
+		}
+
+		// Professionals removed since the last save
+		if (!previous.isEmpty()) {
+			manifestChanged = true;
+		}
+
+		if (fullSave || scheduler.isSharedResourcesDirty()) {
+			ArrayList<SerializableResource> sResources = new ArrayList<>();
+			for (Resource res : scheduler.getAllSharedResources()) {
+				sResources.add(new SerializableResource(res));
+			}
+			manifest.resourcesSegment = "resources-" + manifest.nextSegmentId++ + SEGMENT_SUFFIX;
+			writeAtomically(dir.resolve(manifest.resourcesSegment), sResources);
+			manifestChanged = true;
+		}
+
+		// The manifest is switched last so a crash never points at missing or
+		// half-updated segments
+		if (manifestChanged) {
+			manifest.entries = entries;
+			writeAtomically(manifestPath, manifest);
+			deleteUnreferencedSegments(dir, manifest);
+		}
+
+		scheduler.markClean(dir.toString());
+	}
+
+	/**
+	 * Deletes the segment files in a directory that a manifest doesn't name,
+	 * left behind by earlier saves or by a save interrupted before its manifest
+	 * was written.
+	 * 
+	 * @param dir      the directory
+	 * @param manifest the manifest now in place
+	 * @throws IOException if the directory can't be listed
+	 */
+	private static void deleteUnreferencedSegments(Path dir, SerializableManifest manifest) throws IOException {
+		Set<String> referenced = new HashSet<>();
+		for (ManifestEntry entry : manifest.entries) {
+			referenced.add(entry.segment);
+		}
+		referenced.add(manifest.resourcesSegment);
+		try (DirectoryStream<Path> segments = Files.newDirectoryStream(dir, "{diary-,resources}*" + SEGMENT_SUFFIX)) {
+			for (Path segment : segments) {
+				if (!referenced.contains(segment.getFileName().toString())) {
+					Files.deleteIfExists(segment);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads scheduler data from a segmented layout written by
+	 * {@link #saveSegmented(Scheduler, String)}.
+	 * 
+	 * @param directory the directory to load from
+	 * @return a new Scheduler with the loaded data
+	 * @throws IOException            if there's an error reading the segments
+	 * @throws ClassNotFoundException if a segment contains unexpected data
+	 */
+	@SuppressWarnings("unchecked")
+	public static Scheduler loadSegmented(String directory) throws IOException, ClassNotFoundException {
+		Path dir = Paths.get(directory).toAbsolutePath().normalize();
+		SerializableManifest manifest = readManifest(dir.resolve(MANIFEST_FILE));
+
+		Scheduler scheduler = new Scheduler();
+		scheduler.beginBulkLoad();
+		try {
+			for (ManifestEntry entry : manifest.entries) {
+				restoreProfessional(scheduler,
+						(SerializableHealthProfessional) readObject(dir.resolve(entry.segment)));
+			}
+
+			for (SerializableResource sr : (List<SerializableResource>) readObject(
+					dir.resolve(manifest.resourcesSegment))) {
+				scheduler.addSharedResource(new Resource(sr.name, sr.type, sr.location));
+			}
+		} finally {
+			scheduler.endBulkLoad();
+		}
+
+		scheduler.markClean(dir.toString());
+		return scheduler;
+	}
+
+	/**
+	 * Recreates a health professional and their diary contents in a scheduler.
+	 * 
+	 * @param scheduler the scheduler to add to
+	 * @param shp       the serialized professional and diary
+	 */
+	static void restoreProfessional(Scheduler scheduler, SerializableHealthProfessional shp) {
+		HealthProfessional hp = new HealthProfessional(shp.name, shp.profession, shp.officeLocation);
+		scheduler.addHealthProfessional(hp);
+		restoreDiaryContents(scheduler.getDiary(hp), shp);
+	}
+
+	/**
+	 * Fills a diary with the appointments and tasks of a serialized professional.
+	 * 
+	 * @param diary the diary to fill
+	 * @param shp   the serialized professional and diary
+	 */
+	static void restoreDiaryContents(Diary diary, SerializableHealthProfessional shp) {
+		for (SerializableAppointment sa : shp.appointments) {
+			Resource resource = null;
+			if (sa.resourceName != null) {
+				resource = new Resource(sa.resourceName, sa.resourceType, sa.resourceLocation);
+			}
+			Appointment appt = new Appointment(LocalDate.parse(sa.date), LocalTime.parse(sa.startTime),
+					LocalTime.parse(sa.endTime), sa.treatmentType, sa.patientName, sa.isRecurring, resource);
+			diary.addAppointment(appt);
+		}
+		for (SerializableTask st : shp.tasks) {
+			diary.addTask(new Task(st.description, st.priority));
+		}
+	}
+
+	/**
+	 * Writes an object to a temporary file and moves it into place, so readers
+	 * never see a half-written segment.
+	 * 
+	 * @param target the file to write
+	 * @param object the object to serialize
+	 * @throws IOException if there's an error writing the file
+	 */
+	private static void writeAtomically(Path target, Object object) throws IOException {
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (ObjectOutputStream oos = new ObjectOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			oos.writeObject(object);
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a single serialized object from a file.
+	 * 
+	 * @param path the file to read
+	 * @return the deserialized object
+	 * @throws IOException            if there's an error reading the file
+	 * @throws ClassNotFoundException if the file contains unexpected data
+	 */
+	private static Object readObject(Path path) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			return ois.readObject();
+		}
+	}
+
+	/**
+	 * Reads the manifest of a segmented layout.
+	 * 
+	 * @param path the manifest file
+	 * @return the manifest
+	 * @throws IOException if the manifest is missing or unreadable
+	 */
+	private static SerializableManifest readManifest(Path path) throws IOException {
+		try {
+			return (SerializableManifest) readObject(path);
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Invalid manifest: " + path, e);
+		}
+	}
+
+	// Index of the segments in a segmented save
+	private static class SerializableManifest implements Serializable {
+
+		private static final long serialVersionUID = 3867305583120994651L;
+		ArrayList<ManifestEntry> entries = new ArrayList<>();
+		int nextSegmentId;
+		String resourcesSegment;
+	}
+
+	private static class ManifestEntry implements Serializable {
+
+		private static final long serialVersionUID = 5104786232457613928L;
+		String name;
+		String profession;
+		String officeLocation;
+		String segment;
+
+		ManifestEntry(HealthProfessional hp, String segment) {
+			this.name = hp.getName();
+			this.profession = hp.getProfession();
+			this.officeLocation = hp.getOfficeLocation();
+			this.segment = segment;
+		}
+	}
+
 	// Container for all scheduler state
 	private static class SerializableSchedulerState implements Serializable {
 	
@@ -98,7 +387,7 @@ public class FileManager {
 	}
 
 	// Helper classes for serialization
-	private static class SerializableHealthProfessional implements Serializable {
+	static class SerializableHealthProfessional implements Serializable {
 		
 		private static final long serialVersionUID = 8279206694355240699L;
 		String name;
@@ -123,7 +412,7 @@ public class FileManager {
 		}
 	}
 
-	private static class SerializableAppointment implements Serializable {
+	static class SerializableAppointment implements Serializable {
 		
 		private static final long serialVersionUID = 6250099432315907402L;
 		String date;
@@ -151,7 +440,7 @@ public class FileManager {
 		}
 	}
 
-	private static class SerializableTask implements Serializable {
+	static class SerializableTask implements Serializable {
 		
 		private static final long serialVersionUID = 9200435498922861030L;
 		String description;
@@ -163,7 +452,7 @@ public class FileManager {
 		}
 	}
 
-	private static class SerializableResource implements Serializable {
+	static class SerializableResource implements Serializable {
 		
 		private static final long serialVersionUID = 1298739326321821291L;
 		String name;
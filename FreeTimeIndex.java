@@ -0,0 +1,177 @@
+package project;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-day booked and free intervals of one diary, as nanoseconds of the day.
+ * A day is indexed the first time it is queried and from then on kept up to
+ * date as bookings on it are added and removed; the free list, the complement
+ * of the union of the day's bookings, is rebuilt from the sorted bookings only
+ * when they have changed.
+ */
+final class FreeTimeIndex {
+	static final long DAY_END_NANOS = 24L * 60 * 60 * 1_000_000_000L;
+
+	private final Map<Long, Day> days = new HashMap<>();
+
+	/**
+	 * Checks whether a day has been indexed.
+	 *
+	 * @param epochDay the day as {@link java.time.LocalDate#toEpochDay()}
+	 * @return true if the day's bookings are held
+	 */
+	boolean isIndexed(long epochDay) {
+		return days.containsKey(epochDay);
+	}
+
+	/**
+	 * Indexes a day from its complete list of bookings.
+	 *
+	 * @param epochDay the day
+	 * @param bookings every appointment on that day
+	 */
+	void index(long epochDay, List<Appointment> bookings) {
+		Day day = new Day(bookings.size());
+		for (Appointment appt : bookings) {
+			day.insert(appt);
+		}
+		days.put(epochDay, day);
+	}
+
+	/**
+	 * Records a new booking if its day is indexed.
+	 *
+	 * @param appointment the appointment added
+	 */
+	void added(Appointment appointment) {
+		Day day = days.get(appointment.getDate().toEpochDay());
+		if (day != null) {
+			day.insert(appointment);
+		}
+	}
+
+	/**
+	 * Forgets a booking if its day is indexed.
+	 *
+	 * @param appointment the appointment removed
+	 */
+	void removed(Appointment appointment) {
+		Day day = days.get(appointment.getDate().toEpochDay());
+		if (day != null) {
+			day.delete(appointment);
+		}
+	}
+
+	/**
+	 * Gets the free intervals of an indexed day.
+	 *
+	 * @param epochDay the day
+	 * @return start/end pairs in ascending order; callers must not modify it
+	 */
+	long[] free(long epochDay) {
+		return days.get(epochDay).free();
+	}
+
+	/**
+	 * Gets the bookings of an indexed day, optionally only those of one resource.
+	 *
+	 * @param epochDay the day
+	 * @param resource the resource to filter by, or null for every booking
+	 * @return start/end pairs ordered by start; intervals may overlap
+	 */
+	long[] busy(long epochDay, Resource resource) {
+		return days.get(epochDay).busy(resource);
+	}
+
+	/**
+	 * One day's bookings, sorted by start time, in parallel arrays.
+	 */
+	private static final class Day {
+		private long[] starts;
+		private long[] ends;
+		private Resource[] resources;
+		private int size;
+		private long[] free;
+
+		Day(int capacity) {
+			int initial = Math.max(4, capacity);
+			starts = new long[initial];
+			ends = new long[initial];
+			resources = new Resource[initial];
+		}
+
+		void insert(Appointment appt) {
+			long start = appt.getStartTime().toNanoOfDay();
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				resources = Arrays.copyOf(resources, size * 2);
+			}
+			int pos = size;
+			while (pos > 0 && starts[pos - 1] > start) {
+				starts[pos] = starts[pos - 1];
+				ends[pos] = ends[pos - 1];
+				resources[pos] = resources[pos - 1];
+				pos--;
+			}
+			starts[pos] = start;
+			ends[pos] = appt.getEndTime().toNanoOfDay();
+			resources[pos] = appt.getResource();
+			size++;
+			free = null;
+		}
+
+		void delete(Appointment appt) {
+			long start = appt.getStartTime().toNanoOfDay();
+			long end = appt.getEndTime().toNanoOfDay();
+			for (int i = 0; i < size; i++) {
+				if (starts[i] == start && ends[i] == end && Objects.equals(resources[i], appt.getResource())) {
+					int tail = size - i - 1;
+					System.arraycopy(starts, i + 1, starts, i, tail);
+					System.arraycopy(ends, i + 1, ends, i, tail);
+					System.arraycopy(resources, i + 1, resources, i, tail);
+					resources[--size] = null;
+					free = null;
+					return;
+				}
+			}
+		}
+
+		long[] free() {
+			if (free == null) {
+				long[] gaps = new long[2 * (size + 1)];
+				int n = 0;
+				long cursor = 0;
+				for (int i = 0; i < size; i++) {
+					if (starts[i] > cursor) {
+						gaps[n++] = cursor;
+						gaps[n++] = starts[i];
+					}
+					cursor = Math.max(cursor, ends[i]);
+				}
+				if (cursor < DAY_END_NANOS) {
+					gaps[n++] = cursor;
+					gaps[n++] = DAY_END_NANOS;
+				}
+				free = Arrays.copyOf(gaps, n);
+			}
+			return free;
+		}
+
+		long[] busy(Resource resource) {
+			long[] pairs = new long[2 * size];
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (resource == null || resource.equals(resources[i])) {
+					pairs[n++] = starts[i];
+					pairs[n++] = ends[i];
+				}
+			}
+			return n == pairs.length ? pairs : Arrays.copyOf(pairs, n);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package project;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Keeps a diary's appointments as objects in an on-heap list, plus indexes of
+ * them by day, so date and range queries only touch the days asked for, and by
+ * patient.
+ */
+class HeapAppointmentStore implements AppointmentStore {
+	private final List<Appointment> appointments = new ArrayList<>();
+	// Day lists are kept sorted by start time
+	private final TreeMap<Long, List<Appointment>> byDay = new TreeMap<>();
+	// Patient lists are kept in insertion order
+	private final Map<String, List<Appointment>> byPatient = new HashMap<>();
+
+	@Override
+	public void add(Appointment appointment) {
+		appointments.add(appointment);
+		List<Appointment> day = byDay.computeIfAbsent(appointment.getDate().toEpochDay(), d -> new ArrayList<>());
+		int pos = day.size();
+		while (pos > 0 && day.get(pos - 1).getStartTime().isAfter(appointment.getStartTime())) {
+			pos--;
+		}
+		day.add(pos, appointment);
+		byPatient.computeIfAbsent(appointment.getPatientName(), p -> new ArrayList<>()).add(appointment);
+	}
+
+	@Override
+	public boolean remove(Appointment appointment) {
+		if (appointments.remove(appointment)) {
+			unindex(appointment);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean removeIf(Predicate<Appointment> filter) {
+		// Test each appointment once, as the filter may have side effects
+		List<Appointment> removed = new ArrayList<>();
+		appointments.removeIf(appt -> {
+			if (filter.test(appt)) {
+				removed.add(appt);
+				return true;
+			}
+			return false;
+		});
+		for (Appointment appt : removed) {
+			unindex(appt);
+		}
+		return !removed.isEmpty();
+	}
+
+	private void unindex(Appointment appointment) {
+		long epochDay = appointment.getDate().toEpochDay();
+		List<Appointment> day = byDay.get(epochDay);
+		if (day != null) {
+			for (int i = 0; i < day.size(); i++) {
+				if (day.get(i) == appointment) {
+					day.remove(i);
+					break;
+				}
+			}
+			if (day.isEmpty()) {
+				byDay.remove(epochDay);
+			}
+		}
+		List<Appointment> patient = byPatient.get(appointment.getPatientName());
+		if (patient != null) {
+			for (int i = 0; i < patient.size(); i++) {
+				if (patient.get(i) == appointment) {
+					patient.remove(i);
+					break;
+				}
+			}
+			if (patient.isEmpty()) {
+				byPatient.remove(appointment.getPatientName());
+			}
+		}
+	}
+
+	@Override
+	public List<Appointment> toList() {
+		return new ArrayList<>(appointments);
+	}
+
+	@Override
+	public List<Appointment> onDate(LocalDate date) {
+		List<Appointment> day = byDay.get(date.toEpochDay());
+		return day == null ? new ArrayList<>() : new ArrayList<>(day);
+	}
+
+	@Override
+	public List<Appointment> between(long fromEpochDay, long toEpochDay) {
+		List<Appointment> result = new ArrayList<>();
+		if (fromEpochDay > toEpochDay) {
+			return result;
+		}
+		for (List<Appointment> day : byDay.subMap(fromEpochDay, true, toEpochDay, true).values()) {
+			result.addAll(day);
+		}
+		return result;
+	}
+
+	@Override
+	public List<Appointment> page(long fromEpochDay, long toEpochDay, long skip, int limit) {
+		List<Appointment> result = new ArrayList<>(Math.min(limit, appointments.size()));
+		if (fromEpochDay > toEpochDay) {
+			return result;
+		}
+		// Whole days before the page are passed over by their size
+		long toSkip = skip;
+		for (List<Appointment> day : byDay.subMap(fromEpochDay, true, toEpochDay, true).values()) {
+			if (toSkip >= day.size()) {
+				toSkip -= day.size();
+				continue;
+			}
+			for (int i = (int) toSkip; i < day.size() && result.size() < limit; i++) {
+				result.add(day.get(i));
+			}
+			toSkip = 0;
+			if (result.size() == limit) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<Appointment> forPatient(String patientName) {
+		List<Appointment> patient = byPatient.get(patientName);
+		if (patient == null) {
+			return new ArrayList<>();
+		}
+		List<Appointment> result = new ArrayList<>(patient);
+		result.sort(Diary.CHRONOLOGICAL);
+		return result;
+	}
+
+	@Override
+	public boolean conflicts(long epochDay, long startNanos, long endNanos, Resource resource) {
+		if (resource == null) {
+			return false;
+		}
+		// Indexed loop so no iterator is allocated per probe
+		for (int i = 0, n = appointments.size(); i < n; i++) {
+			if (appointments.get(i).conflictsWith(epochDay, startNanos, endNanos, resource)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return appointments.size();
+	}
+
+	@Override
+	public int positionOf(Appointment appointment) {
+		// Indexes keep the objects themselves
+		return -1;
+	}
+
+	@Override
+	public Appointment at(int position) {
+		return null;
+	}
+
+	@Override
+	public void forEach(ObjIntConsumer<Appointment> action) {
+		for (Appointment appt : appointments) {
+			action.accept(appt, -1);
+		}
+	}
+
+	@Override
+	public AppointmentStore copy() {
+		HeapAppointmentStore copy = new HeapAppointmentStore();
+		for (Appointment appt : appointments) {
+			copy.add(new Appointment(appt.getDate(), appt.getStartTime(), appt.getEndTime(), appt.getTreatmentType(),
+					appt.getPatientName(), appt.isRecurring(), appt.getResource()));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,324 @@
+package project;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer helpers used by the import/export and server
+ * code. Objects parse to maps, arrays to lists, numbers to Long or Double.
+ */
+final class Json {
+
+	// Deep enough for any document the application writes, shallow enough
+	// that parsing a hostile one can't overflow the stack
+	private static final int MAX_DEPTH = 64;
+
+	private final String text;
+	private int pos;
+	private int depth;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Parses a JSON document.
+	 *
+	 * @param text the JSON text
+	 * @return the parsed value (Map, List, String, Boolean, Long, Double or null)
+	 * @throws IllegalArgumentException if the text is not valid JSON
+	 */
+	static Object parse(String text) {
+		Json parser = new Json(text);
+		Object value = parser.readValue();
+		parser.skipWhitespace();
+		if (parser.pos != text.length()) {
+			throw parser.error("Unexpected trailing content");
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a JSON object.
+	 *
+	 * @param text the JSON text
+	 * @return the parsed object as an insertion-ordered map
+	 * @throws IllegalArgumentException if the text is not a JSON object
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, Object> parseObject(String text) {
+		Object value = parse(text);
+		if (!(value instanceof Map)) {
+			throw new IllegalArgumentException("Expected a JSON object");
+		}
+		return (Map<String, Object>) value;
+	}
+
+	/**
+	 * Appends a string as a quoted JSON string literal.
+	 *
+	 * @param sb    the builder to append to
+	 * @param value the string to quote, or null for a JSON null
+	 * @return the builder
+	 */
+	static StringBuilder quote(StringBuilder sb, String value) {
+		if (value == null) {
+			return sb.append("null");
+		}
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"');
+	}
+
+	/**
+	 * Appends a parsed value back as JSON.
+	 *
+	 * @param sb    the builder to append to
+	 * @param value a value as returned by {@link #parse(String)}
+	 * @return the builder
+	 */
+	static StringBuilder write(StringBuilder sb, Object value) {
+		if (value instanceof Map) {
+			sb.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				quote(sb, String.valueOf(entry.getKey())).append(':');
+				write(sb, entry.getValue());
+			}
+			return sb.append('}');
+		}
+		if (value instanceof List) {
+			sb.append('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				write(sb, item);
+			}
+			return sb.append(']');
+		}
+		if (value instanceof String) {
+			return quote(sb, (String) value);
+		}
+		return sb.append(value);
+	}
+
+	/**
+	 * Gets a string member of a parsed object.
+	 *
+	 * @param object the parsed object
+	 * @param key    the member name
+	 * @return the member as a string, or null if absent or null
+	 */
+	static String getString(Map<String, Object> object, String key) {
+		Object value = object.get(key);
+		return value == null ? null : value.toString();
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+		if (pos >= text.length()) {
+			throw error("Unexpected end of input");
+		}
+		char c = text.charAt(pos);
+		switch (c) {
+		case '{':
+		case '[':
+			if (++depth > MAX_DEPTH) {
+				throw error("Nested more than " + MAX_DEPTH + " deep");
+			}
+			Object nested = c == '{' ? readObject() : readArray();
+			depth--;
+			return nested;
+		case '"':
+			return readString();
+		case 't':
+			expect("true");
+			return Boolean.TRUE;
+		case 'f':
+			expect("false");
+			return Boolean.FALSE;
+		case 'n':
+			expect("null");
+			return null;
+		default:
+			return readNumber();
+		}
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		pos++; // '{'
+		skipWhitespace();
+		if (peek() == '}') {
+			pos++;
+			return result;
+		}
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') {
+				throw error("Expected member name");
+			}
+			String key = readString();
+			skipWhitespace();
+			if (peek() != ':') {
+				throw error("Expected ':'");
+			}
+			pos++;
+			result.put(key, readValue());
+			skipWhitespace();
+			char c = next();
+			if (c == '}') {
+				return result;
+			}
+			if (c != ',') {
+				throw error("Expected ',' or '}'");
+			}
+		}
+	}
+
+	private List<Object> readArray() {
+		List<Object> result = new ArrayList<>();
+		pos++; // '['
+		skipWhitespace();
+		if (peek() == ']') {
+			pos++;
+			return result;
+		}
+		while (true) {
+			result.add(readValue());
+			skipWhitespace();
+			char c = next();
+			if (c == ']') {
+				return result;
+			}
+			if (c != ',') {
+				throw error("Expected ',' or ']'");
+			}
+		}
+	}
+
+	private String readString() {
+		StringBuilder sb = new StringBuilder();
+		pos++; // opening quote
+		while (true) {
+			char c = next();
+			if (c == '"') {
+				return sb.toString();
+			}
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			char escaped = next();
+			switch (escaped) {
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'u':
+				if (pos + 4 > text.length()) {
+					throw error("Truncated unicode escape");
+				}
+				sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+			default:
+				sb.append(escaped);
+			}
+		}
+	}
+
+	private Object readNumber() {
+		int start = pos;
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+		String number = text.substring(start, pos);
+		if (number.isEmpty()) {
+			throw error("Unexpected character");
+		}
+		try {
+			if (number.contains(".") || number.contains("e") || number.contains("E")) {
+				return Double.parseDouble(number);
+			}
+			return Long.parseLong(number);
+		} catch (NumberFormatException e) {
+			throw error("Invalid number");
+		}
+	}
+
+	private void expect(String literal) {
+		if (!text.startsWith(literal, pos)) {
+			throw error("Expected " + literal);
+		}
+		pos += literal.length();
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private char peek() {
+		if (pos >= text.length()) {
+			throw error("Unexpected end of input");
+		}
+		return text.charAt(pos);
+	}
+
+	private char next() {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+}
@@ -0,0 +1,364 @@
+package project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A diary whose appointments and tasks stay in a compressed snapshot until
+ * first used. Loaded contents live in an LRU cache shared by all lazy diaries
+ * of a scheduler; unmodified diaries are evicted when the cache is full and
+ * simply reloaded on their next use, while modified diaries stay resident.
+ * Reading a whole diary that isn't loaded, as reports and indexes do, reads a
+ * copy that isn't cached, so walking every diary doesn't cycle them all
+ * through the cache. The proxy itself holds nothing but its owner: every
+ * method using a diary's contents goes to the loaded contents.
+ */
+class LazyDiary extends Diary {
+	private final Store store;
+	private boolean modified;
+
+	/**
+	 * Constructs a lazy diary backed by a snapshot store.
+	 *
+	 * @param owner the health professional who owns this diary
+	 * @param store the store to load contents from
+	 */
+	LazyDiary(HealthProfessional owner, Store store) {
+		super(owner, false);
+		this.store = store;
+	}
+
+	/**
+	 * Checks whether the diary has been changed since it was read from the
+	 * snapshot.
+	 *
+	 * @return true if the diary no longer matches the snapshot
+	 */
+	boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * Checks whether the diary contents are currently in memory.
+	 *
+	 * @return true if loaded
+	 */
+	boolean isLoaded() {
+		return store.isLoaded(this);
+	}
+
+	private Diary contents() {
+		return store.load(this);
+	}
+
+	/**
+	 * Marks the diary modified if a change made through its contents actually
+	 * changed them, so a rejected booking or a removal that found nothing
+	 * leaves the diary matching its snapshot and free to be evicted.
+	 */
+	private void noteChanges(Diary contents) {
+		if (contents.isDirty()) {
+			modified = true;
+		}
+	}
+
+	@Override
+	public boolean addAppointment(Appointment appointment) {
+		Diary contents = contents();
+		boolean added = contents.addAppointment(appointment);
+		noteChanges(contents);
+		return added;
+	}
+
+	@Override
+	void restoreAppointment(Appointment appointment) {
+		Diary contents = contents();
+		contents.restoreAppointment(appointment);
+		noteChanges(contents);
+	}
+
+	@Override
+	public boolean addRecurringAppointment(Appointment appointment, int recurrenceDays, int occurrences) {
+		Diary contents = contents();
+		boolean added = contents.addRecurringAppointment(appointment, recurrenceDays, occurrences);
+		noteChanges(contents);
+		return added;
+	}
+
+	@Override
+	public void rollbackRecurringAppointments(Appointment baseAppointment, int recurrenceDays, int occurrences) {
+		Diary contents = contents();
+		contents.rollbackRecurringAppointments(baseAppointment, recurrenceDays, occurrences);
+		noteChanges(contents);
+	}
+
+	@Override
+	public boolean removeAppointment(Appointment appointment) {
+		Diary contents = contents();
+		boolean removed = contents.removeAppointment(appointment);
+		noteChanges(contents);
+		return removed;
+	}
+
+	@Override
+	int removeAppointmentsForPatient(String patientName) {
+		Diary contents = contents();
+		int removed = contents.removeAppointmentsForPatient(patientName);
+		noteChanges(contents);
+		return removed;
+	}
+
+	@Override
+	public List<Appointment> getAppointmentsOnDate(LocalDate date) {
+		return contents().getAppointmentsOnDate(date);
+	}
+
+	@Override
+	public List<Appointment> appointmentsBetween(LocalDate from, LocalDate to) {
+		return contents().appointmentsBetween(from, to);
+	}
+
+	@Override
+	public List<Appointment> getAppointmentsPage(LocalDate from, LocalDate to, int page, int pageSize) {
+		return contents().getAppointmentsPage(from, to, page, pageSize);
+	}
+
+	@Override
+	public List<Appointment> appointmentsForPatient(String patientName) {
+		return contents().appointmentsForPatient(patientName);
+	}
+
+	@Override
+	public List<TimeSlot> getFreeIntervals(LocalDate date) {
+		return contents().getFreeIntervals(date);
+	}
+
+	@Override
+	long[] freeNanos(LocalDate date) {
+		return contents().freeNanos(date);
+	}
+
+	@Override
+	long[] busyNanos(LocalDate date, Resource resource) {
+		return contents().busyNanos(date, resource);
+	}
+
+	@Override
+	public boolean isSlotAvailable(LocalDate date, LocalTime startTime, LocalTime endTime, Resource resource) {
+		return contents().isSlotAvailable(date, startTime, endTime, resource);
+	}
+
+	@Override
+	public boolean isSlotAvailable(LocalDate date, int startMinute, int endMinute, Resource resource) {
+		return contents().isSlotAvailable(date, startMinute, endMinute, resource);
+	}
+
+	@Override
+	public void addTask(Task task) {
+		Diary contents = contents();
+		contents.addTask(task);
+		noteChanges(contents);
+	}
+
+	@Override
+	void replaceTasks(List<Task> replacement) {
+		Diary contents = contents();
+		contents.replaceTasks(replacement);
+		noteChanges(contents);
+	}
+
+	@Override
+	public List<Task> getAllTasks() {
+		return contents().getAllTasks();
+	}
+
+	@Override
+	public List<Appointment> getAllAppointments() {
+		return store.peek(this).getAllAppointments();
+	}
+
+	@Override
+	public void addResource(Resource resource) {
+		Diary contents = contents();
+		contents.addResource(resource);
+		noteChanges(contents);
+	}
+
+	@Override
+	public List<Resource> getAllResources() {
+		return contents().getAllResources();
+	}
+
+	@Override
+	public int sealMonthsBefore(YearMonth cutoff, Path directory) throws IOException {
+		Diary contents = contents();
+		int sealed = contents.sealMonthsBefore(cutoff, directory);
+		noteChanges(contents);
+		return sealed;
+	}
+
+	@Override
+	public int getArchivedAppointmentCount() {
+		return contents().getArchivedAppointmentCount();
+	}
+
+	/**
+	 * Adds every appointment to a patient index to be read again when looked
+	 * up, as reloading the diary replaces the appointment objects.
+	 */
+	@Override
+	void indexPatients(PatientIndex index) {
+		for (Appointment appt : getAllAppointments()) {
+			index.add(getOwner(), appt, PatientIndex.READ_AGAIN);
+		}
+	}
+
+	@Override
+	int appointmentPosition(Appointment appointment) {
+		return PatientIndex.READ_AGAIN;
+	}
+
+	@Override
+	Appointment appointmentAt(int position) {
+		return contents().appointmentAt(position);
+	}
+
+	/**
+	 * Copies the diary for an undo snapshot. While the diary still matches its
+	 * snapshot the copy is just another unloaded proxy with its own cache entry.
+	 */
+	@Override
+	public Diary copy(HealthProfessional ownerCopy) {
+		if (!modified) {
+			return new LazyDiary(ownerCopy, store);
+		}
+		return contents().copy(ownerCopy);
+	}
+
+	@Override
+	void setListener(DiaryListener listener) {
+		super.setListener(listener);
+		if (isLoaded()) {
+			contents().setListener(listener);
+		}
+	}
+
+	@Override
+	public boolean isDirty() {
+		return modified && contents().isDirty();
+	}
+
+	@Override
+	public void markClean() {
+		if (modified) {
+			contents().markClean();
+		}
+	}
+
+	@Override
+	void markDirty() {
+		modified = true;
+		contents().markDirty();
+	}
+
+	@Override
+	boolean hasSameContents(Diary other) {
+		return other == this || other instanceof LazyDiary && ((LazyDiary) other).store == store && !modified
+				&& !((LazyDiary) other).modified && getOwner().equals(other.getOwner());
+	}
+
+	@Override
+	void release() {
+		store.release(this);
+	}
+
+	/**
+	 * An open snapshot plus the LRU cache of loaded diary contents.
+	 */
+	static class Store {
+		private final CompressedSnapshot snapshot;
+		private final int capacity;
+		private final LinkedHashMap<LazyDiary, Diary> loaded;
+
+		/**
+		 * Constructs a store over an open snapshot.
+		 *
+		 * @param snapshot the snapshot to read diaries from
+		 * @param capacity the number of unmodified diaries to keep loaded
+		 */
+		Store(CompressedSnapshot snapshot, int capacity) {
+			this.snapshot = snapshot;
+			this.capacity = Math.max(1, capacity);
+			this.loaded = new LinkedHashMap<>(16, 0.75f, true);
+		}
+
+		synchronized boolean isLoaded(LazyDiary diary) {
+			return loaded.containsKey(diary);
+		}
+
+		/**
+		 * Gets a diary's contents from the cache, or reads them without caching
+		 * them.
+		 */
+		synchronized Diary peek(LazyDiary diary) {
+			Diary contents = loaded.get(diary);
+			return contents != null ? contents : read(diary);
+		}
+
+		/**
+		 * Forgets a diary's cached contents, modified or not, once the
+		 * scheduler no longer uses its proxy.
+		 */
+		synchronized void release(LazyDiary diary) {
+			loaded.remove(diary);
+		}
+
+		synchronized Diary load(LazyDiary diary) {
+			Diary contents = loaded.get(diary);
+			if (contents == null) {
+				contents = read(diary);
+				contents.setListener(diary.getListener());
+				loaded.put(diary, contents);
+				evict(diary);
+			}
+			return contents;
+		}
+
+		private Diary read(LazyDiary diary) {
+			Diary contents;
+			try {
+				contents = snapshot.readDiary(diary.getOwner());
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error loading diary for " + diary.getOwner(), e);
+			}
+			if (contents == null) {
+				contents = new Diary(diary.getOwner());
+				contents.markClean();
+			}
+			return contents;
+		}
+
+		// Drops the least recently used unmodified diaries until within
+		// capacity, never the one just loaded, which its caller is about to use
+		private void evict(LazyDiary keep) {
+			Iterator<Map.Entry<LazyDiary, Diary>> it = loaded.entrySet().iterator();
+			int excess = loaded.size() - capacity;
+			while (excess > 0 && it.hasNext()) {
+				// Contents changed by a call still in progress count as modified
+				Map.Entry<LazyDiary, Diary> entry = it.next();
+				if (entry.getKey() != keep && !entry.getKey().isModified() && !entry.getValue().isDirty()) {
+					it.remove();
+					excess--;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package project;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks a scheduler opened lazily from a compressed snapshot with a cache
+ * smaller than its number of diaries, so diaries are evicted and reloaded as
+ * they are used: cancelling a patient's bookings removes them from every
+ * diary even though reloading has replaced the appointment objects the patient
+ * index read. Then, with a cache big enough to see what gets loaded, that
+ * building the day totals and the patient index loads no diary, that the
+ * appointment table and a patient lookup load only the diaries they show, and
+ * that a diary replaced by undo is dropped from the cache, and that the table
+ * shows a later booking once refreshed. Everything runs in this JVM on a
+ * temporary file.
+ */
+public class LazyDiaryCheck {
+	private static final int PROFESSIONALS = 5;
+
+	private LazyDiaryCheck() {
+	}
+
+	/**
+	 * Runs the checks. Takes no arguments.
+	 *
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		Checks checks = new Checks("Lazy diaries");
+		checks.run(() -> {
+			Path file = Files.createTempFile("lazy-check", ".haz");
+			try {
+				run(checks, file);
+				runLoading(checks, file);
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		});
+	}
+
+	private static void run(Checks checks, Path file) throws Exception {
+		Scheduler original = new Scheduler();
+		List<HealthProfessional> hps = new ArrayList<>();
+		LocalDate day = LocalDate.now().plusYears(1);
+		for (int i = 0; i < PROFESSIONALS; i++) {
+			HealthProfessional hp = new HealthProfessional("Check Surgeon " + i, "Surgeon", "Main Hospital");
+			original.addHealthProfessional(hp);
+			hps.add(hp);
+			book(original, hp, day, 9, "Alice");
+			book(original, hp, day, 10, "Bob");
+		}
+		FileManager.saveCompressed(original, file.toString());
+
+		// Patients across more diaries than the cache holds
+		Scheduler lazy = FileManager.openLazy(file.toString(), 1);
+		checks.check("the patient index finds a booking in every diary",
+				lazy.getBookingsForPatient("Alice").size() == PROFESSIONALS);
+		checks.check("cancelling removes every booking of the patient",
+				lazy.cancelAppointmentsForPatient(" alice") == PROFESSIONALS);
+		checks.check("the index no longer lists them", lazy.getBookingsForPatient("Alice").isEmpty());
+		boolean removed = true;
+		for (HealthProfessional hp : hps) {
+			List<Appointment> left = lazy.getDiary(hp).getAppointmentsOnDate(day);
+			removed &= left.size() == 1 && left.get(0).getPatientName().equals("Bob");
+		}
+		checks.check("each diary keeps only the other patient's booking", removed);
+		checks.check("undo brings the bookings back",
+				lazy.undo() && lazy.getBookingsForPatient("Alice").size() == PROFESSIONALS);
+	}
+
+	private static void runLoading(Checks checks, Path file) throws Exception {
+		Scheduler original = new Scheduler();
+		List<HealthProfessional> hps = new ArrayList<>();
+		LocalDate day = LocalDate.now().plusYears(1).withDayOfMonth(1);
+		for (int i = 0; i < PROFESSIONALS; i++) {
+			HealthProfessional hp = new HealthProfessional("Check Nurse " + i, "Nurse", "Main Hospital");
+			original.addHealthProfessional(hp);
+			hps.add(hp);
+			book(original, hp, day.plusDays(i), 9, "Patient " + i);
+		}
+		FileManager.saveCompressed(original, file.toString());
+		Scheduler lazy = FileManager.openLazy(file.toString(), PROFESSIONALS);
+
+		AppointmentTableModel table = new AppointmentTableModel(lazy);
+		table.setRange(day, day.plusDays(PROFESSIONALS - 1));
+		checks.check("the table counts every day's appointments", table.getRowCount() == PROFESSIONALS);
+		checks.check("counting them loads no diary", loaded(lazy, hps).isEmpty());
+		checks.check("a row shows its appointment", "Patient 2".equals(table.getValueAt(2, 4)));
+		checks.check("showing it loads only that day's diaries", loaded(lazy, hps).equals(List.of(2)));
+		checks.check("a patient lookup finds the booking", lazy.getBookingsForPatient("Patient 3").size() == 1);
+		checks.check("building the index and looking up load only the patient's diaries",
+				loaded(lazy, hps).equals(List.of(2, 3)));
+
+		Diary replaced = lazy.getDiary(hps.get(4));
+		book(lazy, hps.get(4), day.plusDays(4), 11, "Patient 4");
+		checks.check("a changed diary is loaded", ((LazyDiary) replaced).isLoaded());
+		checks.check("undo replaces it", lazy.undo() && lazy.getDiary(hps.get(4)) != replaced);
+		checks.check("and the replaced diary is dropped from the cache", !((LazyDiary) replaced).isLoaded());
+		checks.check("the undone booking is gone", lazy.getBookingsForPatient("Patient 4").size() == 1);
+
+		book(lazy, hps.get(0), day, 11, "Added");
+		table.refresh();
+		checks.check("a refreshed table counts a new booking", table.getRowCount() == PROFESSIONALS + 1);
+		checks.check("and shows the later days' appointments a row further on",
+				"Added".equals(table.getValueAt(1, 4)) && "Patient 4".equals(table.getValueAt(PROFESSIONALS, 4)));
+	}
+
+	// The indexes of the professionals whose diaries are loaded
+	private static List<Integer> loaded(Scheduler scheduler, List<HealthProfessional> hps) {
+		List<Integer> loaded = new ArrayList<>();
+		for (int i = 0; i < hps.size(); i++) {
+			if (((LazyDiary) scheduler.getDiary(hps.get(i))).isLoaded()) {
+				loaded.add(i);
+			}
+		}
+		return loaded;
+	}
+
+	private static void book(Scheduler scheduler, HealthProfessional hp, LocalDate date, int hour, String patient) {
+		LocalTime start = LocalTime.of(hour, 0);
+		scheduler.bookAppointment(List.of(hp),
+				new Appointment(date, start, start.plusMinutes(30), "Check", patient, false, null));
+	}
+}
@@ -0,0 +1,280 @@
+package project;
+
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replays mixed booking, search, lookup and undo traffic against a scheduler
+ * from several threads and reports throughput and latency percentiles per
+ * operation. Scheduler calls are serialized by a lock, as in
+ * {@link SchedulerServer}, so latencies include the time spent queuing for the
+ * scheduler.
+ */
+public class LoadDriver {
+	/**
+	 * The operations the driver issues.
+	 */
+	public enum Operation {
+		BOOK, SEARCH, LOOKUP, UNDO
+	}
+
+	private final Scheduler scheduler;
+	private final WorkloadGenerator generator;
+	private final LocalDate startDate;
+	private final LocalDate endDate;
+	private final ReentrantLock lock = new ReentrantLock();
+	private int[] mix = { 40, 30, 28, 2 };
+
+	/**
+	 * Constructs a driver over a populated scheduler.
+	 * 
+	 * @param scheduler the scheduler to load
+	 * @param generator the generator used to draw new appointments
+	 * @param startDate the first date bookings and searches target
+	 * @param endDate   the last date bookings and searches target
+	 */
+	public LoadDriver(Scheduler scheduler, WorkloadGenerator generator, LocalDate startDate, LocalDate endDate) {
+		this.scheduler = scheduler;
+		this.generator = generator;
+		this.startDate = startDate;
+		this.endDate = endDate;
+	}
+
+	/**
+	 * Sets the relative weights of the operations, in {@link Operation} order.
+	 * 
+	 * @param book   the weight of bookings
+	 * @param search the weight of slot searches
+	 * @param lookup the weight of patient and day lookups
+	 * @param undo   the weight of undos
+	 * @return this driver
+	 */
+	public LoadDriver mix(int book, int search, int lookup, int undo) {
+		this.mix = new int[] { book, search, lookup, undo };
+		return this;
+	}
+
+	/**
+	 * Runs the load.
+	 * 
+	 * @param threads the number of client threads
+	 * @param seconds how long to run for
+	 * @param seed    the random seed; each thread derives its own from it
+	 * @return the results
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public Result run(int threads, int seconds, long seed) throws InterruptedException {
+		List<HealthProfessional> staff = scheduler.getAllHealthProfessionals();
+		List<Resource> resources = scheduler.getAllSharedResources();
+		int totalWeight = Arrays.stream(mix).sum();
+		Recorder[] recorders = new Recorder[threads];
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		for (int t = 0; t < threads; t++) {
+			Recorder recorder = new Recorder();
+			recorders[t] = recorder;
+			Random random = new Random(seed + t);
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					while (System.nanoTime() < deadline) {
+						Operation op = pick(random.nextInt(totalWeight));
+						long began = System.nanoTime();
+						lock.lock();
+						try {
+							perform(op, random, staff, resources);
+						} finally {
+							lock.unlock();
+						}
+						recorder.record(op, System.nanoTime() - began);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			}, "load-driver-" + t);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		long began = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - began;
+
+		Recorder merged = new Recorder();
+		for (Recorder recorder : recorders) {
+			merged.addAll(recorder);
+		}
+		return new Result(merged, elapsed);
+	}
+
+	private Operation pick(int draw) {
+		Operation[] ops = Operation.values();
+		for (int i = 0; i < ops.length; i++) {
+			draw -= mix[i];
+			if (draw < 0) {
+				return ops[i];
+			}
+		}
+		return ops[ops.length - 1];
+	}
+
+	private void perform(Operation op, Random random, List<HealthProfessional> staff, List<Resource> resources) {
+		int days = (int) (endDate.toEpochDay() - startDate.toEpochDay()) + 1;
+		LocalDate date = startDate.plusDays(random.nextInt(days));
+		HealthProfessional hp = staff.get(random.nextInt(staff.size()));
+		switch (op) {
+		case BOOK:
+			scheduler.bookAppointment(List.of(hp), generator.randomAppointment(random, resources, date));
+			break;
+		case SEARCH:
+			List<Resource> required = random.nextBoolean() ? List.of()
+					: List.of(resources.get(random.nextInt(resources.size())));
+			scheduler.findAvailableSlots(List.of(hp), required, date, date.plusDays(2), 15 + 15 * random.nextInt(4));
+			break;
+		case LOOKUP:
+			if (random.nextBoolean()) {
+				scheduler.getBookingsForPatient(
+						generator.randomAppointment(random, resources, date).getPatientName());
+			} else {
+				scheduler.getDiary(hp).getAppointmentsOnDate(date);
+			}
+			break;
+		case UNDO:
+			scheduler.undo();
+			break;
+		}
+	}
+
+	/**
+	 * Latencies recorded by one thread, per operation.
+	 */
+	private static class Recorder {
+		private final long[][] latencies = new long[Operation.values().length][64];
+		private final int[] counts = new int[Operation.values().length];
+
+		void record(Operation op, long nanos) {
+			int i = op.ordinal();
+			if (counts[i] == latencies[i].length) {
+				latencies[i] = Arrays.copyOf(latencies[i], counts[i] * 2);
+			}
+			latencies[i][counts[i]++] = nanos;
+		}
+
+		void addAll(Recorder other) {
+			for (Operation op : Operation.values()) {
+				int i = op.ordinal();
+				for (int j = 0; j < other.counts[i]; j++) {
+					record(op, other.latencies[i][j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Throughput and latency percentiles of a run.
+	 */
+	public static class Result {
+		private final long elapsedNanos;
+		private final long[][] sorted;
+
+		private Result(Recorder recorder, long elapsedNanos) {
+			this.elapsedNanos = elapsedNanos;
+			this.sorted = new long[Operation.values().length][];
+			for (Operation op : Operation.values()) {
+				int i = op.ordinal();
+				sorted[i] = Arrays.copyOf(recorder.latencies[i], recorder.counts[i]);
+				Arrays.sort(sorted[i]);
+			}
+		}
+
+		/**
+		 * Gets the number of operations of a kind completed.
+		 * 
+		 * @param op the operation
+		 * @return the count
+		 */
+		public int getCount(Operation op) {
+			return sorted[op.ordinal()].length;
+		}
+
+		/**
+		 * Gets the operations completed per second, across all kinds.
+		 * 
+		 * @return the throughput
+		 */
+		public double getThroughput() {
+			long total = 0;
+			for (long[] latencies : sorted) {
+				total += latencies.length;
+			}
+			return total * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * Gets a latency percentile of an operation.
+		 * 
+		 * @param op         the operation
+		 * @param percentile the percentile, from 0 to 100
+		 * @return the latency in microseconds, or 0 if the operation never ran
+		 */
+		public double getLatencyMicros(Operation op, double percentile) {
+			long[] latencies = sorted[op.ordinal()];
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1000.0;
+		}
+
+		/**
+		 * Prints a summary table.
+		 * 
+		 * @param out the stream to print to
+		 */
+		public void print(PrintStream out) {
+			out.printf("Throughput: %.0f ops/s over %.1f s%n", getThroughput(), elapsedNanos / 1e9);
+			out.printf("%-8s %10s %10s %10s %10s %10s%n", "op", "count", "p50 us", "p90 us", "p99 us", "max us");
+			for (Operation op : Operation.values()) {
+				out.printf("%-8s %10d %10.1f %10.1f %10.1f %10.1f%n", op, getCount(op), getLatencyMicros(op, 50),
+						getLatencyMicros(op, 90), getLatencyMicros(op, 99), getLatencyMicros(op, 100));
+			}
+		}
+	}
+
+	/**
+	 * Generates a workload and drives it. Arguments, all optional and in order:
+	 * professionals, days of bookings, client threads, seconds to run, seed.
+	 * 
+	 * @param args the command-line arguments
+	 * @throws InterruptedException if interrupted while running
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int professionals = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+		Scheduler scheduler = new Scheduler();
+		WorkloadGenerator generator = new WorkloadGenerator(seed).professionals(professionals);
+		LocalDate start = LocalDate.now();
+		LocalDate end = start.plusDays(days - 1);
+		long began = System.nanoTime();
+		int booked = generator.populate(scheduler, start, end);
+		System.out.printf("Generated %d professionals and %d appointments over %d days in %d ms%n", professionals,
+				booked, days, (System.nanoTime() - began) / 1_000_000);
+
+		Result result = new LoadDriver(scheduler, generator, start, end).run(threads, seconds, seed);
+		result.print(System.out);
+	}
+}
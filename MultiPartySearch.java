@@ -0,0 +1,152 @@
+package project;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds windows in which a group of professionals and resources are all free.
+ * For each day the sorted busy intervals of every participant, and of every
+ * booking of each required resource, are k-way merged through a heap into one
+ * busy timeline, and the gaps in that timeline long enough for the meeting are
+ * emitted in a single sweep. A day costs O(n log k) for n intervals in k lists
+ * instead of one diary scan per participant per candidate slot.
+ * <p>
+ * Unlike {@link Scheduler#findAvailableSlots}, every booking of a participant
+ * counts as busy, whatever its resource.
+ */
+final class MultiPartySearch {
+	private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+	private final List<long[]> lists = new ArrayList<>();
+	private int[] heap = new int[16];
+	private int[] cursor = new int[16];
+	private int heapSize;
+
+	/**
+	 * Searches a date range.
+	 *
+	 * @param attendees       the diaries of the professionals who must attend
+	 * @param resources       the resources that must be free
+	 * @param allDiaries      every diary, for resource bookings
+	 * @param startDate       the first date to consider
+	 * @param endDate         the last date to consider
+	 * @param durationMinutes the length of the meeting
+	 * @param dayStartMinute  the start of the searched part of each day
+	 * @param dayEndMinute    the end of the searched part of each day
+	 * @return the maximal common free windows of at least the given length
+	 */
+	List<TimeSlot> search(Diary[] attendees, Resource[] resources, Diary[] allDiaries, LocalDate startDate,
+			LocalDate endDate, int durationMinutes, int dayStartMinute, int dayEndMinute) {
+		List<TimeSlot> windows = new ArrayList<>();
+		long dayStart = dayStartMinute * NANOS_PER_MINUTE;
+		long dayEnd = dayEndMinute * NANOS_PER_MINUTE;
+		long duration = durationMinutes * NANOS_PER_MINUTE;
+		for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+			lists.clear();
+			for (Diary diary : attendees) {
+				addList(diary.busyNanos(date, null));
+			}
+			for (Resource resource : resources) {
+				for (Diary diary : allDiaries) {
+					addList(diary.busyNanos(date, resource));
+				}
+			}
+			sweep(date, dayStart, dayEnd, duration, windows);
+		}
+		return windows;
+	}
+
+	private void addList(long[] busy) {
+		if (busy.length > 0) {
+			lists.add(busy);
+		}
+	}
+
+	// Merges the day's busy lists in start order, emitting gaps as it goes
+	private void sweep(LocalDate date, long dayStart, long dayEnd, long duration, List<TimeSlot> windows) {
+		int k = lists.size();
+		if (heap.length < k) {
+			heap = new int[k];
+			cursor = new int[k];
+		}
+		heapSize = 0;
+		for (int i = 0; i < k; i++) {
+			cursor[i] = 0;
+			push(i);
+		}
+
+		long free = dayStart;
+		while (heapSize > 0) {
+			int list = heap[0];
+			long[] busy = lists.get(list);
+			long start = busy[cursor[list]];
+			long end = busy[cursor[list] + 1];
+			if (start >= dayEnd) {
+				break;
+			}
+			if (start - free >= duration) {
+				windows.add(window(date, free, start));
+			}
+			free = Math.max(free, end);
+
+			cursor[list] += 2;
+			if (cursor[list] < busy.length) {
+				siftDown(0);
+			} else {
+				heap[0] = heap[--heapSize];
+				siftDown(0);
+			}
+		}
+		if (dayEnd - free >= duration) {
+			windows.add(window(date, free, dayEnd));
+		}
+	}
+
+	private static TimeSlot window(LocalDate date, long start, long end) {
+		return new TimeSlot(date, LocalTime.ofNanoOfDay(start), LocalTime.ofNanoOfDay(end));
+	}
+
+	private long head(int list) {
+		return lists.get(list)[cursor[list]];
+	}
+
+	private void push(int list) {
+		int i = heapSize++;
+		heap[i] = list;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (head(heap[parent]) <= head(heap[i])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < heapSize && head(heap[left]) < head(heap[smallest])) {
+				smallest = left;
+			}
+			if (right < heapSize && head(heap[right]) < head(heap[smallest])) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				return;
+			}
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int tmp = heap[a];
+		heap[a] = heap[b];
+		heap[b] = tmp;
+	}
+}
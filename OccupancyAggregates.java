@@ -0,0 +1,295 @@
+package project;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Booked minutes and appointment counts per day, kept hospital-wide, per
+ * professional and per resource, along with the hospital-wide minutes booked in
+ * each hour of the day, the treatment mix and who has appointments on each
+ * day. Updated incrementally on every booking and cancellation, so a month's
+ * grid or a report over any date range is read in O(days) without touching any
+ * diary. An undo or a replaced diary
+ * applies only the appointments that differ. Hospital and professional figures
+ * are summed per diary entry, so an appointment shared by two professionals
+ * counts twice; a resource's minutes count each booked interval once.
+ */
+final class OccupancyAggregates {
+	private final Map<Long, int[]> hospital = new HashMap<>();
+	private final Map<HealthProfessional, Map<Long, Integer>> byProfessional = new HashMap<>();
+	private final Map<Resource, Map<Long, Integer>> byResource = new HashMap<>();
+	private final Map<Resource, Map<Long, Integer>> resourceIntervals = new HashMap<>();
+	private final Map<Long, Map<String, Integer>> treatments = new HashMap<>();
+	// Appointments per professional on each day, to find the diaries holding a day
+	private final Map<Long, Map<HealthProfessional, Integer>> professionalsByDay = new HashMap<>();
+
+	// Offsets into the hospital-wide per-day totals; minutes per hour follow
+	private static final int COUNT = 0;
+	private static final int MINUTES = 1;
+	private static final int HOURS = 2;
+
+	/**
+	 * Builds the aggregates over a set of diaries.
+	 *
+	 * @param diaries the diaries to aggregate
+	 * @return the aggregates
+	 */
+	static OccupancyAggregates build(Iterable<Diary> diaries) {
+		OccupancyAggregates aggregates = new OccupancyAggregates();
+		for (Diary diary : diaries) {
+			for (Appointment appt : diary.getAllAppointments()) {
+				aggregates.add(diary.getOwner(), appt);
+			}
+		}
+		return aggregates;
+	}
+
+	/**
+	 * Records a booking.
+	 *
+	 * @param professional the owner of the diary the appointment was added to
+	 * @param appointment  the appointment
+	 */
+	void add(HealthProfessional professional, Appointment appointment) {
+		apply(professional, appointment, 1);
+	}
+
+	/**
+	 * Records a cancellation.
+	 *
+	 * @param professional the owner of the diary the appointment was removed from
+	 * @param appointment  the appointment
+	 */
+	void remove(HealthProfessional professional, Appointment appointment) {
+		apply(professional, appointment, -1);
+	}
+
+	/**
+	 * Records the appointments that differ after a professional's diary was
+	 * replaced or removed.
+	 *
+	 * @param professional the owner of the diary
+	 * @param difference   the appointments removed and added
+	 */
+	void apply(HealthProfessional professional, ReplicationLog.Difference difference) {
+		for (Appointment appt : difference.removed) {
+			apply(professional, appt, -1);
+		}
+		for (Appointment appt : difference.added) {
+			apply(professional, appt, 1);
+		}
+		Map<Long, Integer> minutes = byProfessional.get(professional);
+		if (minutes != null && minutes.isEmpty()) {
+			byProfessional.remove(professional);
+		}
+	}
+
+	private void apply(HealthProfessional professional, Appointment appointment, int sign) {
+		long epochDay = appointment.getDate().toEpochDay();
+		int minutes = sign * (int) Duration.between(appointment.getStartTime(), appointment.getEndTime()).toMinutes();
+		int[] totals = hospital.computeIfAbsent(epochDay, d -> new int[HOURS + 24]);
+		totals[COUNT] += sign;
+		totals[MINUTES] += minutes;
+		int start = appointment.getStartTime().toSecondOfDay() / 60;
+		int end = start + Math.abs(minutes);
+		for (int hour = start / 60; hour < 24 && hour * 60 < end; hour++) {
+			totals[HOURS + hour] += sign * (Math.min(end, hour * 60 + 60) - Math.max(start, hour * 60));
+		}
+		if (totals[COUNT] == 0) {
+			hospital.remove(epochDay);
+		}
+		addMinutes(byProfessional.computeIfAbsent(professional, p -> new HashMap<>()), epochDay, minutes);
+		Map<HealthProfessional, Integer> booked = professionalsByDay.computeIfAbsent(epochDay, d -> new HashMap<>());
+		addMinutes(booked, professional, sign);
+		if (booked.isEmpty()) {
+			professionalsByDay.remove(epochDay);
+		}
+		Map<String, Integer> mix = treatments.computeIfAbsent(epochDay, d -> new HashMap<>());
+		addMinutes(mix, appointment.getTreatmentType(), sign);
+		if (mix.isEmpty()) {
+			treatments.remove(epochDay);
+		}
+		Resource resource = appointment.getResource();
+		if (resource != null) {
+			// An appointment shared by several professionals is in each of their
+			// diaries, but holds the resource only once
+			long interval = epochDay << 22 | (long) start << 11 | end;
+			Map<Long, Integer> holds = resourceIntervals.computeIfAbsent(resource, r -> new HashMap<>());
+			Integer before = holds.get(interval);
+			int after = (before == null ? 0 : before) + sign;
+			if (after == 0) {
+				holds.remove(interval);
+			} else {
+				holds.put(interval, after);
+			}
+			if (after == 0 || before == null) {
+				addMinutes(byResource.computeIfAbsent(resource, r -> new HashMap<>()), epochDay, minutes);
+			}
+		}
+	}
+
+	private static <K> void addMinutes(Map<K, Integer> totals, K key, int amount) {
+		if (totals.merge(key, amount, Integer::sum) == 0) {
+			totals.remove(key);
+		}
+	}
+
+	/**
+	 * Gets the appointment count of each day of a month.
+	 *
+	 * @param month the month
+	 * @return one count per day
+	 */
+	int[] counts(YearMonth month) {
+		return hospitalGrid(month, COUNT);
+	}
+
+	/**
+	 * Gets the hospital-wide booked minutes of each day of a month.
+	 *
+	 * @param month the month
+	 * @return one total per day
+	 */
+	int[] minutes(YearMonth month) {
+		return hospitalGrid(month, MINUTES);
+	}
+
+	/**
+	 * Gets the professionals with appointments on a day.
+	 *
+	 * @param epochDay the day
+	 * @return the professionals
+	 */
+	List<HealthProfessional> professionalsBooked(long epochDay) {
+		Map<HealthProfessional, Integer> booked = professionalsByDay.get(epochDay);
+		return booked == null ? List.of() : new ArrayList<>(booked.keySet());
+	}
+
+	/**
+	 * Gets a professional's booked minutes on each day of a month.
+	 *
+	 * @param month        the month
+	 * @param professional the professional
+	 * @return one total per day
+	 */
+	int[] minutes(YearMonth month, HealthProfessional professional) {
+		return grid(month, byProfessional.get(professional));
+	}
+
+	/**
+	 * Gets a resource's booked minutes on each day of a month.
+	 *
+	 * @param month    the month
+	 * @param resource the resource
+	 * @return one total per day
+	 */
+	int[] minutes(YearMonth month, Resource resource) {
+		return grid(month, byResource.get(resource));
+	}
+
+	/**
+	 * Gets a professional's booked minutes over a date range.
+	 *
+	 * @param fromEpochDay the first day, inclusive
+	 * @param toEpochDay   the last day, inclusive
+	 * @param professional the professional
+	 * @return the total minutes
+	 */
+	long minutes(long fromEpochDay, long toEpochDay, HealthProfessional professional) {
+		return sum(fromEpochDay, toEpochDay, byProfessional.get(professional));
+	}
+
+	/**
+	 * Gets a resource's booked minutes over a date range.
+	 *
+	 * @param fromEpochDay the first day, inclusive
+	 * @param toEpochDay   the last day, inclusive
+	 * @param resource     the resource
+	 * @return the total minutes
+	 */
+	long minutes(long fromEpochDay, long toEpochDay, Resource resource) {
+		return sum(fromEpochDay, toEpochDay, byResource.get(resource));
+	}
+
+	/**
+	 * Gets the hospital-wide minutes booked in each hour of the day over a date
+	 * range.
+	 *
+	 * @param fromEpochDay the first day, inclusive
+	 * @param toEpochDay   the last day, inclusive
+	 * @return 24 totals, one per hour from midnight
+	 */
+	long[] hourlyMinutes(long fromEpochDay, long toEpochDay) {
+		long[] hours = new long[24];
+		for (long day = fromEpochDay; day <= toEpochDay; day++) {
+			int[] totals = hospital.get(day);
+			if (totals != null) {
+				for (int hour = 0; hour < 24; hour++) {
+					hours[hour] += totals[HOURS + hour];
+				}
+			}
+		}
+		return hours;
+	}
+
+	/**
+	 * Counts the appointments of each treatment type over a date range.
+	 *
+	 * @param fromEpochDay the first day, inclusive
+	 * @param toEpochDay   the last day, inclusive
+	 * @return the count per treatment type
+	 */
+	Map<String, Integer> treatmentMix(long fromEpochDay, long toEpochDay) {
+		Map<String, Integer> mix = new HashMap<>();
+		for (long day = fromEpochDay; day <= toEpochDay; day++) {
+			Map<String, Integer> counts = treatments.get(day);
+			if (counts != null) {
+				counts.forEach((type, count) -> mix.merge(type, count, Integer::sum));
+			}
+		}
+		return mix;
+	}
+
+	private static long sum(long fromEpochDay, long toEpochDay, Map<Long, Integer> days) {
+		long total = 0;
+		if (days != null) {
+			for (long day = fromEpochDay; day <= toEpochDay; day++) {
+				Integer minutes = days.get(day);
+				if (minutes != null) {
+					total += minutes;
+				}
+			}
+		}
+		return total;
+	}
+
+	private int[] hospitalGrid(YearMonth month, int field) {
+		int[] grid = new int[month.lengthOfMonth()];
+		long first = month.atDay(1).toEpochDay();
+		for (int i = 0; i < grid.length; i++) {
+			int[] totals = hospital.get(first + i);
+			if (totals != null) {
+				grid[i] = totals[field];
+			}
+		}
+		return grid;
+	}
+
+	private static int[] grid(YearMonth month, Map<Long, Integer> days) {
+		int[] grid = new int[month.lengthOfMonth()];
+		if (days != null) {
+			long first = month.atDay(1).toEpochDay();
+			for (int i = 0; i < grid.length; i++) {
+				Integer minutes = days.get(first + i);
+				if (minutes != null) {
+					grid[i] = minutes;
+				}
+			}
+		}
+		return grid;
+	}
+}
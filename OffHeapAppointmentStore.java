@@ -0,0 +1,388 @@
+package project;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Keeps a diary's appointments as fixed-width records in a direct buffer owned
+ * by an {@link OffHeapArena}. Appointment objects are only created when
+ * appointments are read; conflict checks compare the raw fields in place.
+ * <p>
+ * A record keeps its position until it is removed, so indexes can refer to
+ * appointments by position instead of holding objects. Removed positions are
+ * reused by later additions; each record carries a sequence number so results
+ * still come back in the order appointments were added. The treatment and
+ * patient strings a record refers to are released when it is removed, or when
+ * the store itself becomes unreachable.
+ * <p>
+ * Because reads return fresh objects, {@link #remove(Appointment)} removes a
+ * record with the same field values rather than the same instance.
+ */
+class OffHeapAppointmentStore implements AppointmentStore {
+	// Record layout
+	private static final int EPOCH_DAY = 0;
+	private static final int START = 4;
+	private static final int END = 12;
+	private static final int TREATMENT = 20;
+	private static final int PATIENT = 24;
+	private static final int RESOURCE = 28;
+	private static final int FLAGS = 32;
+	private static final int SEQUENCE = 36;
+	private static final int RECORD_SIZE = 40;
+
+	// Flag bits
+	private static final int RECURRING = 1;
+	private static final int REMOVED = 2;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final OffHeapArena arena;
+	private final Holdings holdings;
+	private ByteBuffer records;
+	// Positions in use, including removed ones
+	private int slots;
+	private int count;
+	private int[] freePositions = new int[0];
+	private int freeCount;
+	private int nextSequence;
+	// Set once a removed position has been reused, so positions are no longer
+	// in the order records were added
+	private boolean reordered;
+	private int lastAdded = -1;
+
+	/**
+	 * Constructs an empty store.
+	 *
+	 * @param arena the arena to allocate from
+	 */
+	OffHeapAppointmentStore(OffHeapArena arena) {
+		this.arena = arena;
+		this.records = arena.allocate(INITIAL_CAPACITY * RECORD_SIZE);
+		this.holdings = new Holdings(arena, records);
+		arena.whenUnreachable(this, holdings);
+	}
+
+	@Override
+	public void add(Appointment appointment) {
+		int position;
+		if (freeCount > 0) {
+			position = freePositions[--freeCount];
+			reordered = true;
+		} else {
+			if ((slots + 1) * RECORD_SIZE > records.capacity()) {
+				grow();
+			}
+			position = slots++;
+			holdings.slots = slots;
+		}
+		int base = position * RECORD_SIZE;
+		records.putInt(base + EPOCH_DAY, (int) appointment.getDate().toEpochDay());
+		records.putLong(base + START, appointment.getStartTime().toNanoOfDay());
+		records.putLong(base + END, appointment.getEndTime().toNanoOfDay());
+		records.putInt(base + TREATMENT, arena.acquireString(appointment.getTreatmentType()));
+		records.putInt(base + PATIENT, arena.acquireString(appointment.getPatientName()));
+		records.putInt(base + RESOURCE, arena.resourceId(appointment.getResource()));
+		records.putInt(base + FLAGS, appointment.isRecurring() ? RECURRING : 0);
+		records.putInt(base + SEQUENCE, nextSequence++);
+		count++;
+		lastAdded = position;
+	}
+
+	@Override
+	public boolean remove(Appointment appointment) {
+		for (int i = 0; i < slots; i++) {
+			if (isLive(i) && matches(i, appointment)) {
+				release(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean removeIf(Predicate<Appointment> filter) {
+		boolean removed = false;
+		for (int i : positionsInOrder(Long.MIN_VALUE, Long.MAX_VALUE, false)) {
+			if (filter.test(read(i))) {
+				release(i);
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public List<Appointment> toList() {
+		return readAll(positionsInOrder(Long.MIN_VALUE, Long.MAX_VALUE, false));
+	}
+
+	@Override
+	public List<Appointment> onDate(LocalDate date) {
+		long epochDay = date.toEpochDay();
+		return readAll(positionsInOrder(epochDay, epochDay, true));
+	}
+
+	@Override
+	public List<Appointment> between(long fromEpochDay, long toEpochDay) {
+		return readAll(positionsInOrder(fromEpochDay, toEpochDay, true));
+	}
+
+	@Override
+	public List<Appointment> page(long fromEpochDay, long toEpochDay, long skip, int limit) {
+		// The positions in the range are ordered first and only the page's
+		// records are read
+		int[] positions = positionsInOrder(fromEpochDay, toEpochDay, true);
+		List<Appointment> result = new ArrayList<>();
+		for (long i = skip; i < positions.length && result.size() < limit; i++) {
+			result.add(read(positions[(int) i]));
+		}
+		return result;
+	}
+
+	@Override
+	public List<Appointment> forPatient(String patientName) {
+		// Patient names are stored as ids, so records are compared in place
+		int patient = arena.existingStringId(patientName);
+		if (patient < 0) {
+			return new ArrayList<>();
+		}
+		int[] positions = new int[count];
+		int matching = 0;
+		for (int i = 0; i < slots; i++) {
+			if (isLive(i) && records.getInt(i * RECORD_SIZE + PATIENT) == patient) {
+				positions[matching++] = i;
+			}
+		}
+		positions = Arrays.copyOf(positions, matching);
+		sort(positions, new int[matching], 0, matching, true);
+		return readAll(positions);
+	}
+
+	@Override
+	public boolean conflicts(long epochDay, long start, long end, Resource resource) {
+		// Only bookings of the same resource conflict
+		int resourceId = arena.existingResourceId(resource);
+		if (resourceId < 0) {
+			return false;
+		}
+		for (int i = 0; i < slots; i++) {
+			int base = i * RECORD_SIZE;
+			if (records.getInt(base + EPOCH_DAY) == epochDay && records.getInt(base + RESOURCE) == resourceId
+					&& (records.getInt(base + FLAGS) & REMOVED) == 0 && records.getLong(base + START) < end
+					&& records.getLong(base + END) > start) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public int positionOf(Appointment appointment) {
+		if (lastAdded >= 0 && isLive(lastAdded) && matches(lastAdded, appointment)) {
+			return lastAdded;
+		}
+		int latest = -1;
+		for (int i = 0; i < slots; i++) {
+			if (isLive(i) && matches(i, appointment)
+					&& (latest < 0 || sequence(i) > sequence(latest))) {
+				latest = i;
+			}
+		}
+		return latest;
+	}
+
+	@Override
+	public Appointment at(int position) {
+		return position >= 0 && position < slots && isLive(position) ? read(position) : null;
+	}
+
+	@Override
+	public void forEach(ObjIntConsumer<Appointment> action) {
+		for (int i : positionsInOrder(Long.MIN_VALUE, Long.MAX_VALUE, false)) {
+			action.accept(read(i), i);
+		}
+	}
+
+	@Override
+	public AppointmentStore copy() {
+		OffHeapAppointmentStore copy = new OffHeapAppointmentStore(arena);
+		copy.ensureCapacity(slots);
+		copy.records.put(0, records, 0, slots * RECORD_SIZE);
+		copy.slots = slots;
+		copy.holdings.slots = slots;
+		copy.count = count;
+		copy.freePositions = Arrays.copyOf(freePositions, freeCount);
+		copy.freeCount = freeCount;
+		copy.nextSequence = nextSequence;
+		copy.reordered = reordered;
+		for (int i = 0; i < slots; i++) {
+			if (isLive(i)) {
+				arena.acquireString(records.getInt(i * RECORD_SIZE + TREATMENT));
+				arena.acquireString(records.getInt(i * RECORD_SIZE + PATIENT));
+			}
+		}
+		return copy;
+	}
+
+	private Appointment read(int index) {
+		int base = index * RECORD_SIZE;
+		return new Appointment(LocalDate.ofEpochDay(records.getInt(base + EPOCH_DAY)),
+				LocalTime.ofNanoOfDay(records.getLong(base + START)),
+				LocalTime.ofNanoOfDay(records.getLong(base + END)), arena.string(records.getInt(base + TREATMENT)),
+				arena.string(records.getInt(base + PATIENT)), (records.getInt(base + FLAGS) & RECURRING) != 0,
+				arena.resource(records.getInt(base + RESOURCE)));
+	}
+
+	private List<Appointment> readAll(int[] positions) {
+		List<Appointment> result = new ArrayList<>(positions.length);
+		for (int position : positions) {
+			result.add(read(position));
+		}
+		return result;
+	}
+
+	private boolean matches(int index, Appointment appt) {
+		int base = index * RECORD_SIZE;
+		return records.getInt(base + EPOCH_DAY) == appt.getDate().toEpochDay()
+				&& records.getLong(base + START) == appt.getStartTime().toNanoOfDay()
+				&& records.getLong(base + END) == appt.getEndTime().toNanoOfDay()
+				&& records.getInt(base + TREATMENT) == arena.existingStringId(appt.getTreatmentType())
+				&& records.getInt(base + PATIENT) == arena.existingStringId(appt.getPatientName())
+				&& records.getInt(base + RESOURCE) == arena.existingResourceId(appt.getResource())
+				&& ((records.getInt(base + FLAGS) & RECURRING) != 0) == appt.isRecurring();
+	}
+
+	private boolean isLive(int index) {
+		return (records.getInt(index * RECORD_SIZE + FLAGS) & REMOVED) == 0;
+	}
+
+	private int sequence(int index) {
+		return records.getInt(index * RECORD_SIZE + SEQUENCE);
+	}
+
+	/**
+	 * Marks a record removed, releases its strings and frees its position.
+	 */
+	private void release(int index) {
+		int base = index * RECORD_SIZE;
+		records.putInt(base + FLAGS, records.getInt(base + FLAGS) | REMOVED);
+		arena.releaseString(records.getInt(base + TREATMENT));
+		arena.releaseString(records.getInt(base + PATIENT));
+		if (freeCount == freePositions.length) {
+			freePositions = Arrays.copyOf(freePositions, Math.max(INITIAL_CAPACITY, freeCount * 2));
+		}
+		freePositions[freeCount++] = index;
+		count--;
+	}
+
+	/**
+	 * Gets the positions of the live records dated within a range, ordered by
+	 * date and start time, or only in the order they were added.
+	 */
+	private int[] positionsInOrder(long fromEpochDay, long toEpochDay, boolean chronological) {
+		int[] positions = new int[count];
+		int matching = 0;
+		for (int i = 0; i < slots; i++) {
+			int epochDay = records.getInt(i * RECORD_SIZE + EPOCH_DAY);
+			if (isLive(i) && epochDay >= fromEpochDay && epochDay <= toEpochDay) {
+				positions[matching++] = i;
+			}
+		}
+		if (matching < positions.length) {
+			positions = Arrays.copyOf(positions, matching);
+		}
+		if (chronological || reordered) {
+			sort(positions, new int[matching], 0, matching, chronological);
+		}
+		return positions;
+	}
+
+	/**
+	 * Merge sorts record positions by date and start time, or only by the
+	 * order they were added, which also breaks ties in date and time.
+	 */
+	private void sort(int[] positions, int[] scratch, int from, int to, boolean chronological) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(positions, scratch, from, middle, chronological);
+		sort(positions, scratch, middle, to, chronological);
+		System.arraycopy(positions, from, scratch, from, to - from);
+		for (int i = from, left = from, right = middle; i < to; i++) {
+			if (right >= to || left < middle && !isBefore(scratch[right], scratch[left], chronological)) {
+				positions[i] = scratch[left++];
+			} else {
+				positions[i] = scratch[right++];
+			}
+		}
+	}
+
+	private boolean isBefore(int a, int b, boolean chronological) {
+		if (chronological) {
+			int dayA = records.getInt(a * RECORD_SIZE + EPOCH_DAY);
+			int dayB = records.getInt(b * RECORD_SIZE + EPOCH_DAY);
+			if (dayA != dayB) {
+				return dayA < dayB;
+			}
+			long startA = records.getLong(a * RECORD_SIZE + START);
+			long startB = records.getLong(b * RECORD_SIZE + START);
+			if (startA != startB) {
+				return startA < startB;
+			}
+		}
+		return sequence(a) < sequence(b);
+	}
+
+	private void grow() {
+		ensureCapacity(Math.max(INITIAL_CAPACITY, slots * 2));
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity * RECORD_SIZE <= records.capacity()) {
+			return;
+		}
+		ByteBuffer larger = arena.allocate(capacity * RECORD_SIZE);
+		larger.put(0, records, 0, slots * RECORD_SIZE);
+		records = larger;
+		holdings.records = larger;
+	}
+
+	/**
+	 * The strings a store's live records refer to, released once the store is
+	 * unreachable, for example when an undo snapshot is discarded. It must not
+	 * refer to the store itself.
+	 */
+	private static final class Holdings implements Runnable {
+		private final OffHeapArena arena;
+		private ByteBuffer records;
+		private int slots;
+
+		Holdings(OffHeapArena arena, ByteBuffer records) {
+			this.arena = arena;
+			this.records = records;
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < slots; i++) {
+				int base = i * RECORD_SIZE;
+				if ((records.getInt(base + FLAGS) & REMOVED) == 0) {
+					arena.releaseString(records.getInt(base + TREATMENT));
+					arena.releaseString(records.getInt(base + PATIENT));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package project;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owns the direct memory and string dictionaries behind off-heap diaries.
+ * Diaries created through a scheduler configured with an arena keep their
+ * appointments as fixed-width records in direct buffers allocated here, so the
+ * garbage collector no longer traces one object graph per appointment.
+ * Treatment types, patient names and resources are stored once in the
+ * arena's dictionaries and referenced by index. Strings are reference counted
+ * by the records that use them, so a patient's name is dropped from the
+ * dictionary, and its id reused, once no store refers to it any more.
+ * Resources are few and are kept for the life of the arena.
+ * <p>
+ * Direct memory is returned when the stores holding it become unreachable,
+ * for example when an undo snapshot is discarded. Closing the arena drops its
+ * dictionaries; diaries that use it must not be accessed afterwards.
+ */
+public class OffHeapArena implements AutoCloseable {
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private final List<String> strings = new ArrayList<>();
+	private final Map<String, Integer> stringIds = new HashMap<>();
+	private int[] stringReferences = new int[16];
+	private int[] freeStringIds = new int[16];
+	private int freeStringCount;
+	private final List<Resource> resources = new ArrayList<>();
+	private final Map<Resource, Integer> resourceIds = new HashMap<>();
+	private long allocatedBytes;
+	private boolean closed;
+
+	/**
+	 * Gets the number of bytes of direct memory currently held by the arena's
+	 * stores.
+	 *
+	 * @return the allocated byte count
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Gets the number of distinct strings currently referred to by the arena's
+	 * stores.
+	 *
+	 * @return the string count
+	 */
+	public synchronized int getStringCount() {
+		return stringIds.size();
+	}
+
+	/**
+	 * Closes the arena and drops its dictionaries.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		strings.clear();
+		stringIds.clear();
+		resources.clear();
+		resourceIds.clear();
+	}
+
+	/**
+	 * Creates an empty appointment store backed by this arena.
+	 *
+	 * @return the new store
+	 */
+	AppointmentStore newStore() {
+		return new OffHeapAppointmentStore(this);
+	}
+
+	synchronized ByteBuffer allocate(int bytes) {
+		checkOpen();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes);
+		allocatedBytes += bytes;
+		CLEANER.register(buffer, () -> freed(bytes));
+		return buffer;
+	}
+
+	/**
+	 * Runs an action once an object becomes unreachable, as used by stores to
+	 * release the strings their records refer to.
+	 */
+	void whenUnreachable(Object owner, Runnable action) {
+		CLEANER.register(owner, action);
+	}
+
+	private synchronized void freed(int bytes) {
+		allocatedBytes -= bytes;
+	}
+
+	/**
+	 * Gets a string's id, adding it to the dictionary if needed, and counts one
+	 * more reference to it.
+	 *
+	 * @return the id, or -1 if the string is null
+	 */
+	synchronized int acquireString(String value) {
+		if (value == null) {
+			return -1;
+		}
+		checkOpen();
+		Integer id = stringIds.get(value);
+		if (id == null) {
+			if (freeStringCount > 0) {
+				id = freeStringIds[--freeStringCount];
+				strings.set(id, value);
+			} else {
+				id = strings.size();
+				strings.add(value);
+				if (id == stringReferences.length) {
+					stringReferences = Arrays.copyOf(stringReferences, id * 2);
+				}
+			}
+			stringIds.put(value, id);
+		}
+		stringReferences[id]++;
+		return id;
+	}
+
+	/**
+	 * Counts one more reference to a string already in the dictionary, as when
+	 * a store copies a record.
+	 */
+	synchronized void acquireString(int id) {
+		if (id >= 0 && !closed) {
+			stringReferences[id]++;
+		}
+	}
+
+	/**
+	 * Drops a reference to a string, removing it from the dictionary when it
+	 * was the last.
+	 */
+	synchronized void releaseString(int id) {
+		if (id < 0 || closed || --stringReferences[id] > 0) {
+			return;
+		}
+		stringIds.remove(strings.get(id));
+		strings.set(id, null);
+		if (freeStringCount == freeStringIds.length) {
+			freeStringIds = Arrays.copyOf(freeStringIds, freeStringCount * 2);
+		}
+		freeStringIds[freeStringCount++] = id;
+	}
+
+	/**
+	 * Looks up a string's id without adding it.
+	 *
+	 * @return the id, or -1 if the string is null or has never been stored
+	 */
+	synchronized int existingStringId(String value) {
+		Integer id = value == null ? null : stringIds.get(value);
+		return id == null ? -1 : id;
+	}
+
+	synchronized String string(int id) {
+		checkOpen();
+		return id < 0 ? null : strings.get(id);
+	}
+
+	synchronized int resourceId(Resource resource) {
+		if (resource == null) {
+			return -1;
+		}
+		checkOpen();
+		Integer id = resourceIds.get(resource);
+		if (id == null) {
+			id = resources.size();
+			Resource copy = new Resource(resource.getName(), resource.getType(), resource.getLocation());
+			resources.add(copy);
+			resourceIds.put(copy, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Looks up a resource's id without adding it.
+	 *
+	 * @return the id, or -1 if the resource has never been stored
+	 */
+	synchronized int existingResourceId(Resource resource) {
+		Integer id = resource == null ? null : resourceIds.get(resource);
+		return id == null ? -1 : id;
+	}
+
+	synchronized Resource resource(int id) {
+		checkOpen();
+		return id < 0 ? null : resources.get(id);
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Off-heap arena is closed");
+		}
+	}
+}
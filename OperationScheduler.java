@@ -1,6 +1,10 @@
 package project;
 
-import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 
 /**
  * Entry point for the Operation Scheduler application.
@@ -9,24 +13,85 @@ import java.util.Scanner;
  * for managing scheduled operations.
  */
 public class OperationScheduler {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_BINARY_PORT = 9300;
+    private static final long DEFAULT_MAX_STALENESS_MILLIS = 2_000;
+    // Where a router records the bookings across servers it committed
+    private static final String DEFAULT_DECISION_LOG = "router-decisions.log";
 
     /**
      * Main method that starts the Operation Scheduler program.
      * 
      * Prompts the user to select the interface (Console or GUI), initializes the scheduler,
-     * and starts the chosen interface.
+     * and starts the chosen interface. Run with {@code --server [port]} to serve the
+     * scheduler over HTTP instead, optionally followed by {@code --replicate port} to ship
+     * its changes to replicas and {@code --follow host:port [--max-staleness ms]} to be a
+     * read-only replica itself (see {@link SchedulerServer}), with {@code --binary [port]} to
+     * serve the binary protocol of {@link BinaryProtocolServer} instead, with
+     * {@code --router port shards [--decisions file]} to route that API
+     * across several such servers (see {@link ShardRouter}), with {@code --batch file} to run the commands in a
+     * script ({@code -} for standard input), or with {@code --exec command...} to run
+     * each argument as a command; see {@link BatchRunner}. Batch runs exit with status
+     * 1 if a command fails and never load Swing. {@code --console} and {@code --gui}
+     * skip the interface prompt, for kiosks that restart straight into one interface.
      * 
-     * @param args command-line arguments (not used)
+     * @param args command-line arguments
+     * @throws IOException if the server port can't be bound or the script can't be read
      */
-    public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1 && args[0].equals("--batch")) {
+            BatchRunner runner = new BatchRunner(new Scheduler(), System.out);
+            boolean ok;
+            try (BufferedReader script = new BufferedReader(args[1].equals("-")
+                    ? new InputStreamReader(System.in) : new FileReader(args[1]))) {
+                ok = runner.run(script, args[1]);
+            }
+            System.exit(ok ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--exec")) {
+            BatchRunner runner = new BatchRunner(new Scheduler(), System.out);
+            for (int i = 1; i < args.length; i++) {
+                if (!runner.execute(args[i], "argument " + i)) {
+                    System.exit(1);
+                }
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            startServer(args);
+            return;
+        }
 
-        System.out.println("Choose interface:");
-        System.out.println("1. Console UI");
-        System.out.println("2. GUI");
+        if (args.length > 0 && args[0].equals("--binary")) {
+            BinaryProtocolServer server = new BinaryProtocolServer(new Scheduler(),
+                    args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BINARY_PORT);
+            server.start();
+            System.out.println("Binary protocol server listening on port " + server.getPort());
+            StartupTiming.promptShown("binary");
+            return;
+        }
 
-        int choice = scanner.nextInt();
-        scanner.nextLine(); // Consume the newline character
+        if (args.length > 2 && args[0].equals("--router")) {
+            String decisions = args.length > 4 && args[3].equals("--decisions") ? args[4] : DEFAULT_DECISION_LOG;
+            ShardRouter router = new ShardRouter(args[2], Integer.parseInt(args[1]), Paths.get(decisions));
+            router.start();
+            System.out.println("Shard router listening on port " + router.getPort());
+            StartupTiming.promptShown("router");
+            return;
+        }
+
+        int choice;
+        if (args.length > 0 && args[0].equals("--console")) {
+            choice = 1;
+        } else if (args.length > 0 && args[0].equals("--gui")) {
+            choice = 2;
+        } else {
+            System.out.println("Choose interface:");
+            System.out.println("1. Console UI");
+            System.out.println("2. GUI");
+            StartupTiming.promptShown("interface");
+            choice = readChoice();
+        }
 
         Scheduler scheduler = new Scheduler();
 
@@ -35,15 +100,93 @@ public class OperationScheduler {
             ConsoleUI consoleUI = new ConsoleUI(scheduler);
             consoleUI.start();
         } else if (choice == 2) {
-            // Launch the GUI using Swing
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                new SchedulerGUI(scheduler);
-            });
+            launchGui(scheduler);
         } else {
             // Handle invalid input
             System.out.println("Invalid choice. Exiting.");
         }
+    }
+
+    /**
+     * Starts the HTTP server from the {@code --server} arguments, with any
+     * replication options.
+     *
+     * @param args command-line arguments, starting with {@code --server}
+     * @throws IOException if a port can't be bound
+     */
+    private static void startServer(String[] args) throws IOException {
+        int next = 1;
+        int port = DEFAULT_PORT;
+        if (args.length > 1 && !args[1].startsWith("--")) {
+            port = Integer.parseInt(args[1]);
+            next = 2;
+        }
+        int replicatePort = -1;
+        String follow = null;
+        long maxStaleness = DEFAULT_MAX_STALENESS_MILLIS;
+        for (; next + 1 < args.length; next += 2) {
+            switch (args[next]) {
+                case "--replicate":
+                    replicatePort = Integer.parseInt(args[next + 1]);
+                    break;
+                case "--follow":
+                    follow = args[next + 1];
+                    break;
+                case "--max-staleness":
+                    maxStaleness = Long.parseLong(args[next + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown server option: " + args[next]);
+            }
+        }
+        if (next < args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[next]);
+        }
+        SchedulerServer server = new SchedulerServer(new Scheduler(), port);
+        if (follow != null) {
+            int colon = follow.lastIndexOf(':');
+            server.follow(follow.substring(0, colon), Integer.parseInt(follow.substring(colon + 1)), maxStaleness);
+        }
+        if (replicatePort >= 0) {
+            server.replicateTo(replicatePort);
+        }
+        server.start();
+        System.out.println("Scheduler server listening on port " + server.getPort()
+                + (follow != null ? ", following " + follow : "")
+                + (replicatePort >= 0 ? ", replicating on port " + server.getReplicationPort() : ""));
+        StartupTiming.promptShown("server");
+    }
 
-        scanner.close();
+    /**
+     * Reads the interface choice from standard input a byte at a time, so no input
+     * meant for the console interface is buffered away, and without the regex
+     * machinery a {@link java.util.Scanner} loads before the first prompt.
+     *
+     * @return the number entered, or -1 if the line isn't a number
+     * @throws IOException if standard input can't be read
+     */
+    private static int readChoice() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = System.in.read()) != -1 && c != '\n') {
+            line.append((char) c);
+        }
+        try {
+            return Integer.parseInt(line.toString().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Launches the GUI on the event dispatch thread. Kept apart from {@link #main}
+     * so Swing classes are only loaded when the GUI is chosen.
+     *
+     * @param scheduler the scheduler to show
+     */
+    private static void launchGui(Scheduler scheduler) {
+        javax.swing.SwingUtilities.invokeLater(() -> {
+            new SchedulerGUI(scheduler);
+        });
     }
 }
@@ -0,0 +1,230 @@
+package project;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Inverted index from patient name to the bookings of that patient across
+ * every diary of a scheduler. Names are matched ignoring case and surrounding
+ * whitespace. Each patient's bookings are kept in chronological order, so a
+ * lookup costs only the number of bookings returned.
+ * <p>
+ * Appointments in off-heap diaries are indexed by their position in the store
+ * and only read when looked up, so the index holds no appointment objects for
+ * them. Lazily loaded diaries replace their appointment objects whenever they
+ * are reloaded, so theirs are indexed by time alone and found again in the
+ * diary when looked up. Other appointments are indexed by the objects
+ * themselves.
+ */
+final class PatientIndex {
+	/**
+	 * The position given for an appointment to be found again by its time
+	 * when read, rather than kept.
+	 */
+	static final int READ_AGAIN = -2;
+
+	private final Map<HealthProfessional, Diary> diaries;
+	private final Map<String, List<Entry>> byPatient = new HashMap<>();
+
+	private PatientIndex(Map<HealthProfessional, Diary> diaries) {
+		this.diaries = diaries;
+	}
+
+	/**
+	 * Builds an index over a scheduler's diaries.
+	 *
+	 * @param diaries the diaries to index, by owner; the index reads off-heap
+	 *                appointments from this map as it changes
+	 * @return the index
+	 */
+	static PatientIndex build(Map<HealthProfessional, Diary> diaries) {
+		PatientIndex index = new PatientIndex(diaries);
+		for (Diary diary : diaries.values()) {
+			diary.indexPatients(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Records a booking.
+	 *
+	 * @param professional the owner of the diary the appointment was added to
+	 * @param appointment  the appointment
+	 * @param position     the appointment's position in an off-heap store, -1
+	 *                     to keep the appointment object, or {@link #READ_AGAIN}
+	 */
+	void add(HealthProfessional professional, Appointment appointment, int position) {
+		List<Entry> entries = byPatient.computeIfAbsent(key(appointment.getPatientName()), k -> new ArrayList<>());
+		Entry entry = new Entry(professional, appointment, position);
+		int pos = entries.size();
+		while (pos > 0 && entries.get(pos - 1).isAfter(entry)) {
+			pos--;
+		}
+		entries.add(pos, entry);
+	}
+
+	/**
+	 * Forgets a booking. Off-heap diaries hand out fresh appointment objects,
+	 * so a booking with the same details counts as the same booking; for those
+	 * the entry whose position no longer holds an appointment is the one
+	 * removed.
+	 *
+	 * @param professional the owner of the diary the appointment was removed from
+	 * @param appointment  the appointment
+	 */
+	void remove(HealthProfessional professional, Appointment appointment) {
+		String key = key(appointment.getPatientName());
+		List<Entry> entries = byPatient.get(key);
+		if (entries == null) {
+			return;
+		}
+		Entry removed = new Entry(professional, appointment, -1);
+		int match = -1;
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			if (!entry.professional.equals(professional) || !entry.sameTime(removed)) {
+				continue;
+			}
+			if (entry.appointment == appointment) {
+				match = i;
+				break;
+			}
+			if (match < 0 && (entry.position == READ_AGAIN || (entry.position == -1
+					? sameDetails(entry.appointment, appointment)
+					: read(entry, key, null) == null))) {
+				match = i;
+			}
+		}
+		if (match >= 0) {
+			entries.remove(match);
+			if (entries.isEmpty()) {
+				byPatient.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Gets a patient's bookings.
+	 *
+	 * @param patientName the patient's name
+	 * @return an unmodifiable list of the bookings in chronological order
+	 */
+	List<Booking> lookup(String patientName) {
+		String key = key(patientName);
+		List<Entry> entries = byPatient.get(key);
+		if (entries == null) {
+			return Collections.emptyList();
+		}
+		List<Booking> bookings = new ArrayList<>(entries.size());
+		// Appointments found again, so identical bookings are each found once
+		Set<Appointment> found = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Entry entry : entries) {
+			Appointment appointment = read(entry, key, found);
+			if (appointment != null) {
+				bookings.add(new Booking(entry.professional, appointment));
+			}
+		}
+		return Collections.unmodifiableList(bookings);
+	}
+
+	/**
+	 * Checks whether a patient already has a booking overlapping an appointment.
+	 *
+	 * @param appointment the proposed appointment
+	 * @return true if the patient is already booked at that time
+	 */
+	boolean conflicts(Appointment appointment) {
+		List<Entry> entries = byPatient.get(key(appointment.getPatientName()));
+		if (entries == null) {
+			return false;
+		}
+		long epochDay = appointment.getDate().toEpochDay();
+		long start = appointment.getStartTime().toNanoOfDay();
+		long end = appointment.getEndTime().toNanoOfDay();
+		for (Entry entry : entries) {
+			if (entry.epochDay == epochDay && entry.start < end && entry.end > start) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads an indexed appointment.
+	 *
+	 * @param entry   the entry
+	 * @param patient the patient's key
+	 * @param found   appointments already found again by this lookup, to be
+	 *                skipped
+	 * @return the appointment, or null if it is no longer there
+	 */
+	private Appointment read(Entry entry, String patient, Set<Appointment> found) {
+		if (entry.position == -1) {
+			return entry.appointment;
+		}
+		Diary diary = diaries.get(entry.professional);
+		if (diary == null) {
+			return null;
+		}
+		if (entry.position >= 0) {
+			return diary.appointmentAt(entry.position);
+		}
+		for (Appointment appt : diary.getAppointmentsOnDate(LocalDate.ofEpochDay(entry.epochDay))) {
+			if (appt.getStartTime().toNanoOfDay() == entry.start && appt.getEndTime().toNanoOfDay() == entry.end
+					&& key(appt.getPatientName()).equals(patient) && found.add(appt)) {
+				return appt;
+			}
+		}
+		return null;
+	}
+
+	private static boolean sameDetails(Appointment a, Appointment b) {
+		return a.getDate().equals(b.getDate()) && a.getStartTime().equals(b.getStartTime())
+				&& a.getEndTime().equals(b.getEndTime()) && a.isRecurring() == b.isRecurring()
+				&& Objects.equals(a.getTreatmentType(), b.getTreatmentType())
+				&& Objects.equals(a.getResource(), b.getResource());
+	}
+
+	private static String key(String patientName) {
+		return patientName == null ? "" : patientName.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * One indexed booking: its time, for ordering and conflict checks, and
+	 * the appointment, its position in an off-heap store, or neither when it
+	 * is found again by its time.
+	 */
+	private static final class Entry {
+		final HealthProfessional professional;
+		final Appointment appointment;
+		final int position;
+		final long epochDay;
+		final long start;
+		final long end;
+
+		Entry(HealthProfessional professional, Appointment appointment, int position) {
+			this.professional = professional;
+			this.appointment = position == -1 ? appointment : null;
+			this.position = position;
+			this.epochDay = appointment.getDate().toEpochDay();
+			this.start = appointment.getStartTime().toNanoOfDay();
+			this.end = appointment.getEndTime().toNanoOfDay();
+		}
+
+		boolean isAfter(Entry other) {
+			return epochDay != other.epochDay ? epochDay > other.epochDay : start > other.start;
+		}
+
+		boolean sameTime(Entry other) {
+			return epochDay == other.epochDay && start == other.start && end == other.end;
+		}
+	}
+}
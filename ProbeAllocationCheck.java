@@ -0,0 +1,111 @@
+package project;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the heap allocated by availability probes, which are meant to
+ * allocate nothing, using the JVM's per-thread allocation counter. Probes are
+ * run over a generated workload with heap and off-heap diaries, after a
+ * warm-up long enough for the JIT to compile them, and the bytes allocated per
+ * probe are reported. Slot searches are reported too, per slot returned, as
+ * their only allocations should be the slots and the result list.
+ * <p>
+ * The probe inputs are drawn before measuring, so the figures count only the
+ * scheduler's own allocations. The check fails if a probe allocates more than
+ * {@link #MAX_BYTES_PER_PROBE} on average.
+ */
+public class ProbeAllocationCheck {
+	static final double MAX_BYTES_PER_PROBE = 0.01;
+	private static final int INPUTS = 1 << 16;
+
+	private ProbeAllocationCheck() {
+	}
+
+	/**
+	 * Runs the measurements. Arguments, all optional and in order:
+	 * professionals, days of bookings, and millions of probes to measure.
+	 *
+	 * @param args the command-line arguments
+	 */
+	public static void main(String[] args) {
+		int professionals = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+		int probes = (args.length > 2 ? Integer.parseInt(args[2]) : 10) * 1_000_000;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM doesn't count allocated bytes per thread");
+			System.exit(2);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		boolean ok = true;
+		for (boolean offHeap : new boolean[] { false, true }) {
+			try (OffHeapArena arena = offHeap ? new OffHeapArena() : null) {
+				Scheduler scheduler = new Scheduler();
+				scheduler.setOffHeapArena(arena);
+				LocalDate start = LocalDate.now();
+				new WorkloadGenerator(42).professionals(professionals).populate(scheduler, start,
+						start.plusDays(days - 1));
+				List<HealthProfessional> hps = new ArrayList<>(scheduler.getAllHealthProfessionals());
+				Resource resource = scheduler.getAllSharedResources().get(0);
+
+				// Inputs drawn up front: diaries, dates, start minutes and resources
+				Random random = new Random(1);
+				Diary[] diaries = new Diary[INPUTS];
+				LocalDate[] dates = new LocalDate[INPUTS];
+				int[] starts = new int[INPUTS];
+				Resource[] resources = new Resource[INPUTS];
+				for (int i = 0; i < INPUTS; i++) {
+					diaries[i] = scheduler.getDiary(hps.get(random.nextInt(hps.size())));
+					dates[i] = start.plusDays(random.nextInt(days));
+					starts[i] = Scheduler.WORKDAY_START_MINUTE + random.nextInt(16) * Scheduler.SLOT_STEP_MINUTES;
+					resources[i] = random.nextInt(4) == 0 ? resource : null;
+				}
+
+				probe(diaries, dates, starts, resources, probes);
+				long threadId = Thread.currentThread().threadId();
+				long before = threads.getThreadAllocatedBytes(threadId);
+				int free = probe(diaries, dates, starts, resources, probes);
+				long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+				double perProbe = (double) allocated / probes;
+				System.out.printf("%s diaries: %,d probes (%,d free) allocated %,d bytes, %.4f per probe%n",
+						offHeap ? "Off-heap" : "Heap", probes, free, allocated, perProbe);
+				ok &= perProbe <= MAX_BYTES_PER_PROBE;
+
+				// Searches, each with a different pair so the cache doesn't answer
+				long slots = 0;
+				long searchBefore = threads.getThreadAllocatedBytes(threadId);
+				for (int i = 0; i < 200; i++) {
+					slots += scheduler.findAvailableSlots(
+							List.of(hps.get(i % hps.size()), hps.get((i * 7 + 1) % hps.size())), List.of(resource),
+							start, start.plusDays(days - 1), 30 + 15 * (i % 4)).size();
+				}
+				long searchAllocated = threads.getThreadAllocatedBytes(threadId) - searchBefore;
+				System.out.printf("%s diaries: 200 searches returned %,d slots and allocated %,d bytes,"
+						+ " %.1f per slot%n", offHeap ? "Off-heap" : "Heap", slots, searchAllocated,
+						(double) searchAllocated / Math.max(1, slots));
+			}
+		}
+		if (!ok) {
+			System.out.printf("Probes allocated more than %.2f bytes each%n", MAX_BYTES_PER_PROBE);
+			System.exit(1);
+		}
+	}
+
+	private static int probe(Diary[] diaries, LocalDate[] dates, int[] starts, Resource[] resources, int probes) {
+		int free = 0;
+		for (int n = 0; n < probes; n++) {
+			int i = n & (INPUTS - 1);
+			if (diaries[i].isSlotAvailable(dates[i], starts[i], starts[i] + Scheduler.SLOT_STEP_MINUTES,
+					resources[i])) {
+				free++;
+			}
+		}
+		return free;
+	}
+}
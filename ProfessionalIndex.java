@@ -0,0 +1,102 @@
+package project;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Secondary indexes of a scheduler's professionals by profession and by office
+ * location. Keys are matched ignoring case and surrounding whitespace.
+ */
+final class ProfessionalIndex {
+	private final Map<String, Set<HealthProfessional>> byProfession = new HashMap<>();
+	private final Map<String, Set<HealthProfessional>> byLocation = new HashMap<>();
+
+	/**
+	 * Indexes a professional.
+	 *
+	 * @param professional the professional to add
+	 */
+	void add(HealthProfessional professional) {
+		byProfession.computeIfAbsent(key(professional.getProfession()), k -> new LinkedHashSet<>()).add(professional);
+		byLocation.computeIfAbsent(key(professional.getOfficeLocation()), k -> new LinkedHashSet<>())
+				.add(professional);
+	}
+
+	/**
+	 * Removes a professional from the indexes.
+	 *
+	 * @param professional the professional to remove
+	 */
+	void remove(HealthProfessional professional) {
+		remove(byProfession, key(professional.getProfession()), professional);
+		remove(byLocation, key(professional.getOfficeLocation()), professional);
+	}
+
+	/**
+	 * Rebuilds the indexes from scratch.
+	 *
+	 * @param professionals every professional of the scheduler
+	 */
+	void rebuild(Collection<HealthProfessional> professionals) {
+		byProfession.clear();
+		byLocation.clear();
+		for (HealthProfessional professional : professionals) {
+			add(professional);
+		}
+	}
+
+	/**
+	 * Finds the professionals with a profession and/or office location.
+	 *
+	 * @param profession the profession, or null for any
+	 * @param location   the office location, or null for any
+	 * @return the matching professionals, in the order they were added
+	 */
+	List<HealthProfessional> find(String profession, String location) {
+		Set<HealthProfessional> withProfession = profession == null ? null : lookup(byProfession, profession);
+		Set<HealthProfessional> atLocation = location == null ? null : lookup(byLocation, location);
+		List<HealthProfessional> result = new ArrayList<>();
+		if (withProfession == null && atLocation == null) {
+			for (Set<HealthProfessional> group : byProfession.values()) {
+				result.addAll(group);
+			}
+		} else if (atLocation == null) {
+			result.addAll(withProfession);
+		} else if (withProfession == null) {
+			result.addAll(atLocation);
+		} else {
+			// Walk the smaller set, probing the larger
+			Set<HealthProfessional> small = withProfession.size() <= atLocation.size() ? withProfession : atLocation;
+			Set<HealthProfessional> large = small == withProfession ? atLocation : withProfession;
+			for (HealthProfessional professional : small) {
+				if (large.contains(professional)) {
+					result.add(professional);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Set<HealthProfessional> lookup(Map<String, Set<HealthProfessional>> index, String value) {
+		Set<HealthProfessional> group = index.get(key(value));
+		return group == null ? Set.of() : group;
+	}
+
+	private static void remove(Map<String, Set<HealthProfessional>> index, String key,
+			HealthProfessional professional) {
+		Set<HealthProfessional> group = index.get(key);
+		if (group != null && group.remove(professional) && group.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	private static String key(String value) {
+		return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,43 @@
+package project;
+
+/**
+ * An available time slot together with the professional it is available with.
+ */
+public class ProfessionalSlot {
+	private HealthProfessional professional;
+	private TimeSlot slot;
+
+	/**
+	 * Constructs a new ProfessionalSlot.
+	 * 
+	 * @param professional the professional who is free
+	 * @param slot         the free slot
+	 */
+	public ProfessionalSlot(HealthProfessional professional, TimeSlot slot) {
+		this.professional = professional;
+		this.slot = slot;
+	}
+
+	/**
+	 * Gets the professional.
+	 * 
+	 * @return the professional who is free
+	 */
+	public HealthProfessional getProfessional() {
+		return professional;
+	}
+
+	/**
+	 * Gets the slot.
+	 * 
+	 * @return the free slot
+	 */
+	public TimeSlot getSlot() {
+		return slot;
+	}
+
+	@Override
+	public String toString() {
+		return slot + " with " + professional;
+	}
+}
@@ -0,0 +1,314 @@
+package project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks that a replica keeps up with its primary: it catches up with what it
+ * missed, refuses changes and refuses reads once too stale. After an outage
+ * it resumes where it left off without a snapshot. Moved to a primary with a
+ * different history, it starts again from a snapshot. Once promoted it
+ * accepts changes.
+ * <p>
+ * The replica follows the primaries through a relay run by the check, which
+ * cuts its connection for the outage and then points it at the second
+ * primary. Run with the first primary's URL and replication address, the
+ * second's, the relay's port and the URL of a replica following the relay's
+ * port, to check servers started separately, for example by
+ * {@code check.sh}; without them everything is started in this JVM. The
+ * replica is promoted at the end, so it can only be checked once.
+ */
+public class ReplicationCheck {
+	private static final long MAX_STALENESS_MILLIS = 2_000;
+	private static final long CATCH_UP_MILLIS = 10_000;
+
+	private ReplicationCheck() {
+	}
+
+	/**
+	 * Runs the checks.
+	 *
+	 * @param args optionally the first primary's URL and replication
+	 *             {@code host:port}, the second primary's, the relay's port, and
+	 *             the replica's URL; the replica must follow the relay's port
+	 *             on localhost with a maximum staleness of 2000 ms
+	 * @throws Exception if the servers can't be started or reached
+	 */
+	public static void main(String[] args) throws Exception {
+		String first;
+		String firstReplication;
+		String second;
+		String secondReplication;
+		Relay relay;
+		String replica;
+		if (args.length >= 6) {
+			first = args[0];
+			firstReplication = args[1];
+			second = args[2];
+			secondReplication = args[3];
+			relay = new Relay(Integer.parseInt(args[4]));
+			replica = args[5];
+		} else {
+			SchedulerServer primary = new SchedulerServer(new Scheduler(), 0);
+			SchedulerServer other = new SchedulerServer(new Scheduler(), 0);
+			primary.replicateTo(0);
+			other.replicateTo(0);
+			primary.start();
+			other.start();
+			first = "http://localhost:" + primary.getPort();
+			firstReplication = "localhost:" + primary.getReplicationPort();
+			second = "http://localhost:" + other.getPort();
+			secondReplication = "localhost:" + other.getReplicationPort();
+			int relayPort;
+			try (ServerSocket unused = new ServerSocket(0)) {
+				relayPort = unused.getLocalPort();
+			}
+			relay = new Relay(relayPort);
+			SchedulerServer follower = new SchedulerServer(new Scheduler(), 0);
+			follower.follow("localhost", relayPort, MAX_STALENESS_MILLIS);
+			follower.start();
+			replica = "http://localhost:" + follower.getPort();
+		}
+		Checks checks = new Checks("Replica " + replica);
+		for (String url : List.of(first, second, replica)) {
+			checks.awaitServer(url);
+		}
+		checks.run(() -> {
+			try {
+				run(checks, first, firstReplication, second, secondReplication, relay, replica);
+			} finally {
+				relay.close();
+			}
+		});
+	}
+
+	private static void run(Checks checks, String first, String firstReplication, String second,
+			String secondReplication, Relay relay, String replica) throws IOException {
+		String run = UUID.randomUUID().toString().substring(0, 8);
+		String surgeon = "Check " + run + " Surgeon";
+		String nurse = "Check " + run + " Nurse";
+		checks.status("add a professional on the first primary", 201,
+				checks.post(first + "/professionals", professional(surgeon)));
+		checks.status("add another", 201, checks.post(first + "/professionals", professional(nurse)));
+		book(checks, first, List.of(surgeon, nurse), 0, 20, run);
+
+		// Catching up from the first primary
+		relay.open(firstReplication);
+		checks.await("the replica catches up", CATCH_UP_MILLIS, () -> caughtUp(checks, first, replica));
+		Map<String, Object> status = checks.object(replica + "/replication");
+		checks.check("the replica reports itself connected as a replica",
+				"replica".equals(status.get("role")) && Boolean.TRUE.equals(status.get("connected")));
+		checks.check("the replica has the same professionals and appointments",
+				sameContents(checks, first, replica, surgeon, nurse));
+		checks.status("the replica refuses changes", 403,
+				checks.post(replica + "/professionals", professional("Check " + run + " Refused")));
+		long snapshots = snapshots(checks, replica);
+
+		// An outage longer than the staleness bound, then a resume
+		relay.cut();
+		book(checks, first, List.of(surgeon), 20, 10, run);
+		checks.await("the replica refuses reads once too stale", MAX_STALENESS_MILLIS + CATCH_UP_MILLIS,
+				() -> checks.get(replica + "/professionals").status == 503);
+		relay.open(firstReplication);
+		checks.await("the replica catches up after the outage", CATCH_UP_MILLIS,
+				() -> caughtUp(checks, first, replica));
+		checks.check("it resumed without a snapshot", snapshots(checks, replica) == snapshots);
+		checks.check("the replica has what was booked during the outage",
+				sameContents(checks, first, replica, surgeon, nurse));
+
+		// A primary with a different history sends a snapshot
+		String other = "Check " + run + " Radiologist";
+		checks.status("add a professional on the second primary", 201,
+				checks.post(second + "/professionals", professional(other)));
+		book(checks, second, List.of(other), 0, 5, run);
+		relay.open(secondReplication);
+		checks.await("the replica catches up with the second primary from a snapshot", CATCH_UP_MILLIS,
+				() -> caughtUp(checks, second, replica) && snapshots(checks, replica) == snapshots + 1);
+		checks.check("the replica now has the second primary's contents",
+				sameContents(checks, second, replica, other) && checks.get(
+						replica + "/appointments?professional=" + TransactionCheck.encode(surgeon)).status == 404);
+
+		// Failover
+		relay.cut();
+		checks.status("promote the replica", 200, checks.post(replica + "/replication/promote", Map.of()));
+		checks.status("the promoted replica accepts changes", 201,
+				checks.post(replica + "/professionals", professional("Check " + run + " Promoted")));
+		checks.check("and serves reads", checks.get(replica + "/professionals").status == 200);
+	}
+
+	private static void book(Checks checks, String url, List<String> names, int from, int count, String run) {
+		LocalDate day = LocalDate.now().plusYears(1);
+		int booked = 0;
+		for (int i = from; i < from + count; i++) {
+			Map<String, Object> body = new LinkedHashMap<>();
+			body.put("professionals", names);
+			body.put("date", day.plusDays(i / 8).toString());
+			body.put("start", String.format("%02d:00", 9 + i % 8));
+			body.put("end", String.format("%02d:30", 9 + i % 8));
+			body.put("treatment", "Check");
+			body.put("patient", "Patient " + run + " " + i);
+			if (checks.post(url + "/appointments", body).status == 201) {
+				booked++;
+			}
+		}
+		checks.check("book " + count + " appointments", booked == count);
+	}
+
+	private static boolean caughtUp(Checks checks, String primary, String replica) {
+		Object applied = checks.object(replica + "/replication").get("sequence");
+		return applied != null && applied.equals(checks.object(primary + "/replication").get("sequence"))
+				&& checks.get(replica + "/professionals").status == 200;
+	}
+
+	private static long snapshots(Checks checks, String replica) {
+		Object count = checks.object(replica + "/replication").get("snapshots");
+		return count instanceof Number ? ((Number) count).longValue() : -1;
+	}
+
+	private static boolean sameContents(Checks checks, String primary, String replica, String... names) {
+		// Listing order isn't specified, and differs between schedulers
+		if (!new HashSet<>(checks.list(primary + "/professionals"))
+				.equals(new HashSet<>(checks.list(replica + "/professionals")))) {
+			return false;
+		}
+		for (String name : names) {
+			String path = "/appointments?professional=" + TransactionCheck.encode(name);
+			List<?> expected = checks.list(primary + path);
+			if (expected.isEmpty() || !expected.equals(checks.list(replica + path))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Map<String, Object> professional(String name) {
+		Map<String, Object> hp = new LinkedHashMap<>();
+		hp.put("name", name);
+		hp.put("profession", "Surgeon");
+		hp.put("location", "Main Hospital");
+		return hp;
+	}
+
+	/**
+	 * Forwards the replica's connections to a primary's replication port, so
+	 * the replica can be cut off and moved to another primary without
+	 * restarting it. While cut off, connections are accepted but nothing is
+	 * forwarded, so the replica hears nothing, as when a network drops
+	 * packets. The port is bound once, as rebinding it can fail while the
+	 * replica keeps connecting.
+	 */
+	private static final class Relay implements Closeable {
+		private final int port;
+		private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+		private ServerSocket listener;
+		private volatile InetSocketAddress target;
+
+		Relay(int port) {
+			this.port = port;
+		}
+
+		/**
+		 * Forwards connections to a primary, dropping those already made so
+		 * the replica reconnects through to it.
+		 *
+		 * @param primary the primary's replication {@code host:port}
+		 * @throws IOException if the relay's port can't be bound
+		 */
+		synchronized void open(String primary) throws IOException {
+			int colon = primary.lastIndexOf(':');
+			target = new InetSocketAddress(primary.substring(0, colon),
+					Integer.parseInt(primary.substring(colon + 1)));
+			dropConnections();
+			if (listener == null) {
+				ServerSocket accepting = new ServerSocket();
+				accepting.setReuseAddress(true);
+				accepting.bind(new InetSocketAddress(port));
+				listener = accepting;
+				Thread.ofPlatform().daemon().name("relay").start(() -> accept(accepting));
+			}
+		}
+
+		/**
+		 * Cuts the replica off: drops its connection and forwards nothing
+		 * until opened again.
+		 */
+		synchronized void cut() {
+			target = null;
+			dropConnections();
+		}
+
+		@Override
+		public synchronized void close() {
+			cut();
+			close(listener);
+			listener = null;
+		}
+
+		private void dropConnections() {
+			for (Socket socket : sockets) {
+				close(socket);
+			}
+			sockets.clear();
+		}
+
+		private void accept(ServerSocket accepting) {
+			while (true) {
+				Socket replica;
+				try {
+					replica = accepting.accept();
+				} catch (IOException e) {
+					return;
+				}
+				sockets.add(replica);
+				InetSocketAddress primary = target;
+				if (primary == null) {
+					// Cut off: hold the connection and say nothing
+					continue;
+				}
+				try {
+					Socket upstream = new Socket();
+					sockets.add(upstream);
+					upstream.connect(primary);
+					forward(replica, upstream);
+					forward(upstream, replica);
+				} catch (IOException e) {
+					close(replica);
+				}
+			}
+		}
+
+		private void forward(Socket from, Socket to) {
+			Thread.ofPlatform().daemon().name("relay-forward").start(() -> {
+				try {
+					from.getInputStream().transferTo(to.getOutputStream());
+				} catch (IOException e) {
+					// Cut, or one side went away
+				} finally {
+					close(from);
+					close(to);
+				}
+			});
+		}
+
+		private static void close(Closeable closeable) {
+			try {
+				if (closeable != null) {
+					closeable.close();
+				}
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+}
@@ -0,0 +1,607 @@
+package project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The stream of changes made to a scheduler, numbered from 1, as shipped from
+ * a primary to its replicas. Records are physical: professionals, resources,
+ * appointments and tasks added or removed, whichever call made the change. An
+ * undo is recorded as the differences between the diaries before and after,
+ * followed by a marker, so replicas never need the primary's undo history.
+ * Those differences carry the {@link #UNDO} flag in their type byte, so feed
+ * subscribers can tell bookings an undo restored from new ones.
+ * The same records feed the scheduler's {@link ChangeFeed}.
+ * <p>
+ * Only the most recent records are kept. Each carries a hash chained over
+ * every record before it, so a reconnecting replica can show it holds the
+ * same history and resume where it left off instead of taking a snapshot.
+ * Thread-safe.
+ */
+final class ReplicationLog {
+	static final byte RESET = 0;
+	static final byte PROFESSIONAL_ADDED = 1;
+	static final byte PROFESSIONAL_REMOVED = 2;
+	static final byte RESOURCE_ADDED = 3;
+	static final byte APPOINTMENT_ADDED = 4;
+	static final byte APPOINTMENT_REMOVED = 5;
+	static final byte TASK_ADDED = 6;
+	static final byte TASKS_REPLACED = 7;
+	static final byte UNDONE = 8;
+	/** Flag on the type of a record written for the differences of an undo. */
+	static final byte UNDO = 0x40;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int capacity;
+	// Guarded by this
+	private final List<Entry> entries = new ArrayList<>();
+	private long firstSeq;
+	private long baseHash;
+
+	/**
+	 * Constructs an empty log. The history starts from a random hash, so it
+	 * matches no other log until a snapshot from one has been applied.
+	 *
+	 * @param capacity the number of recent records to keep
+	 */
+	ReplicationLog(int capacity) {
+		this.capacity = capacity;
+		reset(0, ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Forgets all records and continues from a snapshot.
+	 *
+	 * @param seq  the number of the last record the snapshot includes
+	 * @param hash the chained hash at that record
+	 */
+	synchronized void reset(long seq, long hash) {
+		entries.clear();
+		firstSeq = seq + 1;
+		baseHash = hash;
+		notifyAll();
+	}
+
+	/**
+	 * Gets the number of the last record appended.
+	 *
+	 * @return the sequence number, or the snapshot's if none since
+	 */
+	synchronized long lastSeq() {
+		return firstSeq + entries.size() - 1;
+	}
+
+	/**
+	 * Gets the chained hash at the last record appended.
+	 *
+	 * @return the hash
+	 */
+	synchronized long lastHash() {
+		return entries.isEmpty() ? baseHash : entries.get(entries.size() - 1).hash;
+	}
+
+	/**
+	 * Checks whether this log has a record with the given number and hash, so
+	 * a reader that has applied up to it can continue from here.
+	 *
+	 * @param seq  the last record the reader applied
+	 * @param hash the reader's chained hash at that record
+	 * @return true if the reader's history matches and is still retained
+	 */
+	synchronized boolean matches(long seq, long hash) {
+		if (seq == firstSeq - 1) {
+			return hash == baseHash;
+		}
+		return seq >= firstSeq && seq <= lastSeq() && entries.get((int) (seq - firstSeq)).hash == hash;
+	}
+
+	/**
+	 * Appends a record, dropping the oldest once twice the capacity is held.
+	 *
+	 * @param record the encoded record
+	 */
+	synchronized void append(byte[] record) {
+		entries.add(new Entry(lastSeq() + 1, record, chain(lastHash(), record), System.currentTimeMillis()));
+		if (entries.size() >= 2 * capacity) {
+			int drop = entries.size() - capacity;
+			baseHash = entries.get(drop - 1).hash;
+			entries.subList(0, drop).clear();
+			firstSeq += drop;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gets the records after a sequence number, waiting for one to arrive if
+	 * there are none yet.
+	 *
+	 * @param seq           the last record the reader has
+	 * @param max           the most records to return
+	 * @param timeoutMillis how long to wait for a new record
+	 * @return the records, empty if none arrived in time, or null if records
+	 *         the reader needs have already been dropped
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	synchronized List<Entry> readAfter(long seq, int max, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (seq >= lastSeq() && seq >= firstSeq - 1) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				return new ArrayList<>();
+			}
+			wait(wait);
+		}
+		if (seq < firstSeq - 1 || seq > lastSeq()) {
+			return null;
+		}
+		int from = (int) (seq + 1 - firstSeq);
+		return new ArrayList<>(entries.subList(from, Math.min(entries.size(), from + max)));
+	}
+
+	/**
+	 * Gets the number of the oldest record still kept.
+	 *
+	 * @return the sequence number
+	 */
+	synchronized long firstSeq() {
+		return firstSeq;
+	}
+
+	/**
+	 * A record with its number, chained hash and the time it was appended.
+	 */
+	static final class Entry {
+		final long seq;
+		final byte[] record;
+		final long hash;
+		final long time;
+
+		Entry(long seq, byte[] record, long hash, long time) {
+			this.seq = seq;
+			this.record = record;
+			this.hash = hash;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Chains a record onto a hash with 64-bit FNV-1a.
+	 *
+	 * @param hash   the hash of everything before the record
+	 * @param record the record
+	 * @return the new hash
+	 */
+	static long chain(long hash, byte[] record) {
+		for (byte b : record) {
+			hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	// Recording, called by the scheduler as it changes
+
+	void professionalAdded(HealthProfessional professional) {
+		append(encode(PROFESSIONAL_ADDED, professional, null, null, null));
+	}
+
+	void professionalRemoved(HealthProfessional professional) {
+		append(encode(PROFESSIONAL_REMOVED, professional, null, null, null));
+	}
+
+	void resourceAdded(Resource resource) {
+		append(encode(RESOURCE_ADDED, null, resource, null, null));
+	}
+
+	void appointmentAdded(HealthProfessional owner, Appointment appointment) {
+		append(encode(APPOINTMENT_ADDED, owner, null, appointment, null));
+	}
+
+	void appointmentRemoved(HealthProfessional owner, Appointment appointment) {
+		append(encode(APPOINTMENT_REMOVED, owner, null, appointment, null));
+	}
+
+	void taskAdded(HealthProfessional owner, Task task) {
+		append(encode(TASK_ADDED, owner, null, null, List.of(task)));
+	}
+
+	/**
+	 * Records the differences between two sets of diaries made by an undo,
+	 * then the undo itself.
+	 *
+	 * @param before      the diaries replaced
+	 * @param after       the diaries now in use
+	 * @param differences the differences for every professional in either set,
+	 *                    from {@link #differences(Map, Map)}
+	 */
+	void diariesReplaced(Map<HealthProfessional, Diary> before, Map<HealthProfessional, Diary> after,
+			Map<HealthProfessional, Difference> differences) {
+		for (HealthProfessional hp : before.keySet()) {
+			if (!after.containsKey(hp)) {
+				append(encode((byte) (PROFESSIONAL_REMOVED | UNDO), hp, null, null, null));
+			}
+		}
+		for (Map.Entry<HealthProfessional, Diary> entry : after.entrySet()) {
+			HealthProfessional hp = entry.getKey();
+			diaryReplaced(hp, before.get(hp), entry.getValue(), differences.get(hp), UNDO);
+		}
+		append(new byte[] { UNDONE });
+	}
+
+	/**
+	 * Records the differences between a professional's old and new diary.
+	 *
+	 * @param owner      the professional
+	 * @param before     the diary replaced, or null if the professional is new
+	 * @param after      the diary now in use
+	 * @param difference the appointments that differ, from
+	 *                   {@link #difference(Diary, Diary)}
+	 */
+	void diaryReplaced(HealthProfessional owner, Diary before, Diary after, Difference difference) {
+		diaryReplaced(owner, before, after, difference, (byte) 0);
+	}
+
+	private void diaryReplaced(HealthProfessional owner, Diary before, Diary after, Difference difference,
+			byte flags) {
+		if (before == null) {
+			append(encode((byte) (PROFESSIONAL_ADDED | flags), owner, null, null, null));
+		}
+		for (Appointment appt : difference.removed) {
+			append(encode((byte) (APPOINTMENT_REMOVED | flags), owner, null, appt, null));
+		}
+		for (Appointment appt : difference.added) {
+			append(encode((byte) (APPOINTMENT_ADDED | flags), owner, null, appt, null));
+		}
+		List<Task> tasks = after.getAllTasks();
+		if (before == null ? !tasks.isEmpty() : !sameTasks(before.getAllTasks(), tasks)) {
+			append(encode((byte) (TASKS_REPLACED | flags), owner, null, null, tasks));
+		}
+	}
+
+	/**
+	 * Compares every professional's diary in two sets of diaries.
+	 *
+	 * @param before the diaries replaced
+	 * @param after  the diaries now in use
+	 * @return the differences, by professional, for every professional in
+	 *         either set
+	 */
+	static Map<HealthProfessional, Difference> differences(Map<HealthProfessional, Diary> before,
+			Map<HealthProfessional, Diary> after) {
+		Map<HealthProfessional, Difference> differences = new HashMap<>();
+		for (Map.Entry<HealthProfessional, Diary> entry : before.entrySet()) {
+			if (!after.containsKey(entry.getKey())) {
+				differences.put(entry.getKey(), difference(entry.getValue(), null));
+			}
+		}
+		for (Map.Entry<HealthProfessional, Diary> entry : after.entrySet()) {
+			differences.put(entry.getKey(), difference(before.get(entry.getKey()), entry.getValue()));
+		}
+		return differences;
+	}
+
+	/**
+	 * Compares the appointments of two versions of a diary by value, in order
+	 * first and as a multiset if the lists differ. Diaries known to hold the
+	 * same contents, such as two unread views of one saved diary, aren't read.
+	 *
+	 * @param before the old diary, or null if there was none
+	 * @param after  the new diary, or null if there is none
+	 * @return the appointments removed and added
+	 */
+	static Difference difference(Diary before, Diary after) {
+		if (before != null && before.hasSameContents(after)) {
+			return new Difference(List.of(), List.of());
+		}
+		List<Appointment> old = before == null ? List.of() : before.getAllAppointments();
+		List<Appointment> current = after == null ? List.of() : after.getAllAppointments();
+		if (sameAppointments(old, current)) {
+			return new Difference(List.of(), List.of());
+		}
+		Map<String, List<Appointment>> unmatched = new HashMap<>();
+		for (Appointment appt : old) {
+			unmatched.computeIfAbsent(key(appt), k -> new ArrayList<>()).add(appt);
+		}
+		List<Appointment> added = new ArrayList<>();
+		for (Appointment appt : current) {
+			List<Appointment> same = unmatched.get(key(appt));
+			if (same == null || same.isEmpty()) {
+				added.add(appt);
+			} else {
+				same.remove(same.size() - 1);
+			}
+		}
+		List<Appointment> removed = new ArrayList<>();
+		for (List<Appointment> left : unmatched.values()) {
+			removed.addAll(left);
+		}
+		return new Difference(removed, added);
+	}
+
+	/**
+	 * Encodes the records that rebuild a scheduler's state from nothing,
+	 * starting with a reset.
+	 *
+	 * @param scheduler the scheduler, not changing while this runs
+	 * @return the records
+	 */
+	static List<byte[]> snapshot(Scheduler scheduler) {
+		List<byte[]> snapshot = new ArrayList<>();
+		snapshot.add(new byte[] { RESET });
+		for (Resource res : scheduler.getAllSharedResources()) {
+			snapshot.add(encode(RESOURCE_ADDED, null, res, null, null));
+		}
+		for (HealthProfessional hp : scheduler.getAllHealthProfessionals()) {
+			Diary diary = scheduler.getDiary(hp);
+			snapshot.add(encode(PROFESSIONAL_ADDED, hp, null, null, null));
+			for (Appointment appt : diary.getAllAppointments()) {
+				snapshot.add(encode(APPOINTMENT_ADDED, hp, null, appt, null));
+			}
+			if (!diary.getAllTasks().isEmpty()) {
+				snapshot.add(encode(TASKS_REPLACED, hp, null, null, diary.getAllTasks()));
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Applies a record to a replica's scheduler. Appointments are added
+	 * without conflict checks, as the primary has already made them.
+	 *
+	 * @param scheduler the replica's scheduler
+	 * @param record    the encoded record
+	 * @throws IllegalStateException if the record doesn't fit the scheduler's
+	 *                               state, so the replica has diverged
+	 */
+	static void apply(Scheduler scheduler, byte[] record) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			byte type = (byte) (in.readByte() & ~UNDO);
+			switch (type) {
+			case RESET:
+				scheduler.clear();
+				return;
+			case RESOURCE_ADDED:
+				scheduler.addSharedResource(readResource(in));
+				return;
+			case UNDONE:
+				// The differences came first
+				return;
+			default:
+				break;
+			}
+			HealthProfessional hp = new HealthProfessional(in.readUTF(), in.readUTF(), in.readUTF());
+			if (type == PROFESSIONAL_ADDED) {
+				scheduler.addHealthProfessional(hp);
+				return;
+			}
+			if (type == PROFESSIONAL_REMOVED) {
+				scheduler.removeHealthProfessional(hp);
+				return;
+			}
+			Diary diary = scheduler.getDiary(hp);
+			if (diary == null) {
+				throw new IllegalStateException("No diary for " + hp.getName());
+			}
+			switch (type) {
+			case APPOINTMENT_ADDED:
+				diary.restoreAppointment(readAppointment(in));
+				break;
+			case APPOINTMENT_REMOVED:
+				Appointment removed = readAppointment(in);
+				String key = key(removed);
+				Appointment match = null;
+				for (Appointment appt : diary.getAppointmentsOnDate(removed.getDate())) {
+					if (key(appt).equals(key)) {
+						match = appt;
+					}
+				}
+				if (match == null || !diary.removeAppointment(match)) {
+					throw new IllegalStateException("No such appointment for " + hp.getName() + ": " + key);
+				}
+				break;
+			case TASK_ADDED:
+				diary.addTask(readTasks(in).get(0));
+				break;
+			case TASKS_REPLACED:
+				diary.replaceTasks(readTasks(in));
+				break;
+			default:
+				throw new IllegalStateException("Unknown record type " + type);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Malformed record", e);
+		}
+	}
+
+	/**
+	 * Decodes a record into a change event.
+	 *
+	 * @param entry the record
+	 * @return the event
+	 */
+	static SchedulerEvent event(Entry entry) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.record));
+			byte header = in.readByte();
+			boolean undo = (header & UNDO) != 0;
+			byte type = (byte) (header & ~UNDO);
+			switch (type) {
+			case UNDONE:
+				return new SchedulerEvent(entry.seq, entry.time, SchedulerEvent.Type.UNDONE, null, null, null, null,
+						false);
+			case RESOURCE_ADDED:
+				return new SchedulerEvent(entry.seq, entry.time, SchedulerEvent.Type.RESOURCE_ADDED, null, null,
+						readResource(in), null, undo);
+			default:
+				break;
+			}
+			HealthProfessional hp = new HealthProfessional(in.readUTF(), in.readUTF(), in.readUTF());
+			switch (type) {
+			case PROFESSIONAL_ADDED:
+				return new SchedulerEvent(entry.seq, entry.time, SchedulerEvent.Type.PROFESSIONAL_ADDED, hp, null,
+						null, null, undo);
+			case PROFESSIONAL_REMOVED:
+				return new SchedulerEvent(entry.seq, entry.time, SchedulerEvent.Type.PROFESSIONAL_REMOVED, hp, null,
+						null, null, undo);
+			case APPOINTMENT_ADDED:
+			case APPOINTMENT_REMOVED:
+				Appointment appt = readAppointment(in);
+				return new SchedulerEvent(entry.seq, entry.time, type == APPOINTMENT_ADDED
+						? SchedulerEvent.Type.BOOKED : SchedulerEvent.Type.ROLLED_BACK, hp, appt, appt.getResource(),
+						null, undo);
+			case TASK_ADDED:
+				return new SchedulerEvent(entry.seq, entry.time, SchedulerEvent.Type.TASK_ADDED, hp, null, null,
+						readTasks(in), undo);
+			case TASKS_REPLACED:
+				return new SchedulerEvent(entry.seq, entry.time, SchedulerEvent.Type.TASKS_REPLACED, hp, null, null,
+						readTasks(in), undo);
+			default:
+				throw new IllegalStateException("Unknown record type " + type);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Malformed record", e);
+		}
+	}
+
+	// Encoding
+
+	private static byte[] encode(byte type, HealthProfessional hp, Resource res, Appointment appt, List<Task> tasks) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(type);
+			if (hp != null) {
+				out.writeUTF(hp.getName());
+				out.writeUTF(hp.getProfession());
+				out.writeUTF(hp.getOfficeLocation());
+			}
+			if (res != null) {
+				writeResource(out, res);
+			}
+			if (appt != null) {
+				out.writeLong(appt.getDate().toEpochDay());
+				out.writeLong(appt.getStartTime().toNanoOfDay());
+				out.writeLong(appt.getEndTime().toNanoOfDay());
+				writeString(out, appt.getTreatmentType());
+				writeString(out, appt.getPatientName());
+				out.writeBoolean(appt.isRecurring());
+				out.writeBoolean(appt.getResource() != null);
+				if (appt.getResource() != null) {
+					writeResource(out, appt.getResource());
+				}
+			}
+			if (tasks != null) {
+				out.writeInt(tasks.size());
+				for (Task task : tasks) {
+					writeString(out, task.getDescription());
+					writeString(out, task.getPriority());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeResource(DataOutputStream out, Resource res) throws IOException {
+		out.writeUTF(res.getName());
+		out.writeUTF(res.getType());
+		out.writeUTF(res.getLocation());
+	}
+
+	private static Resource readResource(DataInputStream in) throws IOException {
+		return new Resource(in.readUTF(), in.readUTF(), in.readUTF());
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static Appointment readAppointment(DataInputStream in) throws IOException {
+		LocalDate date = LocalDate.ofEpochDay(in.readLong());
+		LocalTime start = LocalTime.ofNanoOfDay(in.readLong());
+		LocalTime end = LocalTime.ofNanoOfDay(in.readLong());
+		String treatment = readString(in);
+		String patient = readString(in);
+		boolean recurring = in.readBoolean();
+		Resource res = in.readBoolean() ? readResource(in) : null;
+		return new Appointment(date, start, end, treatment, patient, recurring, res);
+	}
+
+	private static List<Task> readTasks(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Task> tasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			tasks.add(new Task(readString(in), readString(in)));
+		}
+		return tasks;
+	}
+
+	// Comparison by value
+
+	private static String key(Appointment appt) {
+		Resource res = appt.getResource();
+		return appt.getDate().toEpochDay() + "|" + appt.getStartTime() + "|" + appt.getEndTime() + "|"
+				+ appt.getTreatmentType() + "|" + appt.getPatientName() + "|" + appt.isRecurring() + "|"
+				+ (res == null ? "" : res.getName() + "|" + res.getType() + "|" + res.getLocation());
+	}
+
+	private static boolean sameAppointments(List<Appointment> a, List<Appointment> b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int i = 0; i < a.size(); i++) {
+			if (a.get(i) != b.get(i) && !key(a.get(i)).equals(key(b.get(i)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The appointments removed from and added to a diary when it was replaced.
+	 */
+	static final class Difference {
+		final List<Appointment> removed;
+		final List<Appointment> added;
+
+		Difference(List<Appointment> removed, List<Appointment> added) {
+			this.removed = removed;
+			this.added = added;
+		}
+	}
+
+	private static boolean sameTasks(List<Task> a, List<Task> b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int i = 0; i < a.size(); i++) {
+			Task x = a.get(i);
+			Task y = b.get(i);
+			if (!String.valueOf(x.getDescription()).equals(String.valueOf(y.getDescription()))
+					|| !String.valueOf(x.getPriority()).equals(String.valueOf(y.getPriority()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,201 @@
+package project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Ships a scheduler's {@link ReplicationLog} to replicas over TCP. Each
+ * replica connects, says which record it applied last and the chained hash
+ * there, and is sent the records after it. A replica that is new, has fallen
+ * behind the records still kept or holds a different history is first sent a
+ * snapshot of the whole state. A heartbeat carrying the last record number is
+ * sent at least every {@link #HEARTBEAT_MILLIS}, so replicas can tell how far
+ * behind they are.
+ * <p>
+ * Protocol, all numbers big-endian: the replica sends {@link #MAGIC}, then its
+ * last sequence number and hash as longs. The primary then sends frames, each
+ * one byte of kind followed by:
+ * <ul>
+ * <li>{@link #SNAPSHOT}: sequence, hash, record count, then each record as a
+ * length and bytes</li>
+ * <li>{@link #RECORD}: sequence, length and bytes</li>
+ * <li>{@link #HEARTBEAT}: the primary's last sequence number</li>
+ * </ul>
+ */
+public class ReplicationPrimary {
+	static final int MAGIC = 0x53434852;
+	static final byte SNAPSHOT = 'S';
+	static final byte RECORD = 'R';
+	static final byte HEARTBEAT = 'H';
+	static final long HEARTBEAT_MILLIS = 200;
+	private static final int BATCH = 512;
+
+	private final Scheduler scheduler;
+	private final Lock lock;
+	private final ReplicationLog log;
+	private final int requestedPort;
+	private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+	private ServerSocket serverSocket;
+	private volatile boolean running;
+
+	/**
+	 * Constructs a primary for a scheduler.
+	 *
+	 * @param scheduler the scheduler whose log is shipped
+	 * @param lock      the lock held by everything that changes the scheduler
+	 *                  and appends to the log
+	 * @param log       the log to ship
+	 * @param port      the port to listen on, or 0 for any free port
+	 */
+	ReplicationPrimary(Scheduler scheduler, Lock lock, ReplicationLog log, int port) {
+		this.scheduler = scheduler;
+		this.lock = lock;
+		this.log = log;
+		this.requestedPort = port;
+	}
+
+	/**
+	 * Starts accepting replicas.
+	 *
+	 * @throws IOException if the port can't be bound
+	 */
+	public void start() throws IOException {
+		serverSocket = new ServerSocket();
+		serverSocket.bind(new InetSocketAddress(requestedPort));
+		running = true;
+		Thread.ofPlatform().daemon().name("replication-accept").start(this::acceptLoop);
+	}
+
+	/**
+	 * Stops accepting replicas and disconnects those connected.
+	 */
+	public void stop() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+		for (Socket socket : replicas) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+
+	/**
+	 * Gets the port replicas connect to.
+	 *
+	 * @return the bound port
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Gets the number of replicas connected.
+	 *
+	 * @return the count
+	 */
+	public int getReplicaCount() {
+		return replicas.size();
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				replicas.add(socket);
+				Thread.ofVirtual().name("replication-ship").start(() -> ship(socket));
+			} catch (IOException e) {
+				// Closed by stop, or a failed accept; keep serving unless stopped
+			}
+		}
+	}
+
+	/**
+	 * Serves one replica until it disconnects.
+	 */
+	private void ship(Socket socket) {
+		try (socket) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			if (in.readInt() != MAGIC) {
+				return;
+			}
+			long seq = in.readLong();
+			long hash = in.readLong();
+			long sent = log.matches(seq, hash) ? seq : sendSnapshot(out);
+			long lastHeartbeat = 0;
+			while (running) {
+				List<ReplicationLog.Entry> batch = log.readAfter(sent, BATCH, HEARTBEAT_MILLIS);
+				if (batch == null) {
+					sent = sendSnapshot(out);
+					continue;
+				}
+				for (ReplicationLog.Entry entry : batch) {
+					out.writeByte(RECORD);
+					out.writeLong(++sent);
+					out.writeInt(entry.record.length);
+					out.write(entry.record);
+				}
+				long now = System.currentTimeMillis();
+				if (batch.isEmpty() || now - lastHeartbeat >= HEARTBEAT_MILLIS) {
+					out.writeByte(HEARTBEAT);
+					out.writeLong(log.lastSeq());
+					lastHeartbeat = now;
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// Replica went away; it reconnects and resumes
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			replicas.remove(socket);
+		}
+	}
+
+	/**
+	 * Sends the whole state, taken under the lock so that it matches the last
+	 * record number exactly.
+	 *
+	 * @return the number of the last record the snapshot includes
+	 */
+	private long sendSnapshot(DataOutputStream out) throws IOException {
+		List<byte[]> records;
+		long seq;
+		long hash;
+		lock.lock();
+		try {
+			records = ReplicationLog.snapshot(scheduler);
+			seq = log.lastSeq();
+			hash = log.lastHash();
+		} finally {
+			lock.unlock();
+		}
+		out.writeByte(SNAPSHOT);
+		out.writeLong(seq);
+		out.writeLong(hash);
+		out.writeInt(records.size());
+		for (byte[] record : records) {
+			out.writeInt(record.length);
+			out.write(record);
+		}
+		out.flush();
+		return seq;
+	}
+}
@@ -96,6 +96,9 @@ public class Resource {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(name, type, location);
+		// Same value as Objects.hash(name, type, location), without its varargs array
+		int result = 31 + Objects.hashCode(name);
+		result = 31 * result + Objects.hashCode(type);
+		return 31 * result + Objects.hashCode(location);
 	}
 }
\ No newline at end of file
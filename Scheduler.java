@@ -1,21 +1,101 @@
 package project;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Manages health professionals and their diaries, providing scheduling
  * functionality with resource support.
  */
 public class Scheduler {
+	// Standard working hours (9am-5pm) searched in 30 minute steps
+	static final int WORKDAY_START_MINUTE = 9 * 60;
+	static final int WORKDAY_END_MINUTE = 17 * 60;
+	static final int SLOT_STEP_MINUTES = 30;
+	// Default slot search cache size and lifetime
+	private static final int SEARCH_CACHE_ENTRIES = 256;
+	private static final long SEARCH_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+	// Changes kept for replicas and change feed subscribers that fall behind
+	private static final int CHANGE_LOG_RECORDS = 100_000;
+	// Archiving retries after a failure start at a minute and double up to an hour
+	private static final long ARCHIVE_RETRY_MIN_MILLIS = 60 * 1000;
+	private static final long ARCHIVE_RETRY_MAX_MILLIS = 60 * 60 * 1000;
+
 	private Map<HealthProfessional, Diary> diaries;
 	private UndoManager undoManager;
 	private List<Resource> sharedResources;
 	private long lastSearchDuration;
+	private boolean sharedResourcesDirty;
+	private String lastSaveLocation;
+	private int saves;
+	// The save that last wrote each professional's diary, so an undo can tell
+	// whether a restored copy's dirty flag still describes what is saved
+	private final Map<HealthProfessional, Integer> savedIn = new HashMap<>();
+	private boolean bulkLoading;
+	private int archiveHorizonMonths;
+	private Path archiveDirectory;
+	private YearMonth archivedBefore;
+	private long archiveRetryAt;
+	private long archiveRetryMillis;
+	private OffHeapArena offHeapArena;
+	private SlotSearchCache searchCache;
+	private final ProfessionalIndex professionalIndex = new ProfessionalIndex();
+	private PatientIndex patientIndex;
+	private OccupancyAggregates occupancy;
+	private boolean patientConflictCheck;
+	private ReplicationLog changeLog;
+	// The log changes are recorded in; null while replaying a primary's changes
+	private ReplicationLog replicationLog;
+	private boolean replaying;
+	private ChangeFeed changeFeed;
+	private final DiaryListener diaryListener = new DiaryListener() {
+		@Override
+		public void appointmentAdded(HealthProfessional owner, Appointment appointment) {
+			searchCache.invalidate(owner, appointment.getResource(), appointment.getDate());
+			if (patientIndex != null) {
+				Diary diary = diaries.get(owner);
+				patientIndex.add(owner, appointment, diary == null ? -1 : diary.appointmentPosition(appointment));
+			}
+			if (occupancy != null) {
+				occupancy.add(owner, appointment);
+			}
+			if (replicationLog != null) {
+				replicationLog.appointmentAdded(owner, appointment);
+			}
+		}
+
+		@Override
+		public void appointmentRemoved(HealthProfessional owner, Appointment appointment) {
+			searchCache.invalidate(owner, appointment.getResource(), appointment.getDate());
+			if (patientIndex != null) {
+				patientIndex.remove(owner, appointment);
+			}
+			if (occupancy != null) {
+				occupancy.remove(owner, appointment);
+			}
+			if (replicationLog != null) {
+				replicationLog.appointmentRemoved(owner, appointment);
+			}
+		}
+
+		@Override
+		public void taskAdded(HealthProfessional owner, Task task) {
+			if (replicationLog != null) {
+				replicationLog.taskAdded(owner, task);
+			}
+		}
+	};
 
 	/**
 	 * Constructs a new Scheduler.
@@ -24,6 +104,7 @@ public class Scheduler {
 		this.diaries = new HashMap<>();
 		this.undoManager = new UndoManager(this);
 		this.sharedResources = new ArrayList<>();
+		this.searchCache = new SlotSearchCache(SEARCH_CACHE_ENTRIES, SEARCH_CACHE_TTL_MILLIS);
 		
 		  // Predefined resources
 	    addSharedResource(new Resource("Operating Theatre 1", "Operating Theatre", "Main Hospital"));
@@ -39,10 +120,27 @@ public class Scheduler {
 	 * @param professional the professional to add
 	 */
 	public void addHealthProfessional(HealthProfessional professional) {
-		if (!diaries.containsKey(professional)) {
-			diaries.put(professional, new Diary(professional));
-			undoManager.saveState();
+		if (addProfessional(professional)) {
+			saveUndoState();
+		}
+	}
+
+	/**
+	 * Adds a health professional without recording an undo point.
+	 * 
+	 * @param professional the professional to add
+	 * @return true if added, false if already present
+	 */
+	private boolean addProfessional(HealthProfessional professional) {
+		if (diaries.containsKey(professional)) {
+			return false;
 		}
+		diaries.put(professional, newDiary(professional));
+		professionalIndex.add(professional);
+		if (replicationLog != null) {
+			replicationLog.professionalAdded(professional);
+		}
+		return true;
 	}
 
 	/**
@@ -51,11 +149,35 @@ public class Scheduler {
 	 * @param professional the professional to remove
 	 */
 	public void removeHealthProfessional(HealthProfessional professional) {
-		if (diaries.remove(professional) != null) {
-			undoManager.saveState();
+		if (removeProfessional(professional)) {
+			saveUndoState();
 		}
 	}
 
+	/**
+	 * Removes a health professional without recording an undo point.
+	 * 
+	 * @param professional the professional to remove
+	 * @return true if removed, false if not present
+	 */
+	private boolean removeProfessional(HealthProfessional professional) {
+		Diary removed = diaries.remove(professional);
+		if (removed == null) {
+			return false;
+		}
+		professionalIndex.remove(professional);
+		patientIndex = null;
+		if (occupancy != null) {
+			occupancy.apply(professional, ReplicationLog.difference(removed, null));
+		}
+		searchCache.clear();
+		if (replicationLog != null) {
+			replicationLog.professionalRemoved(professional);
+		}
+		removed.release();
+		return true;
+	}
+
 	/**
 	 * Gets the diary for a specific health professional.
 	 * 
@@ -66,6 +188,71 @@ public class Scheduler {
 		return diaries.get(professional);
 	}
 
+	/**
+	 * Makes diaries of professionals added from now on keep their appointments
+	 * off-heap in the given arena. Existing diaries are not moved.
+	 * 
+	 * @param arena the arena to store appointments in, or null to go back to
+	 *              on-heap diaries
+	 */
+	public void setOffHeapArena(OffHeapArena arena) {
+		this.offHeapArena = arena;
+	}
+
+	/**
+	 * Creates an empty diary using the configured appointment storage.
+	 * 
+	 * @param professional the owner of the diary
+	 * @return the new diary
+	 */
+	private Diary newDiary(HealthProfessional professional) {
+		Diary diary = offHeapArena == null ? new Diary(professional)
+				: new Diary(professional, offHeapArena.newStore());
+		diary.setListener(diaryListener);
+		return diary;
+	}
+
+	/**
+	 * Installs a ready-made diary for a professional without recording an undo
+	 * point, as used when opening a snapshot lazily.
+	 * 
+	 * @param professional the owner of the diary
+	 * @param diary        the diary to install
+	 */
+	void putDiary(HealthProfessional professional, Diary diary) {
+		Diary replaced = diaries.get(professional);
+		if (replicationLog != null || occupancy != null) {
+			ReplicationLog.Difference difference = ReplicationLog.difference(replaced, diary);
+			if (replicationLog != null) {
+				replicationLog.diaryReplaced(professional, replaced, diary, difference);
+			}
+			if (occupancy != null) {
+				occupancy.apply(professional, difference);
+			}
+		}
+		diary.setListener(diaryListener);
+		diaries.put(professional, diary);
+		if (replaced != null && replaced != diary) {
+			replaced.release();
+		}
+		professionalIndex.add(professional);
+		patientIndex = null;
+		searchCache.clear();
+	}
+
+	/**
+	 * Configures the slot search cache. Repeated searches with the same
+	 * parameters are answered from the cache until a booking change touches one
+	 * of the searched professionals or resources within the searched dates.
+	 * 
+	 * @param maxEntries the number of searches to remember, or 0 to disable
+	 *                   caching
+	 * @param ttlMillis  how long a cached result stays valid, in milliseconds
+	 */
+	public void setSearchCache(int maxEntries, long ttlMillis) {
+		this.searchCache = new SlotSearchCache(maxEntries, ttlMillis);
+	}
+
 	/**
 	 * Adds a shared resource to the scheduler.
 	 * 
@@ -73,7 +260,11 @@ public class Scheduler {
 	 */
 	public void addSharedResource(Resource resource) {
 		sharedResources.add(resource);
-		undoManager.saveState();
+		sharedResourcesDirty = true;
+		if (replicationLog != null) {
+			replicationLog.resourceAdded(resource);
+		}
+		saveUndoState();
 	}
 
 	/**
@@ -99,56 +290,275 @@ public class Scheduler {
 	public List<TimeSlot> findAvailableSlots(List<HealthProfessional> professionals, List<Resource> resources,
 			LocalDate startDate, LocalDate endDate, int durationMinutes) {
 		long startTime = System.currentTimeMillis();
+		SlotSearchCache.Key key = new SlotSearchCache.Key(professionals, resources, startDate, endDate,
+				durationMinutes);
+		List<TimeSlot> cached = searchCache.get(key);
+		if (cached != null) {
+			lastSearchDuration = System.currentTimeMillis() - startTime;
+			return cached;
+		}
 		List<TimeSlot> availableSlots = new ArrayList<>();
 
+		// Resolve diaries once so the probes below allocate nothing
+		Diary[] attendeeDiaries = new Diary[professionals.size()];
+		for (int i = 0; i < attendeeDiaries.length; i++) {
+			attendeeDiaries[i] = diaries.get(professionals.get(i));
+			if (attendeeDiaries[i] == null) {
+				lastSearchDuration = System.currentTimeMillis() - startTime;
+				return availableSlots;
+			}
+		}
+		Resource[] required = resources == null ? new Resource[0] : resources.toArray(new Resource[0]);
+		Diary[] allDiaries = diaries.values().toArray(new Diary[0]);
+
 		// Check each day in the range
 		for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-			// Standard working hours (9am-5pm)
-			LocalTime startTimeOfDay = LocalTime.of(9, 0);
-			LocalTime endTimeOfDay = LocalTime.of(17, 0);
-
-			// Check every 30 minutes within working hours
-			for (LocalTime slotStart = startTimeOfDay; slotStart.isBefore(endTimeOfDay)
-					&& slotStart.plusMinutes(durationMinutes)
-							.isBefore(endTimeOfDay.plusMinutes(1)); slotStart = slotStart.plusMinutes(30)) {
-
-				LocalTime slotEnd = slotStart.plusMinutes(durationMinutes);
-				boolean allAvailable = true;
-
-				// Check professional availability
-				for (HealthProfessional hp : professionals) {
-					Diary diary = diaries.get(hp);
-					if (diary == null || !diary.isSlotAvailable(date, slotStart, slotEnd, null)) {
-						allAvailable = false;
-						break;
-					}
+			// Check every 30 minutes within working hours, as minutes of the day
+			for (int slotStart = WORKDAY_START_MINUTE; slotStart < WORKDAY_END_MINUTE
+					&& slotStart + durationMinutes <= WORKDAY_END_MINUTE; slotStart += SLOT_STEP_MINUTES) {
+				int slotEnd = slotStart + durationMinutes;
+				if (isSlotFree(attendeeDiaries, required, allDiaries, date, slotStart, slotEnd)) {
+					availableSlots.add(new TimeSlot(date, LocalTime.of(slotStart / 60, slotStart % 60),
+							LocalTime.of(slotEnd / 60, slotEnd % 60)));
 				}
+			}
+		}
 
-				// Check resource availability if professionals are available
-				if (allAvailable && resources != null) {
-					for (Resource res : resources) {
-						boolean resourceAvailable = true;
-						for (Diary diary : diaries.values()) {
-							if (!diary.isSlotAvailable(date, slotStart, slotEnd, res)) {
-								resourceAvailable = false;
-								break;
-							}
-						}
-						if (!resourceAvailable) {
-							allAvailable = false;
-							break;
-						}
-					}
-				}
+		searchCache.put(key, availableSlots);
+		lastSearchDuration = System.currentTimeMillis() - startTime;
+		return availableSlots;
+	}
+
+	/**
+	 * Finds the windows in which all the given professionals and resources are
+	 * free, for meetings with many attendees. Each day's busy intervals are
+	 * merged into one timeline rather than probed slot by slot. Unlike
+	 * {@link #findAvailableSlots}, every booking of an attendee counts as busy,
+	 * and whole free windows within working hours are returned rather than
+	 * 30 minute candidate slots.
+	 * 
+	 * @param professionals   the list of professionals who need to attend
+	 * @param resources       the list of resources that need to be booked
+	 * @param startDate       the first date to consider
+	 * @param endDate         the last date to consider
+	 * @param durationMinutes the minimum length of a window in minutes
+	 * @return the common free windows, in date and time order
+	 */
+	public List<TimeSlot> findCommonFreeWindows(List<HealthProfessional> professionals, List<Resource> resources,
+			LocalDate startDate, LocalDate endDate, int durationMinutes) {
+		long startTime = System.currentTimeMillis();
+		Diary[] attendeeDiaries = new Diary[professionals.size()];
+		for (int i = 0; i < attendeeDiaries.length; i++) {
+			attendeeDiaries[i] = diaries.get(professionals.get(i));
+			if (attendeeDiaries[i] == null) {
+				lastSearchDuration = System.currentTimeMillis() - startTime;
+				return new ArrayList<>();
+			}
+		}
+		Resource[] required = resources == null ? new Resource[0] : resources.toArray(new Resource[0]);
+		List<TimeSlot> windows = new MultiPartySearch().search(attendeeDiaries, required,
+				diaries.values().toArray(new Diary[0]), startDate, endDate, durationMinutes, WORKDAY_START_MINUTE,
+				WORKDAY_END_MINUTE);
+		lastSearchDuration = System.currentTimeMillis() - startTime;
+		return windows;
+	}
+
+	/**
+	 * Counts the appointments on each day of a month across all diaries.
+	 * 
+	 * @param month the month to count
+	 * @return one count per day, indexed from day 1 at position 0
+	 */
+	public int[] getDailyAppointmentCounts(YearMonth month) {
+		return occupancy().counts(month);
+	}
 
-				if (allAvailable) {
-					availableSlots.add(new TimeSlot(date, slotStart, slotEnd));
+	/**
+	 * Gets every professional's appointments on a date in time order. Only the
+	 * diaries of professionals with appointments that day are read.
+	 * 
+	 * @param date the date
+	 * @return the bookings
+	 */
+	public List<Booking> getBookingsOnDate(LocalDate date) {
+		List<Booking> bookings = new ArrayList<>();
+		for (HealthProfessional hp : occupancy().professionalsBooked(date.toEpochDay())) {
+			Diary diary = diaries.get(hp);
+			if (diary != null) {
+				for (Appointment appt : diary.getAppointmentsOnDate(date)) {
+					bookings.add(new Booking(hp, appt));
 				}
 			}
 		}
+		bookings.sort((a, b) -> Diary.CHRONOLOGICAL.compare(a.getAppointment(), b.getAppointment()));
+		return bookings;
+	}
+
+	/**
+	 * Gets the minutes booked on each day of a month across all diaries.
+	 * 
+	 * @param month the month to report
+	 * @return one total per day, indexed from day 1 at position 0
+	 */
+	public int[] getDailyBookedMinutes(YearMonth month) {
+		return occupancy().minutes(month);
+	}
+
+	/**
+	 * Gets the minutes booked in one professional's diary on each day of a
+	 * month.
+	 * 
+	 * @param month        the month to report
+	 * @param professional the professional
+	 * @return one total per day, indexed from day 1 at position 0
+	 */
+	public int[] getDailyBookedMinutes(YearMonth month, HealthProfessional professional) {
+		return occupancy().minutes(month, professional);
+	}
+
+	/**
+	 * Gets the minutes a resource is booked on each day of a month.
+	 * 
+	 * @param month    the month to report
+	 * @param resource the resource
+	 * @return one total per day, indexed from day 1 at position 0
+	 */
+	public int[] getDailyResourceMinutes(YearMonth month, Resource resource) {
+		return occupancy().minutes(month, resource);
+	}
+
+	/**
+	 * Gets the hospital-wide utilisation of each day of a month: the minutes
+	 * booked as a percentage of every professional's working day.
+	 * 
+	 * @param month the month to report
+	 * @return one whole percentage per day, indexed from day 1 at position 0
+	 */
+	public int[] getDailyUtilisation(YearMonth month) {
+		int[] grid = occupancy().minutes(month);
+		long capacity = (long) diaries.size() * (WORKDAY_END_MINUTE - WORKDAY_START_MINUTE);
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = capacity == 0 ? 0 : (int) (grid[i] * 100L / capacity);
+		}
+		return grid;
+	}
 
+	/**
+	 * Reports utilisation, idle time, peak hours and the treatment mix of every
+	 * professional and resource over a date range.
+	 * 
+	 * @param startDate the first date to report
+	 * @param endDate   the last date to report
+	 * @return the report
+	 */
+	public UtilisationReport getUtilisationReport(LocalDate startDate, LocalDate endDate) {
+		if (endDate.isBefore(startDate)) {
+			throw new IllegalArgumentException("Report ends before it starts: " + startDate + " to " + endDate);
+		}
+		return new UtilisationAnalytics(startDate, endDate, WORKDAY_START_MINUTE, WORKDAY_END_MINUTE)
+				.report(diaries, sharedResources, occupancy());
+	}
+
+	/**
+	 * Gets the per-day occupancy aggregates, building them on first use. From
+	 * then on they are updated by the diary listener on every booking change.
+	 */
+	private OccupancyAggregates occupancy() {
+		if (occupancy == null) {
+			occupancy = OccupancyAggregates.build(diaries.values());
+		}
+		return occupancy;
+	}
+
+	/**
+	 * Finds professionals by profession and/or office location, ignoring case.
+	 * 
+	 * @param profession the profession, or null for any
+	 * @param location   the office location, or null for any
+	 * @return the matching professionals
+	 */
+	public List<HealthProfessional> findProfessionals(String profession, String location) {
+		return professionalIndex.find(profession, location);
+	}
+
+	/**
+	 * Finds the earliest free slots with any professional of a profession, for
+	 * requests like "the first available physiotherapist". Slots start at the
+	 * beginning of each free interval within working hours and then every 30
+	 * minutes while they fit. Every booking of a professional counts as busy,
+	 * whatever its resource.
+	 * 
+	 * @param profession      the profession, or null for any
+	 * @param location        the office location, or null for any
+	 * @param startDate       the first date to consider
+	 * @param endDate         the last date to consider
+	 * @param durationMinutes the duration needed for the appointment in minutes
+	 * @param count           the number of slots wanted
+	 * @return up to count slots in time order, each with its professional
+	 */
+	public List<ProfessionalSlot> findEarliestSlots(String profession, String location, LocalDate startDate,
+			LocalDate endDate, int durationMinutes, int count) {
+		long startTime = System.currentTimeMillis();
+		List<Diary> candidates = new ArrayList<>();
+		for (HealthProfessional professional : professionalIndex.find(profession, location)) {
+			candidates.add(diaries.get(professional));
+		}
+		List<ProfessionalSlot> slots = EarliestSlotSearch.search(candidates, startDate, endDate, durationMinutes,
+				count, WORKDAY_START_MINUTE, WORKDAY_END_MINUTE, SLOT_STEP_MINUTES);
 		lastSearchDuration = System.currentTimeMillis() - startTime;
-		return availableSlots;
+		return slots;
+	}
+
+	/**
+	 * Checks one candidate slot against the attendees' diaries and, for each
+	 * required resource, every diary. Allocation-free.
+	 * 
+	 * @param attendeeDiaries the diaries of the professionals who must attend
+	 * @param required        the resources that must be free
+	 * @param allDiaries      every diary, for resource conflicts
+	 * @param date            the day of the slot
+	 * @param slotStart       the start as minutes after midnight
+	 * @param slotEnd         the end as minutes after midnight
+	 * @return true if everyone and everything is free
+	 */
+	private static boolean isSlotFree(Diary[] attendeeDiaries, Resource[] required, Diary[] allDiaries,
+			LocalDate date, int slotStart, int slotEnd) {
+		// Check professional availability
+		for (Diary diary : attendeeDiaries) {
+			if (!diary.isSlotAvailable(date, slotStart, slotEnd, null)) {
+				return false;
+			}
+		}
+
+		// Check resource availability across every diary
+		for (Resource res : required) {
+			for (Diary diary : allDiaries) {
+				if (!diary.isSlotAvailable(date, slotStart, slotEnd, res)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that no diary uses a resource at a time on a date. Unlike
+	 * {@link #bookAppointment}, which only checks the attendees' diaries, this
+	 * checks every diary.
+	 * 
+	 * @param resource  the resource
+	 * @param date      the date
+	 * @param startTime the start time
+	 * @param endTime   the end time
+	 * @return true if the resource is free
+	 */
+	public boolean isResourceFree(Resource resource, LocalDate date, LocalTime startTime, LocalTime endTime) {
+		for (Diary diary : diaries.values()) {
+			if (!diary.isSlotAvailable(date, startTime, endTime, resource)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -159,6 +569,12 @@ public class Scheduler {
 	 * @return true if successfully booked, false if there were conflicts
 	 */
 	public boolean bookAppointment(List<HealthProfessional> professionals, Appointment appointment) {
+		archiveIfDue();
+
+		if (patientConflictCheck && patients().conflicts(appointment)) {
+			return false;
+		}
+
 		// First check if all are available
 		for (HealthProfessional hp : professionals) {
 			Diary diary = diaries.get(hp);
@@ -169,7 +585,7 @@ public class Scheduler {
 		}
 
 		// Save state for undo
-		undoManager.saveState();
+		saveUndoState();
 
 		// If all available, book for each
 		for (HealthProfessional hp : professionals) {
@@ -190,8 +606,21 @@ public class Scheduler {
 	 */
 	public boolean bookRecurringAppointment(List<HealthProfessional> professionals, Appointment appointment,
 			int recurrenceDays, int occurrences) {
+		archiveIfDue();
+
+		if (patientConflictCheck) {
+			for (int i = 0; i < occurrences; i++) {
+				Appointment occurrence = new Appointment(appointment.getDate().plusDays(i * recurrenceDays),
+						appointment.getStartTime(), appointment.getEndTime(), appointment.getTreatmentType(),
+						appointment.getPatientName(), true, appointment.getResource());
+				if (patients().conflicts(occurrence)) {
+					return false;
+				}
+			}
+		}
+
 		// Save state for undo
-		undoManager.saveState();
+		saveUndoState();
 
 		for (HealthProfessional hp : professionals) {
 			Diary diary = diaries.get(hp);
@@ -208,6 +637,266 @@ public class Scheduler {
 		return true;
 	}
 
+	/**
+	 * Holds a booking for the first phase of a two-phase booking: books an
+	 * appointment, or each occurrence of a recurring one, for several
+	 * professionals without recording an undo point, so that an undo can't
+	 * silently drop a booking other schedulers were told about. Visitors are
+	 * added first, also without an undo point.
+	 * 
+	 * @param professionals  the professionals to book for, including visitors
+	 * @param visitors       the professionals to add before booking
+	 * @param appointment    the appointment details
+	 * @param recurrenceDays the number of days between each occurrence
+	 * @param occurrences    the number of occurrences, 1 for a single booking
+	 * @return the appointments added, one per occurrence and shared by every
+	 *         professional's diary, or null if there were conflicts, in which
+	 *         case nothing is changed
+	 */
+	List<Appointment> holdAppointment(List<HealthProfessional> professionals, List<HealthProfessional> visitors,
+			Appointment appointment, int recurrenceDays, int occurrences) {
+		List<Appointment> held = new ArrayList<>(occurrences);
+		if (occurrences > 1) {
+			for (int i = 0; i < occurrences; i++) {
+				held.add(new Appointment(appointment.getDate().plusDays(i * recurrenceDays),
+						appointment.getStartTime(), appointment.getEndTime(), appointment.getTreatmentType(),
+						appointment.getPatientName(), true, appointment.getResource()));
+			}
+		} else {
+			held.add(appointment);
+		}
+
+		for (HealthProfessional visitor : visitors) {
+			addProfessional(visitor);
+		}
+		for (Appointment occurrence : held) {
+			boolean free = !(patientConflictCheck && patients().conflicts(occurrence));
+			for (HealthProfessional hp : professionals) {
+				Diary diary = diaries.get(hp);
+				free = free && diary != null && diary.isSlotAvailable(occurrence.getDate(),
+						occurrence.getStartTime(), occurrence.getEndTime(), occurrence.getResource());
+			}
+			if (!free) {
+				for (HealthProfessional visitor : visitors) {
+					removeProfessional(visitor);
+				}
+				return null;
+			}
+		}
+
+		for (HealthProfessional hp : professionals) {
+			Diary diary = diaries.get(hp);
+			for (Appointment occurrence : held) {
+				diary.addAppointment(occurrence);
+			}
+		}
+		return held;
+	}
+
+	/**
+	 * Releases a booking held by
+	 * {@link #holdAppointment(List, List, Appointment, int, int)}, removing
+	 * exactly the appointments it added rather than any that look the same, and
+	 * the visitors it added who have nothing else booked. No undo point is
+	 * recorded.
+	 * 
+	 * @param professionals the professionals the booking was held for
+	 * @param visitors      the visitors added for it
+	 * @param held          the appointments it added
+	 */
+	void releaseAppointments(List<HealthProfessional> professionals, List<HealthProfessional> visitors,
+			List<Appointment> held) {
+		for (HealthProfessional hp : professionals) {
+			Diary diary = diaries.get(hp);
+			if (diary != null) {
+				for (Appointment occurrence : held) {
+					diary.removeAppointment(occurrence);
+				}
+			}
+		}
+		for (HealthProfessional visitor : visitors) {
+			Diary diary = diaries.get(visitor);
+			if (diary != null && diary.getAllAppointments().isEmpty()) {
+				removeProfessional(visitor);
+			}
+		}
+	}
+
+	/**
+	 * Gets every booking of a patient across all diaries. The first call builds
+	 * a patient index over all diaries; afterwards it is kept up to date as
+	 * appointments are booked, rolled back and removed, so lookups only cost the
+	 * number of bookings returned.
+	 * 
+	 * @param patientName the patient's name, matched ignoring case
+	 * @return an unmodifiable list of the bookings in chronological order
+	 */
+	public List<Booking> getBookingsForPatient(String patientName) {
+		return patients().lookup(patientName);
+	}
+
+	/**
+	 * Checks whether an appointment's patient is already booked at an
+	 * overlapping time with any professional.
+	 * 
+	 * @param appointment the proposed appointment
+	 * @return true if the patient would be double-booked
+	 */
+	public boolean hasPatientConflict(Appointment appointment) {
+		return patients().conflicts(appointment);
+	}
+
+	/**
+	 * Makes bookings fail when the patient is already booked at an overlapping
+	 * time. Off by default.
+	 * 
+	 * @param enabled true to reject patient double-bookings
+	 */
+	public void setPatientConflictCheck(boolean enabled) {
+		this.patientConflictCheck = enabled;
+	}
+
+	/**
+	 * Cancels every active appointment of a patient. Archived appointments are
+	 * read-only and stay in place.
+	 * 
+	 * @param patientName the patient's name, matched ignoring case
+	 * @return the number of appointments cancelled
+	 */
+	public int cancelAppointmentsForPatient(String patientName) {
+		List<Booking> bookings = patients().lookup(patientName);
+		if (bookings.isEmpty()) {
+			return 0;
+		}
+		saveUndoState();
+
+		// The diaries look the appointments up by name again: a lazily loaded
+		// diary may have been reloaded since the index read it, leaving the
+		// looked-up objects stale
+		Map<HealthProfessional, Set<String>> names = new LinkedHashMap<>();
+		for (Booking booking : bookings) {
+			names.computeIfAbsent(booking.getProfessional(), hp -> new HashSet<>())
+					.add(booking.getAppointment().getPatientName());
+		}
+		int cancelled = 0;
+		for (Map.Entry<HealthProfessional, Set<String>> entry : names.entrySet()) {
+			Diary diary = diaries.get(entry.getKey());
+			if (diary != null) {
+				for (String name : entry.getValue()) {
+					cancelled += diary.removeAppointmentsForPatient(name);
+				}
+			}
+		}
+		return cancelled;
+	}
+
+	private PatientIndex patients() {
+		if (patientIndex == null) {
+			patientIndex = PatientIndex.build(diaries);
+		}
+		return patientIndex;
+	}
+
+	/**
+	 * Configures automatic archiving. Once set, appointments in months more than
+	 * the given number of months before the current month are sealed into
+	 * read-only partitions, which are no longer scanned by conflict checks or
+	 * copied by undo snapshots but stay visible to date queries.
+	 * 
+	 * @param months    the number of past months to keep active, or 0 to disable
+	 *                  archiving
+	 * @param directory the directory to write sealed partitions to, or null to
+	 *                  keep them in memory
+	 */
+	public void setArchiveHorizon(int months, String directory) {
+		this.archiveHorizonMonths = Math.max(0, months);
+		this.archiveDirectory = directory == null ? null : Paths.get(directory);
+		this.archivedBefore = null;
+		this.archiveRetryAt = 0;
+		this.archiveRetryMillis = 0;
+	}
+
+	/**
+	 * Seals appointments older than the configured archive horizon in every
+	 * diary.
+	 * 
+	 * @return the number of appointments sealed
+	 * @throws IOException if there's an error writing a partition file
+	 */
+	public int archiveHistoricAppointments() throws IOException {
+		if (archiveHorizonMonths == 0) {
+			return 0;
+		}
+		YearMonth cutoff = YearMonth.now().minusMonths(archiveHorizonMonths);
+		int sealed = 0;
+		for (Diary diary : diaries.values()) {
+			sealed += diary.sealMonthsBefore(cutoff, archiveDirectory);
+		}
+		if (sealed > 0) {
+			// Sealed appointments leave their stores, so positions are rebuilt
+			patientIndex = null;
+		}
+		archivedBefore = cutoff;
+		return sealed;
+	}
+
+	/**
+	 * Archives historic appointments when the horizon has moved on since the
+	 * last run. A failure is reported and leaves the appointments active; it is
+	 * retried by a later booking once a back-off delay has passed, doubling
+	 * with each failure.
+	 */
+	private void archiveIfDue() {
+		if (archiveHorizonMonths == 0) {
+			return;
+		}
+		YearMonth cutoff = YearMonth.now().minusMonths(archiveHorizonMonths);
+		if (archivedBefore != null && !cutoff.isAfter(archivedBefore)) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (now < archiveRetryAt) {
+			return;
+		}
+		try {
+			archiveHistoricAppointments();
+			archiveRetryMillis = 0;
+			archiveRetryAt = 0;
+		} catch (IOException | RuntimeException e) {
+			archiveRetryMillis = archiveRetryMillis == 0 ? ARCHIVE_RETRY_MIN_MILLIS
+					: Math.min(ARCHIVE_RETRY_MAX_MILLIS, archiveRetryMillis * 2);
+			archiveRetryAt = now + archiveRetryMillis;
+			System.err.println("Archiving before " + cutoff + " failed, retrying in " + archiveRetryMillis / 1000
+					+ " s: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Starts a bulk load. A single undo point is recorded for the whole load
+	 * instead of one full state snapshot per added professional, resource or
+	 * booking. Must be paired with {@link #endBulkLoad()}.
+	 */
+	public void beginBulkLoad() {
+		undoManager.saveState();
+		bulkLoading = true;
+	}
+
+	/**
+	 * Ends a bulk load started with {@link #beginBulkLoad()}.
+	 */
+	public void endBulkLoad() {
+		bulkLoading = false;
+	}
+
+	/**
+	 * Records an undo point unless a bulk load is in progress.
+	 */
+	private void saveUndoState() {
+		if (!bulkLoading) {
+			undoManager.saveState();
+		}
+	}
+
 	/**
 	 * Gets the duration of the last slot search operation.
 	 * 
@@ -226,6 +915,15 @@ public class Scheduler {
 		return undoManager.undo();
 	}
 
+	/**
+	 * Gets the number of operations that can be undone.
+	 * 
+	 * @return the number of undo points
+	 */
+	int undoDepth() {
+		return undoManager.size();
+	}
+
 	/**
 	 * Gets all health professionals in the scheduler.
 	 * 
@@ -235,13 +933,50 @@ public class Scheduler {
 		return new ArrayList<>(diaries.keySet());
 	}
 
+	/**
+	 * Checks whether the shared resource list has changed since the last save.
+	 * 
+	 * @return true if shared resources have unsaved changes
+	 */
+	public boolean isSharedResourcesDirty() {
+		return sharedResourcesDirty;
+	}
+
+	/**
+	 * Gets the location this scheduler was last saved to or loaded from with a
+	 * segmented save. Dirty flags are only meaningful relative to that location.
+	 * 
+	 * @return the last save location, or null if never saved
+	 */
+	public String getLastSaveLocation() {
+		return lastSaveLocation;
+	}
+
+	/**
+	 * Marks the scheduler and all of its diaries as saved at the given location.
+	 * 
+	 * @param location the location the state was saved to or loaded from
+	 */
+	public void markClean(String location) {
+		saves++;
+		boolean moved = !location.equals(lastSaveLocation);
+		for (Map.Entry<HealthProfessional, Diary> entry : diaries.entrySet()) {
+			if (moved || entry.getValue().isDirty()) {
+				savedIn.put(entry.getKey(), saves);
+			}
+			entry.getValue().markClean();
+		}
+		sharedResourcesDirty = false;
+		lastSaveLocation = location;
+	}
+
 	/**
 	 * Creates a memento of the current state for undo operations.
 	 * 
 	 * @return the memento object
 	 */
 	public SchedulerMemento createMemento() {
-		return new SchedulerMemento(new HashMap<>(diaries));
+		return new SchedulerMemento(new HashMap<>(diaries), saves);
 	}
 
 	/**
@@ -250,6 +985,128 @@ public class Scheduler {
 	 * @param memento the memento to restore from
 	 */
 	public void restoreFromMemento(SchedulerMemento memento) {
+		Map<HealthProfessional, Diary> replaced = diaries;
 		this.diaries = new HashMap<>(memento.getState());
+		for (Map.Entry<HealthProfessional, Diary> entry : diaries.entrySet()) {
+			entry.getValue().setListener(diaryListener);
+			// Copies keep the dirty flag they had, unless their diary has been
+			// saved again since
+			if (savedIn.getOrDefault(entry.getKey(), 0) > memento.getSaves()) {
+				entry.getValue().markDirty();
+			}
+		}
+
+		if (replicationLog != null || occupancy != null) {
+			// Compared once for both the log and the aggregates
+			Map<HealthProfessional, ReplicationLog.Difference> differences = ReplicationLog.differences(replaced,
+					diaries);
+			if (replicationLog != null) {
+				replicationLog.diariesReplaced(replaced, diaries, differences);
+			}
+			if (occupancy != null) {
+				for (Map.Entry<HealthProfessional, ReplicationLog.Difference> entry : differences.entrySet()) {
+					occupancy.apply(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		for (Map.Entry<HealthProfessional, Diary> entry : replaced.entrySet()) {
+			if (diaries.get(entry.getKey()) != entry.getValue()) {
+				entry.getValue().release();
+			}
+		}
+		professionalIndex.rebuild(diaries.keySet());
+		patientIndex = null;
+		searchCache.clear();
+	}
+
+	/**
+	 * Takes a copy of just what a slot search over these professionals,
+	 * resources and dates reads, so the search can run on another thread while
+	 * this scheduler is still in use: the attendees' appointments between the
+	 * dates, and any other diary's bookings of the resources between them. The
+	 * copy doesn't see later changes, and this scheduler must not change while
+	 * it is taken.
+	 * 
+	 * @param professionals the professionals who need to attend
+	 * @param resources     the resources that need to be booked
+	 * @param startDate     the first date to be searched
+	 * @param endDate       the last date to be searched
+	 * @return a scheduler holding the copied appointments
+	 */
+	public Scheduler snapshot(List<HealthProfessional> professionals, List<Resource> resources, LocalDate startDate,
+			LocalDate endDate) {
+		Scheduler copy = new Scheduler();
+		for (Map.Entry<HealthProfessional, Diary> entry : diaries.entrySet()) {
+			boolean attending = professionals.contains(entry.getKey());
+			if (!attending && (resources == null || resources.isEmpty())) {
+				continue;
+			}
+			Diary diary = new Diary(entry.getKey());
+			for (Appointment appt : entry.getValue().appointmentsBetween(startDate, endDate)) {
+				if (attending || appt.getResource() != null && resources.contains(appt.getResource())) {
+					diary.restoreAppointment(appt);
+				}
+			}
+			copy.diaries.put(entry.getKey(), diary);
+		}
+		return copy;
+	}
+
+	/**
+	 * Gets a publisher of the changes made to this scheduler, such as bookings,
+	 * rollbacks, undos and professionals or resources added. Changes are
+	 * recorded from the first call of this method on; see {@link ChangeFeed}.
+	 * 
+	 * @return the change feed
+	 */
+	public ChangeFeed getChangeFeed() {
+		if (changeFeed == null) {
+			changeFeed = new ChangeFeed(changeLog());
+		}
+		return changeFeed;
+	}
+
+	/**
+	 * Gets the log every change is recorded in, starting to record on first
+	 * use.
+	 * 
+	 * @return the log
+	 */
+	ReplicationLog changeLog() {
+		if (changeLog == null) {
+			changeLog = new ReplicationLog(CHANGE_LOG_RECORDS);
+			replicationLog = replaying ? null : changeLog;
+		}
+		return changeLog;
+	}
+
+	/**
+	 * Stops or resumes recording changes, for a replica whose change log is
+	 * instead filled with the records it receives from its primary.
+	 * 
+	 * @param replaying true while following a primary
+	 */
+	void setReplaying(boolean replaying) {
+		this.replaying = replaying;
+		this.replicationLog = replaying ? null : changeLog;
+	}
+
+	/**
+	 * Removes every professional and shared resource and forgets the undo
+	 * history, as when a replica starts again from a snapshot. Not recorded in
+	 * the replication log.
+	 */
+	void clear() {
+		for (Diary diary : diaries.values()) {
+			diary.release();
+		}
+		diaries = new HashMap<>();
+		sharedResources.clear();
+		sharedResourcesDirty = true;
+		undoManager = new UndoManager(this);
+		professionalIndex.rebuild(diaries.keySet());
+		patientIndex = null;
+		occupancy = null;
+		searchCache.clear();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package project;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A change made to a scheduler, as published by its {@link ChangeFeed}. Each
+ * event carries the sequence number it was recorded under, so a subscriber can
+ * resume after the last event it handled. The changes an undo made are
+ * published as ordinary events flagged by {@link #isUndo()}, followed by an
+ * {@link Type#UNDONE} event.
+ */
+public final class SchedulerEvent {
+
+	/**
+	 * The kinds of change.
+	 */
+	public enum Type {
+		/** An appointment was added to a professional's diary, or restored by an undo. */
+		BOOKED,
+		/** An appointment was removed: rolled back, cancelled or undone. */
+		ROLLED_BACK,
+		/** An undo finished; its changes were published just before. */
+		UNDONE,
+		/** A professional was added. */
+		PROFESSIONAL_ADDED,
+		/** A professional was removed. */
+		PROFESSIONAL_REMOVED,
+		/** A shared resource was added. */
+		RESOURCE_ADDED,
+		/** A task was added to a professional's diary. */
+		TASK_ADDED,
+		/** A professional's tasks were replaced by an undo. */
+		TASKS_REPLACED
+	}
+
+	private final long sequence;
+	private final long time;
+	private final Type type;
+	private final HealthProfessional professional;
+	private final Appointment appointment;
+	private final Resource resource;
+	private final List<Task> tasks;
+	private final boolean undo;
+
+	SchedulerEvent(long sequence, long time, Type type, HealthProfessional professional, Appointment appointment,
+			Resource resource, List<Task> tasks, boolean undo) {
+		this.sequence = sequence;
+		this.time = time;
+		this.type = type;
+		this.professional = professional;
+		this.appointment = appointment;
+		this.resource = resource;
+		this.tasks = tasks == null ? List.of() : List.copyOf(tasks);
+		this.undo = undo;
+	}
+
+	/**
+	 * Gets the sequence number the change was recorded under.
+	 *
+	 * @return the sequence number, from 1
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets when the change was recorded.
+	 *
+	 * @return the time
+	 */
+	public Instant getTime() {
+		return Instant.ofEpochMilli(time);
+	}
+
+	/**
+	 * Gets the kind of change.
+	 *
+	 * @return the type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the professional whose diary changed, or who was added or removed.
+	 *
+	 * @return the professional, or null for resource and undo events
+	 */
+	public HealthProfessional getProfessional() {
+		return professional;
+	}
+
+	/**
+	 * Gets the appointment booked or rolled back.
+	 *
+	 * @return the appointment, or null for other events
+	 */
+	public Appointment getAppointment() {
+		return appointment;
+	}
+
+	/**
+	 * Gets the resource added, or the resource of the appointment booked or
+	 * rolled back.
+	 *
+	 * @return the resource, or null if none
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * Gets the task added, or a professional's tasks after an undo.
+	 *
+	 * @return the tasks, empty for other events
+	 */
+	public List<Task> getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * Checks whether the change was made by an undo rather than a new request.
+	 * A booking an undo restored was already booked once, so anything acting
+	 * on new bookings, such as sending reminders, should skip it.
+	 *
+	 * @return true if an undo made the change
+	 */
+	public boolean isUndo() {
+		return undo;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder().append('#').append(sequence).append(' ').append(type);
+		if (undo) {
+			sb.append(" (undo)");
+		}
+		if (professional != null) {
+			sb.append(' ').append(professional.getName());
+		}
+		if (appointment != null) {
+			sb.append(": ").append(appointment);
+		} else if (resource != null) {
+			sb.append(' ').append(resource.getName());
+		} else if (!tasks.isEmpty()) {
+			sb.append(": ").append(tasks);
+		}
+		return sb.toString();
+	}
+}
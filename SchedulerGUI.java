@@ -7,7 +7,9 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Provides a comprehensive graphical user interface for the Operation Scheduler application
@@ -18,6 +20,10 @@ public class SchedulerGUI {
     private JFrame mainFrame;
     private JTextArea outputArea;
     private JTabbedPane tabbedPane;
+    private AppointmentTableModel appointmentTableModel;
+    private AppointmentTableModel dayTableModel;
+    private CalendarHeatmap calendarHeatmap;
+    private JComboBox<String> shadeCombo;
 
     /**
      * Constructs a new SchedulerGUI with the specified scheduler.
@@ -197,11 +203,9 @@ public class SchedulerGUI {
         buttonPanel.add(listButton);
         buttonPanel.add(searchButton);
 
-        // List display
-        JTextArea listArea = new JTextArea();
-        listArea.setEditable(false);
-        listArea.setFont(new Font("SansSerif", Font.PLAIN, 13));
-        JScrollPane scrollPane = new JScrollPane(listArea);
+        // Table display; rows are fetched as they scroll into view
+        appointmentTableModel = new AppointmentTableModel(scheduler);
+        JScrollPane scrollPane = new JScrollPane(createAppointmentTable(appointmentTableModel));
         scrollPane.setPreferredSize(new Dimension(960, 480));
         scrollPane.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
 
@@ -299,6 +303,7 @@ public class SchedulerGUI {
             "January", "February", "March", "April", "May", "June",
             "July", "August", "September", "October", "November", "December"
         });
+        shadeCombo = new JComboBox<>(new String[]{"Appointments", "Utilisation %"});
         JButton refreshButton = new JButton("Refresh");
         
         // Populate years (current year ±5 years)
@@ -313,92 +318,69 @@ public class SchedulerGUI {
         controlPanel.add(yearCombo);
         controlPanel.add(new JLabel("Month:"));
         controlPanel.add(monthCombo);
+        controlPanel.add(new JLabel("Shade by:"));
+        controlPanel.add(shadeCombo);
         controlPanel.add(refreshButton);
         
-        // Calendar panel
-        JPanel calendarPanel = new JPanel(new GridLayout(0, 7, 5, 5));
-        calendarPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        // Calendar heatmap, shaded by appointment count or utilisation per day
+        calendarHeatmap = new CalendarHeatmap(this::showAppointmentsOnDate);
+        dayTableModel = new AppointmentTableModel(scheduler);
+        JScrollPane dayScrollPane = new JScrollPane(createAppointmentTable(dayTableModel));
+        dayScrollPane.setPreferredSize(new Dimension(960, 160));
         
         refreshButton.addActionListener(e -> updateCalendarView(
             (Integer) yearCombo.getSelectedItem(), 
-            monthCombo.getSelectedIndex() + 1, 
-            calendarPanel));
+            monthCombo.getSelectedIndex() + 1));
+        shadeCombo.addActionListener(e -> updateCalendarView(
+            (Integer) yearCombo.getSelectedItem(), 
+            monthCombo.getSelectedIndex() + 1));
         
         panel.add(controlPanel, BorderLayout.NORTH);
-        panel.add(new JScrollPane(calendarPanel), BorderLayout.CENTER);
+        panel.add(calendarHeatmap, BorderLayout.CENTER);
+        panel.add(dayScrollPane, BorderLayout.SOUTH);
         
         // Initial calendar update
-        updateCalendarView(currentYear, LocalDate.now().getMonthValue(), calendarPanel);
+        updateCalendarView(currentYear, LocalDate.now().getMonthValue());
         return panel;
     }
 
+    /**
+     * Creates a table over an appointment model.
+     *
+     * @param model the model to display
+     * @return the configured table
+     */
+    private JTable createAppointmentTable(AppointmentTableModel model) {
+        JTable table = new JTable(model);
+        table.setFont(new Font("SansSerif", Font.PLAIN, 13));
+        table.setRowHeight(22);
+        table.setFillsViewportHeight(true);
+        return table;
+    }
+
     /**
      * Updates the calendar view for the specified year and month.
      * 
      * @param year the year to display
      * @param month the month to display (1-12)
-     * @param calendarPanel the panel to update
      */
-    private void updateCalendarView(int year, int month, JPanel calendarPanel) {
-        calendarPanel.removeAll();
-        
-        // Add day headers
-        String[] days = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
-        for (String day : days) {
-            JLabel label = new JLabel(day, SwingConstants.CENTER);
-            label.setFont(new Font("SansSerif", Font.BOLD, 14));
-            calendarPanel.add(label);
-        }
-        
+    private void updateCalendarView(int year, int month) {
         YearMonth yearMonth = YearMonth.of(year, month);
-        LocalDate first = yearMonth.atDay(1);
-        int startOffset = first.getDayOfWeek().getValue() % 7; // Sunday = 0
-        
-        // Add empty cells for offset
-        for (int i = 0; i < startOffset; i++) {
-            calendarPanel.add(new JLabel(""));
-        }
-        
-        // Add day cells
-        for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
-            JButton dayButton = new JButton(String.valueOf(day));
-            dayButton.setFont(new Font("SansSerif", Font.PLAIN, 12));
-            LocalDate date = LocalDate.of(year, month, day);
-            dayButton.addActionListener(e -> showAppointmentsOnDate(date));
-            calendarPanel.add(dayButton);
+        if (shadeCombo.getSelectedIndex() == 1) {
+            calendarHeatmap.setMonth(yearMonth, scheduler.getDailyUtilisation(yearMonth), 100, "%");
+        } else {
+            calendarHeatmap.setMonth(yearMonth, scheduler.getDailyAppointmentCounts(yearMonth), 0, "");
         }
-        
-        calendarPanel.revalidate();
-        calendarPanel.repaint();
     }
 
     /**
-     * Shows appointments on a specific date in the output area.
+     * Shows appointments on a specific date in the table below the calendar.
      * 
      * @param date the date to show appointments for
      */
     private void showAppointmentsOnDate(LocalDate date) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Appointments on ").append(date).append(":\n");
-        
-        for (HealthProfessional hp : scheduler.getAllHealthProfessionals()) {
-            List<Appointment> appointments = scheduler.getDiary(hp).getAppointmentsOnDate(date);
-            if (!appointments.isEmpty()) {
-                sb.append(hp.getName()).append(":\n");
-                for (Appointment appt : appointments) {
-                    sb.append(" - ").append(appt.getStartTime()).append(" to ")
-                      .append(appt.getEndTime()).append(": ")
-                      .append(appt.getPatientName()).append(" (")
-                      .append(appt.getTreatmentType()).append(")");
-                    if (appt.getResource() != null) {
-                        sb.append(" [Resource: ").append(appt.getResource().getName()).append("]");
-                    }
-                    sb.append("\n");
-                }
-            }
-        }
-        
-        outputArea.append(sb.toString());
+        dayTableModel.setRange(date, date);
+        outputArea.append("Appointments on " + date + ": " + dayTableModel.getRowCount() + "\n");
     }
 
     /**
@@ -538,6 +520,7 @@ public class SchedulerGUI {
                 Appointment appt = new Appointment(date, startTime, endTime, treatment, patient, false, resource);
 
                 if (scheduler.bookAppointment(List.of(selected), appt)) {
+                    appointmentsChanged();
                     outputArea.append("Appointment booked successfully for " + selected.getName() + "\n");
                 } else {
                     showError("Failed to book appointment - time slot not available");
@@ -625,6 +608,7 @@ public class SchedulerGUI {
                 Appointment appt = new Appointment(date, startTime, endTime, treatment, patient, true, resource);
 
                 if (scheduler.bookRecurringAppointment(List.of(selected), appt, recurrenceDays, occurrences)) {
+                    appointmentsChanged();
                     outputArea.append("Recurring appointment booked successfully for " + selected.getName() + "\n");
                 } else {
                     showError("Failed to book recurring appointment - time slot not available");
@@ -699,23 +683,12 @@ public class SchedulerGUI {
                     return;
                 }
                 
-                List<TimeSlot> availableSlots = scheduler.findAvailableSlots(
-                    selectedProfessionals, 
-                    selectedResources,
-                    startDate, 
-                    endDate, 
-                    duration
-                );
-                
-                outputArea.append("=== Available Slots ===\n");
-                outputArea.append("Search took: " + scheduler.getLastSearchDuration() + "ms\n");
-                if (availableSlots.isEmpty()) {
-                    outputArea.append("No available slots found\n");
-                } else {
-                    for (TimeSlot slot : availableSlots) {
-                        outputArea.append("- " + slot + "\n");
-                    }
+                if (endDate.isBefore(startDate)) {
+                    showError("End date must not be before start date");
+                    return;
                 }
+
+                runSlotSearch(selectedProfessionals, selectedResources, startDate, endDate, duration);
             } catch (DateTimeParseException e) {
                 showError("Invalid date format. Please use YYYY-MM-DD.");
             } catch (NumberFormatException e) {
@@ -724,6 +697,103 @@ public class SchedulerGUI {
         }
     }
 
+    /**
+     * Runs a slot search in the background, one day at a time, streaming each
+     * day's slots to the output area as it finishes. The search first copies
+     * just the appointments it reads, and then searches the copy, so it never
+     * reads the scheduler while the tables and other views do. A modal progress
+     * dialog with a cancel button stays up meanwhile, so the window keeps
+     * repainting while no other action can change the scheduler under the copy.
+     *
+     * @param professionals the professionals who need to attend
+     * @param resources     the resources that need to be booked
+     * @param startDate     the first date to search
+     * @param endDate       the last date to search
+     * @param duration      the duration needed in minutes
+     */
+    private void runSlotSearch(List<HealthProfessional> professionals, List<Resource> resources,
+                               LocalDate startDate, LocalDate endDate, int duration) {
+        long totalDays = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+
+        JDialog progressDialog = new JDialog(mainFrame, "Searching Available Slots", Dialog.ModalityType.APPLICATION_MODAL);
+        JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        JLabel statusLabel = new JLabel("Searching " + totalDays + " days...");
+        JButton cancelButton = new JButton("Cancel");
+
+        JPanel progressPanel = new JPanel(new BorderLayout(10, 10));
+        progressPanel.setBorder(new EmptyBorder(15, 15, 15, 15));
+        progressPanel.add(statusLabel, BorderLayout.NORTH);
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        progressPanel.add(cancelButton, BorderLayout.SOUTH);
+        progressDialog.add(progressPanel);
+        progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        progressDialog.pack();
+        progressDialog.setLocationRelativeTo(mainFrame);
+
+        outputArea.append("=== Available Slots ===\n");
+        long started = System.currentTimeMillis();
+
+        SwingWorker<Integer, TimeSlot> worker = new SwingWorker<Integer, TimeSlot>() {
+            @Override
+            protected Integer doInBackground() {
+                Scheduler snapshot = scheduler.snapshot(professionals, resources, startDate, endDate);
+                int found = 0;
+                long searched = 0;
+                for (LocalDate date = startDate; !date.isAfter(endDate) && !isCancelled(); date = date.plusDays(1)) {
+                    List<TimeSlot> daySlots = snapshot.findAvailableSlots(professionals, resources, date, date, duration);
+                    found += daySlots.size();
+                    publish(daySlots.toArray(new TimeSlot[0]));
+                    searched++;
+                    setProgress((int) (searched * 100 / totalDays));
+                }
+                return found;
+            }
+
+            @Override
+            protected void process(List<TimeSlot> chunks) {
+                if (chunks.isEmpty()) {
+                    return;
+                }
+                // One append per batch of finished days keeps repaints cheap
+                StringBuilder sb = new StringBuilder();
+                for (TimeSlot slot : chunks) {
+                    sb.append("- ").append(slot).append("\n");
+                }
+                outputArea.append(sb.toString());
+                statusLabel.setText("Searching... up to " + chunks.get(chunks.size() - 1).getDate());
+            }
+
+            @Override
+            protected void done() {
+                progressDialog.dispose();
+                long took = System.currentTimeMillis() - started;
+                if (isCancelled()) {
+                    outputArea.append("Search cancelled after " + took + "ms\n");
+                    return;
+                }
+                try {
+                    int found = get();
+                    if (found == 0) {
+                        outputArea.append("No available slots found\n");
+                    }
+                    outputArea.append("Search took: " + took + "ms, " + found + " slots\n");
+                } catch (InterruptedException | ExecutionException e) {
+                    showError("Search failed: " + e.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                progressBar.setValue((Integer) e.getNewValue());
+            }
+        });
+        cancelButton.addActionListener(e -> worker.cancel(false));
+
+        worker.execute();
+        progressDialog.setVisible(true);
+    }
+
     /**
      * Shows a dialog to add a new task.
      */
@@ -771,23 +841,39 @@ public class SchedulerGUI {
     }
 
     /**
-     * Lists all appointments in the output area.
+     * Lists the appointments in a chosen date range in the appointments table.
      */
     private void listAppointments() {
-        List<HealthProfessional> professionals = scheduler.getAllHealthProfessionals();
-        if (professionals.isEmpty()) {
-            outputArea.append("No health professionals available.\n");
-            return;
-        }
+        LocalDate today = LocalDate.now();
+        JTextField fromField = new JTextField(today.withDayOfMonth(1).toString(), 10);
+        JTextField toField = new JTextField(today.plusYears(1).toString(), 10);
 
-        outputArea.append("=== Appointments ===\n");
-        for (HealthProfessional hp : professionals) {
-            List<Appointment> appointments = scheduler.getDiary(hp).getAllAppointments();
-            if (!appointments.isEmpty()) {
-                outputArea.append("Appointments for " + hp.getName() + ":\n");
-                for (Appointment appt : appointments) {
-                    outputArea.append("- " + appt + "\n");
+        JPanel panel = new JPanel(new GridLayout(2, 2, 10, 10));
+        panel.add(new JLabel("From (YYYY-MM-DD):"));
+        panel.add(fromField);
+        panel.add(new JLabel("To (YYYY-MM-DD):"));
+        panel.add(toField);
+
+        int result = JOptionPane.showConfirmDialog(
+                mainFrame,
+                panel,
+                "List Appointments",
+                JOptionPane.OK_CANCEL_OPTION
+        );
+
+        if (result == JOptionPane.OK_OPTION) {
+            try {
+                LocalDate from = LocalDate.parse(fromField.getText());
+                LocalDate to = LocalDate.parse(toField.getText());
+                if (to.isBefore(from)) {
+                    showError("End date must not be before start date");
+                    return;
                 }
+                appointmentTableModel.setRange(from, to);
+                outputArea.append("Listing " + appointmentTableModel.getRowCount() + " appointments from "
+                        + from + " to " + to + "\n");
+            } catch (DateTimeParseException e) {
+                showError("Invalid date format. Please use YYYY-MM-DD.");
             }
         }
     }
@@ -893,6 +979,8 @@ public class SchedulerGUI {
         if (fileChooser.showOpenDialog(mainFrame) == JFileChooser.APPROVE_OPTION) {
             try {
                 scheduler = FileManager.loadFromFile(fileChooser.getSelectedFile().getPath());
+                appointmentTableModel.setScheduler(scheduler);
+                dayTableModel.setScheduler(scheduler);
                 outputArea.append("Data loaded successfully from " + fileChooser.getSelectedFile().getPath() + "\n");
             } catch (Exception ex) {
                 showError("Error loading data: " + ex.getMessage());
@@ -905,12 +993,22 @@ public class SchedulerGUI {
      */
     private void undoLastOperation() {
         if (scheduler.undo()) {
+            appointmentsChanged();
             outputArea.append("Undo successful");
         } else {
             outputArea.append("Nothing to undo");
         }
     }
 
+    /**
+     * Refreshes the appointment tables after a booking or undo, which shifts
+     * the rows of every later day in their ranges.
+     */
+    private void appointmentsChanged() {
+        appointmentTableModel.refresh();
+        dayTableModel.refresh();
+    }
+
     /**
      * Displays an error message dialog.
      *
@@ -8,6 +8,7 @@ import java.util.Map;
  */
 public class SchedulerMemento {
 	private Map<HealthProfessional, Diary> state;
+	private int saves;
 
 	/**
 	 * Constructs a new memento with the current state.
@@ -15,7 +16,18 @@ public class SchedulerMemento {
 	 * @param state the state to save
 	 */
 	public SchedulerMemento(Map<HealthProfessional, Diary> state) {
-		
+		this(state, -1);
+	}
+
+	/**
+	 * Constructs a new memento with the current state, noting how many times
+	 * the scheduler had been saved.
+	 * 
+	 * @param state the state to save
+	 * @param saves the number of saves so far, or -1 if unknown
+	 */
+	SchedulerMemento(Map<HealthProfessional, Diary> state, int saves) {
+		this.saves = saves;
 		this.state = new HashMap<>();
 		for (Map.Entry<HealthProfessional, Diary> entry : state.entrySet()) {
 			HealthProfessional hp = entry.getKey();
@@ -26,18 +38,7 @@ public class SchedulerMemento {
 					hp.getOfficeLocation());
 
 			// Creating  a copy of the diary
-			Diary diaryCopy = new Diary(hpCopy);
-			for (Appointment appt : originalDiary.getAllAppointments()) {
-				diaryCopy.addAppointment(new Appointment(appt.getDate(), appt.getStartTime(), appt.getEndTime(),
-						appt.getTreatmentType(), appt.getPatientName(), appt.isRecurring(), appt.getResource()));
-			}
-
-			// Copy tasks
-			for (Task task : originalDiary.getAllTasks()) {
-				diaryCopy.addTask(new Task(task.getDescription(), task.getPriority()));
-			}
-
-			this.state.put(hpCopy, diaryCopy);
+			this.state.put(hpCopy, originalDiary.copy(hpCopy));
 		}
 	}
 
@@ -49,4 +50,14 @@ public class SchedulerMemento {
 	public Map<HealthProfessional, Diary> getState() {
 		return state;
 	}
+
+	/**
+	 * Gets the number of times the scheduler had been saved when this memento
+	 * was taken.
+	 * 
+	 * @return the number of saves, or -1 if unknown
+	 */
+	int getSaves() {
+		return saves;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+package project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps a scheduler in step with a primary by applying the records shipped by
+ * its {@link ReplicationPrimary}, in order and under the same lock that
+ * readers of the scheduler take. Received records are also appended to the
+ * scheduler's change log, with the primary's numbering, so that after
+ * {@link #promote()} other replicas can resume from this one without a
+ * snapshot. If the connection drops the replica reconnects and resumes; if a
+ * record doesn't fit its state it starts again from a snapshot.
+ * <p>
+ * Staleness is measured from heartbeats: once every record the primary had
+ * when it sent a heartbeat has been applied, the replica is known to be at
+ * least as fresh as the moment the heartbeat arrived.
+ */
+public class SchedulerReplica {
+	private static final long RECONNECT_MILLIS = 500;
+
+	private final Scheduler scheduler;
+	private final Lock lock;
+	private ReplicationLog log;
+	private final String host;
+	private final int port;
+	private Thread follower;
+	private volatile Socket socket;
+	private volatile boolean following;
+	private volatile boolean connected;
+	private volatile long freshAsOf;
+	private volatile long snapshots;
+	// Heartbeats whose records have not all arrived yet: {sequence, arrival}
+	private final ArrayDeque<long[]> pending = new ArrayDeque<>();
+
+	/**
+	 * Constructs a replica. The scheduler's current contents are replaced by
+	 * the primary's once connected.
+	 *
+	 * @param scheduler the scheduler to keep in step
+	 * @param lock      the lock readers of the scheduler take
+	 * @param host      the primary's host
+	 * @param port      the primary's replication port
+	 */
+	SchedulerReplica(Scheduler scheduler, Lock lock, String host, int port) {
+		this.scheduler = scheduler;
+		this.lock = lock;
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Starts following the primary. Changes are applied without undo points,
+	 * and the scheduler's change log takes the primary's records rather than
+	 * recording its own.
+	 */
+	public void start() {
+		lock.lock();
+		try {
+			scheduler.beginBulkLoad();
+			scheduler.setReplaying(true);
+			log = scheduler.changeLog();
+		} finally {
+			lock.unlock();
+		}
+		following = true;
+		follower = Thread.ofPlatform().daemon().name("replica-" + host + ":" + port).start(this::followLoop);
+	}
+
+	/**
+	 * Stops following and makes the scheduler record its own changes in the
+	 * log from the last record applied, ready to be shipped to the remaining
+	 * replicas. Undo starts with an empty history.
+	 *
+	 * @throws InterruptedException if interrupted while the follower stops
+	 */
+	public void promote() throws InterruptedException {
+		following = false;
+		closeSocket();
+		follower.join();
+		lock.lock();
+		try {
+			scheduler.endBulkLoad();
+			scheduler.setReplaying(false);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks whether this replica still follows its primary.
+	 *
+	 * @return false once promoted
+	 */
+	public boolean isFollowing() {
+		return following;
+	}
+
+	/**
+	 * Checks whether the replica is connected to its primary.
+	 *
+	 * @return true if connected
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Gets the number of the last record applied.
+	 *
+	 * @return the sequence number
+	 */
+	public long getAppliedSequence() {
+		return log.lastSeq();
+	}
+
+	/**
+	 * Gets the number of snapshots taken from the primary.
+	 *
+	 * @return the count
+	 */
+	public long getSnapshotCount() {
+		return snapshots;
+	}
+
+	/**
+	 * Gets an upper bound on how far behind the primary this replica is.
+	 *
+	 * @return the milliseconds since the replica was last known to be up to
+	 *         date, or {@link Long#MAX_VALUE} if it never has been
+	 */
+	public long getStalenessMillis() {
+		long asOf = freshAsOf;
+		return asOf == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - asOf;
+	}
+
+	/**
+	 * Gets the primary's address.
+	 *
+	 * @return host:port
+	 */
+	public String getPrimary() {
+		return host + ":" + port;
+	}
+
+	private void followLoop() {
+		while (following) {
+			try (Socket s = new Socket()) {
+				socket = s;
+				if (!following) {
+					break;
+				}
+				s.connect(new InetSocketAddress(host, port));
+				s.setTcpNoDelay(true);
+				connected = true;
+				follow(s);
+			} catch (IllegalStateException e) {
+				// Diverged; forget the history so the primary sends a snapshot
+				System.err.println("Replica diverged from " + getPrimary() + ": " + e.getMessage());
+				log.reset(0, 0);
+			} catch (IOException e) {
+				// Primary unreachable or gone; retry below
+			} finally {
+				connected = false;
+				synchronized (pending) {
+					pending.clear();
+				}
+			}
+			try {
+				if (following) {
+					Thread.sleep(RECONNECT_MILLIS);
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void follow(Socket s) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+		out.writeInt(ReplicationPrimary.MAGIC);
+		out.writeLong(log.lastSeq());
+		out.writeLong(log.lastHash());
+		out.flush();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+		while (following) {
+			int kind = in.read();
+			if (kind < 0) {
+				throw new EOFException();
+			}
+			switch (kind) {
+			case ReplicationPrimary.SNAPSHOT:
+				applySnapshot(in);
+				break;
+			case ReplicationPrimary.RECORD:
+				applyRecord(in);
+				break;
+			case ReplicationPrimary.HEARTBEAT:
+				heartbeat(in.readLong());
+				break;
+			default:
+				throw new IOException("Unknown frame " + kind);
+			}
+		}
+	}
+
+	private void applySnapshot(DataInputStream in) throws IOException {
+		long seq = in.readLong();
+		long hash = in.readLong();
+		int count = in.readInt();
+		byte[][] records = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			records[i] = new byte[in.readInt()];
+			in.readFully(records[i]);
+		}
+		lock.lock();
+		try {
+			for (byte[] record : records) {
+				ReplicationLog.apply(scheduler, record);
+			}
+			log.reset(seq, hash);
+		} finally {
+			lock.unlock();
+		}
+		snapshots++;
+	}
+
+	private void applyRecord(DataInputStream in) throws IOException {
+		long seq = in.readLong();
+		byte[] record = new byte[in.readInt()];
+		in.readFully(record);
+		lock.lock();
+		try {
+			if (seq != log.lastSeq() + 1) {
+				throw new IllegalStateException("Expected record " + (log.lastSeq() + 1) + " but got " + seq);
+			}
+			ReplicationLog.apply(scheduler, record);
+			log.append(record);
+		} finally {
+			lock.unlock();
+		}
+		synchronized (pending) {
+			while (!pending.isEmpty() && pending.peek()[0] <= seq) {
+				freshAsOf = pending.poll()[1];
+			}
+		}
+	}
+
+	private void heartbeat(long primarySeq) {
+		long now = System.currentTimeMillis();
+		synchronized (pending) {
+			if (primarySeq <= log.lastSeq()) {
+				pending.clear();
+				freshAsOf = now;
+			} else {
+				pending.add(new long[] { primarySeq, now });
+			}
+		}
+	}
+
+	private void closeSocket() {
+		Socket s = socket;
+		if (s != null) {
+			try {
+				s.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+}
@@ -0,0 +1,893 @@
+package project;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves a scheduler over HTTP with a JSON API, so many clinic terminals can
+ * share one scheduler. Every request runs on its own virtual thread; scheduler
+ * calls are serialized by a lock, while parsing and network I/O run
+ * concurrently.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li>GET /professionals[?profession=&amp;location=] and POST /professionals
+ * with {"name", "profession", "location"}</li>
+ * <li>GET /resources</li>
+ * <li>GET /appointments?professional=NAME[&amp;from=&amp;to=] and POST
+ * /appointments with {"professionals": [names], "date", "start", "end",
+ * "treatment", "patient", "resource", "recurrenceDays", "occurrences"}</li>
+ * <li>GET /patients/bookings?name=</li>
+ * <li>GET /slots?professionals=A,B&amp;resources=R&amp;from=&amp;to=&amp;duration=</li>
+ * <li>GET /slots/earliest?profession=&amp;location=&amp;from=&amp;to=&amp;duration=&amp;count=</li>
+ * <li>POST /undo</li>
+ * <li>POST /transactions/prepare, /transactions/commit and
+ * /transactions/abort, the participant side of a two-phase booking made by a
+ * {@link ShardRouter}</li>
+ * <li>GET /replication, the replication role and position, and POST
+ * /replication/promote to make a replica the primary</li>
+ * </ul>
+ * Dates are ISO dates and times are HH:mm. Errors are returned as
+ * {"error": message} with status 400, 403, 404, 405, 409, 500 or 503.
+ * <p>
+ * A server can ship its changes to replicas with {@link #replicateTo(int)},
+ * or follow a primary with {@link #follow(String, int, long)}. A following
+ * server refuses changes with 403 and refuses reads with 503 while it may be
+ * further behind its primary than the configured bound; once promoted it
+ * serves everything from the state it already holds.
+ * <p>
+ * Bookings check their resource against every diary, not only the attendees'.
+ * A prepared booking is held in the diaries as if booked. Commit keeps it and
+ * abort removes it. Having voted to hold a booking the server never gives it
+ * up on its own, since the coordinator may already have told other sites to
+ * keep theirs: a booking left undecided for {@link #PREPARE_TIMEOUT_MILLIS} is
+ * resolved by asking the coordinator for its decision, and asked again later
+ * if the coordinator can't be reached. A prepared booking may name
+ * professionals from other sites, who are added here as visitors so that a
+ * resource held for them shows as busy in this scheduler's searches.
+ * <p>
+ * Undo is refused with 409 while a booking across sites is undecided, or if it
+ * would go back past one that was committed.
+ */
+public class SchedulerServer {
+	private static final int BACKLOG = 1024;
+	static final long PREPARE_TIMEOUT_MILLIS = 30_000;
+	// The same limits the console puts on a recurring booking
+	static final int MAX_OCCURRENCES = 100;
+	static final int MAX_RECURRENCE_DAYS = 30;
+	private static final Duration COORDINATOR_TIMEOUT = Duration.ofSeconds(5);
+
+	private final Scheduler scheduler;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final int requestedPort;
+	private HttpServer server;
+	private ExecutorService executor;
+	private ScheduledExecutorService expiry;
+	private HttpClient client;
+	// Guarded by lock
+	private final Map<String, PreparedBooking> prepared = new HashMap<>();
+	// Guarded by lock: undoing at or below this depth would drop a committed
+	// booking made across sites
+	private int undoFloor;
+	private ReplicationLog replicationLog;
+	private ReplicationPrimary replicationPrimary;
+	private volatile SchedulerReplica replica;
+	private long maxStalenessMillis;
+
+	/**
+	 * Constructs a server for a scheduler.
+	 *
+	 * @param scheduler the scheduler to serve
+	 * @param port      the port to listen on, or 0 for any free port
+	 */
+	public SchedulerServer(Scheduler scheduler, int port) {
+		this.scheduler = scheduler;
+		this.requestedPort = port;
+	}
+
+	/**
+	 * Starts listening.
+	 *
+	 * @throws IOException if the port can't be bound
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(requestedPort), BACKLOG);
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		server.setExecutor(executor);
+		server.createContext("/professionals", exchange -> handle(exchange, replicated(this::professionals)));
+		server.createContext("/resources", exchange -> handle(exchange, replicated(this::resources)));
+		server.createContext("/appointments", exchange -> handle(exchange, replicated(this::appointments)));
+		server.createContext("/patients/bookings", exchange -> handle(exchange, replicated(this::patientBookings)));
+		server.createContext("/slots", exchange -> handle(exchange, replicated(this::slots)));
+		server.createContext("/slots/earliest", exchange -> handle(exchange, replicated(this::earliestSlots)));
+		server.createContext("/undo", exchange -> handle(exchange, replicated(this::undo)));
+		server.createContext("/transactions/prepare", exchange -> handle(exchange, replicated(this::prepare)));
+		server.createContext("/transactions/commit", exchange -> handle(exchange, replicated(this::commit)));
+		server.createContext("/transactions/abort", exchange -> handle(exchange, replicated(this::abort)));
+		server.createContext("/replication", exchange -> handle(exchange, this::replication));
+		server.createContext("/replication/promote", exchange -> handle(exchange, this::promote));
+		server.start();
+		client = HttpClient.newBuilder().connectTimeout(COORDINATOR_TIMEOUT).build();
+		expiry = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "prepared-booking-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		expiry.scheduleWithFixedDelay(this::resolveUndecided, PREPARE_TIMEOUT_MILLIS / 4,
+				PREPARE_TIMEOUT_MILLIS / 4, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the server, letting requests in progress finish.
+	 *
+	 * @param delaySeconds the longest time to wait for requests in progress
+	 */
+	public void stop(int delaySeconds) {
+		if (replicationPrimary != null) {
+			replicationPrimary.stop();
+		}
+		if (server != null) {
+			server.stop(delaySeconds);
+			executor.shutdown();
+			expiry.shutdown();
+			server = null;
+		}
+	}
+
+	/**
+	 * Gets the port the server is listening on.
+	 *
+	 * @return the bound port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Ships every change to this server's scheduler to replicas connecting on a
+	 * port. A server that follows a primary passes on the primary's changes,
+	 * with the same numbering, so its replicas can switch to it on failover
+	 * without a snapshot.
+	 *
+	 * @param port the port replicas connect to, or 0 for any free port
+	 * @throws IOException if the port can't be bound
+	 */
+	public void replicateTo(int port) throws IOException {
+		lock.lock();
+		try {
+			replicationLog = scheduler.changeLog();
+			replicationPrimary = new ReplicationPrimary(scheduler, lock, replicationLog, port);
+			replicationPrimary.start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Makes this server a read-only replica of a primary's scheduler. Must be
+	 * called before {@link #replicateTo(int)}.
+	 *
+	 * @param host               the primary's host
+	 * @param port               the primary's replication port
+	 * @param maxStalenessMillis how far behind the primary reads may be
+	 */
+	public void follow(String host, int port, long maxStalenessMillis) {
+		if (replicationLog != null) {
+			throw new IllegalStateException("Already replicating");
+		}
+		this.maxStalenessMillis = maxStalenessMillis;
+		replica = new SchedulerReplica(scheduler, lock, host, port);
+		replica.start();
+		replicationLog = scheduler.changeLog();
+	}
+
+	/**
+	 * Stops following the primary and starts accepting changes, shipping them
+	 * to this server's own replicas if it has any.
+	 *
+	 * @return false if this server wasn't following a primary
+	 * @throws InterruptedException if interrupted while the replica stops
+	 */
+	public boolean promote() throws InterruptedException {
+		SchedulerReplica following = replica;
+		if (following == null || !following.isFollowing()) {
+			return false;
+		}
+		following.promote();
+		return true;
+	}
+
+	/**
+	 * Gets the port replicas connect to.
+	 *
+	 * @return the bound port, or -1 if not shipping changes
+	 */
+	public int getReplicationPort() {
+		return replicationPrimary == null ? -1 : replicationPrimary.getPort();
+	}
+
+	/**
+	 * Wraps an endpoint so that, while following a primary, changes are
+	 * refused and reads are refused when too stale.
+	 */
+	private Endpoint replicated(Endpoint endpoint) {
+		return exchange -> {
+			SchedulerReplica following = replica;
+			if (following != null && following.isFollowing()) {
+				if (!isGet(exchange)) {
+					throw new HttpError(403, "Read-only replica of " + following.getPrimary());
+				}
+				long staleness = following.getStalenessMillis();
+				if (staleness > maxStalenessMillis) {
+					throw new HttpError(503, staleness == Long.MAX_VALUE ? "Replica has not caught up yet"
+							: "Replica is " + staleness + " ms behind its primary");
+				}
+			}
+			return endpoint.serve(exchange);
+		};
+	}
+
+	interface Endpoint {
+		Response serve(HttpExchange exchange) throws IOException;
+	}
+
+	static class Response {
+		final int status;
+		final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	static class HttpError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	static void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+		Response response;
+		try {
+			response = endpoint.serve(exchange);
+		} catch (HttpError e) {
+			response = error(e.status, e.getMessage());
+		} catch (IllegalArgumentException | DateTimeParseException | ClassCastException e) {
+			response = error(400, e.getMessage());
+		} catch (RuntimeException e) {
+			response = error(500, e.toString());
+		}
+		byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(response.status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	static Response error(int status, String message) {
+		StringBuilder sb = new StringBuilder("{\"error\":");
+		Json.quote(sb, message == null ? "Bad request" : message);
+		return new Response(status, sb.append('}').toString());
+	}
+
+	private Response professionals(HttpExchange exchange) throws IOException {
+		if (isGet(exchange)) {
+			Map<String, String> query = query(exchange);
+			StringBuilder sb = new StringBuilder("[");
+			lock.lock();
+			try {
+				for (HealthProfessional hp : scheduler.findProfessionals(query.get("profession"),
+						query.get("location"))) {
+					professional(sb.length() > 1 ? sb.append(',') : sb, hp);
+				}
+			} finally {
+				lock.unlock();
+			}
+			return new Response(200, sb.append(']').toString());
+		}
+		requirePost(exchange);
+		Map<String, Object> body = body(exchange);
+		HealthProfessional hp = new HealthProfessional(required(body, "name"), required(body, "profession"),
+				required(body, "location"));
+		lock.lock();
+		try {
+			if (findProfessional(hp.getName()) != null) {
+				throw new HttpError(400, "Professional already exists: " + hp.getName());
+			}
+			scheduler.addHealthProfessional(hp);
+		} finally {
+			lock.unlock();
+		}
+		return new Response(201, professional(new StringBuilder(), hp).toString());
+	}
+
+	private Response resources(HttpExchange exchange) {
+		requireGet(exchange);
+		StringBuilder sb = new StringBuilder("[");
+		lock.lock();
+		try {
+			for (Resource res : scheduler.getAllSharedResources()) {
+				resource(sb.length() > 1 ? sb.append(',') : sb, res);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return new Response(200, sb.append(']').toString());
+	}
+
+	private Response appointments(HttpExchange exchange) throws IOException {
+		if (isGet(exchange)) {
+			Map<String, String> query = query(exchange);
+			String name = requiredParam(query, "professional");
+			LocalDate from = query.containsKey("from") ? LocalDate.parse(query.get("from")) : LocalDate.MIN;
+			LocalDate to = query.containsKey("to") ? LocalDate.parse(query.get("to")) : LocalDate.MAX;
+			StringBuilder sb = new StringBuilder("[");
+			lock.lock();
+			try {
+				for (Appointment appt : scheduler.getDiary(professional(name)).appointmentsBetween(from, to)) {
+					appointment(sb.length() > 1 ? sb.append(',') : sb, appt);
+				}
+			} finally {
+				lock.unlock();
+			}
+			return new Response(200, sb.append(']').toString());
+		}
+		requirePost(exchange);
+		Map<String, Object> body = body(exchange);
+		Object names = body.get("professionals");
+		if (!(names instanceof List) || ((List<?>) names).isEmpty()) {
+			throw new IllegalArgumentException("Missing professionals");
+		}
+		LocalDate date = LocalDate.parse(required(body, "date"));
+		LocalTime start = LocalTime.parse(required(body, "start"));
+		LocalTime end = LocalTime.parse(required(body, "end"));
+		if (!end.isAfter(start)) {
+			throw new IllegalArgumentException("End time must be after start time");
+		}
+		String resourceName = Json.getString(body, "resource");
+		int occurrences = intMember(body, "occurrences", 1, 1, MAX_OCCURRENCES);
+		int recurrenceDays = intMember(body, "recurrenceDays", 7, 1, MAX_RECURRENCE_DAYS);
+
+		boolean booked;
+		lock.lock();
+		try {
+			List<HealthProfessional> attendees = new ArrayList<>();
+			for (Object name : (List<?>) names) {
+				attendees.add(professional(String.valueOf(name)));
+			}
+			Resource resource = resourceName == null ? null : resource(resourceName);
+			Appointment appt = new Appointment(date, start, end, required(body, "treatment"),
+					required(body, "patient"), occurrences > 1, resource);
+			booked = isResourceFree(resource, date, start, end, recurrenceDays, occurrences) && (occurrences > 1
+					? scheduler.bookRecurringAppointment(attendees, appt, recurrenceDays, occurrences)
+					: scheduler.bookAppointment(attendees, appt));
+		} finally {
+			lock.unlock();
+		}
+		return new Response(booked ? 201 : 409, "{\"booked\":" + booked + "}");
+	}
+
+	private Response patientBookings(HttpExchange exchange) {
+		requireGet(exchange);
+		String name = requiredParam(query(exchange), "name");
+		StringBuilder sb = new StringBuilder("[");
+		lock.lock();
+		try {
+			for (Booking booking : scheduler.getBookingsForPatient(name)) {
+				sb.append(sb.length() > 1 ? "," : "").append("{\"professional\":");
+				professional(sb, booking.getProfessional()).append(",\"appointment\":");
+				appointment(sb, booking.getAppointment()).append('}');
+			}
+		} finally {
+			lock.unlock();
+		}
+		return new Response(200, sb.append(']').toString());
+	}
+
+	private Response slots(HttpExchange exchange) {
+		requireGet(exchange);
+		Map<String, String> query = query(exchange);
+		LocalDate from = LocalDate.parse(requiredParam(query, "from"));
+		LocalDate to = LocalDate.parse(requiredParam(query, "to"));
+		int duration = Integer.parseInt(requiredParam(query, "duration"));
+		List<TimeSlot> slots;
+		lock.lock();
+		try {
+			List<HealthProfessional> attendees = new ArrayList<>();
+			for (String name : list(requiredParam(query, "professionals"))) {
+				attendees.add(professional(name));
+			}
+			List<Resource> required = new ArrayList<>();
+			for (String name : list(query.get("resources"))) {
+				required.add(resource(name));
+			}
+			slots = scheduler.findAvailableSlots(attendees, required, from, to, duration);
+		} finally {
+			lock.unlock();
+		}
+		StringBuilder sb = new StringBuilder("[");
+		for (TimeSlot slot : slots) {
+			slot(sb.length() > 1 ? sb.append(',') : sb, slot);
+		}
+		return new Response(200, sb.append(']').toString());
+	}
+
+	private Response earliestSlots(HttpExchange exchange) {
+		requireGet(exchange);
+		Map<String, String> query = query(exchange);
+		LocalDate from = LocalDate.parse(requiredParam(query, "from"));
+		LocalDate to = LocalDate.parse(requiredParam(query, "to"));
+		int duration = Integer.parseInt(requiredParam(query, "duration"));
+		int count = query.containsKey("count") ? Integer.parseInt(query.get("count")) : 1;
+		List<ProfessionalSlot> slots;
+		lock.lock();
+		try {
+			slots = scheduler.findEarliestSlots(query.get("profession"), query.get("location"), from, to, duration,
+					count);
+		} finally {
+			lock.unlock();
+		}
+		StringBuilder sb = new StringBuilder("[");
+		for (ProfessionalSlot slot : slots) {
+			sb.append(sb.length() > 1 ? "," : "").append("{\"professional\":");
+			professional(sb, slot.getProfessional()).append(",\"slot\":");
+			slot(sb, slot.getSlot()).append('}');
+		}
+		return new Response(200, sb.append(']').toString());
+	}
+
+	private Response undo(HttpExchange exchange) {
+		requirePost(exchange);
+		boolean undone;
+		lock.lock();
+		try {
+			if (!prepared.isEmpty()) {
+				throw new HttpError(409, "Undo is unavailable while a booking across sites is undecided");
+			}
+			if (scheduler.undoDepth() <= undoFloor) {
+				throw new HttpError(409, "Undo would remove a booking made across sites");
+			}
+			undone = scheduler.undo();
+		} finally {
+			lock.unlock();
+		}
+		return new Response(200, "{\"undone\":" + undone + "}");
+	}
+
+	private Response replication(HttpExchange exchange) {
+		requireGet(exchange);
+		SchedulerReplica following = replica;
+		StringBuilder sb = new StringBuilder("{\"role\":");
+		if (following != null && following.isFollowing()) {
+			sb.append("\"replica\",\"primary\":");
+			Json.quote(sb, following.getPrimary()).append(",\"connected\":").append(following.isConnected())
+					.append(",\"stalenessMillis\":")
+					.append(following.getStalenessMillis() == Long.MAX_VALUE ? "null" : following.getStalenessMillis())
+					.append(",\"snapshots\":").append(following.getSnapshotCount());
+		} else {
+			sb.append(replicationLog == null ? "\"standalone\"" : "\"primary\"");
+		}
+		sb.append(",\"sequence\":").append(replicationLog == null ? 0 : replicationLog.lastSeq());
+		sb.append(",\"replicas\":").append(replicationPrimary == null ? 0 : replicationPrimary.getReplicaCount());
+		return new Response(200, sb.append('}').toString());
+	}
+
+	private Response promote(HttpExchange exchange) {
+		requirePost(exchange);
+		boolean promoted;
+		try {
+			promoted = promote();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HttpError(500, "Interrupted while promoting");
+		}
+		return new Response(promoted ? 200 : 409, "{\"promoted\":" + promoted + "}");
+	}
+
+	/**
+	 * A booking held by the first phase of a two-phase booking.
+	 */
+	private static class PreparedBooking {
+		final List<HealthProfessional> attendees;
+		final List<HealthProfessional> visitors;
+		// The appointments the prepare added, removed by identity on abort
+		final List<Appointment> held;
+		// Where to ask for the decision, or null to wait for it
+		final String coordinator;
+		// The scheduler's undo depth when the booking was held
+		final int undoDepth;
+		long nextCheck;
+
+		PreparedBooking(List<HealthProfessional> attendees, List<HealthProfessional> visitors,
+				List<Appointment> held, String coordinator, int undoDepth, long nextCheck) {
+			this.attendees = attendees;
+			this.visitors = visitors;
+			this.held = held;
+			this.coordinator = coordinator;
+			this.undoDepth = undoDepth;
+			this.nextCheck = nextCheck;
+		}
+	}
+
+	private Response prepare(HttpExchange exchange) throws IOException {
+		requirePost(exchange);
+		Map<String, Object> body = body(exchange);
+		String id = required(body, "id");
+		Object members = body.get("professionals");
+		if (!(members instanceof List) || ((List<?>) members).isEmpty()) {
+			throw new IllegalArgumentException("Missing professionals");
+		}
+		List<HealthProfessional> named = new ArrayList<>();
+		for (Object member : (List<?>) members) {
+			named.add(professionalFrom(member));
+		}
+		Resource resource = body.get("resource") == null ? null : resourceFrom(body.get("resource"));
+		LocalDate date = LocalDate.parse(required(body, "date"));
+		LocalTime start = LocalTime.parse(required(body, "start"));
+		LocalTime end = LocalTime.parse(required(body, "end"));
+		int occurrences = intMember(body, "occurrences", 1, 1, MAX_OCCURRENCES);
+		int recurrenceDays = intMember(body, "recurrenceDays", 7, 1, MAX_RECURRENCE_DAYS);
+		Appointment appt = new Appointment(date, start, end, required(body, "treatment"), required(body, "patient"),
+				occurrences > 1, resource);
+		// The coordinator is reached at the address the prepare came from
+		int coordinatorPort = intMember(body, "coordinatorPort", 0, 0, 65535);
+		String coordinator = null;
+		if (coordinatorPort > 0) {
+			String host = exchange.getRemoteAddress().getAddress().getHostAddress();
+			coordinator = "http://" + (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + coordinatorPort;
+		}
+
+		lock.lock();
+		try {
+			if (prepared.containsKey(id)) {
+				return new Response(200, "{\"prepared\":true}");
+			}
+			if (!isResourceFree(resource, date, start, end, recurrenceDays, occurrences)) {
+				return new Response(409, "{\"prepared\":false}");
+			}
+			List<HealthProfessional> attendees = new ArrayList<>();
+			List<HealthProfessional> visitors = new ArrayList<>();
+			for (HealthProfessional hp : named) {
+				HealthProfessional existing = findProfessional(hp.getName());
+				if (existing == null) {
+					visitors.add(hp);
+					existing = hp;
+				}
+				attendees.add(existing);
+			}
+			List<Appointment> held = scheduler.holdAppointment(attendees, visitors, appt, recurrenceDays,
+					occurrences);
+			if (held == null) {
+				return new Response(409, "{\"prepared\":false}");
+			}
+			prepared.put(id, new PreparedBooking(attendees, visitors, held, coordinator, scheduler.undoDepth(),
+					System.currentTimeMillis() + PREPARE_TIMEOUT_MILLIS));
+		} finally {
+			lock.unlock();
+		}
+		return new Response(200, "{\"prepared\":true}");
+	}
+
+	private Response commit(HttpExchange exchange) throws IOException {
+		requirePost(exchange);
+		String id = required(body(exchange), "id");
+		boolean committed;
+		lock.lock();
+		try {
+			PreparedBooking booking = prepared.remove(id);
+			committed = booking != null;
+			if (committed) {
+				keep(booking);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return new Response(committed ? 200 : 409, "{\"committed\":" + committed + "}");
+	}
+
+	private Response abort(HttpExchange exchange) throws IOException {
+		requirePost(exchange);
+		String id = required(body(exchange), "id");
+		boolean aborted;
+		lock.lock();
+		try {
+			PreparedBooking booking = prepared.remove(id);
+			aborted = booking != null;
+			if (aborted) {
+				release(booking);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return new Response(200, "{\"aborted\":" + aborted + "}");
+	}
+
+	/**
+	 * Asks the coordinators of bookings left undecided for their decisions,
+	 * and applies them. A booking whose coordinator can't be reached, hasn't
+	 * decided yet or wasn't named stays held and is asked about again later.
+	 */
+	private void resolveUndecided() {
+		long now = System.currentTimeMillis();
+		Map<String, String> due = new HashMap<>();
+		lock.lock();
+		try {
+			for (Map.Entry<String, PreparedBooking> entry : prepared.entrySet()) {
+				PreparedBooking booking = entry.getValue();
+				if (booking.nextCheck <= now) {
+					booking.nextCheck = now + PREPARE_TIMEOUT_MILLIS;
+					if (booking.coordinator != null) {
+						due.put(entry.getKey(), booking.coordinator);
+					}
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		for (Map.Entry<String, String> entry : due.entrySet()) {
+			String outcome = outcome(entry.getValue(), entry.getKey());
+			lock.lock();
+			try {
+				PreparedBooking booking = prepared.get(entry.getKey());
+				if (booking == null) {
+					// Decided while we asked
+				} else if ("committed".equals(outcome)) {
+					prepared.remove(entry.getKey());
+					keep(booking);
+				} else if ("aborted".equals(outcome)) {
+					prepared.remove(entry.getKey());
+					release(booking);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Asks a coordinator how it decided a booking.
+	 *
+	 * @return "committed", "aborted" or "pending", or null if it couldn't be
+	 *         asked
+	 */
+	private String outcome(String coordinator, String id) {
+		HttpRequest request = HttpRequest
+				.newBuilder(URI.create(coordinator + "/transactions/status?id="
+						+ URLEncoder.encode(id, StandardCharsets.UTF_8)))
+				.timeout(COORDINATOR_TIMEOUT).GET().build();
+		try {
+			HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+			return response.statusCode() == 200 ? Json.getString(Json.parseObject(response.body()), "outcome")
+					: null;
+		} catch (IOException | IllegalArgumentException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Keeps a committed booking, which undo may no longer go back past. Called
+	 * with the lock held.
+	 */
+	private void keep(PreparedBooking booking) {
+		undoFloor = Math.max(undoFloor, booking.undoDepth);
+	}
+
+	/**
+	 * Removes a prepared booking from the diaries, and any visitor it added who
+	 * has nothing else booked. Called with the lock held.
+	 */
+	private void release(PreparedBooking booking) {
+		scheduler.releaseAppointments(booking.attendees, booking.visitors, booking.held);
+	}
+
+	// Lookups, called with the lock held
+
+	/**
+	 * Checks a resource against every diary for each occurrence of a booking.
+	 * The scheduler itself only checks the attendees' diaries, which would let a
+	 * booking here take a resource held for a visitor by a booking made across
+	 * nodes.
+	 */
+	private boolean isResourceFree(Resource resource, LocalDate date, LocalTime start, LocalTime end,
+			int recurrenceDays, int occurrences) {
+		if (resource == null) {
+			return true;
+		}
+		for (int i = 0; i < occurrences; i++) {
+			if (!scheduler.isResourceFree(resource, date.plusDays((long) i * recurrenceDays), start, end)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private HealthProfessional findProfessional(String name) {
+		for (HealthProfessional hp : scheduler.getAllHealthProfessionals()) {
+			if (hp.getName().equals(name)) {
+				return hp;
+			}
+		}
+		return null;
+	}
+
+	private HealthProfessional professional(String name) {
+		HealthProfessional hp = findProfessional(name);
+		if (hp == null) {
+			throw new HttpError(404, "Unknown professional: " + name);
+		}
+		return hp;
+	}
+
+	private Resource resource(String name) {
+		for (Resource res : scheduler.getAllSharedResources()) {
+			if (res.getName().equals(name)) {
+				return res;
+			}
+		}
+		throw new HttpError(404, "Unknown resource: " + name);
+	}
+
+	// Request parsing
+
+	@SuppressWarnings("unchecked")
+	private static HealthProfessional professionalFrom(Object value) {
+		if (!(value instanceof Map)) {
+			throw new IllegalArgumentException("Expected a professional object");
+		}
+		Map<String, Object> member = (Map<String, Object>) value;
+		return new HealthProfessional(required(member, "name"), required(member, "profession"),
+				required(member, "location"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Resource resourceFrom(Object value) {
+		if (!(value instanceof Map)) {
+			throw new IllegalArgumentException("Expected a resource object");
+		}
+		Map<String, Object> member = (Map<String, Object>) value;
+		return new Resource(required(member, "name"), required(member, "type"), required(member, "location"));
+	}
+
+	static boolean isGet(HttpExchange exchange) {
+		return exchange.getRequestMethod().equals("GET");
+	}
+
+	static void requireGet(HttpExchange exchange) {
+		if (!isGet(exchange)) {
+			throw new HttpError(405, "Method not allowed: " + exchange.getRequestMethod());
+		}
+	}
+
+	static void requirePost(HttpExchange exchange) {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			throw new HttpError(405, "Method not allowed: " + exchange.getRequestMethod());
+		}
+	}
+
+	static Map<String, Object> body(HttpExchange exchange) throws IOException {
+		return Json.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+	}
+
+	static Map<String, String> query(HttpExchange exchange) {
+		Map<String, String> params = new HashMap<>();
+		String raw = exchange.getRequestURI().getRawQuery();
+		if (raw == null) {
+			return params;
+		}
+		for (String pair : raw.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return params;
+	}
+
+	static List<String> list(String value) {
+		List<String> items = new ArrayList<>();
+		if (value != null) {
+			for (String item : value.split(",")) {
+				if (!item.isBlank()) {
+					items.add(item.trim());
+				}
+			}
+		}
+		return items;
+	}
+
+	static String required(Map<String, Object> body, String key) {
+		String value = Json.getString(body, key);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing " + key);
+		}
+		return value;
+	}
+
+	static String requiredParam(Map<String, String> query, String key) {
+		String value = query.get(key);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing " + key);
+		}
+		return value;
+	}
+
+	static int intMember(Map<String, Object> body, String key, int defaultValue, int min, int max) {
+		Object value = body.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		if (!(value instanceof Long)) {
+			throw new IllegalArgumentException(key + " must be a whole number");
+		}
+		long number = (Long) value;
+		if (number < min || number > max) {
+			throw new IllegalArgumentException(key + " must be between " + min + " and " + max);
+		}
+		return (int) number;
+	}
+
+	// Response rendering
+
+	private static StringBuilder professional(StringBuilder sb, HealthProfessional hp) {
+		sb.append("{\"name\":");
+		Json.quote(sb, hp.getName()).append(",\"profession\":");
+		Json.quote(sb, hp.getProfession()).append(",\"location\":");
+		return Json.quote(sb, hp.getOfficeLocation()).append('}');
+	}
+
+	private static StringBuilder resource(StringBuilder sb, Resource res) {
+		sb.append("{\"name\":");
+		Json.quote(sb, res.getName()).append(",\"type\":");
+		Json.quote(sb, res.getType()).append(",\"location\":");
+		return Json.quote(sb, res.getLocation()).append('}');
+	}
+
+	private static StringBuilder appointment(StringBuilder sb, Appointment appt) {
+		sb.append("{\"date\":\"").append(appt.getDate()).append("\",\"start\":\"").append(appt.getStartTime())
+				.append("\",\"end\":\"").append(appt.getEndTime()).append("\",\"treatment\":");
+		Json.quote(sb, appt.getTreatmentType()).append(",\"patient\":");
+		Json.quote(sb, appt.getPatientName()).append(",\"recurring\":").append(appt.isRecurring())
+				.append(",\"resource\":");
+		return appt.getResource() == null ? sb.append("null}") : resource(sb, appt.getResource()).append('}');
+	}
+
+	private static StringBuilder slot(StringBuilder sb, TimeSlot slot) {
+		return sb.append("{\"date\":\"").append(slot.getDate()).append("\",\"start\":\"").append(slot.getStartTime())
+				.append("\",\"end\":\"").append(slot.getEndTime()).append("\"}");
+	}
+}
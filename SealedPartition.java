@@ -0,0 +1,263 @@
+package project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A read-only month of archived appointments. Each day's appointments are
+ * encoded as fixed-width records over that day's string dictionary and
+ * deflated as a block of its own, either in memory or in a file, with the
+ * offset of every day's block kept alongside, so reading one day inflates only
+ * that day. Partitions are immutable, so diaries and undo snapshots can share
+ * them.
+ * <p>
+ * A partition's file is deleted once no diary or undo snapshot refers to the
+ * partition any more, for example after the month is sealed again with more
+ * appointments.
+ */
+final class SealedPartition {
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private final YearMonth month;
+	private final int count;
+	private final byte[] data;
+	private final Path file;
+	// Byte offset of each day's block, plus the end of the last
+	private final int[] dayOffsets;
+
+	private SealedPartition(YearMonth month, int count, byte[] data, Path file, int[] dayOffsets) {
+		this.month = month;
+		this.count = count;
+		this.data = data;
+		this.file = file;
+		this.dayOffsets = dayOffsets;
+	}
+
+	/**
+	 * Seals a month of appointments.
+	 *
+	 * @param month        the month the appointments fall in
+	 * @param appointments the appointments to seal
+	 * @param directory    the directory to write the partition to, or null to
+	 *                     keep it in memory
+	 * @return the sealed partition
+	 * @throws IOException if there's an error writing the partition file
+	 */
+	static SealedPartition seal(YearMonth month, List<Appointment> appointments, Path directory) throws IOException {
+		List<List<Appointment>> days = new ArrayList<>();
+		for (int day = 0; day < month.lengthOfMonth(); day++) {
+			days.add(new ArrayList<>());
+		}
+		for (Appointment appt : appointments) {
+			days.get(appt.getDate().getDayOfMonth() - 1).add(appt);
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		int[] dayOffsets = new int[days.size() + 1];
+		for (int day = 0; day < days.size(); day++) {
+			dayOffsets[day] = bos.size();
+			if (!days.get(day).isEmpty()) {
+				encode(days.get(day), bos);
+			}
+		}
+		dayOffsets[days.size()] = bos.size();
+		if (directory == null) {
+			return new SealedPartition(month, appointments.size(), bos.toByteArray(), null, dayOffsets);
+		}
+		Files.createDirectories(directory);
+		Path file = Files.createTempFile(directory, "archive-" + month + "-", ".bin");
+		try {
+			Files.write(file, bos.toByteArray());
+		} catch (IOException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		SealedPartition partition = new SealedPartition(month, appointments.size(), null, file, dayOffsets);
+		CLEANER.register(partition, () -> {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				// Left for the archive directory's owner to clear
+			}
+		});
+		return partition;
+	}
+
+	/**
+	 * Gets the month this partition covers.
+	 *
+	 * @return the month
+	 */
+	YearMonth getMonth() {
+		return month;
+	}
+
+	/**
+	 * Gets the number of appointments in the partition.
+	 *
+	 * @return the appointment count
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Decodes the partition's appointments.
+	 *
+	 * @return new appointment objects for every record in the partition, in
+	 *         date order
+	 */
+	List<Appointment> read() {
+		byte[] bytes = bytes(0, dayOffsets[dayOffsets.length - 1]);
+		List<Appointment> result = new ArrayList<>(count);
+		for (int day = 0; day < dayOffsets.length - 1; day++) {
+			if (dayOffsets[day + 1] > dayOffsets[day]) {
+				result.addAll(decode(bytes, dayOffsets[day], dayOffsets[day + 1] - dayOffsets[day]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes the appointments on a single day of the partition, reading only
+	 * that day's block.
+	 *
+	 * @param date the day to read
+	 * @return the appointments on that day
+	 */
+	List<Appointment> readDate(LocalDate date) {
+		if (!YearMonth.from(date).equals(month)) {
+			return new ArrayList<>();
+		}
+		int day = date.getDayOfMonth() - 1;
+		int length = dayOffsets[day + 1] - dayOffsets[day];
+		if (length == 0) {
+			return new ArrayList<>();
+		}
+		return decode(bytes(dayOffsets[day], length), 0, length);
+	}
+
+	/**
+	 * Gets a range of the partition's encoded bytes, from memory or the file.
+	 */
+	private byte[] bytes(int offset, int length) {
+		if (data != null) {
+			return offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0) {
+					throw new EOFException(file + " is shorter than expected");
+				}
+			}
+			return buffer.array();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading archived appointments for " + month, e);
+		}
+	}
+
+	private List<Appointment> decode(byte[] bytes, int offset, int length) {
+		try (InputStream in = new ByteArrayInputStream(bytes, offset, length)) {
+			return decode(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading archived appointments for " + month, e);
+		}
+	}
+
+	private static void encode(List<Appointment> appointments, ByteArrayOutputStream target) throws IOException {
+		List<String> strings = new ArrayList<>();
+		Map<String, Integer> dictionary = new HashMap<>();
+		int[][] records = new int[appointments.size()][];
+		for (int i = 0; i < records.length; i++) {
+			Appointment appt = appointments.get(i);
+			Resource res = appt.getResource();
+			records[i] = new int[] { appt.getDate().getDayOfMonth(), appt.getStartTime().toSecondOfDay(),
+					appt.getEndTime().toSecondOfDay(), appt.isRecurring() ? 1 : 0,
+					intern(appt.getTreatmentType(), strings, dictionary),
+					intern(appt.getPatientName(), strings, dictionary),
+					res == null ? -1 : intern(res.getName(), strings, dictionary),
+					res == null ? -1 : intern(res.getType(), strings, dictionary),
+					res == null ? -1 : intern(res.getLocation(), strings, dictionary) };
+		}
+
+		// Closing a byte array stream has no effect, so blocks are appended
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new DeflaterOutputStream(target)))) {
+			out.writeInt(strings.size());
+			for (String s : strings) {
+				out.writeBoolean(s != null);
+				if (s != null) {
+					out.writeUTF(s);
+				}
+			}
+			out.writeInt(records.length);
+			for (int[] record : records) {
+				out.writeByte(record[0]);
+				out.writeInt(record[1]);
+				out.writeInt(record[2]);
+				out.writeByte(record[3]);
+				for (int i = 4; i < record.length; i++) {
+					out.writeInt(record[i]);
+				}
+			}
+		}
+	}
+
+	private List<Appointment> decode(InputStream source) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(source)));
+		String[] strings = new String[in.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = in.readBoolean() ? in.readUTF() : null;
+		}
+		int records = in.readInt();
+		List<Appointment> result = new ArrayList<>(records);
+		for (int i = 0; i < records; i++) {
+			LocalDate date = month.atDay(in.readByte());
+			LocalTime start = LocalTime.ofSecondOfDay(in.readInt());
+			LocalTime end = LocalTime.ofSecondOfDay(in.readInt());
+			boolean recurring = in.readByte() != 0;
+			String treatment = strings[in.readInt()];
+			String patient = strings[in.readInt()];
+			int name = in.readInt();
+			int type = in.readInt();
+			int location = in.readInt();
+			Resource res = name < 0 ? null : new Resource(strings[name], strings[type], strings[location]);
+			result.add(new Appointment(date, start, end, treatment, patient, recurring, res));
+		}
+		return result;
+	}
+
+	private static int intern(String value, List<String> strings, Map<String, Integer> dictionary) {
+		Integer index = dictionary.get(value);
+		if (index == null) {
+			index = strings.size();
+			strings.add(value);
+			dictionary.put(value, index);
+		}
+		return index;
+	}
+}
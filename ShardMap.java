@@ -0,0 +1,90 @@
+package project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Assigns office and resource locations to scheduler nodes. Parsed from a
+ * specification such as
+ * {@code http://localhost:9001=Main Hospital,Radiology Department;http://localhost:9002=North Wing;http://localhost:9003=*},
+ * where {@code *} names the node for any location not listed. Locations match
+ * ignoring case and surrounding spaces, as in {@link ProfessionalIndex}.
+ */
+final class ShardMap {
+	private final List<String> nodes = new ArrayList<>();
+	private final Map<String, String> byLocation = new HashMap<>();
+	private String fallback;
+
+	/**
+	 * Parses a specification.
+	 *
+	 * @param spec the node URLs and their locations
+	 * @return the map
+	 * @throws IllegalArgumentException if the specification is malformed or
+	 *                                  assigns a location twice
+	 */
+	static ShardMap parse(String spec) {
+		ShardMap map = new ShardMap();
+		for (String entry : spec.split(";")) {
+			if (entry.isBlank()) {
+				continue;
+			}
+			int eq = entry.indexOf('=');
+			if (eq <= 0) {
+				throw new IllegalArgumentException("Expected URL=locations in shard entry: " + entry);
+			}
+			String node = entry.substring(0, eq).trim();
+			while (node.endsWith("/")) {
+				node = node.substring(0, node.length() - 1);
+			}
+			if (!map.nodes.contains(node)) {
+				map.nodes.add(node);
+			}
+			for (String location : entry.substring(eq + 1).split(",")) {
+				if (location.isBlank()) {
+					continue;
+				}
+				if (location.trim().equals("*")) {
+					if (map.fallback != null) {
+						throw new IllegalArgumentException("More than one shard for other locations");
+					}
+					map.fallback = node;
+				} else if (map.byLocation.put(key(location), node) != null) {
+					throw new IllegalArgumentException("Location assigned to more than one shard: " + location.trim());
+				}
+			}
+		}
+		if (map.nodes.isEmpty()) {
+			throw new IllegalArgumentException("No shards given");
+		}
+		return map;
+	}
+
+	/**
+	 * Gets the node responsible for a location.
+	 *
+	 * @param location an office or resource location
+	 * @return the node's base URL, or null if no node takes the location
+	 */
+	String shardFor(String location) {
+		String node = location == null ? null : byLocation.get(key(location));
+		return node != null ? node : fallback;
+	}
+
+	/**
+	 * Gets every node.
+	 *
+	 * @return the nodes' base URLs, in specification order
+	 */
+	List<String> nodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	private static String key(String location) {
+		return location.trim().toLowerCase(Locale.ROOT);
+	}
+}
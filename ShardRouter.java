@@ -0,0 +1,571 @@
+package project;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import project.SchedulerServer.HttpError;
+import project.SchedulerServer.Response;
+
+/**
+ * Serves the {@link SchedulerServer} JSON API in front of several scheduler
+ * nodes, each holding the professionals and resources of the locations a
+ * {@link ShardMap} assigns it, so one trust can spread its sites over several
+ * JVMs.
+ * <p>
+ * Requests that concern one node are forwarded to it. Listings and searches
+ * that span nodes are sent to every node concerned at once and their results
+ * merged: slot searches keep the slots free on every node, the others keep
+ * each node's own professionals and resources. A booking whose professionals
+ * or resource live on more than one node is made with a two-phase commit: each
+ * node prepares by holding the booking, and the booking is committed only if
+ * every node could hold it, otherwise aborted everywhere. The node that owns
+ * the resource always takes part, booking it for a visiting attendee if none
+ * of its own professionals attend.
+ * <p>
+ * The router is the coordinator of those bookings. A node that has agreed to
+ * hold a booking never drops it on its own; if no decision reaches it, it asks
+ * {@code GET /transactions/status?id=} here, which answers "committed",
+ * "aborted" or "pending". Commit decisions are appended to a decision log and
+ * synced to disk before any node is told, so they survive a restart of the
+ * router; a booking the router has no record of was never committed, and is
+ * reported as aborted.
+ * <p>
+ * Undo is node-local and is not offered through the router.
+ */
+public class ShardRouter {
+	private static final int BACKLOG = 1024;
+	private static final int COMMIT_ATTEMPTS = 3;
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+	private final ShardMap shards;
+	private final int requestedPort;
+	private final Path decisionLog;
+	// Bookings across nodes that were committed, and those still being decided
+	private final Set<String> committed = ConcurrentHashMap.newKeySet();
+	private final Set<String> undecided = ConcurrentHashMap.newKeySet();
+	// Professionals and resources by name, as JSON objects, filled as nodes are
+	// asked about them
+	private final Map<String, Map<String, Object>> professionals = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, Object>> resources = new ConcurrentHashMap<>();
+	private HttpServer server;
+	private ExecutorService executor;
+	private HttpClient client;
+
+	/**
+	 * Constructs a router that keeps its commit decisions only in memory, so
+	 * nodes holding a booking while it restarts are told it was aborted even if
+	 * other nodes committed it.
+	 *
+	 * @param spec the nodes and their locations, as parsed by {@link ShardMap}
+	 * @param port the port to listen on, or 0 for any free port
+	 * @throws IllegalArgumentException if the specification is malformed
+	 */
+	public ShardRouter(String spec, int port) {
+		this(spec, port, null);
+	}
+
+	/**
+	 * Constructs a router that records its commit decisions in a file.
+	 *
+	 * @param spec        the nodes and their locations, as parsed by
+	 *                    {@link ShardMap}
+	 * @param port        the port to listen on, or 0 for any free port
+	 * @param decisionLog the file commit decisions are appended to and read
+	 *                    back from on start, or null to keep them in memory
+	 * @throws IllegalArgumentException if the specification is malformed
+	 */
+	public ShardRouter(String spec, int port, Path decisionLog) {
+		this.shards = ShardMap.parse(spec);
+		this.requestedPort = port;
+		this.decisionLog = decisionLog;
+	}
+
+	/**
+	 * Starts listening.
+	 *
+	 * @throws IOException if the port can't be bound or the decision log can't
+	 *                     be read
+	 */
+	public void start() throws IOException {
+		if (decisionLog != null && Files.exists(decisionLog)) {
+			for (String id : Files.readAllLines(decisionLog, StandardCharsets.UTF_8)) {
+				if (!id.isEmpty()) {
+					committed.add(id);
+				}
+			}
+		}
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		client = HttpClient.newBuilder().executor(executor).connectTimeout(CONNECT_TIMEOUT).build();
+		server = HttpServer.create(new InetSocketAddress(requestedPort), BACKLOG);
+		server.setExecutor(executor);
+		server.createContext("/professionals", exchange -> SchedulerServer.handle(exchange, this::professionals));
+		server.createContext("/resources", exchange -> SchedulerServer.handle(exchange, this::resources));
+		server.createContext("/appointments", exchange -> SchedulerServer.handle(exchange, this::appointments));
+		server.createContext("/patients/bookings",
+				exchange -> SchedulerServer.handle(exchange, this::patientBookings));
+		server.createContext("/slots", exchange -> SchedulerServer.handle(exchange, this::slots));
+		server.createContext("/slots/earliest", exchange -> SchedulerServer.handle(exchange, this::earliestSlots));
+		server.createContext("/undo", exchange -> SchedulerServer.handle(exchange, this::undo));
+		server.createContext("/transactions/status", exchange -> SchedulerServer.handle(exchange, this::status));
+		server.start();
+	}
+
+	/**
+	 * Stops the router, letting requests in progress finish.
+	 *
+	 * @param delaySeconds the longest time to wait for requests in progress
+	 */
+	public void stop(int delaySeconds) {
+		if (server != null) {
+			server.stop(delaySeconds);
+			executor.shutdown();
+			server = null;
+		}
+	}
+
+	/**
+	 * Gets the port the router is listening on.
+	 *
+	 * @return the bound port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private Response professionals(HttpExchange exchange) throws IOException {
+		if (SchedulerServer.isGet(exchange)) {
+			String location = SchedulerServer.query(exchange).get("location");
+			List<String> targets = location == null ? shards.nodes() : List.of(shard(location));
+			List<Object> found = gather(targets, pathAndQuery(exchange), "location");
+			cache(professionals, found);
+			return array(found);
+		}
+		SchedulerServer.requirePost(exchange);
+		String raw = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+		Map<String, Object> body = Json.parseObject(raw);
+		String name = SchedulerServer.required(body, "name");
+		String node = shard(SchedulerServer.required(body, "location"));
+		if (findProfessional(name) != null) {
+			throw new HttpError(400, "Professional already exists: " + name);
+		}
+		Response response = send(node, "/professionals", raw);
+		if (response.status == 201) {
+			professionals.put(name, Json.parseObject(response.body));
+		}
+		return response;
+	}
+
+	private Response resources(HttpExchange exchange) {
+		SchedulerServer.requireGet(exchange);
+		List<Object> found = gather(shards.nodes(), "/resources", "location");
+		cache(resources, found);
+		return array(found);
+	}
+
+	private Response appointments(HttpExchange exchange) throws IOException {
+		if (SchedulerServer.isGet(exchange)) {
+			String name = SchedulerServer.requiredParam(SchedulerServer.query(exchange), "professional");
+			return send(shardOf(professional(name)), pathAndQuery(exchange), null);
+		}
+		SchedulerServer.requirePost(exchange);
+		String raw = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+		Map<String, Object> body = Json.parseObject(raw);
+		Object names = body.get("professionals");
+		if (!(names instanceof List) || ((List<?>) names).isEmpty()) {
+			throw new IllegalArgumentException("Missing professionals");
+		}
+		List<Map<String, Object>> attendees = new ArrayList<>();
+		for (Object name : (List<?>) names) {
+			attendees.add(professional(String.valueOf(name)));
+		}
+		String resourceName = Json.getString(body, "resource");
+		Map<String, Object> resource = resourceName == null ? null : resource(resourceName);
+
+		Map<String, List<Map<String, Object>>> participants = new LinkedHashMap<>();
+		for (Map<String, Object> attendee : attendees) {
+			participants.computeIfAbsent(shardOf(attendee), node -> new ArrayList<>()).add(attendee);
+		}
+		if (resource != null) {
+			participants.computeIfAbsent(shardOf(resource), node -> new ArrayList<>(List.of(attendees.get(0))));
+		}
+		if (participants.size() == 1) {
+			return send(participants.keySet().iterator().next(), "/appointments", raw);
+		}
+		return bookAcrossShards(body, resource, participants);
+	}
+
+	/**
+	 * Books an appointment on several nodes with a two-phase commit.
+	 */
+	private Response bookAcrossShards(Map<String, Object> body, Map<String, Object> resource,
+			Map<String, List<Map<String, Object>>> participants) {
+		String id = UUID.randomUUID().toString();
+		Map<String, String> requests = new LinkedHashMap<>();
+		for (Map.Entry<String, List<Map<String, Object>>> entry : participants.entrySet()) {
+			Map<String, Object> request = new LinkedHashMap<>(body);
+			request.put("id", id);
+			request.put("professionals", entry.getValue());
+			request.put("resource", resource);
+			request.put("coordinatorPort", getPort());
+			requests.put(entry.getKey(), Json.write(new StringBuilder(), request).toString());
+		}
+		String decision = Json.write(new StringBuilder(), Map.of("id", id)).toString();
+		List<String> nodes = new ArrayList<>(requests.keySet());
+
+		// Phase one: every node holds the booking or says why it can't
+		undecided.add(id);
+		Response refusal = null;
+		try {
+			List<Response> votes = inParallel(nodes,
+					node -> sendOrError(node, "/transactions/prepare", requests.get(node)));
+			for (Response vote : votes) {
+				if (vote.status != 200 && (refusal == null || refusal.status == 409)) {
+					refusal = vote;
+				}
+			}
+			if (refusal == null) {
+				try {
+					recordCommit(id);
+				} catch (IOException e) {
+					refusal = SchedulerServer.error(500, "Couldn't record the decision for booking " + id + ": " + e);
+				}
+			}
+		} finally {
+			undecided.remove(id);
+		}
+		if (refusal != null) {
+			// Nodes that miss the abort learn of it when they ask
+			inParallel(nodes, node -> sendOrError(node, "/transactions/abort", decision));
+			return refusal.status == 409 ? new Response(409, "{\"booked\":false}") : refusal;
+		}
+
+		// Phase two: every node keeps it. The decision is already recorded, so
+		// nodes that can't be reached now keep it when they ask, and a 409 means
+		// the node has already asked.
+		List<String> unconfirmed = nodes;
+		for (int attempt = 0; attempt < COMMIT_ATTEMPTS && !unconfirmed.isEmpty(); attempt++) {
+			List<Response> acks = inParallel(unconfirmed,
+					node -> sendOrError(node, "/transactions/commit", decision));
+			List<String> retry = new ArrayList<>();
+			for (int i = 0; i < acks.size(); i++) {
+				if (acks.get(i).status >= 500) {
+					retry.add(unconfirmed.get(i));
+				}
+			}
+			unconfirmed = retry;
+		}
+		StringBuilder sb = new StringBuilder("{\"booked\":true,\"shards\":").append(participants.size());
+		if (!unconfirmed.isEmpty()) {
+			Json.write(sb.append(",\"unconfirmed\":"), unconfirmed);
+		}
+		return new Response(201, sb.append('}').toString());
+	}
+
+	/**
+	 * Records that a booking was committed, durably if there is a decision log,
+	 * before any node is told.
+	 *
+	 * @throws IOException if the decision can't be written
+	 */
+	private synchronized void recordCommit(String id) throws IOException {
+		if (decisionLog != null) {
+			Files.write(decisionLog, (id + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+		}
+		committed.add(id);
+	}
+
+	private Response status(HttpExchange exchange) {
+		SchedulerServer.requireGet(exchange);
+		String id = SchedulerServer.requiredParam(SchedulerServer.query(exchange), "id");
+		// Checked in this order, as a booking is recorded as committed before it
+		// stops being undecided
+		String outcome = undecided.contains(id) ? "pending" : committed.contains(id) ? "committed" : "aborted";
+		return new Response(200, "{\"outcome\":\"" + outcome + "\"}");
+	}
+
+	private Response patientBookings(HttpExchange exchange) {
+		SchedulerServer.requireGet(exchange);
+		SchedulerServer.requiredParam(SchedulerServer.query(exchange), "name");
+		List<Object> found = gather(shards.nodes(), pathAndQuery(exchange), "professional", "location");
+		found.sort(Comparator.comparing((Object booking) -> member(booking, "appointment", "date"))
+				.thenComparing(booking -> member(booking, "appointment", "start")));
+		return array(found);
+	}
+
+	private Response slots(HttpExchange exchange) {
+		SchedulerServer.requireGet(exchange);
+		Map<String, String> query = SchedulerServer.query(exchange);
+		Map<String, List<String>> names = new LinkedHashMap<>();
+		Map<String, List<String>> resourceNames = new LinkedHashMap<>();
+		for (String name : SchedulerServer.list(SchedulerServer.requiredParam(query, "professionals"))) {
+			names.computeIfAbsent(shardOf(professional(name)), node -> new ArrayList<>()).add(name);
+		}
+		for (String name : SchedulerServer.list(query.get("resources"))) {
+			resourceNames.computeIfAbsent(shardOf(resource(name)), node -> new ArrayList<>()).add(name);
+		}
+		Set<String> nodes = new LinkedHashSet<>(names.keySet());
+		nodes.addAll(resourceNames.keySet());
+		if (nodes.size() == 1) {
+			return send(nodes.iterator().next(), pathAndQuery(exchange), null);
+		}
+
+		// Each node checks its own professionals and resources; a slot is free if
+		// it is free on all of them
+		String range = "&from=" + encode(SchedulerServer.requiredParam(query, "from")) + "&to="
+				+ encode(SchedulerServer.requiredParam(query, "to")) + "&duration="
+				+ encode(SchedulerServer.requiredParam(query, "duration"));
+		List<String> targets = new ArrayList<>(nodes);
+		List<Response> responses = inParallel(targets,
+				node -> send(node, "/slots?professionals=" + encode(String.join(",", names.getOrDefault(node, List.of())))
+						+ "&resources=" + encode(String.join(",", resourceNames.getOrDefault(node, List.of())))
+						+ range, null));
+		Map<String, Object> common = null;
+		for (int i = 0; i < responses.size(); i++) {
+			Map<String, Object> free = new LinkedHashMap<>();
+			for (Object slot : list(targets.get(i), responses.get(i))) {
+				String key = member(slot, "date") + " " + member(slot, "start") + " " + member(slot, "end");
+				if (common == null || common.containsKey(key)) {
+					free.put(key, slot);
+				}
+			}
+			common = free;
+		}
+		return array(new ArrayList<>(common.values()));
+	}
+
+	private Response earliestSlots(HttpExchange exchange) {
+		SchedulerServer.requireGet(exchange);
+		Map<String, String> query = SchedulerServer.query(exchange);
+		String location = query.get("location");
+		if (location != null) {
+			return send(shard(location), pathAndQuery(exchange), null);
+		}
+		int count = query.containsKey("count") ? Integer.parseInt(query.get("count")) : 1;
+		List<Object> found = gather(shards.nodes(), pathAndQuery(exchange), "professional", "location");
+		found.sort(Comparator.comparing((Object slot) -> member(slot, "slot", "date"))
+				.thenComparing(slot -> member(slot, "slot", "start"))
+				.thenComparing(slot -> member(slot, "professional", "name")));
+		return array(found.subList(0, Math.min(count, found.size())));
+	}
+
+	private Response undo(HttpExchange exchange) {
+		SchedulerServer.requirePost(exchange);
+		throw new HttpError(400, "Undo is not available through the router; undo on the node instead");
+	}
+
+	// Lookups
+
+	private Map<String, Object> professional(String name) {
+		Map<String, Object> found = findProfessional(name);
+		if (found == null) {
+			throw new HttpError(404, "Unknown professional: " + name);
+		}
+		return found;
+	}
+
+	private Map<String, Object> findProfessional(String name) {
+		Map<String, Object> found = professionals.get(name);
+		if (found == null) {
+			cache(professionals, gather(shards.nodes(), "/professionals", "location"));
+			found = professionals.get(name);
+		}
+		return found;
+	}
+
+	private Map<String, Object> resource(String name) {
+		Map<String, Object> found = resources.get(name);
+		if (found == null) {
+			cache(resources, gather(shards.nodes(), "/resources", "location"));
+			found = resources.get(name);
+			if (found == null) {
+				throw new HttpError(404, "Unknown resource: " + name);
+			}
+		}
+		return found;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void cache(Map<String, Map<String, Object>> cache, List<Object> found) {
+		for (Object item : found) {
+			cache.put(member(item, "name"), (Map<String, Object>) item);
+		}
+	}
+
+	private String shard(String location) {
+		String node = shards.shardFor(location);
+		if (node == null) {
+			throw new HttpError(400, "No shard for location: " + location);
+		}
+		return node;
+	}
+
+	private String shardOf(Map<String, Object> professionalOrResource) {
+		return shard(member(professionalOrResource, "location"));
+	}
+
+	// Node calls
+
+	private interface NodeCall {
+		Response call(String node);
+	}
+
+	/**
+	 * Calls a node, turning failures into error responses instead of exceptions.
+	 */
+	private Response sendOrError(String node, String pathAndQuery, String body) {
+		try {
+			return send(node, pathAndQuery, body);
+		} catch (HttpError e) {
+			return SchedulerServer.error(e.status, e.getMessage());
+		}
+	}
+
+	/**
+	 * Sends a GET, or a POST if there is a body, to a node.
+	 */
+	private Response send(String node, String pathAndQuery, String body) {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + pathAndQuery)).timeout(REQUEST_TIMEOUT);
+		if (body == null) {
+			request.GET();
+		} else {
+			request.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body));
+		}
+		try {
+			HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+			return new Response(response.statusCode(), response.body());
+		} catch (IOException e) {
+			throw new HttpError(502, "Shard " + node + " unavailable: " + e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HttpError(503, "Interrupted calling shard " + node);
+		}
+	}
+
+	/**
+	 * Calls several nodes at once.
+	 *
+	 * @return the responses, in the order of the nodes
+	 */
+	private List<Response> inParallel(List<String> nodes, NodeCall call) {
+		List<Future<Response>> pending = new ArrayList<>(nodes.size());
+		for (String node : nodes) {
+			pending.add(executor.submit(() -> call.call(node)));
+		}
+		List<Response> responses = new ArrayList<>(nodes.size());
+		for (Future<Response> future : pending) {
+			try {
+				responses.add(future.get());
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new HttpError(503, "Interrupted waiting for shards");
+			}
+		}
+		return responses;
+	}
+
+	/**
+	 * Sends the same GET to several nodes and merges the arrays they return,
+	 * keeping from each node only the items located on it. Others are visitors
+	 * added for bookings made across nodes.
+	 *
+	 * @param nodes        the nodes to ask
+	 * @param pathAndQuery the request
+	 * @param location     the path to each item's location member
+	 * @return the merged items
+	 */
+	private List<Object> gather(List<String> nodes, String pathAndQuery, String... location) {
+		List<Response> responses = inParallel(nodes, node -> send(node, pathAndQuery, null));
+		List<Object> merged = new ArrayList<>();
+		for (int i = 0; i < responses.size(); i++) {
+			for (Object item : list(nodes.get(i), responses.get(i))) {
+				if (nodes.get(i).equals(shards.shardFor(member(item, location)))) {
+					merged.add(item);
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Reads the array a node returned, passing its errors on.
+	 */
+	private static List<?> list(String node, Response response) {
+		Object parsed = Json.parse(response.body);
+		if (response.status != 200) {
+			String message = parsed instanceof Map ? Json.getString(asMap(parsed), "error") : response.body;
+			throw new HttpError(response.status, node + ": " + message);
+		}
+		if (!(parsed instanceof List)) {
+			throw new HttpError(502, node + " returned " + response.body);
+		}
+		return (List<?>) parsed;
+	}
+
+	// JSON helpers
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> asMap(Object value) {
+		return (Map<String, Object>) value;
+	}
+
+	/**
+	 * Follows a path of object members.
+	 *
+	 * @return the member as a string, or null if any step is missing
+	 */
+	private static String member(Object value, String... path) {
+		for (String name : path) {
+			if (!(value instanceof Map)) {
+				return null;
+			}
+			value = asMap(value).get(name);
+		}
+		return value == null ? null : value.toString();
+	}
+
+	private static Response array(List<?> items) {
+		return new Response(200, Json.write(new StringBuilder(), items).toString());
+	}
+
+	private static String pathAndQuery(HttpExchange exchange) {
+		URI uri = exchange.getRequestURI();
+		return uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+}
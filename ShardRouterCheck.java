@@ -0,0 +1,190 @@
+package project;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import project.SchedulerServer.Response;
+
+/**
+ * Checks bookings made through a {@link ShardRouter} in front of two nodes:
+ * a booking across nodes is kept on both or on neither, a node that can't
+ * hold its part makes the others drop theirs, the node owning a resource
+ * holds it for visiting attendees, and undo is refused through the router and
+ * on a node once it would take back half of such a booking. Last, a node left
+ * holding undecided bookings is checked to ask the router for the outcome
+ * once {@link SchedulerServer#PREPARE_TIMEOUT_MILLIS} has passed, and to keep
+ * a booking whose coordinator can't be reached; this takes up to 45 seconds.
+ * <p>
+ * Run with the router's URL and those of its two nodes, the first holding
+ * Main Hospital and the second every other location, to check servers started
+ * separately, for example by {@code check.sh}; without them the nodes and
+ * router are started in this JVM. Every run adds its own professionals.
+ */
+public class ShardRouterCheck {
+
+	private ShardRouterCheck() {
+	}
+
+	/**
+	 * Runs the checks.
+	 *
+	 * @param args optionally the router's URL, then the URLs of the node
+	 *             holding Main Hospital and of the node holding the rest
+	 * @throws Exception if the servers can't be started or reached
+	 */
+	public static void main(String[] args) throws Exception {
+		String router;
+		String main;
+		String other;
+		if (args.length >= 3) {
+			router = args[0];
+			main = args[1];
+			other = args[2];
+		} else {
+			SchedulerServer first = new SchedulerServer(new Scheduler(), 0);
+			SchedulerServer second = new SchedulerServer(new Scheduler(), 0);
+			first.start();
+			second.start();
+			main = "http://localhost:" + first.getPort();
+			other = "http://localhost:" + second.getPort();
+			ShardRouter shardRouter = new ShardRouter(main + "=Main Hospital;" + other + "=*", 0);
+			shardRouter.start();
+			router = "http://localhost:" + shardRouter.getPort();
+		}
+		Checks checks = new Checks("Bookings across nodes through " + router);
+		for (String url : List.of(main, other, router)) {
+			checks.awaitServer(url);
+		}
+		checks.run(() -> run(checks, router, main, other));
+	}
+
+	private static void run(Checks checks, String router, String main, String other) throws IOException {
+		String run = UUID.randomUUID().toString().substring(0, 8);
+		String surgeon = "Check " + run + " Surgeon";
+		String radiologist = "Check " + run + " Radiologist";
+		checks.status("add a professional at Main Hospital", 201,
+				checks.post(router + "/professionals", professional(surgeon, "Surgeon", "Main Hospital")));
+		checks.status("add a professional elsewhere", 201, checks.post(router + "/professionals",
+				professional(radiologist, "Radiologist", "Check " + run + " Clinic")));
+		checks.check("each professional is on the node for their location",
+				appointments(checks, main, surgeon) != null && appointments(checks, other, surgeon) == null
+						&& appointments(checks, other, radiologist) != null
+						&& appointments(checks, main, radiologist) == null);
+		String day = LocalDate.now().plusYears(1).toString();
+
+		// Both nodes hold and commit
+		Response booked = checks.post(router + "/appointments",
+				booking(List.of(surgeon, radiologist), day, "09:00", "09:30", "Both " + run, "MRI Scanner 1"));
+		checks.status("book across both nodes", 201, booked);
+		checks.check("the booking went through both nodes", booked.status == 201
+				&& Integer.valueOf(2).equals(number(Json.parseObject(booked.body).get("shards"))));
+		checks.check("each node keeps its part",
+				count(checks, main, surgeon) == 1 && count(checks, other, radiologist) == 1);
+		checks.status("a clash across nodes is refused", 409, checks.post(router + "/appointments",
+				booking(List.of(surgeon, radiologist), day, "09:15", "09:45", "Clash " + run, "MRI Scanner 1")));
+		checks.check("a refused booking leaves nothing on either node",
+				count(checks, main, surgeon) == 1 && count(checks, other, radiologist) == 1);
+
+		// One node refuses, so the other drops the part it held
+		checks.status("book on one node", 201, checks.post(router + "/appointments",
+				booking(List.of(radiologist), day, "10:00", "10:30", "One " + run, "MRI Scanner 1")));
+		checks.status("a booking one node can't hold is refused", 409, checks.post(router + "/appointments",
+				booking(List.of(surgeon, radiologist), day, "10:00", "10:30", "Half " + run, "MRI Scanner 1")));
+		checks.check("the node that could hold it dropped its part", count(checks, main, surgeon) == 1);
+		Response undo = checks.post(main + "/undo", Map.of());
+		checks.check("no booking is left undecided on that node",
+				undo.status == 409 && !undo.body.contains("undecided"));
+
+		// The resource's node holds it for a visitor
+		checks.status("book a resource on another node", 201, checks.post(router + "/appointments",
+				booking(List.of(surgeon), day, "11:00", "11:30", "Visit " + run, "MRI Scanner 2")));
+		checks.status("the resource's node refuses it to its own professionals", 409, checks.post(
+				other + "/appointments",
+				booking(List.of(radiologist), day, "11:00", "11:30", "Taken " + run, "MRI Scanner 2")));
+
+		// Undo can't take back half of a booking across nodes
+		checks.status("undo through the router is refused", 400, checks.post(router + "/undo", Map.of()));
+		checks.status("undo on a node is refused", 409, checks.post(main + "/undo", Map.of()));
+		checks.status("undo on the other node is refused", 409, checks.post(other + "/undo", Map.of()));
+		checks.check("both nodes still keep the bookings across nodes",
+				count(checks, main, surgeon) == 2 && count(checks, other, radiologist) == 2);
+		checks.check("the router reports an unknown booking as aborted",
+				"aborted".equals(checks.object(router + "/transactions/status?id=" + run).get("outcome")));
+
+		// A node left undecided asks the coordinator, and keeps the booking
+		// while the coordinator can't be reached
+		int routerPort = URI.create(router).getPort();
+		int deadPort;
+		try (ServerSocket unused = new ServerSocket(0)) {
+			deadPort = unused.getLocalPort();
+		}
+		String orphan = "orphan-" + run;
+		String stranded = "stranded-" + run;
+		checks.status("prepare a booking the router never decided", 200, checks.post(main + "/transactions/prepare",
+				transaction(orphan, surgeon, day, "12:00", "12:30", "Orphan " + run, routerPort)));
+		checks.status("prepare a booking whose coordinator is gone", 200, checks.post(main + "/transactions/prepare",
+				transaction(stranded, surgeon, day, "13:00", "13:30", "Stranded " + run, deadPort)));
+		checks.await("the node asks the router and drops the booking it never decided",
+				SchedulerServer.PREPARE_TIMEOUT_MILLIS * 3 / 2, () -> count(checks, main, surgeon) == 3);
+		checks.check("the node still holds the booking it couldn't ask about", count(checks, main, surgeon) == 3);
+		checks.status("abort the stranded booking", 200,
+				checks.post(main + "/transactions/abort", Map.of("id", stranded)));
+		checks.check("abort releases it", count(checks, main, surgeon) == 2);
+	}
+
+	private static Map<String, Object> professional(String name, String profession, String location) {
+		Map<String, Object> hp = new LinkedHashMap<>();
+		hp.put("name", name);
+		hp.put("profession", profession);
+		hp.put("location", location);
+		return hp;
+	}
+
+	private static Map<String, Object> booking(List<?> names, String day, String start, String end,
+			String patient, String resource) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("professionals", names);
+		body.put("date", day);
+		body.put("start", start);
+		body.put("end", end);
+		body.put("treatment", "Check");
+		body.put("patient", patient);
+		body.put("resource", resource);
+		return body;
+	}
+
+	private static Map<String, Object> transaction(String id, String name, String day, String start, String end,
+			String patient, int coordinatorPort) {
+		Map<String, Object> body = booking(List.of(professional(name, "Surgeon", "Main Hospital")), day, start, end,
+				patient, null);
+		body.put("id", id);
+		body.put("coordinatorPort", coordinatorPort);
+		return body;
+	}
+
+	/**
+	 * Gets a professional's appointments on one node.
+	 *
+	 * @return the appointments, or null if the node doesn't hold the
+	 *         professional
+	 */
+	private static List<?> appointments(Checks checks, String node, String name) {
+		Response response = checks.get(node + "/appointments?professional=" + TransactionCheck.encode(name));
+		return response.status == 200 ? (List<?>) Json.parse(response.body) : null;
+	}
+
+	private static int count(Checks checks, String node, String name) {
+		List<?> found = appointments(checks, node, name);
+		return found == null ? -1 : found.size();
+	}
+
+	private static Integer number(Object value) {
+		return value instanceof Number ? ((Number) value).intValue() : null;
+	}
+}
@@ -0,0 +1,191 @@
+package project;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Caches {@link Scheduler#findAvailableSlots} results. Entries are evicted
+ * least recently used first once the cache is full, expire after a fixed time,
+ * and are invalidated precisely: a change to professional P's diary or to a
+ * booking of resource R on day D only drops the entries whose search involves
+ * P or R and whose date range covers D.
+ */
+class SlotSearchCache {
+	private final int maxEntries;
+	private final long ttlMillis;
+	private final LinkedHashMap<Key, Entry> entries;
+	private final Map<Object, Set<Key>> keysByParticipant;
+
+	/**
+	 * Constructs an empty cache.
+	 *
+	 * @param maxEntries the maximum number of cached searches
+	 * @param ttlMillis  how long a cached result stays valid, in milliseconds
+	 */
+	SlotSearchCache(int maxEntries, long ttlMillis) {
+		this.maxEntries = maxEntries;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.keysByParticipant = new HashMap<>();
+	}
+
+	/**
+	 * Gets a cached result.
+	 *
+	 * @param key the search
+	 * @return a copy of the cached slots, or null if not cached or expired
+	 */
+	List<TimeSlot> get(Key key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+			remove(key);
+			return null;
+		}
+		return new ArrayList<>(entry.slots);
+	}
+
+	/**
+	 * Caches a search result.
+	 *
+	 * @param key   the search
+	 * @param slots the slots found
+	 */
+	void put(Key key, List<TimeSlot> slots) {
+		if (maxEntries <= 0) {
+			return;
+		}
+		if (entries.put(key, new Entry(new ArrayList<>(slots))) == null) {
+			for (Object participant : key.participants()) {
+				keysByParticipant.computeIfAbsent(participant, p -> new HashSet<>()).add(key);
+			}
+		}
+		while (entries.size() > maxEntries) {
+			remove(entries.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * Drops the cached searches a booking change can affect.
+	 *
+	 * @param professional the professional whose diary changed
+	 * @param resource     the resource of the changed booking, or null
+	 * @param date         the day of the changed booking
+	 */
+	void invalidate(HealthProfessional professional, Resource resource, LocalDate date) {
+		invalidate(professional, date);
+		if (resource != null) {
+			invalidate(resource, date);
+		}
+	}
+
+	/**
+	 * Drops every cached search.
+	 */
+	void clear() {
+		entries.clear();
+		keysByParticipant.clear();
+	}
+
+	/**
+	 * Gets the number of cached searches.
+	 *
+	 * @return the entry count
+	 */
+	int size() {
+		return entries.size();
+	}
+
+	private void invalidate(Object participant, LocalDate date) {
+		Set<Key> keys = keysByParticipant.get(participant);
+		if (keys == null) {
+			return;
+		}
+		List<Key> affected = new ArrayList<>();
+		for (Key key : keys) {
+			if (!date.isBefore(key.startDate) && !date.isAfter(key.endDate)) {
+				affected.add(key);
+			}
+		}
+		for (Key key : affected) {
+			remove(key);
+		}
+	}
+
+	private void remove(Key key) {
+		if (entries.remove(key) == null) {
+			return;
+		}
+		for (Object participant : key.participants()) {
+			Set<Key> keys = keysByParticipant.get(participant);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					keysByParticipant.remove(participant);
+				}
+			}
+		}
+	}
+
+	private static class Entry {
+		final List<TimeSlot> slots;
+		final long createdAt;
+
+		Entry(List<TimeSlot> slots) {
+			this.slots = slots;
+			this.createdAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * The parameters of a slot search.
+	 */
+	static final class Key {
+		private final List<HealthProfessional> professionals;
+		private final List<Resource> resources;
+		private final LocalDate startDate;
+		private final LocalDate endDate;
+		private final int durationMinutes;
+
+		Key(List<HealthProfessional> professionals, List<Resource> resources, LocalDate startDate,
+				LocalDate endDate, int durationMinutes) {
+			this.professionals = List.copyOf(professionals);
+			this.resources = resources == null ? List.of() : List.copyOf(resources);
+			this.startDate = startDate;
+			this.endDate = endDate;
+			this.durationMinutes = durationMinutes;
+		}
+
+		private List<Object> participants() {
+			List<Object> result = new ArrayList<>(professionals);
+			result.addAll(resources);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key that = (Key) obj;
+			return durationMinutes == that.durationMinutes && professionals.equals(that.professionals)
+					&& resources.equals(that.resources) && startDate.equals(that.startDate)
+					&& endDate.equals(that.endDate);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(professionals, resources, startDate, endDate, durationMinutes);
+		}
+	}
+}
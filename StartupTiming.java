@@ -0,0 +1,35 @@
+package project;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reports the time from JVM start to the first prompt shown to the user, when
+ * the {@code scheduler.startupTiming} system property is set. The figure goes
+ * to standard error so it can be tracked by scripts without disturbing the
+ * prompt itself.
+ */
+final class StartupTiming {
+	static final String PROPERTY = "scheduler.startupTiming";
+
+	private static boolean reported;
+
+	private StartupTiming() {
+	}
+
+	/**
+	 * Records that a prompt has just been shown. Only the first call reports.
+	 * 
+	 * @param prompt a name for the prompt
+	 */
+	static synchronized void promptShown(String prompt) {
+		if (reported || System.getProperty(PROPERTY) == null) {
+			return;
+		}
+		reported = true;
+		long now = System.currentTimeMillis();
+		// Only read once the time is taken, as the management classes are slow to
+		// load
+		long started = ManagementFactory.getRuntimeMXBean().getStartTime();
+		System.err.println("Time to first prompt (" + prompt + "): " + (now - started) + " ms");
+	}
+}
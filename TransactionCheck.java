@@ -0,0 +1,171 @@
+package project;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Checks the participant side of a two-phase booking on a
+ * {@link SchedulerServer}: a prepared booking is held as if booked and blocks
+ * its resource (only bookings of the same resource clash), abort removes exactly the appointments the prepare added,
+ * commit keeps them, and undo neither goes back past a committed booking nor
+ * runs while one is undecided. Prepares record no undo point of their own.
+ * Counts out of range and bodies nested too deeply are refused with a 400.
+ * <p>
+ * Run with a server's URL to check a server started separately, for example
+ * by {@code check.sh}; without one a server is started in this JVM. Every run
+ * adds its own professionals, so a server can be checked more than once.
+ */
+public class TransactionCheck {
+
+	private TransactionCheck() {
+	}
+
+	/**
+	 * Runs the checks.
+	 *
+	 * @param args optionally the server's base URL, such as
+	 *             {@code http://localhost:9101}
+	 * @throws Exception if the server can't be started or reached
+	 */
+	public static void main(String[] args) throws Exception {
+		String url;
+		if (args.length > 0) {
+			url = args[0];
+		} else {
+			SchedulerServer server = new SchedulerServer(new Scheduler(), 0);
+			server.start();
+			url = "http://localhost:" + server.getPort();
+		}
+		Checks checks = new Checks("Transactions on " + url);
+		checks.awaitServer(url);
+		checks.run(() -> run(checks, url));
+	}
+
+	private static void run(Checks checks, String url) {
+		String run = UUID.randomUUID().toString().substring(0, 8);
+		Map<String, Object> first = professional("Check " + run + " A");
+		Map<String, Object> second = professional("Check " + run + " B");
+		Map<String, Object> third = professional("Check " + run + " C");
+		for (Map<String, Object> hp : List.of(first, second, third)) {
+			checks.status("add " + hp.get("name"), 201, checks.post(url + "/professionals", hp));
+		}
+		Map<String, Object> theatre = null;
+		for (Object res : checks.list(url + "/resources")) {
+			if ("Operating Theatre 1".equals(((Map<?, ?>) res).get("name"))) {
+				theatre = asMap(res);
+			}
+		}
+		checks.check("the server has Operating Theatre 1", theatre != null);
+		String day = LocalDate.now().plusYears(1).toString();
+
+		checks.status("book a plain appointment", 201, checks.post(url + "/appointments",
+				booking(List.of(first.get("name")), day, "09:00", "09:30", "Plain " + run, null)));
+
+		// Prepare holds the booking and its resource
+		String held = UUID.randomUUID().toString();
+		Map<String, Object> prepare = transaction(held, List.of(first, second), day, "10:00", "10:30",
+				"Held " + run, theatre);
+		checks.status("prepare", 200, checks.post(url + "/transactions/prepare", prepare));
+		checks.status("prepare again is answered the same", 200, checks.post(url + "/transactions/prepare", prepare));
+		checks.check("the held booking shows in both diaries once",
+				appointments(checks, url, first).size() == 2 && appointments(checks, url, second).size() == 1);
+		checks.status("a prepare of the held resource is refused", 409, checks.post(url + "/transactions/prepare",
+				transaction(UUID.randomUUID().toString(), List.of(third), day, "10:15", "10:45", "Clash " + run,
+						theatre)));
+		checks.status("a plain booking of the held resource is refused", 409, checks.post(url + "/appointments",
+				booking(List.of(third.get("name")), day, "10:15", "10:45", "Clash " + run, "Operating Theatre 1")));
+		checks.status("undo is refused while the booking is undecided", 409, checks.post(url + "/undo", Map.of()));
+
+		// Abort removes the hold and nothing else
+		checks.status("abort", 200, checks.post(url + "/transactions/abort", Map.of("id", held)));
+		List<?> kept = appointments(checks, url, first);
+		checks.check("abort leaves only the plain appointment",
+				kept.size() == 1 && ("Plain " + run).equals(asMap(kept.get(0)).get("patient"))
+						&& appointments(checks, url, second).isEmpty());
+		checks.check("abort again finds nothing to abort", Boolean.FALSE.equals(
+				Json.parseObject(checks.post(url + "/transactions/abort", Map.of("id", held)).body).get("aborted")));
+		checks.status("the released resource can be booked", 201, checks.post(url + "/appointments",
+				booking(List.of(third.get("name")), day, "10:15", "10:45", "Free " + run, "Operating Theatre 1")));
+
+		// The prepare added no undo point: two undos take back the two plain bookings
+		checks.status("undo the last plain booking", 200, checks.post(url + "/undo", Map.of()));
+		checks.status("undo the first plain booking", 200, checks.post(url + "/undo", Map.of()));
+		checks.check("undo went past the aborted prepare to the plain bookings",
+				appointments(checks, url, first).isEmpty() && appointments(checks, url, third).isEmpty());
+
+		// Commit keeps the booking, and undo won't take it back
+		String committed = UUID.randomUUID().toString();
+		checks.status("prepare another", 200, checks.post(url + "/transactions/prepare",
+				transaction(committed, List.of(first), day, "11:00", "11:30", "Kept " + run, null)));
+		checks.status("commit", 200, checks.post(url + "/transactions/commit", Map.of("id", committed)));
+		checks.status("commit again is refused", 409,
+				checks.post(url + "/transactions/commit", Map.of("id", committed)));
+		checks.check("the committed booking is kept", appointments(checks, url, first).size() == 1);
+		checks.status("undo won't remove the committed booking", 409, checks.post(url + "/undo", Map.of()));
+		checks.check("the committed booking is still kept", appointments(checks, url, first).size() == 1);
+
+		// Numbers out of range and hostile nesting are refused, not truncated or fatal
+		Map<String, Object> wrapped = booking(List.of(third.get("name")), day, "12:00", "12:30", "Wrapped " + run,
+				null);
+		wrapped.put("occurrences", 4_294_967_297L);
+		checks.status("a count past the int range is refused", 400, checks.post(url + "/appointments", wrapped));
+		wrapped.put("occurrences", 2_000_000_000L);
+		checks.status("a count past the most occurrences is refused", 400,
+				checks.post(url + "/appointments", wrapped));
+		checks.check("neither booked anything", appointments(checks, url, third).isEmpty());
+		Object nested = List.of();
+		for (int i = 0; i < 1000; i++) {
+			nested = List.of(nested);
+		}
+		checks.status("a deeply nested body is refused", 400,
+				checks.post(url + "/appointments", Map.of("professionals", nested)));
+	}
+
+	private static Map<String, Object> professional(String name) {
+		Map<String, Object> hp = new LinkedHashMap<>();
+		hp.put("name", name);
+		hp.put("profession", "Surgeon");
+		hp.put("location", "Main Hospital");
+		return hp;
+	}
+
+	private static Map<String, Object> booking(List<Object> names, String day, String start, String end,
+			String patient, String resource) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("professionals", names);
+		body.put("date", day);
+		body.put("start", start);
+		body.put("end", end);
+		body.put("treatment", "Check");
+		body.put("patient", patient);
+		body.put("resource", resource);
+		return body;
+	}
+
+	private static Map<String, Object> transaction(String id, List<Map<String, Object>> attendees, String day,
+			String start, String end, String patient, Map<String, Object> resource) {
+		Map<String, Object> body = booking(new ArrayList<>(attendees), day, start, end, patient, null);
+		body.put("id", id);
+		body.put("resource", resource);
+		return body;
+	}
+
+	private static List<?> appointments(Checks checks, String url, Map<String, Object> hp) {
+		return checks.list(url + "/appointments?professional=" + encode(hp.get("name")));
+	}
+
+	static String encode(Object value) {
+		return URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8);
+	}
+
+	@SuppressWarnings("unchecked")
+	static Map<String, Object> asMap(Object value) {
+		return (Map<String, Object>) value;
+	}
+}
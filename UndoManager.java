@@ -26,6 +26,15 @@ public class UndoManager {
 		history.push(scheduler.createMemento());
 	}
 
+	/**
+	 * Gets the number of states that can be undone.
+	 * 
+	 * @return the number of saved states
+	 */
+	public int size() {
+		return history.size();
+	}
+
 	/**
 	 * Restores the previous state of the scheduler.
 	 * 
@@ -0,0 +1,212 @@
+package project;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds utilisation reports. Booked minutes, peak hours and the treatment mix
+ * come from the scheduler's incrementally maintained rollups; idle time and
+ * overbooking need the bookings themselves, so each diary is swept in a
+ * parallel stream, one diary per task, and the resource bookings gathered from
+ * all diaries are then swept per resource, again in parallel.
+ */
+final class UtilisationAnalytics {
+	private final long fromDay;
+	private final long toDay;
+	private final int dayStart;
+	private final int dayEnd;
+
+	/**
+	 * Constructs an analysis over a date range.
+	 *
+	 * @param from     the first date, inclusive
+	 * @param to       the last date, inclusive
+	 * @param dayStart the start of the working day in minutes from midnight
+	 * @param dayEnd   the end of the working day in minutes from midnight
+	 */
+	UtilisationAnalytics(LocalDate from, LocalDate to, int dayStart, int dayEnd) {
+		this.fromDay = from.toEpochDay();
+		this.toDay = to.toEpochDay();
+		this.dayStart = dayStart;
+		this.dayEnd = dayEnd;
+	}
+
+	/**
+	 * Builds the report.
+	 *
+	 * @param diaries   the diary of each professional
+	 * @param resources the shared resources, reported even when never booked
+	 * @param rollups   the scheduler's occupancy aggregates
+	 * @return the report
+	 */
+	UtilisationReport report(Map<HealthProfessional, Diary> diaries, List<Resource> resources,
+			OccupancyAggregates rollups) {
+		LocalDate from = LocalDate.ofEpochDay(fromDay);
+		LocalDate to = LocalDate.ofEpochDay(toDay);
+		List<DiarySweep> sweeps = diaries.entrySet().parallelStream()
+				.map(entry -> sweepDiary(entry.getKey(), entry.getValue(), from, to)).toList();
+
+		Map<Resource, Intervals> held = new HashMap<>();
+		for (Resource resource : resources) {
+			held.put(resource, new Intervals());
+		}
+		for (DiarySweep sweep : sweeps) {
+			sweep.resources.forEach((resource, intervals) -> held.merge(resource, intervals, Intervals::addAll));
+		}
+
+		Map<HealthProfessional, UtilisationReport.Usage> professionalUsage = new LinkedHashMap<>();
+		sweeps.stream().sorted(Comparator.comparing((DiarySweep sweep) -> sweep.professional.getName()))
+				.forEach(sweep -> professionalUsage.put(sweep.professional,
+						usage(rollups.minutes(fromDay, toDay, sweep.professional), sweep.result)));
+
+		Map<Resource, UtilisationReport.Usage> resourceUsage = new LinkedHashMap<>();
+		List<Map.Entry<Resource, Intervals>> byResource = new ArrayList<>(held.entrySet());
+		byResource.sort(Comparator.comparing(entry -> entry.getKey().getName()));
+		List<long[]> resourceResults = byResource.parallelStream().map(entry -> sweep(entry.getValue())).toList();
+		for (int i = 0; i < byResource.size(); i++) {
+			Resource resource = byResource.get(i).getKey();
+			resourceUsage.put(resource, usage(rollups.minutes(fromDay, toDay, resource), resourceResults.get(i)));
+		}
+
+		Map<String, Integer> mix = new LinkedHashMap<>();
+		rollups.treatmentMix(fromDay, toDay).entrySet().stream()
+				.sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+				.forEach(entry -> mix.put(entry.getKey(), entry.getValue()));
+		return new UtilisationReport(from, to, professionalUsage, resourceUsage,
+				rollups.hourlyMinutes(fromDay, toDay), mix);
+	}
+
+	private DiarySweep sweepDiary(HealthProfessional professional, Diary diary, LocalDate from, LocalDate to) {
+		Intervals own = new Intervals();
+		Map<Resource, Intervals> resources = new HashMap<>();
+		for (Appointment appt : diary.appointmentsBetween(from, to)) {
+			long interval = encode(appt);
+			own.add(interval);
+			if (appt.getResource() != null) {
+				resources.computeIfAbsent(appt.getResource(), r -> new Intervals()).add(interval);
+			}
+		}
+		return new DiarySweep(professional, sweep(own), resources);
+	}
+
+	private UtilisationReport.Usage usage(long bookedMinutes, long[] result) {
+		return new UtilisationReport.Usage(bookedMinutes, (toDay - fromDay + 1) * (dayEnd - dayStart), result[0],
+				(int) result[1], (int) result[2]);
+	}
+
+	/**
+	 * Packs a booking into a long that sorts by date, start and end.
+	 */
+	private static long encode(Appointment appt) {
+		long start = appt.getStartTime().toSecondOfDay() / 60;
+		long end = Math.max(start, appt.getEndTime().toSecondOfDay() / 60);
+		return appt.getDate().toEpochDay() << 22 | start << 11 | end;
+	}
+
+	/**
+	 * Sweeps one owner's bookings day by day. Identical bookings count once, so a
+	 * resource held by an appointment shared between diaries is not counted
+	 * twice.
+	 *
+	 * @return the idle working minutes, the longest idle gap and the number of
+	 *         overbooked days
+	 */
+	private long[] sweep(Intervals intervals) {
+		long[] keys = intervals.sorted();
+		int window = dayEnd - dayStart;
+		long idle = 0;
+		int longest = 0;
+		int overbooked = 0;
+		long bookedDays = 0;
+		int i = 0;
+		while (i < keys.length) {
+			long day = keys[i] >> 22;
+			int cursor = dayStart;
+			int busy = 0;
+			int booked = 0;
+			long previous = 0;
+			for (int first = i; i < keys.length && keys[i] >> 22 == day; i++) {
+				if (i > first && keys[i] == previous) {
+					continue;
+				}
+				previous = keys[i];
+				int start = (int) (keys[i] >> 11) & 0x7FF;
+				int end = (int) keys[i] & 0x7FF;
+				booked += end - start;
+				int clippedStart = Math.max(start, dayStart);
+				int clippedEnd = Math.min(end, dayEnd);
+				if (clippedEnd <= clippedStart) {
+					continue;
+				}
+				if (clippedStart > cursor) {
+					longest = Math.max(longest, clippedStart - cursor);
+				}
+				if (clippedEnd > cursor) {
+					busy += clippedEnd - Math.max(clippedStart, cursor);
+					cursor = clippedEnd;
+				}
+			}
+			longest = Math.max(longest, dayEnd - cursor);
+			idle += window - busy;
+			if (booked > window) {
+				overbooked++;
+			}
+			bookedDays++;
+		}
+		long days = toDay - fromDay + 1;
+		idle += (days - bookedDays) * window;
+		if (bookedDays < days) {
+			longest = window;
+		}
+		return new long[] { idle, longest, overbooked };
+	}
+
+	/**
+	 * The sweep of one diary, with its resource bookings for the resource pass.
+	 */
+	private static class DiarySweep {
+		final HealthProfessional professional;
+		final long[] result;
+		final Map<Resource, Intervals> resources;
+
+		DiarySweep(HealthProfessional professional, long[] result, Map<Resource, Intervals> resources) {
+			this.professional = professional;
+			this.result = result;
+			this.resources = resources;
+		}
+	}
+
+	/**
+	 * A growable array of packed bookings.
+	 */
+	private static class Intervals {
+		private long[] values = new long[16];
+		private int size;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		Intervals addAll(Intervals other) {
+			for (int i = 0; i < other.size; i++) {
+				add(other.values[i]);
+			}
+			return this;
+		}
+
+		long[] sorted() {
+			long[] keys = Arrays.copyOf(values, size);
+			Arrays.sort(keys);
+			return keys;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package project;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Utilisation and capacity figures for the professionals and resources of a
+ * scheduler over a date range. Capacity is the scheduler's working day on every
+ * date in the range.
+ */
+public class UtilisationReport {
+	private final LocalDate from;
+	private final LocalDate to;
+	private final Map<HealthProfessional, Usage> professionals;
+	private final Map<Resource, Usage> resources;
+	private final long[] hourlyMinutes;
+	private final Map<String, Integer> treatmentMix;
+
+	/**
+	 * Constructs a report.
+	 * 
+	 * @param from          the first date covered
+	 * @param to            the last date covered
+	 * @param professionals the usage of each professional
+	 * @param resources     the usage of each resource
+	 * @param hourlyMinutes the minutes booked in each hour of the day
+	 * @param treatmentMix  the appointment count per treatment type, most common
+	 *                      first
+	 */
+	UtilisationReport(LocalDate from, LocalDate to, Map<HealthProfessional, Usage> professionals,
+			Map<Resource, Usage> resources, long[] hourlyMinutes, Map<String, Integer> treatmentMix) {
+		this.from = from;
+		this.to = to;
+		this.professionals = Collections.unmodifiableMap(professionals);
+		this.resources = Collections.unmodifiableMap(resources);
+		this.hourlyMinutes = hourlyMinutes;
+		this.treatmentMix = Collections.unmodifiableMap(treatmentMix);
+	}
+
+	/**
+	 * Gets the first date covered.
+	 * 
+	 * @return the first date
+	 */
+	public LocalDate getFrom() {
+		return from;
+	}
+
+	/**
+	 * Gets the last date covered.
+	 * 
+	 * @return the last date
+	 */
+	public LocalDate getTo() {
+		return to;
+	}
+
+	/**
+	 * Gets the usage of each professional.
+	 * 
+	 * @return the usage per professional, in name order
+	 */
+	public Map<HealthProfessional, Usage> getProfessionals() {
+		return professionals;
+	}
+
+	/**
+	 * Gets the usage of each resource booked or shared in the scheduler.
+	 * 
+	 * @return the usage per resource, in name order
+	 */
+	public Map<Resource, Usage> getResources() {
+		return resources;
+	}
+
+	/**
+	 * Gets the professional minutes booked in each hour of the day across the
+	 * hospital.
+	 * 
+	 * @return 24 totals, one per hour from midnight
+	 */
+	public long[] getHourlyMinutes() {
+		return hourlyMinutes.clone();
+	}
+
+	/**
+	 * Gets the busiest hour of the day.
+	 * 
+	 * @return the hour from 0 to 23 with the most minutes booked, or -1 if
+	 *         nothing is booked
+	 */
+	public int getPeakHour() {
+		int peak = -1;
+		for (int hour = 0; hour < hourlyMinutes.length; hour++) {
+			if (hourlyMinutes[hour] > 0 && (peak < 0 || hourlyMinutes[hour] > hourlyMinutes[peak])) {
+				peak = hour;
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Gets the appointment count per treatment type.
+	 * 
+	 * @return the counts, most common treatment first
+	 */
+	public Map<String, Integer> getTreatmentMix() {
+		return treatmentMix;
+	}
+
+	/**
+	 * Gets the professionals booked beyond their working hours on at least one
+	 * day, busiest first.
+	 * 
+	 * @return the overbooked professionals
+	 */
+	public List<HealthProfessional> getOverbookedProfessionals() {
+		List<HealthProfessional> overbooked = new ArrayList<>();
+		for (Map.Entry<HealthProfessional, Usage> entry : professionals.entrySet()) {
+			if (entry.getValue().getOverbookedDays() > 0) {
+				overbooked.add(entry.getKey());
+			}
+		}
+		overbooked.sort(Comparator.comparingDouble((HealthProfessional hp) -> professionals.get(hp).getUtilisation())
+				.reversed());
+		return overbooked;
+	}
+
+	/**
+	 * Booked and idle time of one professional or resource.
+	 */
+	public static class Usage {
+		private final long bookedMinutes;
+		private final long capacityMinutes;
+		private final long idleMinutes;
+		private final int longestIdleMinutes;
+		private final int overbookedDays;
+
+		/**
+		 * Constructs a usage record.
+		 * 
+		 * @param bookedMinutes      the minutes booked
+		 * @param capacityMinutes    the working minutes available
+		 * @param idleMinutes        the working minutes not booked
+		 * @param longestIdleMinutes the longest unbooked stretch of a working day
+		 * @param overbookedDays     the days booked for longer than the working day
+		 */
+		Usage(long bookedMinutes, long capacityMinutes, long idleMinutes, int longestIdleMinutes,
+				int overbookedDays) {
+			this.bookedMinutes = bookedMinutes;
+			this.capacityMinutes = capacityMinutes;
+			this.idleMinutes = idleMinutes;
+			this.longestIdleMinutes = longestIdleMinutes;
+			this.overbookedDays = overbookedDays;
+		}
+
+		/**
+		 * Gets the minutes booked, including any outside working hours.
+		 * 
+		 * @return the booked minutes
+		 */
+		public long getBookedMinutes() {
+			return bookedMinutes;
+		}
+
+		/**
+		 * Gets the working minutes available over the report's range.
+		 * 
+		 * @return the capacity in minutes
+		 */
+		public long getCapacityMinutes() {
+			return capacityMinutes;
+		}
+
+		/**
+		 * Gets the working minutes left unbooked.
+		 * 
+		 * @return the idle minutes
+		 */
+		public long getIdleMinutes() {
+			return idleMinutes;
+		}
+
+		/**
+		 * Gets the longest unbooked stretch within a single working day.
+		 * 
+		 * @return the longest idle gap in minutes
+		 */
+		public int getLongestIdleMinutes() {
+			return longestIdleMinutes;
+		}
+
+		/**
+		 * Gets the number of days booked for longer than the working day.
+		 * 
+		 * @return the overbooked day count
+		 */
+		public int getOverbookedDays() {
+			return overbookedDays;
+		}
+
+		/**
+		 * Gets the booked minutes as a percentage of capacity.
+		 * 
+		 * @return the utilisation percentage, which may exceed 100
+		 */
+		public double getUtilisation() {
+			return capacityMinutes == 0 ? 0 : bookedMinutes * 100.0 / capacityMinutes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.1f%% booked (%d of %d min), %d min idle, longest gap %d min, %d overbooked days",
+					getUtilisation(), bookedMinutes, capacityMinutes, idleMinutes, longestIdleMinutes,
+					overbookedDays);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package project;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a deterministic synthetic workload: professionals spread over
+ * professions and office locations, extra shared resources, and a diary load
+ * with realistic treatment lengths, morning-heavy start times, recurring series
+ * and shared-resource contention. The same seed always produces the same
+ * scheduler contents.
+ */
+public class WorkloadGenerator {
+	private static final String[] PROFESSIONS = { "Surgeon", "Anaesthetist", "Radiologist", "General Practitioner",
+			"Physiotherapist", "Cardiologist", "Nurse Practitioner" };
+	private static final String[] LOCATIONS = { "Main Hospital", "North Wing", "South Wing", "Radiology Department",
+			"Outpatients" };
+	private static final String[] FIRST_NAMES = { "Alex", "Sam", "Jordan", "Priya", "Chen", "Maria", "Tom", "Aisha",
+			"Lukas", "Noor", "Ellen", "Kofi" };
+	private static final String[] SURNAMES = { "Smith", "Patel", "Nguyen", "Garcia", "Okafor", "Kowalski", "Brown",
+			"Haddad", "Larsen", "Silva", "Murphy", "Tanaka" };
+
+	// Treatment types with their typical lengths in minutes and the resource
+	// type they need, if any
+	private static final String[] TREATMENTS = { "Consultation", "Follow-up", "MRI Scan", "X-Ray", "Surgery",
+			"Physiotherapy", "Cardiac Review" };
+	private static final int[][] TREATMENT_MINUTES = { { 15, 30 }, { 15 }, { 30, 45, 60 }, { 15, 30 },
+			{ 60, 90, 120, 180 }, { 30, 45 }, { 30, 60 } };
+	private static final String[] TREATMENT_RESOURCES = { null, null, "MRI Scanner", "X-Ray", "Operating Theatre",
+			null, null };
+
+	private final long seed;
+	private int professionals = 50;
+	private int patients = 2000;
+	private int extraResources = 5;
+	private int bookingsPerDay = 6;
+	private double recurringShare = 0.05;
+
+	/**
+	 * Constructs a generator.
+	 * 
+	 * @param seed the random seed
+	 */
+	public WorkloadGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the number of professionals to create.
+	 * 
+	 * @param professionals the professional count
+	 * @return this generator
+	 */
+	public WorkloadGenerator professionals(int professionals) {
+		this.professionals = professionals;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the patient population appointments are drawn from.
+	 * 
+	 * @param patients the patient count
+	 * @return this generator
+	 */
+	public WorkloadGenerator patients(int patients) {
+		this.patients = patients;
+		return this;
+	}
+
+	/**
+	 * Sets the number of shared resources to add to the scheduler's defaults.
+	 * 
+	 * @param extraResources the resource count
+	 * @return this generator
+	 */
+	public WorkloadGenerator extraResources(int extraResources) {
+		this.extraResources = extraResources;
+		return this;
+	}
+
+	/**
+	 * Sets the average number of booking attempts per professional per weekday.
+	 * 
+	 * @param bookingsPerDay the booking attempts per day
+	 * @return this generator
+	 */
+	public WorkloadGenerator bookingsPerDay(int bookingsPerDay) {
+		this.bookingsPerDay = bookingsPerDay;
+		return this;
+	}
+
+	/**
+	 * Sets the share of booking attempts that start a weekly recurring series.
+	 * 
+	 * @param recurringShare a fraction from 0 to 1
+	 * @return this generator
+	 */
+	public WorkloadGenerator recurringShare(double recurringShare) {
+		this.recurringShare = recurringShare;
+		return this;
+	}
+
+	/**
+	 * Fills a scheduler with professionals, resources and appointments over a
+	 * date range. Bookings go through the scheduler, so those that clash with an
+	 * earlier booking or a busy resource are dropped as they would be for a
+	 * user. Weekends get a tenth of the weekday load.
+	 * 
+	 * @param scheduler the scheduler to fill
+	 * @param startDate the first date to book
+	 * @param endDate   the last date to book
+	 * @return the number of appointments booked, counting each occurrence of a
+	 *         series
+	 */
+	public int populate(Scheduler scheduler, LocalDate startDate, LocalDate endDate) {
+		Random random = new Random(seed);
+		scheduler.beginBulkLoad();
+		try {
+			List<HealthProfessional> staff = createProfessionals(scheduler, random);
+			createResources(scheduler, random);
+			List<Resource> resources = scheduler.getAllSharedResources();
+			int booked = 0;
+			for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+				boolean weekend = date.getDayOfWeek().getValue() >= 6;
+				int attempts = staff.size() * bookingsPerDay / (weekend ? 10 : 1);
+				for (int i = 0; i < attempts; i++) {
+					booked += book(scheduler, random, staff, resources, date);
+				}
+			}
+			return booked;
+		} finally {
+			scheduler.endBulkLoad();
+		}
+	}
+
+	private List<HealthProfessional> createProfessionals(Scheduler scheduler, Random random) {
+		List<HealthProfessional> staff = new ArrayList<>(professionals);
+		for (int i = 0; i < professionals; i++) {
+			String name = "Dr " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+					+ SURNAMES[random.nextInt(SURNAMES.length)] + " " + (i + 1);
+			// Skew towards the first professions, so some have many colleagues to
+			// choose between and others only a few
+			String profession = PROFESSIONS[Math.min(random.nextInt(PROFESSIONS.length),
+					random.nextInt(PROFESSIONS.length))];
+			HealthProfessional hp = new HealthProfessional(name, profession,
+					LOCATIONS[random.nextInt(LOCATIONS.length)]);
+			scheduler.addHealthProfessional(hp);
+			staff.add(hp);
+		}
+		return staff;
+	}
+
+	private void createResources(Scheduler scheduler, Random random) {
+		String[] types = { "Operating Theatre", "MRI Scanner", "X-Ray" };
+		int[] numbers = new int[types.length];
+		for (int i = 0; i < extraResources; i++) {
+			int type = random.nextInt(types.length);
+			numbers[type]++;
+			scheduler.addSharedResource(new Resource(types[type] + " " + (char) ('A' + numbers[type] - 1),
+					types[type], LOCATIONS[random.nextInt(LOCATIONS.length)]));
+		}
+	}
+
+	private int book(Scheduler scheduler, Random random, List<HealthProfessional> staff, List<Resource> resources,
+			LocalDate date) {
+		Appointment appointment = randomAppointment(random, resources, date);
+		List<HealthProfessional> attendees = new ArrayList<>(2);
+		attendees.add(staff.get(random.nextInt(staff.size())));
+		// Surgery needs a second professional, preferably an anaesthetist
+		if (appointment.getTreatmentType().equals("Surgery") && staff.size() > 1) {
+			HealthProfessional second = staff.get(random.nextInt(staff.size()));
+			for (int tries = 0; tries < 5 && !second.getProfession().equals("Anaesthetist"); tries++) {
+				second = staff.get(random.nextInt(staff.size()));
+			}
+			if (!second.equals(attendees.get(0))) {
+				attendees.add(second);
+			}
+		}
+		if (random.nextDouble() < recurringShare) {
+			int occurrences = 2 + random.nextInt(7);
+			appointment.setRecurring(true);
+			return scheduler.bookRecurringAppointment(attendees, appointment, 7, occurrences) ? occurrences : 0;
+		}
+		return scheduler.bookAppointment(attendees, appointment) ? 1 : 0;
+	}
+
+	/**
+	 * Draws a random appointment on a date. Start times cluster in the morning
+	 * and the treatment type decides the length and the kind of resource taken.
+	 * 
+	 * @param random    the source of randomness
+	 * @param resources the shared resources to choose from
+	 * @param date      the date of the appointment
+	 * @return the appointment
+	 */
+	Appointment randomAppointment(Random random, List<Resource> resources, LocalDate date) {
+		int treatment = random.nextInt(TREATMENTS.length);
+		int[] lengths = TREATMENT_MINUTES[treatment];
+		int minutes = lengths[random.nextInt(lengths.length)];
+		// Two draws averaged and folded towards the start of the day, on a
+		// 15-minute grid
+		int slots = (Scheduler.WORKDAY_END_MINUTE - Scheduler.WORKDAY_START_MINUTE - minutes) / 15;
+		int slot = Math.min(random.nextInt(slots + 1), random.nextInt(slots + 1) + random.nextInt(slots + 1) / 2);
+		int start = Scheduler.WORKDAY_START_MINUTE + Math.min(slot, slots) * 15;
+		LocalTime startTime = LocalTime.of(start / 60, start % 60);
+		Resource resource = null;
+		String type = TREATMENT_RESOURCES[treatment];
+		if (type != null) {
+			List<Resource> matching = new ArrayList<>();
+			for (Resource candidate : resources) {
+				if (candidate.getType().equals(type)) {
+					matching.add(candidate);
+				}
+			}
+			if (!matching.isEmpty()) {
+				resource = matching.get(random.nextInt(matching.size()));
+			}
+		}
+		return new Appointment(date, startTime, startTime.plusMinutes(minutes), TREATMENTS[treatment],
+				"Patient " + (1 + random.nextInt(patients)), false, resource);
+	}
+}
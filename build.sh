@@ -0,0 +1,59 @@
+#!/bin/sh
+# Builds build/HospitalAppoinmentScheduler.jar with AppCDS archives for the
+# console and server entry points, then checks time to first prompt.
+#
+#   ./build.sh            build, train the archives and check startup
+#   STARTUP_BUDGET_MS=100 ./build.sh
+#
+# Run the results with
+#   java -XX:SharedArchiveFile=build/console.jsa -jar build/HospitalAppoinmentScheduler.jar --console
+#   java -XX:SharedArchiveFile=build/server.jsa -jar build/HospitalAppoinmentScheduler.jar --server [port]
+#
+# Needs JDK 21 or later on the PATH or in JAVA_HOME.
+set -e
+cd "$(dirname "$0")"
+
+BIN=${JAVA_HOME:+$JAVA_HOME/bin/}
+BUDGET=${STARTUP_BUDGET_MS:-150}
+PORT=${TRAINING_PORT:-18080}
+JAR=build/HospitalAppoinmentScheduler.jar
+
+rm -rf build/classes build/*.jsa "$JAR"
+mkdir -p build/classes
+"${BIN}javac" -encoding UTF-8 -d build/classes *.java
+"${BIN}jar" cfe "$JAR" project.OperationScheduler -C build/classes project
+
+# Console training run: walk the menus that kiosks use, then exit, so the
+# archive holds the classes loaded on the way
+printf '2\n15\n2026-01-01\n2026-01-31\n10\n2026\n1\n0\n14\n' |
+	"${BIN}java" -XX:ArchiveClassesAtExit=build/console.jsa -jar "$JAR" --console >/dev/null
+
+# Server training run: serve a few requests, then stop; the archive is written
+# as the JVM shuts down
+"${BIN}java" -XX:ArchiveClassesAtExit=build/server.jsa -jar "$JAR" --server "$PORT" >/dev/null &
+SERVER=$!
+sleep 2
+if command -v curl >/dev/null; then
+	for path in professionals resources "slots/earliest?profession=Surgeon&from=2026-01-05&to=2026-01-09&duration=30"; do
+		curl -s "http://localhost:$PORT/$path" >/dev/null || true
+	done
+fi
+kill -TERM "$SERVER"
+wait "$SERVER" || true
+
+# Startup check: median of five runs, appended to build/startup-times.txt so
+# the figure can be tracked from build to build
+TIMES=""
+for run in 1 2 3 4 5; do
+	ms=$(echo 14 | "${BIN}java" -XX:SharedArchiveFile=build/console.jsa -Dscheduler.startupTiming \
+		-jar "$JAR" --console 2>&1 >/dev/null | sed -n 's/^Time to first prompt.*: \([0-9]*\) ms$/\1/p')
+	TIMES="$TIMES $ms"
+done
+MEDIAN=$(echo $TIMES | tr ' ' '\n' | sort -n | sed -n 3p)
+echo "$(date -u +%Y-%m-%dT%H:%M:%SZ) $(git rev-parse --short HEAD 2>/dev/null || echo unknown) ${MEDIAN}ms" \
+	>>build/startup-times.txt
+echo "Time to first prompt: ${MEDIAN} ms (runs:$TIMES; budget ${BUDGET} ms)"
+if [ "$MEDIAN" -gt "$BUDGET" ]; then
+	echo "Startup is over budget" >&2
+	exit 1
+fi
@@ -0,0 +1,86 @@
+#!/bin/sh
+# Runs the runnable checks against servers started in their own JVMs on
+# localhost, as they are deployed.
+#
+#   ./check.sh                          build and run every check
+#   CHECK_PORT_BASE=29100 ./check.sh    use ports from 29100 up instead
+#
+# Each server's output goes to build/check-logs. Exits with status 1 if any
+# check fails. Needs JDK 21 or later on the PATH or in JAVA_HOME.
+set -e
+cd "$(dirname "$0")"
+
+BIN=${JAVA_HOME:+$JAVA_HOME/bin/}
+BASE=${CHECK_PORT_BASE:-19100}
+LOGS=build/check-logs
+PIDS=""
+FAILED=0
+
+rm -rf build/classes "$LOGS"
+mkdir -p build/classes "$LOGS"
+"${BIN}javac" -encoding UTF-8 -d build/classes *.java
+
+# start NAME ARGS...: runs the application with ARGS in a JVM of its own
+start() {
+	name=$1
+	shift
+	"${BIN}java" -cp build/classes project.OperationScheduler "$@" >"$LOGS/$name.log" 2>&1 &
+	PIDS="$PIDS $!"
+}
+
+# stop_all: stops every JVM started so far
+stop_all() {
+	if [ -n "$PIDS" ]; then
+		kill $PIDS 2>/dev/null || true
+		wait $PIDS 2>/dev/null || true
+	fi
+	PIDS=""
+}
+trap stop_all EXIT INT TERM
+
+# check CLASS ARGS...: runs a check, noting a failure without stopping
+check() {
+	class=$1
+	shift
+	echo "== $class $*"
+	"${BIN}java" -cp build/classes "project.$class" "$@" || FAILED=1
+}
+
+# One server: holding, committing and aborting bookings made across sites
+start server --server $((BASE + 1))
+check TransactionCheck "http://localhost:$((BASE + 1))"
+stop_all
+
+# Two nodes behind a router: bookings across nodes, and a node asking the
+# router for a decision it missed
+MAIN=http://localhost:$((BASE + 11))
+OTHER=http://localhost:$((BASE + 12))
+ROUTER=http://localhost:$((BASE + 10))
+start node-main --server $((BASE + 11))
+start node-other --server $((BASE + 12))
+start router --router $((BASE + 10)) "$MAIN=Main Hospital;$OTHER=*" --decisions "$LOGS/router-decisions.log"
+check ShardRouterCheck "$ROUTER" "$MAIN" "$OTHER"
+stop_all
+
+# Two primaries and a replica following them through a relay the check runs
+# on port BASE + 30: catching up, resuming after an outage, a snapshot from a
+# primary with another history, and promotion
+start primary --server $((BASE + 21)) --replicate $((BASE + 31))
+start other-primary --server $((BASE + 22)) --replicate $((BASE + 32))
+start replica --server $((BASE + 23)) --follow localhost:$((BASE + 30))
+check ReplicationCheck "http://localhost:$((BASE + 21))" "localhost:$((BASE + 31))" \
+	"http://localhost:$((BASE + 22))" "localhost:$((BASE + 32))" $((BASE + 30)) "http://localhost:$((BASE + 23))"
+stop_all
+
+# The change feed, which is in-process: replaying from a sequence number,
+# demand, undo flags and cancelling
+check ChangeFeedCheck
+
+# A snapshot opened lazily with a small cache: cancelling a patient's bookings
+# across diaries that are evicted and reloaded
+check LazyDiaryCheck
+
+if [ "$FAILED" -ne 0 ]; then
+	echo "Some checks failed" >&2
+fi
+exit $FAILED